@@ -22,6 +22,7 @@
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -30,6 +31,7 @@
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -41,6 +43,9 @@ public class HopsX509Authenticator {
   
   private final Configuration conf;
   private final Cache<String, Set<InetAddress>> trustedHostnames;
+  // Certificates that were authenticated for a user connecting from an address, keyed by
+  // fingerprint, user and address. The values are the O field of the certificates
+  private final Cache<String, String> authenticatedCertificates;
 
   public enum AUTH_MODE {
     SIMPLE,
@@ -53,6 +58,17 @@ public HopsX509Authenticator(Configuration conf) {
         .maximumSize(500)
         .expireAfterWrite(30, TimeUnit.MINUTES)
         .build();
+    long authCacheSize = conf.getLong(CommonConfigurationKeys.HOPS_RPC_AUTH_CACHE_SIZE,
+        CommonConfigurationKeys.HOPS_RPC_AUTH_CACHE_SIZE_DEFAULT);
+    if (authCacheSize > 0) {
+      authenticatedCertificates = CacheBuilder.newBuilder()
+          .maximumSize(authCacheSize)
+          .expireAfterWrite(conf.getLong(CommonConfigurationKeys.HOPS_RPC_AUTH_CACHE_TTL_SECONDS,
+              CommonConfigurationKeys.HOPS_RPC_AUTH_CACHE_TTL_SECONDS_DEFAULT), TimeUnit.SECONDS)
+          .build();
+    } else {
+      authenticatedCertificates = null;
+    }
   }
   
   public void authenticateConnection(UserGroupInformation user, X509Certificate clientCertificate,
@@ -74,6 +90,18 @@ public void authenticateConnection(UserGroupInformation user, X509Certificate cl
     if (username == null) {
       throw new HopsX509AuthenticationException("Could not extract username from UGI");
     }
+    
+    String cacheKey = null;
+    if (authenticatedCertificates != null) {
+      cacheKey = getCacheKey(clientCertificate, username, remoteAddress);
+      String cachedOrg = authenticatedCertificates.getIfPresent(cacheKey);
+      if (cachedOrg != null) {
+        addApplicationId(user, cachedOrg, protocolName);
+        LOG.debug("Authenticated user " + username + " - Certificate has already been authenticated");
+        return;
+      }
+    }
+    
     String subjectDN = clientCertificate.getSubjectX500Principal().getName("RFC2253");
     String cn = HopsUtil.extractCNFromSubject(subjectDN);
     if (cn == null) {
@@ -82,12 +110,11 @@ public void authenticateConnection(UserGroupInformation user, X509Certificate cl
     
     // Hops X.509 certificates use O field for ApplicationID
     String org = HopsUtil.extractOFromSubject(subjectDN);
-    if (org != null && (Strings.isNullOrEmpty(protocolName) || !protocolName.equalsIgnoreCase("WebHDFS"))) {
-      user.addApplicationId(org);
-    }
+    addApplicationId(user, org, protocolName);
     
     if (username.equals(cn)) {
       LOG.debug("Authenticated user " + username + " - Username matches CN");
+      cacheAuthenticated(cacheKey, org);
       return;
     }
     
@@ -103,6 +130,7 @@ public void authenticateConnection(UserGroupInformation user, X509Certificate cl
               "field of its X.509 is null or cannot be parsed");
     }
     if (isTrustedConnection(remoteAddress, cn, username, locality)) {
+      cacheAuthenticated(cacheKey, org);
       return;
     }
 
@@ -121,6 +149,30 @@ public void authenticateConnection(UserGroupInformation user, X509Certificate cl
     throw new HopsX509AuthenticationException(sb.toString());
   }
 
+  private void addApplicationId(UserGroupInformation user, String org, String protocolName) {
+    if (!Strings.isNullOrEmpty(org)
+        && (Strings.isNullOrEmpty(protocolName) || !protocolName.equalsIgnoreCase("WebHDFS"))) {
+      user.addApplicationId(org);
+    }
+  }
+  
+  private String getCacheKey(X509Certificate certificate, String username, InetAddress remoteAddress)
+      throws HopsX509AuthenticationException {
+    try {
+      return DigestUtils.sha256Hex(certificate.getEncoded()) + "/" + username + "/"
+          + (remoteAddress == null ? "" : remoteAddress.getHostAddress());
+    } catch (CertificateEncodingException ex) {
+      throw new HopsX509AuthenticationException("Could not encode client certificate: " + ex.getMessage());
+    }
+  }
+  
+  private void cacheAuthenticated(String cacheKey, String org) {
+    if (cacheKey != null) {
+      // The O field is optional, an empty value is cached for certificates without it
+      authenticatedCertificates.put(cacheKey, org == null ? "" : org);
+    }
+  }
+
   /**
    * Used in Hive
    *
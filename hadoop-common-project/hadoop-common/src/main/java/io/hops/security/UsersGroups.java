@@ -32,6 +32,24 @@ public final class UsersGroups {
   private static final Log LOG = LogFactory.getLog(UsersGroups.class);
   private static UsersGroupsCache usersGroupsMapping;
 
+  /**
+   * Notified of the changes made through this namenode that make the cached
+   * users, groups or memberships of the other namenodes stale.
+   */
+  public interface InvalidationListener {
+    void userAdded(String user);
+
+    void groupAdded(String group);
+
+    void userRemoved(String user);
+
+    void groupRemoved(String group);
+
+    void userAddedToGroup(String user, String group);
+
+    void userRemovedFromGroup(String user, String group);
+  }
+
   public static synchronized void init(UserDataAccess uda, UserGroupDataAccess ugda,
       GroupDataAccess gda, int evcttime, int lrumax) throws IOException {
     if(usersGroupsMapping == null) {
@@ -148,6 +166,14 @@ public static void addUserToGroups(String user, String[] group) throws IOExcepti
     usersGroupsMapping.addUserToGroups(user, group);
   }
 
+  public static void setInvalidationListener(InvalidationListener listener) {
+    if(usersGroupsMapping == null){
+      LOG.warn("UsersGroups was not initialized.");
+      return;
+    }
+    usersGroupsMapping.setInvalidationListener(listener);
+  }
+
   public static void clearCache(){
     if(usersGroupsMapping == null){
       LOG.warn("UsersGroups was not initialized.");
@@ -188,10 +214,27 @@ public static void  invCacheUserAddedToGroup(String user, String group){
     usersGroupsMapping.invCacheUserAddedToGroup(user, group);
   }
 
+  public static void  invCacheUserAdded(String user){
+    if(usersGroupsMapping == null){
+      LOG.warn("UsersGroups was not initialized.");
+      return;
+    }
+    usersGroupsMapping.invCacheUserAdded(user);
+  }
+
+  public static void  invCacheGroupAdded(String group){
+    if(usersGroupsMapping == null){
+      LOG.warn("UsersGroups was not initialized.");
+      return;
+    }
+    usersGroupsMapping.invCacheGroupAdded(group);
+  }
+
   @VisibleForTesting
   public static void stop(){
     if(usersGroupsMapping != null){
       usersGroupsMapping.clear();
+      usersGroupsMapping.close();
       usersGroupsMapping = null;
     }
   }
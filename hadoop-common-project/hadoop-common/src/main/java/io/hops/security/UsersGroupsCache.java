@@ -18,6 +18,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.*;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.hops.StorageConnector;
 import io.hops.exception.ForeignKeyConstraintViolationException;
 import io.hops.exception.StorageException;
@@ -36,13 +37,30 @@
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Caches the users, the groups and the memberships stored in the database.
+ * <p>
+ * Entries are reloaded in the background once they are half as old as the
+ * eviction time, while the RPC handlers keep getting the cached value, so
+ * that the entries in use do not expire and are not loaded on the RPC path.
+ * Users and groups that do not exist, and users without groups, are cached
+ * as well, so that lookups of unknown principals do not go to the database
+ * on every permission check. Changes made through this cache invalidate the
+ * affected entries, and are forwarded to the {@link
+ * UsersGroups.InvalidationListener} to invalidate the caches of the other
+ * namenodes.
+ */
 @InterfaceAudience.Private
 class UsersGroupsCache {
 
   private final Log LOG = LogFactory.getLog(UsersGroupsCache.class);
 
+  private static final int REFRESH_THREADS = 4;
+
   private enum UsersOperationsType implements RequestHandler.OperationType {
     ADD_USER,
     REMOVE_USER,
@@ -70,6 +88,13 @@ private enum UsersOperationsType implements RequestHandler.OperationType {
   private LoadingCache<String, Integer> groupToIdCache;
   private LoadingCache<Integer, Integer> deletedGroupsCache;
 
+  // names of users and groups that were not found in the database
+  private Cache<String, Boolean> unknownUsersCache;
+  private Cache<String, Boolean> unknownGroupsCache;
+
+  private final ExecutorService refreshExecutor;
+  private volatile UsersGroups.InvalidationListener invalidationListener;
+
   private static final String lockRowName = "#HopsSyncUser#";
   private static User lockUser;
 
@@ -79,7 +104,7 @@ private enum UsersOperationsType implements RequestHandler.OperationType {
     public List<String> load(String userName) throws Exception {
       LOG.debug("Get groups from DB for user: " + userName);
       List<Group> groups = getUserGroupsFromDB(userName, getUserId(userName));
-      if (groups == null || groups.isEmpty()) {
+      if (groups == null) {
         throw new GroupsNotFoundForUserException("No groups found for user (" + userName + ")");
       }
 
@@ -134,6 +159,7 @@ public Integer load(String userName) throws Exception {
         idToUserCache.put(user.getId(), userName);
         return user.getId();
       }
+      unknownUsersCache.put(userName, Boolean.TRUE);
       throw new UserNotFoundException("User name: " + userName + " not found.");
     }
   };
@@ -177,6 +203,7 @@ public Integer load(String groupName) throws Exception {
         idToGroupCache.put(group.getId(), groupName);
         return group.getId();
       }
+      unknownGroupsCache.put(groupName, Boolean.TRUE);
       throw new GroupNotFoundException("Group name: " + groupName + " not found.");
 
     }
@@ -223,50 +250,68 @@ public UsersGroupsCache(UserDataAccess uda, UserGroupDataAccess ugda,
     this.userDataAccess = uda;
     this.userGroupDataAccess = ugda;
     this.groupDataAccess = gda;
+    this.refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS,
+            new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("UsersGroupsCache-refresh-%d").build());
 
-    userToGroupsCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    userToGroupsCache = newCacheBuilder(evectionTime, lrumax, true)
             .removalListener(userToGroupsRemoval)
-            .build(userToGroupsLoader);
+            .build(CacheLoader.asyncReloading(userToGroupsLoader, refreshExecutor));
 
-    idToUserCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    idToUserCache = newCacheBuilder(evectionTime, lrumax, true)
             .removalListener(idToUserRemoval)
-            .build(idToUserLoader);
+            .build(CacheLoader.asyncReloading(idToUserLoader, refreshExecutor));
 
-    userToIdCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    userToIdCache = newCacheBuilder(evectionTime, lrumax, true)
             .removalListener(userToIdsNameRemoval)
-            .build(userToIdLoader);
+            .build(CacheLoader.asyncReloading(userToIdLoader, refreshExecutor));
 
-    idToGroupCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    idToGroupCache = newCacheBuilder(evectionTime, lrumax, true)
             .removalListener(idToGroupsRemoval)
-            .build(idToGroupLoader);
+            .build(CacheLoader.asyncReloading(idToGroupLoader, refreshExecutor));
 
-    groupToIdCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    groupToIdCache = newCacheBuilder(evectionTime, lrumax, true)
             .removalListener(groupToIdsRemoval)
-            .build(groupToIdsLoader);
+            .build(CacheLoader.asyncReloading(groupToIdsLoader, refreshExecutor));
 
-    deletedUsersCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    deletedUsersCache = newCacheBuilder(evectionTime, lrumax, false)
             .removalListener(deletedUsersRemoval)
             .build(deletedUsersLoader);
 
-    deletedGroupsCache = CacheBuilder.newBuilder()
-            .maximumSize(lrumax)
-            .expireAfterWrite(evectionTime, TimeUnit.SECONDS)
+    deletedGroupsCache = newCacheBuilder(evectionTime, lrumax, false)
             .removalListener(deletedGroupRemoval)
             .build(deletedGroupLoader);
+
+    unknownUsersCache = newCacheBuilder(evectionTime, lrumax, false).build();
+
+    unknownGroupsCache = newCacheBuilder(evectionTime, lrumax, false).build();
+  }
+
+  /**
+   * Entries expire after the eviction time, so that changes made directly in
+   * the database, or by a namenode that could not reach this one, are seen
+   * within the eviction time. Reloadable entries are refreshed in the
+   * background after half of it.
+   */
+  private static CacheBuilder<Object, Object> newCacheBuilder(int evectionTime,
+          int lrumax, boolean refresh) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .maximumSize(lrumax)
+            .expireAfterWrite(evectionTime, TimeUnit.SECONDS);
+    if (refresh && evectionTime > 0) {
+      builder.refreshAfterWrite(TimeUnit.SECONDS.toMillis(evectionTime) / 2,
+              TimeUnit.MILLISECONDS);
+    }
+    return builder;
+  }
+
+  void setInvalidationListener(UsersGroups.InvalidationListener listener) {
+    this.invalidationListener = listener;
   }
 
+  void close() {
+    refreshExecutor.shutdownNow();
+  }
 
   public void createSyncRow() throws IOException {
     new LightWeightRequestHandler(UsersOperationsType.CREATE_LOCK_ROWS) {
@@ -348,6 +393,8 @@ public void clear() {
     groupToIdCache.invalidateAll();
     deletedGroupsCache.invalidateAll();
     deletedUsersCache.invalidateAll();
+    unknownUsersCache.invalidateAll();
+    unknownGroupsCache.invalidateAll();
   }
 
   private User getUserFromDB(final String userName, final Integer userId)
@@ -727,6 +774,10 @@ public int getUserId(String userName) throws IOException {
       return 0;
     }
 
+    if (unknownUsersCache.getIfPresent(userName) != null) {
+      throw new UserNotFoundException("User name: " + userName + " not found.");
+    }
+
     try {
       return userToIdCache.get(userName);
     } catch (ExecutionException e) {
@@ -742,7 +793,11 @@ public List<String> getGroups(String user) throws IOException {
     assert user != null;
 
     try {
-      return userToGroupsCache.get(user);
+      List<String> groups = userToGroupsCache.get(user);
+      if (groups.isEmpty()) {
+        throw new GroupsNotFoundForUserException("No groups found for user (" + user + ")");
+      }
+      return groups;
     } catch (ExecutionException e) {
       if (e.getCause() instanceof IOException) {
         throw (IOException) e.getCause();
@@ -757,6 +812,10 @@ public int getGroupId(String groupName) throws IOException {
       return 0;
     }
 
+    if (unknownGroupsCache.getIfPresent(groupName) != null) {
+      throw new GroupNotFoundException("Group name: " + groupName + " not found.");
+    }
+
     try {
       return groupToIdCache.get(groupName);
     } catch (ExecutionException e) {
@@ -796,6 +855,8 @@ public Integer addUser(String userName) throws IOException {
       return null;
     }
 
+    // the user may have been added by another namenode
+    unknownUsersCache.invalidate(userName);
     try {
       int id = userToIdCache.get(userName);
       throw new UserAlreadyExistsException("User: " + userName + " already exists with ID: " + id);
@@ -804,6 +865,10 @@ public Integer addUser(String userName) throws IOException {
         try {
           User user = addUserToDB(userName);
           updateUserCache(user.getId(), user.getName());
+          UsersGroups.InvalidationListener listener = invalidationListener;
+          if (listener != null) {
+            listener.userAdded(userName);
+          }
         } catch (UniqueKeyConstraintViolationException ue) {
           throw new UserAlreadyExistsException("User: " + userName + " already exists.");
         }
@@ -821,6 +886,9 @@ public Integer addGroup(String groupName) throws IOException {
     if (groupName == null) {
       return null;
     }
+
+    // the group may have been added by another namenode
+    unknownGroupsCache.invalidate(groupName);
     try {
       groupToIdCache.get(groupName);
       throw new GroupAlreadyExistsException("Group: " + groupName + " already exists");
@@ -829,6 +897,10 @@ public Integer addGroup(String groupName) throws IOException {
         try {
           Group group = addGroupToDB(groupName);
           updateGroupCache(group.getId(), group.getName());
+          UsersGroups.InvalidationListener listener = invalidationListener;
+          if (listener != null) {
+            listener.groupAdded(groupName);
+          }
         } catch (UniqueKeyConstraintViolationException ue) {
           throw new GroupAlreadyExistsException("Group: " + groupName + " already exists");
         }
@@ -849,6 +921,10 @@ public void removeUser(String userName) throws IOException {
       LOG.debug("Remove user from DB name: " + userName);
       removeUserFromDB(userID);
       invCacheUserRemoved(userID, userName);
+      UsersGroups.InvalidationListener listener = invalidationListener;
+      if (listener != null) {
+        listener.userRemoved(userName);
+      }
     } catch (ExecutionException e) {
       if (e.getCause() instanceof UserNotFoundException) {
         throw (IOException) e.getCause();
@@ -866,6 +942,10 @@ public void removeGroup(String group) throws IOException {
       int groupID = groupToIdCache.get(group);
       removeGroupFromDB(groupID);
       invCachesGroupRemoved(groupID, group);
+      UsersGroups.InvalidationListener listener = invalidationListener;
+      if (listener != null) {
+        listener.groupRemoved(group);
+      }
     } catch (ExecutionException e) {
       if (e.getCause() instanceof GroupNotFoundException) {
         throw (IOException) e.getCause();
@@ -912,6 +992,10 @@ public void addUserToGroup(String user, String group) throws IOException {
       addUserToGroupDB(userID, groupID);
 
       invCacheUserAddedToGroup(user, group);
+      UsersGroups.InvalidationListener listener = invalidationListener;
+      if (listener != null) {
+        listener.userAddedToGroup(user, group);
+      }
 
     } catch (ExecutionException e) {
       if (e.getCause() instanceof UserNotFoundException ||
@@ -937,6 +1021,10 @@ public void removeUserFromGroup(String user, String group) throws IOException {
       removeUserFromGroupDB(userId, groupId);
 
       invCachesUserRemovedFromGroup(user, group);
+      UsersGroups.InvalidationListener listener = invalidationListener;
+      if (listener != null) {
+        listener.userRemovedFromGroup(user, group);
+      }
 
     } catch (ExecutionException e) {
       if (e.getCause() instanceof UserNotFoundException ||
@@ -978,6 +1066,7 @@ private void invCachesGroupRemoved(int groupId, String groupName) {
 
     if (groupName != null) {
       groupToIdCache.invalidate(groupName);
+      unknownGroupsCache.invalidate(groupName);
 
       //get all the users in cache that are part of this grp
       Map<String, List<String>> u2gMap = userToGroupsCache.asMap();
@@ -1019,6 +1108,7 @@ private void invCacheUserRemoved(int userId, String userName) {
 
     if (userName != null) {
       userToIdCache.invalidate(userName);
+      unknownUsersCache.invalidate(userName);
       userToGroupsCache.invalidate(userName);
     }
   }
@@ -1028,16 +1118,29 @@ protected void invCachesUserRemovedFromGroup(String user, String group) {
   }
 
   protected void invCacheUserAddedToGroup(String user, String group) {
+    // the user and the group may have been added by another namenode
+    unknownUsersCache.invalidate(user);
+    unknownGroupsCache.invalidate(group);
     userToGroupsCache.invalidate(user);
   }
 
+  protected void invCacheUserAdded(String user) {
+    unknownUsersCache.invalidate(user);
+  }
+
+  protected void invCacheGroupAdded(String group) {
+    unknownGroupsCache.invalidate(group);
+  }
+
   //---------------------Explict Cache Updates---------------------------------
   private void updateGroupCache(Integer groupID, String groupName) {
+    unknownGroupsCache.invalidate(groupName);
     idToGroupCache.put(groupID, groupName);
     groupToIdCache.put(groupName, groupID);
   }
 
   private void updateUserCache(Integer userID, String userName) {
+    unknownUsersCache.invalidate(userName);
     idToUserCache.put(userID, userName);
     userToIdCache.put(userName, userID);
   }
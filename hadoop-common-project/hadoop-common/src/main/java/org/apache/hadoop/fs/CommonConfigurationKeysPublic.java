@@ -458,6 +458,42 @@ public class CommonConfigurationKeysPublic {
    */
   public static final String IPC_SERVER_TLS_HANDSHAKE_TIMEOUT_MS = "ipc.server.tls.handshake-timeout-ms";
   public static final long IPC_SERVER_TLS_HANDSHAKE_TIMEOUT_MS_DEFAULT = 2000L;
+
+  /**
+   * Bytes of free buffers kept by the pool shared by the TLS connections of
+   * a server
+   */
+  public static final String IPC_SERVER_TLS_BUFFER_POOL_MAX_FREE_BYTES =
+      "ipc.server.tls.buffer-pool.max-free-bytes";
+  public static final long IPC_SERVER_TLS_BUFFER_POOL_MAX_FREE_BYTES_DEFAULT =
+      64L * 1024 * 1024;
+
+  /**
+   * Number of threads running the TLS handshakes of new connections, 0 to
+   * run them on the reader threads
+   */
+  public static final String IPC_SERVER_TLS_HANDSHAKE_THREADS = "ipc.server.tls.handshake.threads";
+  public static final int IPC_SERVER_TLS_HANDSHAKE_THREADS_DEFAULT = 4;
+
+  /**
+   * Bounds of the cache of the TLS sessions clients can resume, 0 means no
+   * limit
+   */
+  public static final String IPC_SERVER_TLS_SESSION_CACHE_SIZE = "ipc.server.tls.session-cache.size";
+  public static final int IPC_SERVER_TLS_SESSION_CACHE_SIZE_DEFAULT = 20000;
+  public static final String IPC_SERVER_TLS_SESSION_CACHE_TIMEOUT_SECONDS =
+      "ipc.server.tls.session-cache.timeout-seconds";
+  public static final int IPC_SERVER_TLS_SESSION_CACHE_TIMEOUT_SECONDS_DEFAULT = 3600;
+
+  /**
+   * Bounds of the cache of the TLS sessions a client resumes when it
+   * reconnects, a size of 0 disables resumption
+   */
+  public static final String IPC_CLIENT_TLS_SESSION_CACHE_SIZE = "ipc.client.tls.session-cache.size";
+  public static final int IPC_CLIENT_TLS_SESSION_CACHE_SIZE_DEFAULT = 1000;
+  public static final String IPC_CLIENT_TLS_SESSION_CACHE_TIMEOUT_SECONDS =
+      "ipc.client.tls.session-cache.timeout-seconds";
+  public static final int IPC_CLIENT_TLS_SESSION_CACHE_TIMEOUT_SECONDS_DEFAULT = 3600;
   
   /**
    * @see
@@ -478,6 +514,14 @@ public class CommonConfigurationKeysPublic {
   public static final String HOPS_TLS_SUPER_MATERIAL_DIRECTORY = HOPS_TLS_PREFIX + "superuser-material-directory";
 
   public static final String HOPS_RPC_AUTH_MODE = HOPS_TLS_PREFIX + "rpc-acl-auth-mode";
+
+  /**
+   * Bounds of the cache of the client certificates that were authenticated
+   */
+  public static final String HOPS_RPC_AUTH_CACHE_SIZE = HOPS_TLS_PREFIX + "rpc-auth-cache.size";
+  public static final long HOPS_RPC_AUTH_CACHE_SIZE_DEFAULT = 10000;
+  public static final String HOPS_RPC_AUTH_CACHE_TTL_SECONDS = HOPS_TLS_PREFIX + "rpc-auth-cache.ttl-seconds";
+  public static final long HOPS_RPC_AUTH_CACHE_TTL_SECONDS_DEFAULT = 600;
   
   /**
    * Certificate Revocation List fetcher class
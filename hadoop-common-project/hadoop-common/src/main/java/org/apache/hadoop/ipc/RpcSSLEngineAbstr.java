@@ -41,6 +41,7 @@ public abstract class RpcSSLEngineAbstr implements RpcSSLEngine {
     private final long handshakeTimeoutMS;
     protected final static int KB = 1024;
     private final ExecutorService exec = Executors.newSingleThreadExecutor();
+    protected final SSLBufferPool bufferPool;
 
     /**
      *
@@ -63,26 +64,24 @@ public abstract class RpcSSLEngineAbstr implements RpcSSLEngine {
      *
      *          serverNet   clientNet
      *          Buffer      Buffer
+     *
+     * The buffers are borrowed from the buffer pool only for the duration of
+     * a wrap, an unwrap or a handshake, so idle connections do not hold any.
+     * The clientNetBuffer is kept between reads while it holds the beginning
+     * of a TLS record.
      */
-    protected ByteBuffer serverAppBuffer;
-    protected ByteBuffer clientAppBuffer;
-    protected ByteBuffer serverNetBuffer;
+    private ByteBuffer clientAppBuffer;
+    private ByteBuffer serverNetBuffer;
     protected ByteBuffer clientNetBuffer;
 
-    public RpcSSLEngineAbstr(SocketChannel socketChannel, SSLEngine sslEngine, Configuration conf) {
+    public RpcSSLEngineAbstr(SocketChannel socketChannel, SSLEngine sslEngine, SSLBufferPool bufferPool,
+        Configuration conf) {
         this.socketChannel = socketChannel;
         this.sslEngine = sslEngine;
+        this.bufferPool = bufferPool;
         this.conf = conf;
         handshakeTimeoutMS = conf.getLong(CommonConfigurationKeys.IPC_SERVER_TLS_HANDSHAKE_TIMEOUT_MS,
             CommonConfigurationKeys.IPC_SERVER_TLS_HANDSHAKE_TIMEOUT_MS_DEFAULT);
-        //serverAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        serverAppBuffer = ByteBuffer.allocate(100 * KB);
-        //clientAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        clientAppBuffer = ByteBuffer.allocate(100 * KB);
-        //serverNetBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        serverNetBuffer = ByteBuffer.allocate(100 * KB);
-        //clientNetBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        clientNetBuffer = ByteBuffer.allocate(100 * KB);
     }
     
     @Override
@@ -107,16 +106,34 @@ private String getRemoteHost() {
     }
     
     @Override
-    public boolean doHandshake() throws IOException {
+    public synchronized boolean doHandshake() throws IOException {
+        clientAppBuffer = bufferPool.borrow(sslEngine.getSession().getApplicationBufferSize());
+        serverNetBuffer = bufferPool.borrow(sslEngine.getSession().getPacketBufferSize());
+        if (clientNetBuffer == null) {
+            clientNetBuffer = bufferPool.borrow(sslEngine.getSession().getPacketBufferSize());
+        } else {
+            clientNetBuffer.clear();
+        }
+        try {
+            return handshake();
+        } finally {
+            // The handshake may have replaced the buffers with larger ones
+            bufferPool.release(clientAppBuffer);
+            bufferPool.release(serverNetBuffer);
+            clientAppBuffer = null;
+            serverNetBuffer = null;
+            releaseClientNetBufferIfEmpty();
+        }
+    }
+
+    private boolean handshake() throws IOException {
         LOG.debug("Starting TLS handshake with peer " + getRemoteHost());
 
         SSLEngineResult result;
         SSLEngineResult.HandshakeStatus handshakeStatus;
 
-        ByteBuffer serverAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        ByteBuffer clientAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        serverNetBuffer.clear();
-        clientNetBuffer.clear();
+        // Handshake messages carry no application data
+        ByteBuffer serverAppBuffer = ByteBuffer.allocate(0);
 
         TimeWatch timer = TimeWatch.start();
         
@@ -244,8 +261,13 @@ public boolean doHandshake() throws IOException {
     }
 
     @Override
-    public void close() throws IOException {
-        doHandshake();
+    public synchronized void close() throws IOException {
+        try {
+            doHandshake();
+        } finally {
+            bufferPool.release(clientNetBuffer);
+            clientNetBuffer = null;
+        }
         if (exec != null) {
             try {
                 exec.shutdown();
@@ -279,18 +301,29 @@ protected ByteBuffer handleBufferUnderflow(ByteBuffer buffer) {
         if (sslEngine.getSession().getPacketBufferSize() < buffer.limit()) {
             return buffer;
         } else {
-            ByteBuffer newBuffer = enlargePacketBuffer(buffer);
-            buffer.flip();
-            newBuffer.put(buffer);
-            return newBuffer;
+            return bufferPool.enlarge(buffer, sslEngine.getSession().getPacketBufferSize());
+        }
+    }
+
+    /**
+     * Give the clientNetBuffer back to the pool unless it holds part of a TLS record
+     */
+    protected void releaseClientNetBufferIfEmpty() {
+        if (clientNetBuffer != null && clientNetBuffer.position() == 0) {
+            bufferPool.release(clientNetBuffer);
+            clientNetBuffer = null;
         }
     }
 
+    /**
+     * Replace a borrowed buffer with an empty larger one
+     */
     private ByteBuffer enlargeBuffer(ByteBuffer buffer, int sessionProposedCapacity) {
+        bufferPool.release(buffer);
         if (sessionProposedCapacity > buffer.capacity()) {
-            return ByteBuffer.allocate(sessionProposedCapacity);
+            return bufferPool.borrow(sessionProposedCapacity);
         } else {
-            return ByteBuffer.allocate(buffer.capacity() * 2);
+            return bufferPool.borrow(buffer.capacity() * 2);
         }
     }
 }
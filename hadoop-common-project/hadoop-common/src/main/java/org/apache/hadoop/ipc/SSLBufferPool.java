@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers shared by the TLS engines of the connections of a server.
+ * <p>
+ * Buffers are handed out in power of two size classes from 16 KB to 8 MB. A
+ * connection borrows the buffers it needs only while it wraps, unwraps or
+ * handshakes and gives them back afterwards, so idle connections do not hold
+ * any. Up to the configured number of bytes of returned buffers are kept for
+ * reuse, the others are left to the garbage collector.
+ */
+@InterfaceAudience.Private
+public class SSLBufferPool {
+
+  private static final int MIN_SIZE_SHIFT = 14;
+  private static final int MAX_SIZE_SHIFT = 23;
+
+  private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+  private final long maxFreeBytes;
+
+  private final AtomicInteger freeBuffers = new AtomicInteger();
+  private final AtomicLong freeBytes = new AtomicLong();
+  private final AtomicInteger borrowedBuffers = new AtomicInteger();
+  private final AtomicLong borrowedBytes = new AtomicLong();
+  private final AtomicLong allocations = new AtomicLong();
+
+  @SuppressWarnings("unchecked")
+  public SSLBufferPool(long maxFreeBytes) {
+    this.maxFreeBytes = maxFreeBytes;
+    free = new ConcurrentLinkedQueue[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+    for (int i = 0; i < free.length; i++) {
+      free[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  /**
+   * @return a cleared direct buffer of at least the given size
+   */
+  public ByteBuffer borrow(int size) {
+    int sizeClass = sizeClass(size);
+    ByteBuffer buffer = null;
+    if (sizeClass >= 0) {
+      buffer = free[sizeClass].poll();
+    }
+    if (buffer != null) {
+      freeBuffers.decrementAndGet();
+      freeBytes.addAndGet(-buffer.capacity());
+      buffer.clear();
+    } else {
+      buffer = ByteBuffer.allocateDirect(
+          sizeClass >= 0 ? 1 << (sizeClass + MIN_SIZE_SHIFT) : size);
+      allocations.incrementAndGet();
+    }
+    borrowedBuffers.incrementAndGet();
+    borrowedBytes.addAndGet(buffer.capacity());
+    return buffer;
+  }
+
+  /**
+   * Give back a buffer obtained from {@link #borrow(int)}. The buffer must
+   * not be used by the caller anymore.
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer == null) {
+      return;
+    }
+    borrowedBuffers.decrementAndGet();
+    borrowedBytes.addAndGet(-buffer.capacity());
+    int sizeClass = sizeClass(buffer.capacity());
+    if (sizeClass < 0
+        || buffer.capacity() != 1 << (sizeClass + MIN_SIZE_SHIFT)) {
+      return;
+    }
+    if (freeBytes.addAndGet(buffer.capacity()) > maxFreeBytes) {
+      freeBytes.addAndGet(-buffer.capacity());
+      return;
+    }
+    buffer.clear();
+    free[sizeClass].offer(buffer);
+    freeBuffers.incrementAndGet();
+  }
+
+  /**
+   * Replace a borrowed buffer with a larger one holding the same data.
+   *
+   * @param buffer the buffer to replace, in write mode
+   * @param size the minimum size of the new buffer
+   * @return the new buffer, in write mode
+   */
+  public ByteBuffer enlarge(ByteBuffer buffer, int size) {
+    ByteBuffer newBuffer = borrow(Math.max(size, buffer.capacity() * 2));
+    buffer.flip();
+    newBuffer.put(buffer);
+    release(buffer);
+    return newBuffer;
+  }
+
+  private static int sizeClass(int size) {
+    if (size <= 1 << MIN_SIZE_SHIFT) {
+      return 0;
+    }
+    int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+    return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+  }
+
+  public int getBorrowedBuffers() {
+    return borrowedBuffers.get();
+  }
+
+  public long getBorrowedBytes() {
+    return borrowedBytes.get();
+  }
+
+  public int getFreeBuffers() {
+    return freeBuffers.get();
+  }
+
+  public long getFreeBytes() {
+    return freeBytes.get();
+  }
+
+  public long getAllocations() {
+    return allocations.get();
+  }
+}
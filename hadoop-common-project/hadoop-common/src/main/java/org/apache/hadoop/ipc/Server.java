@@ -20,6 +20,7 @@
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
@@ -98,7 +99,10 @@
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -436,6 +440,8 @@ protected ResponseBuffer initialValue() {
   private final CRLValidator crlValidator;
   private final HopsX509Authenticator hopsX509Authenticator;
   private SSLFactory sslFactory = null;
+  private SSLBufferPool sslBufferPool = null;
+  private ExecutorService tlsHandshakeExecutor = null;
 
   private boolean logSlowRPC = false;
 
@@ -1051,6 +1057,9 @@ public Listener() throws IOException {
     
     private class Reader extends Thread {
       final private BlockingQueue<Connection> pendingConnections;
+      // connections whose TLS handshake was run on the handshake executor
+      final private BlockingQueue<Connection> handshakenConnections =
+          new LinkedBlockingQueue<Connection>();
       private final Selector readSelector;
 
       Reader(String name) throws IOException {
@@ -1086,6 +1095,10 @@ private synchronized void doRunLoop() {
               Connection conn = pendingConnections.take();
               conn.channel.register(readSelector, SelectionKey.OP_READ, conn);
             }
+            Connection handshaken;
+            while ((handshaken = handshakenConnections.poll()) != null) {
+              resumeConnection(handshaken);
+            }
             readSelector.select();
 
             Iterator<SelectionKey> iter = readSelector.selectedKeys().iterator();
@@ -1095,6 +1108,12 @@ private synchronized void doRunLoop() {
               try {
                 if (key.isReadable()) {
                   Connection connection = (Connection) key.attachment();
+                  if (tlsHandshakeExecutor != null && connection != null
+                      && !connection.tlsHandshakeDone) {
+                    offloadHandshake(key, connection);
+                    key = null;
+                    continue;
+                  }
                   try {
                     doHandshake(connection);
                     doCRLValidation(connection);
@@ -1129,6 +1148,54 @@ private synchronized void doRunLoop() {
         }
       }
 
+      /**
+       * Run the TLS handshake of a new connection on the handshake executor so
+       * that this reader keeps serving the established connections meanwhile.
+       * The connection is not selected until it is handed back.
+       */
+      private void offloadHandshake(SelectionKey key,
+          final Connection connection) {
+        key.interestOps(0);
+        try {
+          tlsHandshakeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                doHandshake(connection);
+                doCRLValidation(connection);
+              } catch (IOException ex) {
+                LOG.warn(ex.getLocalizedMessage(), ex);
+                closeConnection(connection);
+                return;
+              }
+              handshakenConnections.add(connection);
+              readSelector.wakeup();
+            }
+          });
+        } catch (RejectedExecutionException ex) {
+          // the server is stopping
+          closeConnection(connection);
+        }
+      }
+
+      private void resumeConnection(Connection connection)
+          throws InterruptedException {
+        SelectionKey key = connection.channel.keyFor(readSelector);
+        if (key == null || !key.isValid()) {
+          // closed while handshaking
+          return;
+        }
+        try {
+          key.interestOps(SelectionKey.OP_READ);
+          // the first request may have come along with the end of the
+          // handshake, read it as the reader does after an inline handshake
+          doRead(key);
+        } catch (CancelledKeyException cke) {
+          LOG.info(Thread.currentThread().getName() +
+              ": connection aborted from " + connection);
+        }
+      }
+
       /**
        * Updating the readSelector while it's being used is not thread-safe,
        * so the connection must be queued.  The reader will drain the queue
@@ -3058,6 +3125,21 @@ protected Server(String bindAddress, int port,
       } catch (GeneralSecurityException ex) {
         throw new IOException(ex);
       }
+      this.sslFactory.setSessionCacheBounds(
+          conf.getInt(CommonConfigurationKeysPublic.IPC_SERVER_TLS_SESSION_CACHE_SIZE,
+              CommonConfigurationKeysPublic.IPC_SERVER_TLS_SESSION_CACHE_SIZE_DEFAULT),
+          conf.getInt(CommonConfigurationKeysPublic.IPC_SERVER_TLS_SESSION_CACHE_TIMEOUT_SECONDS,
+              CommonConfigurationKeysPublic.IPC_SERVER_TLS_SESSION_CACHE_TIMEOUT_SECONDS_DEFAULT));
+      this.sslBufferPool = new SSLBufferPool(conf.getLong(
+          CommonConfigurationKeysPublic.IPC_SERVER_TLS_BUFFER_POOL_MAX_FREE_BYTES,
+          CommonConfigurationKeysPublic.IPC_SERVER_TLS_BUFFER_POOL_MAX_FREE_BYTES_DEFAULT));
+      int handshakeThreads = conf.getInt(CommonConfigurationKeysPublic.IPC_SERVER_TLS_HANDSHAKE_THREADS,
+          CommonConfigurationKeysPublic.IPC_SERVER_TLS_HANDSHAKE_THREADS_DEFAULT);
+      if (handshakeThreads > 0) {
+        this.tlsHandshakeExecutor = Executors.newFixedThreadPool(handshakeThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("IPC Server TLS handshake #%d for port " + port).build());
+      }
       
       if (conf.getBoolean(CommonConfigurationKeysPublic.HOPS_CRL_VALIDATION_ENABLED_KEY,
           CommonConfigurationKeysPublic.HOPS_CRL_VALIDATION_ENABLED_DEFAULT)) {
@@ -3344,6 +3426,9 @@ public synchronized void stop() {
     notifyAll();
     this.rpcMetrics.shutdown();
     this.rpcDetailedMetrics.shutdown();
+    if (tlsHandshakeExecutor != null) {
+      tlsHandshakeExecutor.shutdownNow();
+    }
     if (sslFactory != null) {
       sslFactory.destroy();
     }
@@ -3424,6 +3509,14 @@ public int getNumOpenConnections() {
     return connectionManager.size();
   }
 
+  /**
+   * The pool of the buffers used by the TLS engines of the connections
+   * @return the buffer pool or null if TLS is not enabled
+   */
+  public SSLBufferPool getSSLBufferPool() {
+    return sslBufferPool;
+  }
+
   /**
    * Get the NumOpenConnections/User.
    */
@@ -3526,10 +3619,11 @@ private int channelRead(ReadableByteChannel channel,
     int count = 0;
     if (isHopsTLSEnabled && sslUnwrappedBuffer != null) {
     
-      while (buffer.hasRemaining() && sslUnwrappedBuffer.hasRemaining()) {
-        buffer.put(sslUnwrappedBuffer.get());
-        count++;
-      }
+      count = Math.min(buffer.remaining(), sslUnwrappedBuffer.remaining());
+      ByteBuffer unwrapped = sslUnwrappedBuffer.duplicate();
+      unwrapped.limit(unwrapped.position() + count);
+      buffer.put(unwrapped);
+      sslUnwrappedBuffer.position(unwrapped.position());
 
       if (count > -1) {
         count++;
@@ -3695,7 +3789,7 @@ Connection register(SocketChannel channel, SSLEngine sslEngine) {
       Connection connection;
       if (sslEngine != null) {
         connection = new Connection(channel, Time.now(), new ServerRpcSSLEngineImpl(channel, sslEngine,
-            maxDataLength, conf));
+            sslBufferPool, maxDataLength, conf));
       } else {
         connection = new Connection(channel, Time.now());
       }
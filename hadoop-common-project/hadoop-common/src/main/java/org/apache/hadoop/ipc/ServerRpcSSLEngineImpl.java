@@ -33,114 +33,119 @@
 
 public class ServerRpcSSLEngineImpl extends RpcSSLEngineAbstr {
     private final Log LOG = LogFactory.getLog(ServerRpcSSLEngineImpl.class);
-    private final int KB = 1024;
-    private final int MB = 1024 * KB;
-    
-    private final int MAX_BUFFER_SIZE = 5 * MB;
     private final int maxUnWrappedDataLength;
     
-    public ServerRpcSSLEngineImpl(SocketChannel socketChannel, SSLEngine sslEngine, int maxUnwrappedDataLength,
-        Configuration conf) {
-        super(socketChannel, sslEngine, conf);
+    public ServerRpcSSLEngineImpl(SocketChannel socketChannel, SSLEngine sslEngine, SSLBufferPool bufferPool,
+        int maxUnwrappedDataLength, Configuration conf) {
+        super(socketChannel, sslEngine, bufferPool, conf);
         this.maxUnWrappedDataLength = maxUnwrappedDataLength;
     }
 
     @Override
     public int write(WritableByteChannel channel, ByteBuffer buffer)
             throws IOException {
-        serverAppBuffer.clear();
-        if (serverAppBuffer.capacity() < buffer.capacity()) {
-            LOG.debug("ServerAppBuffer capacity: " + serverAppBuffer.capacity()
-                + " Buffer size: " + buffer.capacity());
-            serverAppBuffer = ByteBuffer.allocate(Math.min(buffer.capacity(),
-                MAX_BUFFER_SIZE));
-        }
-        serverAppBuffer.put(buffer);
-        serverAppBuffer.flip();
-
-        int bytesWritten = 0;
-        while (serverAppBuffer.hasRemaining()) {
-            serverNetBuffer.clear();
-            SSLEngineResult result = sslEngine.wrap(serverAppBuffer, serverNetBuffer);
-            switch (result.getStatus()) {
-                case OK:
-                    serverNetBuffer.flip();
-                    while (serverNetBuffer.hasRemaining()) {
-                        bytesWritten += channel.write(serverNetBuffer);
-                    }
-                    //return bytesWritten;
-                    break;
-                case BUFFER_OVERFLOW:
-                    serverNetBuffer = enlargePacketBuffer(serverNetBuffer);
-                    break;
-                case BUFFER_UNDERFLOW:
-                    throw new SSLException("Buffer underflow should not happen after wrap");
-                case CLOSED:
-                    sslEngine.closeOutbound();
-                    doHandshake();
-                    return -1;
-                default:
-                    throw new IllegalStateException("Invalid SSL state: " + result.getStatus());
+        // The records are wrapped straight from the response and written as
+        // soon as they are produced, so one packet buffer is enough
+        ByteBuffer serverNetBuffer = bufferPool.borrow(sslEngine.getSession().getPacketBufferSize());
+        try {
+            int bytesWritten = 0;
+            while (buffer.hasRemaining()) {
+                serverNetBuffer.clear();
+                SSLEngineResult result = sslEngine.wrap(buffer, serverNetBuffer);
+                switch (result.getStatus()) {
+                    case OK:
+                        serverNetBuffer.flip();
+                        while (serverNetBuffer.hasRemaining()) {
+                            bytesWritten += channel.write(serverNetBuffer);
+                        }
+                        break;
+                    case BUFFER_OVERFLOW:
+                        serverNetBuffer = enlargePacketBuffer(serverNetBuffer);
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        throw new SSLException("Buffer underflow should not happen after wrap");
+                    case CLOSED:
+                        sslEngine.closeOutbound();
+                        doHandshake();
+                        return -1;
+                    default:
+                        throw new IllegalStateException("Invalid SSL state: " + result.getStatus());
+                }
             }
+            return bytesWritten;
+        } finally {
+            bufferPool.release(serverNetBuffer);
         }
-        return bytesWritten;
     }
     
     @Override
-    public int read(ReadableByteChannel channel, ByteBuffer buffer, Server.Connection connection)
+    public synchronized int read(ReadableByteChannel channel, ByteBuffer buffer, Server.Connection connection)
         throws IOException {
-        int netRead = channel.read(clientNetBuffer);
-        if (netRead == -1) {
-            return -1;
+        if (clientNetBuffer == null) {
+            clientNetBuffer = bufferPool.borrow(sslEngine.getSession().getPacketBufferSize());
         }
-        
-        int read = 0;
-        SSLEngineResult unwrapResult;
-        do {
-            clientNetBuffer.flip();
-            unwrapResult = sslEngine.unwrap(clientNetBuffer, clientAppBuffer);
-            clientNetBuffer.compact();
+        ByteBuffer clientAppBuffer = null;
+        try {
+            int netRead = channel.read(clientNetBuffer);
+            if (netRead == -1) {
+                return -1;
+            }
             
-            if (unwrapResult.getStatus().equals(SSLEngineResult.Status.OK)) {
-                read += unwrapResult.bytesProduced();
-                clientAppBuffer.flip();
+            int read = 0;
+            SSLEngineResult unwrapResult;
+            do {
+                // Unwrap straight into the call buffer when a whole record fits in it,
+                // otherwise go through a pooled buffer
+                ByteBuffer target;
+                if (clientAppBuffer == null
+                    && buffer.remaining() >= sslEngine.getSession().getApplicationBufferSize()) {
+                    target = buffer;
+                } else {
+                    if (clientAppBuffer == null) {
+                        clientAppBuffer = bufferPool.borrow(sslEngine.getSession().getApplicationBufferSize());
+                    }
+                    target = clientAppBuffer;
+                }
+                clientNetBuffer.flip();
+                unwrapResult = sslEngine.unwrap(clientNetBuffer, target);
+                clientNetBuffer.compact();
                 
-                while (clientAppBuffer.hasRemaining()) {
-                    byte currentByte = clientAppBuffer.get();
-                    try {
-                        buffer.put(currentByte);
-                    } catch (BufferOverflowException ex) {
-                        if (buffer.capacity() < maxUnWrappedDataLength) {
-                            buffer = enlargeUnwrappedBuffer(buffer, currentByte);
-                            connection.setSslUnwrappedBuffer(buffer);
-                        } else {
-                            LOG.error("Buffer overflow clientAppBuffer position: " + clientAppBuffer.position() +
-                                " but buffer capacity " + buffer.capacity(), ex);
-                            throw ex;
-                        }
+                if (unwrapResult.getStatus().equals(SSLEngineResult.Status.OK)) {
+                    read += unwrapResult.bytesProduced();
+                    if (target == clientAppBuffer) {
+                        clientAppBuffer.flip();
+                        buffer = putUnwrapped(clientAppBuffer, buffer, connection);
+                        clientAppBuffer.clear();
+                    }
+                } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
+                    .BUFFER_UNDERFLOW)) {
+                    read += unwrapResult.bytesProduced();
+                    clientNetBuffer = handleBufferUnderflow(clientNetBuffer);
+                    break;
+                } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
+                    .BUFFER_OVERFLOW)) {
+                    if (clientAppBuffer == null) {
+                        clientAppBuffer = bufferPool.borrow(sslEngine.getSession().getApplicationBufferSize());
+                    } else {
+                        clientAppBuffer = enlargeApplicationBuffer(clientAppBuffer);
                     }
+                } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
+                    .CLOSED)) {
+                    sslEngine.closeOutbound();
+                    doHandshake();
+                    read = -1;
+                    break;
+                } else {
+                    throw new IOException("SSLEngine UNWRAP invalid status: " +
+                        unwrapResult.getStatus());
                 }
-                clientAppBuffer.compact();
-            } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
-                .BUFFER_UNDERFLOW)) {
-                read += unwrapResult.bytesProduced();
-                break;
-            } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
-                .BUFFER_OVERFLOW)) {
-                clientAppBuffer = enlargeApplicationBuffer(clientAppBuffer);
-            } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
-                .CLOSED)) {
-                sslEngine.closeOutbound();
-                doHandshake();
-                read = -1;
-                break;
-            } else {
-                throw new IOException("SSLEngine UNWRAP invalid status: " +
-                    unwrapResult.getStatus());
-            }
-        } while (clientNetBuffer.position() != 0);
-        
-        return read;
+            } while (clientNetBuffer.position() != 0);
+            
+            return read;
+        } finally {
+            bufferPool.release(clientAppBuffer);
+            releaseClientNetBufferIfEmpty();
+        }
     }
     
     public X509Certificate getClientCertificate() throws SSLPeerUnverifiedException {
@@ -149,12 +154,28 @@ public X509Certificate getClientCertificate() throws SSLPeerUnverifiedException
         return (X509Certificate) sslEngine.getSession().getPeerCertificates()[0];
     }
     
-    private ByteBuffer enlargeUnwrappedBuffer(ByteBuffer buffer, byte missedByte) {
-        buffer.flip();
-        ByteBuffer newBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxUnWrappedDataLength));
-        newBuffer.put(buffer);
-        newBuffer.put(missedByte);
-        buffer = null;
-        return newBuffer;
+    /**
+     * Copy the data unwrapped in a pooled buffer to the call buffer of the
+     * connection, enlarging it up to the maximum data length if needed
+     */
+    private ByteBuffer putUnwrapped(ByteBuffer unwrapped, ByteBuffer buffer, Server.Connection connection) {
+        if (unwrapped.remaining() > buffer.remaining()) {
+            int capacity = buffer.capacity();
+            while (capacity - buffer.position() < unwrapped.remaining() && capacity < maxUnWrappedDataLength) {
+                capacity = Math.min(capacity * 2, maxUnWrappedDataLength);
+            }
+            if (capacity - buffer.position() < unwrapped.remaining()) {
+                LOG.error("Buffer overflow unwrapped data: " + unwrapped.remaining() +
+                    " but buffer capacity " + buffer.capacity());
+                throw new BufferOverflowException();
+            }
+            buffer.flip();
+            ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+            connection.setSslUnwrappedBuffer(buffer);
+        }
+        buffer.put(unwrapped);
+        return buffer;
     }
 }
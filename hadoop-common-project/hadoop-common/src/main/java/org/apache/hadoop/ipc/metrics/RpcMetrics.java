@@ -19,6 +19,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.SSLBufferPool;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
@@ -129,6 +130,37 @@ public String numOpenConnectionsPerUser() {
     return server.getNumDroppedConnections();
   }
 
+  @Metric("Number of TLS buffers used by connections")
+  public int tlsBuffersInUse() {
+    SSLBufferPool pool = server.getSSLBufferPool();
+    return pool == null ? 0 : pool.getBorrowedBuffers();
+  }
+
+  @Metric("Bytes of TLS buffers used by connections")
+  public long tlsBufferBytesInUse() {
+    SSLBufferPool pool = server.getSSLBufferPool();
+    return pool == null ? 0 : pool.getBorrowedBytes();
+  }
+
+  @Metric("Number of free TLS buffers in the pool")
+  public int tlsBuffersFree() {
+    SSLBufferPool pool = server.getSSLBufferPool();
+    return pool == null ? 0 : pool.getFreeBuffers();
+  }
+
+  @Metric("Bytes of free TLS buffers in the pool")
+  public long tlsBufferBytesFree() {
+    SSLBufferPool pool = server.getSSLBufferPool();
+    return pool == null ? 0 : pool.getFreeBytes();
+  }
+
+  @Metric(value = "Number of TLS buffers allocated by the pool",
+      type = Metric.Type.COUNTER)
+  public long tlsBufferAllocations() {
+    SSLBufferPool pool = server.getSSLBufferPool();
+    return pool == null ? 0 : pool.getAllocations();
+  }
+
   // Public instrumentation methods that could be extracted to an
   // abstract class if we decide to do custom instrumentation classes a la
   // JobTrackerInstrumentation. The methods with //@Override comment are
@@ -15,6 +15,10 @@
  */
 package org.apache.hadoop.net;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
@@ -50,6 +54,8 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class HopsSSLSocketFactory extends SocketFactory implements Configurable {
@@ -88,6 +94,20 @@ public class HopsSSLSocketFactory extends SocketFactory implements Configurable
   private final static HopsSSLCheck SUPER_USER = new SuperUserHopsSSLCheck();
   private final static Set<HopsSSLCheck> HOPS_SSL_CHECKS = new TreeSet<>();
   
+  // SSLContexts shared by the sockets using the same cryptographic material so that their TLS sessions
+  // can be resumed when they reconnect. Evicted contexts stop reloading their material, the sockets
+  // that still use them keep working with the material loaded last
+  private final static Cache<String, SSLContextMaterial> SHARED_SSL_CONTEXTS = CacheBuilder.newBuilder()
+      .maximumSize(100)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .removalListener(new RemovalListener<String, SSLContextMaterial>() {
+        @Override
+        public void onRemoval(RemovalNotification<String, SSLContextMaterial> notification) {
+          notification.getValue().stopReloading();
+        }
+      })
+      .build();
+  
   private HopsSSLCryptoMaterial configuredCryptoMaterial = null;
   private ReloadingX509KeyManager reloadingKeyManager = null;
   private ReloadingX509TrustManager reloadingTrustManager = null;
@@ -286,13 +306,47 @@ public HopsSSLSocketWrapper createHopsSSLSocket() throws IOException, UnknownHos
     if (conf.getBoolean(FORCE_CONFIGURE, false)) {
       setConf(conf);
     }
-    SSLContextMaterial sslContextMaterial = initializeSSLContext();
-    SSLSocketFactory socketFactory = sslContextMaterial.sslContext.getSocketFactory();
-    Socket s = socketFactory.createSocket();
-    return new HopsSSLSocketWrapper(s, sslContextMaterial.keyManagers, sslContextMaterial.trustManagers);
+    int sessionCacheSize = conf.getInt(CommonConfigurationKeys.IPC_CLIENT_TLS_SESSION_CACHE_SIZE,
+        CommonConfigurationKeys.IPC_CLIENT_TLS_SESSION_CACHE_SIZE_DEFAULT);
+    if (sessionCacheSize <= 0) {
+      SSLContextMaterial sslContextMaterial = initializeSSLContext();
+      SSLSocketFactory socketFactory = sslContextMaterial.sslContext.getSocketFactory();
+      Socket s = socketFactory.createSocket();
+      return new HopsSSLSocketWrapper(s, sslContextMaterial.keyManagers, sslContextMaterial.trustManagers);
+    }
+    
+    // The key and trust managers of a shared context must not be closed with the connection
+    SSLContextMaterial sslContextMaterial = getSharedSSLContext(sessionCacheSize);
+    Socket s = sslContextMaterial.sslContext.getSocketFactory().createSocket();
+    return new HopsSSLSocketWrapper(s, null, null);
+  }
+  
+  private SSLContextMaterial getSharedSSLContext(final int sessionCacheSize) throws IOException {
+    String enabledProtocol = conf.get(HopsSSLSocketFactory.CryptoKeys.SOCKET_ENABLED_PROTOCOL.getValue(),
+        HopsSSLSocketFactory.CryptoKeys.SOCKET_ENABLED_PROTOCOL.getDefaultValue());
+    String key = enabledProtocol + ":" + configuredCryptoMaterial.getKeyStoreLocation() + ":"
+        + configuredCryptoMaterial.getTrustStoreLocation();
+    try {
+      return SHARED_SSL_CONTEXTS.get(key, new Callable<SSLContextMaterial>() {
+        @Override
+        public SSLContextMaterial call() throws IOException {
+          SSLContextMaterial sslContextMaterial = initializeSSLContext();
+          sslContextMaterial.sslContext.getClientSessionContext().setSessionCacheSize(sessionCacheSize);
+          sslContextMaterial.sslContext.getClientSessionContext().setSessionTimeout(conf.getInt(
+              CommonConfigurationKeys.IPC_CLIENT_TLS_SESSION_CACHE_TIMEOUT_SECONDS,
+              CommonConfigurationKeys.IPC_CLIENT_TLS_SESSION_CACHE_TIMEOUT_SECONDS_DEFAULT));
+          return sslContextMaterial;
+        }
+      });
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException("Error initializing SSLContext", ex.getCause());
+    }
   }
 
-  private class SSLContextMaterial {
+  private static class SSLContextMaterial {
     private final KeyManager[] keyManagers;
     private final TrustManager[] trustManagers;
     private final SSLContext sslContext;
@@ -302,6 +356,19 @@ private SSLContextMaterial(KeyManager[] keyManagers, TrustManager[] trustManager
       this.trustManagers = trustManagers;
       this.sslContext = sslContext;
     }
+    
+    private void stopReloading() {
+      for (KeyManager km : keyManagers) {
+        if (km instanceof ReloadingX509KeyManager) {
+          ((ReloadingX509KeyManager) km).stop();
+        }
+      }
+      for (TrustManager tm : trustManagers) {
+        if (tm instanceof ReloadingX509TrustManager) {
+          ((ReloadingX509TrustManager) tm).destroy();
+        }
+      }
+    }
   }
 
   private SSLContextMaterial initializeSSLContext() throws IOException {
@@ -33,6 +33,7 @@
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -218,6 +219,19 @@ public static HostnameVerifier getHostnameVerifier(String verifier)
     return hostnameVerifier;
   }
 
+  /**
+   * Bounds the cache of the TLS sessions peers can resume.
+   *
+   * @param size maximum number of sessions, 0 for no limit
+   * @param timeoutSeconds lifetime of the sessions, 0 for no limit
+   */
+  public void setSessionCacheBounds(int size, int timeoutSeconds) {
+    SSLSessionContext sessionContext = mode == Mode.CLIENT ?
+        context.getClientSessionContext() : context.getServerSessionContext();
+    sessionContext.setSessionCacheSize(size);
+    sessionContext.setSessionTimeout(timeoutSeconds);
+  }
+
   /**
    * Releases any resources being used.
    */
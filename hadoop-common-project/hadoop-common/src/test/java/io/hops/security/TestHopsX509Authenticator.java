@@ -132,6 +132,8 @@ public void TestFQDNCache() throws Exception {
     X509Certificate clientCertificate = generateX509Certificate("CN=" + remoteAddress.getCanonicalHostName()
       + ",L=alice");
     UserGroupInformation ugi = UserGroupInformation.createRemoteUser("alice");
+    // Authenticated certificates would not reach the FQDN cache
+    conf.setLong(CommonConfigurationKeys.HOPS_RPC_AUTH_CACHE_SIZE, 0);
     CustomHopsX509Authenticator authenticator = new CustomHopsX509Authenticator(conf);
     authenticator.authenticateConnection(ugi, clientCertificate, remoteAddress);
     // First time, it should not have been cached
@@ -141,6 +143,29 @@ public void TestFQDNCache() throws Exception {
     Assert.assertTrue(authenticator.iscached);
   }
 
+  @Test
+  public void TestAuthenticatedCertificateCache() throws Exception {
+    InetAddress remoteAddress = InetAddress.getLocalHost();
+    String o = "application_id";
+    X509Certificate clientCertificate = generateX509Certificate("CN=" + remoteAddress.getCanonicalHostName()
+        + ", O=" + o + ", L=alice");
+    CustomHopsX509Authenticator authenticator = new CustomHopsX509Authenticator(conf);
+    authenticator.authenticateConnection(UserGroupInformation.createRemoteUser("alice"), clientCertificate,
+        remoteAddress);
+    Assert.assertEquals(1, authenticator.fqdnLookups);
+    
+    // The same certificate is not checked again and still sets the application id
+    UserGroupInformation ugi = UserGroupInformation.createRemoteUser("alice");
+    authenticator.authenticateConnection(ugi, clientCertificate, remoteAddress);
+    Assert.assertEquals(1, authenticator.fqdnLookups);
+    Assert.assertEquals(o, ugi.getApplicationId());
+    
+    // Another user presenting the certificate is checked
+    expectedException.expect(HopsX509AuthenticationException.class);
+    authenticator.authenticateConnection(UserGroupInformation.createRemoteUser("chuck"), clientCertificate,
+        remoteAddress);
+  }
+  
   @Test
   public void TestMultipleResolvedAddresses() throws UnknownHostException, HopsX509AuthenticationException {
     HopsX509Authenticator realAuth = new HopsX509Authenticator(conf);
@@ -203,6 +228,7 @@ private X509Certificate generateX509Certificate(String subjectDN) throws Excepti
   private class CustomHopsX509Authenticator extends HopsX509Authenticator {
   
     private boolean iscached = false;
+    private int fqdnLookups = 0;
     
     CustomHopsX509Authenticator(Configuration conf) {
       super(conf);
@@ -210,6 +236,7 @@ private class CustomHopsX509Authenticator extends HopsX509Authenticator {
     
     @Override
     protected Set<InetAddress> isTrustedFQDN(String fqdn) {
+      fqdnLookups++;
       Set<InetAddress> addresses = super.isTrustedFQDN(fqdn);
       iscached = addresses != null;
       return addresses;
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/** Unit tests for SSLBufferPool. */
+public class TestSSLBufferPool {
+
+  @Test
+  public void testSizeClasses() {
+    SSLBufferPool pool = new SSLBufferPool(Long.MAX_VALUE);
+    assertEquals(16 * 1024, pool.borrow(100).capacity());
+    assertEquals(16 * 1024, pool.borrow(16 * 1024).capacity());
+    // a TLS packet buffer is slightly larger than 16 KB
+    assertEquals(32 * 1024, pool.borrow(16709).capacity());
+    // buffers past the largest class are not rounded
+    assertEquals(9 * 1024 * 1024, pool.borrow(9 * 1024 * 1024).capacity());
+    assertEquals(4, pool.getBorrowedBuffers());
+  }
+
+  @Test
+  public void testReuse() {
+    SSLBufferPool pool = new SSLBufferPool(Long.MAX_VALUE);
+    ByteBuffer buffer = pool.borrow(20000);
+    assertTrue(buffer.isDirect());
+    buffer.put((byte) 1);
+    pool.release(buffer);
+    assertEquals(0, pool.getBorrowedBuffers());
+    assertEquals(1, pool.getFreeBuffers());
+    assertEquals(32 * 1024, pool.getFreeBytes());
+
+    ByteBuffer reused = pool.borrow(17000);
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(1, pool.getAllocations());
+    assertEquals(0, pool.getFreeBuffers());
+  }
+
+  @Test
+  public void testMaxFreeBytes() {
+    SSLBufferPool pool = new SSLBufferPool(16 * 1024);
+    ByteBuffer first = pool.borrow(1024);
+    ByteBuffer second = pool.borrow(1024);
+    pool.release(first);
+    pool.release(second);
+    assertEquals(1, pool.getFreeBuffers());
+    assertEquals(16 * 1024, pool.getFreeBytes());
+  }
+
+  @Test
+  public void testEnlarge() {
+    SSLBufferPool pool = new SSLBufferPool(Long.MAX_VALUE);
+    ByteBuffer buffer = pool.borrow(1024);
+    buffer.put(new byte[]{1, 2, 3});
+    ByteBuffer enlarged = pool.enlarge(buffer, 20000);
+    assertEquals(32 * 1024, enlarged.capacity());
+    assertEquals(3, enlarged.position());
+    assertEquals(3, enlarged.get(2));
+    assertEquals(1, pool.getBorrowedBuffers());
+    assertEquals(1, pool.getFreeBuffers());
+  }
+}
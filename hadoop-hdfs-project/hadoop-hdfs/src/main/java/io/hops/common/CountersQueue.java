@@ -15,28 +15,54 @@
  */
 package io.hops.common;
 
-import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Queue of ranges of ids. Ids are handed out without locking, concurrent
+ * callers compete with compare-and-set on the range at the head of the queue.
+ */
 public class CountersQueue {
 
   public static class Counter {
     private final long start;
     private final long end;
-    private long current;
+    private final AtomicLong current;
 
     public Counter(long start, long end) {
       this.start = start;
       this.end = end;
-      this.current = start;
+      this.current = new AtomicLong(start);
     }
 
+    /**
+     * @return the next id of the range, or a value not smaller than
+     * {@link #getEnd()} if the range is exhausted
+     */
     public long next() {
-      return current++;
+      return current.getAndIncrement();
+    }
+
+    /**
+     * Take up to max ids of the range.
+     * @return the range taken, or null if the range is exhausted
+     */
+    Counter take(int max) {
+      while (true) {
+        long first = current.get();
+        if (first >= end) {
+          return null;
+        }
+        long last = Math.min(end, first + max);
+        if (current.compareAndSet(first, last)) {
+          return new Counter(first, last);
+        }
+      }
     }
 
     public boolean hasNext() {
-      return current < end;
+      return current.get() < end;
     }
 
     public long getEnd() {
@@ -56,40 +82,62 @@ public String toString() {
   public class EmptyCountersQueueException extends RuntimeException {
   }
   
-  private int available;
-  private Queue<Counter> queue;
+  private final AtomicLong available;
+  private final Queue<Counter> queue;
 
   public CountersQueue() {
-    queue = new ArrayDeque<>();
-    available = 0;
+    queue = new ConcurrentLinkedQueue<>();
+    available = new AtomicLong();
   }
 
-  public synchronized void addCounter(long start, long end) {
+  public void addCounter(long start, long end) {
     addCounter(new Counter(start, end));
   }
 
-  public synchronized void addCounter(Counter counter) {
+  public void addCounter(Counter counter) {
     queue.offer(counter);
-    available += counter.end - counter.start;
+    available.addAndGet(counter.end - counter.start);
   }
   
   
-  public synchronized long next() {
+  public long next() {
     Counter c = queue.peek();
     while (c != null) {
-      if (c.hasNext()) {
-        available--;
-        return c.next();
-      } else {
-        queue.remove();
-        c = queue.peek();
+      long id = c.next();
+      if (id < c.end) {
+        available.decrementAndGet();
+        return id;
       }
+      queue.remove(c);
+      c = queue.peek();
     }
     throw new EmptyCountersQueueException();
   }
+
+  /**
+   * Take a range of up to max ids from the head of the queue.
+   * @return the range taken, or null if the queue is empty
+   */
+  Counter take(int max) {
+    Counter c = queue.peek();
+    while (c != null) {
+      Counter taken = c.take(max);
+      if (taken != null) {
+        available.addAndGet(taken.start - taken.end);
+        return taken;
+      }
+      queue.remove(c);
+      c = queue.peek();
+    }
+    return null;
+  }
   
-  public synchronized boolean has(int expectedNumOfIds) {
-    return available >= expectedNumOfIds && expectedNumOfIds != 0;
+  public boolean has(int expectedNumOfIds) {
+    return available.get() >= expectedNumOfIds && expectedNumOfIds != 0;
+  }
+
+  long available() {
+    return available.get();
   }
 
   @Override
@@ -18,39 +18,121 @@
 import io.hops.exception.StorageException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Hands out ids from ranges prefetched from the database.
+ * <p>
+ * Every thread takes a small slice of ids from the shared {@link CountersQueue}
+ * and hands them out without touching any shared state. The shared queue is
+ * refilled by the {@link IDsMonitor} before it runs dry: the low watermark
+ * follows the rate at which ids are consumed, and the monitor is woken up as
+ * soon as the queue drops below it. A thread only waits on a refill
+ * transaction if the queue is empty, which is counted as a stall.
+ */
 public abstract class IDsGenerator{
 
   private static final Log LOG =
           LogFactory.getLog(IDsGenerator.class);
   private int batchSize;
   private int threshold;
+  private int sliceSize;
   private CountersQueue cQ;
 
+  private final ThreadLocal<CountersQueue.Counter> slices = new ThreadLocal<>();
+  private final AtomicBoolean refillRequested = new AtomicBoolean();
+  private final AtomicLong consumed = new AtomicLong();
+  private final AtomicLong sharedTakes = new AtomicLong();
+  private final AtomicLong stalls = new AtomicLong();
+  private final AtomicLong stallTime = new AtomicLong();
+
+  private volatile long lowWatermark;
+  private long lastCheckTime = Time.monotonicNow();
+  private long lastConsumed = 0;
+  private long lastRefillTime = 0;
+
   IDsGenerator(int batchSize, float threshold){
+    this(batchSize, threshold, 1);
+  }
+
+  IDsGenerator(int batchSize, float threshold, int sliceSize){
     this.batchSize = batchSize;
     this.threshold = (int)(threshold * batchSize);
+    this.sliceSize = Math.max(1, Math.min(sliceSize, batchSize));
+    this.lowWatermark = this.threshold;
     cQ = new CountersQueue();
   }
 
-  public synchronized long getUniqueID() throws StorageException {
-    if(!cQ.has(1)){
+  public long getUniqueID() throws StorageException {
+    CountersQueue.Counter slice = slices.get();
+    if (slice != null) {
+      long id = slice.next();
+      if (id < slice.getEnd()) {
+        return id;
+      }
+    }
+
+    slice = cQ.take(sliceSize);
+    while (slice == null) {
       LOG.warn("ID Generator has run out of cached IDs. Fetching new set of IDs from DB");
-      getMoreIdsIfNeeded();
+      long start = Time.monotonicNow();
+      refill();
+      stalls.incrementAndGet();
+      stallTime.addAndGet(Time.monotonicNow() - start);
+      slice = cQ.take(sliceSize);
+    }
+    sharedTakes.incrementAndGet();
+    consumed.addAndGet(slice.getEnd() - slice.getStart());
+    if (cQ.available() < lowWatermark && refillRequested.compareAndSet(false, true)) {
+      IDsMonitor.getInstance().wakeUp();
     }
-    return cQ.next();
+    if (slice.getEnd() - slice.getStart() > 1) {
+      slices.set(slice);
+    }
+    return slice.next();
   }
 
-  protected synchronized boolean getMoreIdsIfNeeded()
+  /**
+   * Fetch more ids if the queue has dropped below the low watermark. The low
+   * watermark covers twice the ids consumed during a check interval and a
+   * refill transaction at the rate observed since the last check.
+   */
+  protected synchronized boolean getMoreIdsIfNeeded(long checkInterval)
           throws StorageException {
+    long now = Time.monotonicNow();
+    long elapsed = now - lastCheckTime;
+    if (elapsed > 0) {
+      long total = consumed.get();
+      double rate = (double) (total - lastConsumed) / elapsed;
+      lowWatermark = Math.max(threshold,
+          (long) (2 * rate * (checkInterval + lastRefillTime)));
+      lastConsumed = total;
+      lastCheckTime = now;
+    }
+    refillRequested.set(false);
+    if (cQ.available() < lowWatermark) {
+      fetch(Math.max(batchSize, 2 * lowWatermark - cQ.available()));
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void refill() throws StorageException {
+    // another thread may have refilled the queue while this one was waiting
+    if (!cQ.has(sliceSize)) {
+      fetch(Math.max(batchSize, lowWatermark));
+    }
+  }
+
+  private void fetch(long numOfIds) throws StorageException {
     try {
-      if (!cQ.has(threshold)) {
-        cQ.addCounter(incrementCounter(batchSize));
-        return true;
-      }
-      return false;
+      long start = Time.monotonicNow();
+      cQ.addCounter(incrementCounter((int) Math.min(numOfIds, Integer.MAX_VALUE)));
+      lastRefillTime = Time.monotonicNow() - start;
     } catch (IOException e) {
       if (e instanceof StorageException) {
         throw (StorageException) e;
@@ -64,5 +146,26 @@ protected CountersQueue getCQ() {
     return cQ;
   }
 
+  /**
+   * @return the number of slices of ids taken from the shared queue
+   */
+  long getSharedTakes() {
+    return sharedTakes.get();
+  }
+
+  /**
+   * @return the number of times a thread waited for a refill transaction
+   */
+  long getStalls() {
+    return stalls.get();
+  }
+
+  /**
+   * @return the time, in milliseconds, threads waited for refill transactions
+   */
+  long getStallTime() {
+    return stallTime.get();
+  }
+
   abstract CountersQueue.Counter incrementCounter(int inc) throws IOException ;
 }
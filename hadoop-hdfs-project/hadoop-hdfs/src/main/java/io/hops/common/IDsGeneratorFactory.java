@@ -29,8 +29,8 @@ public class IDsGeneratorFactory {
   private static final Log LOG = LogFactory.getLog(IDsGeneratorFactory.class);
 
   private class INodeIDGen extends IDsGenerator{
-    INodeIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    INodeIDGen(int batchSize, float threshold, int sliceSize) {
+      super(batchSize, threshold, sliceSize);
     }
 
     @Override
@@ -40,8 +40,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
   }
 
   private class BlockIDGen extends IDsGenerator{
-    BlockIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    BlockIDGen(int batchSize, float threshold, int sliceSize) {
+      super(batchSize, threshold, sliceSize);
     }
 
     @Override
@@ -51,8 +51,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
   }
 
   private class QuotaUpdateIDGen extends IDsGenerator{
-    QuotaUpdateIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    QuotaUpdateIDGen(int batchSize, float threshold, int sliceSize) {
+      super(batchSize, threshold, sliceSize);
     }
 
     @Override
@@ -62,8 +62,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
   }
 
   private class CacheDirectiveIDGen extends IDsGenerator{
-    CacheDirectiveIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+    CacheDirectiveIDGen(int batchSize, float threshold, int sliceSize) {
+      super(batchSize, threshold, sliceSize);
     }
 
     @Override
@@ -72,18 +72,33 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
     }
   }
   
-  private static IDsGeneratorFactory factory;
+  private static volatile IDsGeneratorFactory factory;
   private IDsGeneratorFactory(){
   }
 
   public static IDsGeneratorFactory getInstance(){
-    if(factory == null){
-      factory = new IDsGeneratorFactory();
+    // called for every id, only the creation is synchronized
+    IDsGeneratorFactory f = factory;
+    if (f == null) {
+      synchronized (IDsGeneratorFactory.class) {
+        f = factory;
+        if (f == null) {
+          f = new IDsGeneratorFactory();
+          factory = f;
+        }
+      }
     }
+    return f;
+  }
+
+  /**
+   * @return the factory if it was created, null otherwise
+   */
+  public static IDsGeneratorFactory peekInstance() {
     return factory;
   }
 
-  public static void reset() {
+  public static synchronized void reset() {
     factory=null;
   }
   
@@ -92,7 +107,8 @@ public static void reset() {
   Boolean isConfigured = false;
   void setConfiguration(int inodeIdsBatchSize, int blockIdsBatchSize,
       int quotaUpdateIdsBatchSize, int cacheDirectiveIdsBatchSize, float inodeIdsThreshold,
-      float blockIdsThreshold, float quotaUpdateIdsThreshold, float cacheDirectiveIdsThreshold) {
+      float blockIdsThreshold, float quotaUpdateIdsThreshold, float cacheDirectiveIdsThreshold,
+      int sliceSize) {
 
     synchronized (isConfigured) {
       if (isConfigured) {
@@ -103,12 +119,15 @@ void setConfiguration(int inodeIdsBatchSize, int blockIdsBatchSize,
       isConfigured = true;
     }
 
-    iDsGenerators.add(new INodeIDGen(inodeIdsBatchSize, inodeIdsThreshold));
-    iDsGenerators.add(new BlockIDGen(blockIdsBatchSize, blockIdsThreshold));
+    iDsGenerators.add(new INodeIDGen(inodeIdsBatchSize, inodeIdsThreshold,
+        sliceSize));
+    iDsGenerators.add(new BlockIDGen(blockIdsBatchSize, blockIdsThreshold,
+        sliceSize));
     iDsGenerators.add(new QuotaUpdateIDGen(quotaUpdateIdsBatchSize,
-        quotaUpdateIdsThreshold));
+        quotaUpdateIdsThreshold, sliceSize));
+    // cache directives are rare, ids are not held by the threads
     iDsGenerators.add(new CacheDirectiveIDGen(cacheDirectiveIdsBatchSize,
-        cacheDirectiveIdsThreshold));
+        cacheDirectiveIdsThreshold, 1));
   }
 
   public long getUniqueINodeID() throws StorageException {
@@ -133,12 +152,46 @@ public long getUniqueCacheDirectiveID() throws StorageException {
     return id;
   }
 
-  void getNewIDs() throws IOException {
+  void getNewIDs(long checkInterval) throws IOException {
     for(IDsGenerator iDsGenerator : iDsGenerators){
-      if(iDsGenerator.getMoreIdsIfNeeded()) {
+      if(iDsGenerator.getMoreIdsIfNeeded(checkInterval)) {
         LOG.debug("get more ids for [" + iDsGenerator.getClass().getSimpleName
             () + "] " + iDsGenerator.getCQ());
       }
     }
   }
+
+  /**
+   * @return the number of slices of ids taken from the shared queues
+   */
+  public long getSharedTakes() {
+    long takes = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      takes += iDsGenerator.getSharedTakes();
+    }
+    return takes;
+  }
+
+  /**
+   * @return the number of times an operation waited for a refill transaction
+   */
+  public long getRefillStalls() {
+    long stalls = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      stalls += iDsGenerator.getStalls();
+    }
+    return stalls;
+  }
+
+  /**
+   * @return the time, in milliseconds, operations waited for refill
+   * transactions
+   */
+  public long getRefillStallTime() {
+    long time = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      time += iDsGenerator.getStallTime();
+    }
+    return time;
+  }
 }
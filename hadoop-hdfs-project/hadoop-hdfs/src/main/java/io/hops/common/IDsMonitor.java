@@ -25,22 +25,31 @@
 public class IDsMonitor implements Runnable {
 
   private static final Log LOG = LogFactory.getLog(IDsMonitor.class);
-  private static IDsMonitor instance = null;
+  private static volatile IDsMonitor instance = null;
   private Thread th = null;
-  private boolean isRunning = true;
+  private volatile boolean isRunning = true;
 
   private int checkInterval;
   private IDsMonitor() {
   }
 
+  // reached from the operations that run low on ids, only the creation is
+  // synchronized
   public static IDsMonitor getInstance() {
-    if (instance == null) {
-      instance = new IDsMonitor();
+    IDsMonitor monitor = instance;
+    if (monitor == null) {
+      synchronized (IDsMonitor.class) {
+        monitor = instance;
+        if (monitor == null) {
+          monitor = new IDsMonitor();
+          instance = monitor;
+        }
+      }
     }
-    return instance;
+    return monitor;
   }
 
-  public static void reset() {
+  public static synchronized void reset() {
     IDsGeneratorFactory.reset();
     if (instance != null) {
       instance.stop();
@@ -67,7 +76,9 @@ public void setConfiguration(Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD,
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD_DEFAULT),
         conf.getFloat(DFSConfigKeys.DFS_NAMENODE_CACHE_DIRECTIVE_ID_UPDATE_THRESHOLD,
-            DFSConfigKeys.DFS_NAMENODE_CACHE_DIRECTIVE_ID_UPDATE_THRESHOLD_DEFAULT)
+            DFSConfigKeys.DFS_NAMENODE_CACHE_DIRECTIVE_ID_UPDATE_THRESHOLD_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDS_SLICE_SIZE,
+            DFSConfigKeys.DFS_NAMENODE_IDS_SLICE_SIZE_DEFAULT)
         );
 
     checkInterval = conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS,
@@ -86,6 +97,17 @@ public void start() {
 
   public void stop() {
     isRunning=false;
+    wakeUp();
+  }
+
+  /**
+   * Check the ids right away instead of waiting for the check interval, used
+   * when a generator drops below its low watermark.
+   */
+  public void wakeUp() {
+    synchronized (this) {
+      notifyAll();
+    }
   }
   
   @Override
@@ -98,9 +120,11 @@ public void run() {
   private void getNewIds() {
     try {
 
-      IDsGeneratorFactory.getInstance().getNewIDs();
+      IDsGeneratorFactory.getInstance().getNewIDs(checkInterval);
 
-      Thread.sleep(checkInterval);
+      synchronized (this) {
+        wait(checkInterval);
+      }
     } catch (InterruptedException ex) {
       LOG.warn("IDsMonitor interrupted: " + ex);
     } catch (IOException ex) {
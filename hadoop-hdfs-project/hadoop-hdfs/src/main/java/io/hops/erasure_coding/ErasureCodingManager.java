@@ -16,6 +16,8 @@
 package io.hops.erasure_coding;
 
 import io.hops.exception.StorageException;
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.SortedActiveNodeList;
 import io.hops.metadata.HdfsStorageFactory;
 import io.hops.metadata.hdfs.dal.EncodingStatusDataAccess;
 import io.hops.metadata.hdfs.entity.EncodingStatus;
@@ -43,17 +45,26 @@
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Daemon that manages erasure-coded files and their status. It scans for
- * requested encodings or repairs and schedules them if resources are available.
- * It checks the status of encodings and repairs and adjusts the file states
- * accordingly.
+ * Daemon that manages erasure-coded files and their status. It schedules the
+ * encodings and repairs requested through this namenode if resources are
+ * available, as they are requested; see {@link ErasureCodingWorkQueue}. It
+ * checks the status of encodings and repairs and adjusts the file states
+ * accordingly. The leader also scans the encoding statuses to pick up the
+ * work of namenodes that failed before doing it, when it becomes the leader
+ * or the active namenodes change, and every full scan interval as a safety
+ * net.
  */
 public class ErasureCodingManager extends Configured {
 
@@ -75,8 +86,14 @@ public class ErasureCodingManager extends Configured {
   private final int repairDelay;
   private final int parityRepairDelay;
   private final int deletionLimit;
+  private final long fullScanInterval;
+  private final int encodingRetries;
+  private final ErasureCodingWorkQueue workQueue;
+  // the claimed encodings that could not be started yet, by inode id
+  private final Map<Long, RetriedEncoding> retriedEncodings = new HashMap<>();
 
   private static boolean enabled = false;
+  private static volatile ErasureCodingWorkQueue activeWorkQueue = null;
 
   public ErasureCodingManager(FSNamesystem namesystem, Configuration conf) {
     super(conf);
@@ -99,8 +116,13 @@ public ErasureCodingManager(FSNamesystem namesystem, Configuration conf) {
         DFSConfigKeys.DEFAULT_PARITY_REPAIR_DELAY);
     this.deletionLimit = conf.getInt(DFSConfigKeys.DELETION_LIMIT_KEY,
         DFSConfigKeys.DEFAULT_DELETION_LIMIT);
+    this.fullScanInterval = conf.getLong(DFSConfigKeys.FULL_SCAN_INTERVAL_KEY,
+        DFSConfigKeys.DEFAULT_FULL_SCAN_INTERVAL);
+    this.encodingRetries = conf.getInt(DFSConfigKeys.ENCODING_RETRIES_KEY,
+        DFSConfigKeys.DEFAULT_ENCODING_RETRIES);
     enabled = conf.getBoolean(DFSConfigKeys.ERASURE_CODING_ENABLED_KEY,
         DFSConfigKeys.DEFAULT_ERASURE_CODING_ENABLED_KEY);
+    this.workQueue = new ErasureCodingWorkQueue(repairDelay, parityRepairDelay);
   }
 
   private boolean loadRaidNodeClasses() {
@@ -151,11 +173,13 @@ public void activate() {
       return;
     }
 
+    activeWorkQueue = workQueue;
     erasureCodingMonitorThread.start();
     LOG.info("ErasureCodingMonitor started");
   }
 
   public void close() {
+    activeWorkQueue = null;
     try {
       if (erasureCodingMonitorThread != null) {
         erasureCodingMonitorThread.interrupt();
@@ -171,10 +195,35 @@ public static boolean isErasureCodingEnabled(Configuration conf) {
         DFSConfigKeys.DEFAULT_ERASURE_CODING_ENABLED_KEY);
   }
 
+  /**
+   * @return the work queue of this namenode, or null if the erasure coding
+   *     manager is not running
+   */
+  public static ErasureCodingWorkQueue getWorkQueue() {
+    return activeWorkQueue;
+  }
+
+  /**
+   * An encoding that was claimed but could not be started.
+   */
+  private static class RetriedEncoding {
+    private final boolean copy;
+    private int failures;
+
+    RetriedEncoding(boolean copy) {
+      this.copy = copy;
+    }
+  }
+
   private class ErasureCodingMonitor implements Runnable {
 
     @Override
     public void run() {
+      long lastReportCheck = 0;
+      long lastFullScan = 0;
+      // the active namenodes at the last full scan, null if this namenode
+      // was not the leader
+      Set<Long> scannedNameNodes = null;
       while (namesystem.isRunning()) {
         try {
           try {
@@ -185,17 +234,27 @@ public void run() {
           } catch (IOException e) {
             LOG.info("In safe mode skipping this round");
           }
-          if (namesystem.isLeader()) {
+          long now = System.currentTimeMillis();
+          if (now - lastReportCheck >= recheckInterval) {
             checkActiveEncodings();
-            scheduleEncodings();
             checkActiveRepairs();
-            scheduleSourceRepairs();
-            scheduleParityRepairs();
-            garbageCollect();
-            checkRevoked();
+            lastReportCheck = now;
+          }
+          if (namesystem.isLeader()) {
+            Set<Long> activeNameNodes = getActiveNameNodeIds();
+            if (!activeNameNodes.equals(scannedNameNodes) ||
+                now - lastFullScan >= fullScanInterval) {
+              scanEncodingStatuses();
+              scannedNameNodes = activeNameNodes;
+              lastFullScan = now;
+            }
+          } else {
+            scannedNameNodes = null;
           }
+          processWork();
           try {
-            Thread.sleep(recheckInterval);
+            workQueue.await(
+                lastReportCheck + recheckInterval - System.currentTimeMillis());
           } catch (InterruptedException ie) {
             LOG.warn("ErasureCodingMonitor thread received " +
                     "InterruptedException.", ie);
@@ -320,13 +379,25 @@ private void updateEncodingStatus(String filePath,
     updateEncodingStatus(filePath, null, status);
   }
 
-  private void scheduleEncodings() throws IOException {
-    LOG.info("Schedule encodings.");
-    final int limit = activeEncodingLimit - activeEncodings;
-    if (limit <= 0) {
-      return;
+  private Set<Long> getActiveNameNodeIds() {
+    Set<Long> ids = new HashSet<>();
+    SortedActiveNodeList activeNodes =
+        namesystem.getNameNode().getActiveNameNodes();
+    if (activeNodes != null) {
+      for (ActiveNode an : activeNodes.getActiveNodes()) {
+        ids.add(an.getId());
+      }
     }
+    return ids;
+  }
 
+  /**
+   * Queue the requested work found in the encoding statuses. The work of
+   * this namenode is queued as it is requested, this picks up the work of
+   * namenodes that failed before doing it.
+   */
+  private void scanEncodingStatuses() throws IOException {
+    LOG.info("Scanning encoding statuses");
     LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
         EncodingStatusOperationType.FIND_REQUESTED_ENCODINGS) {
       @Override
@@ -334,47 +405,242 @@ public Object performTask() throws StorageException, IOException {
         EncodingStatusDataAccess<EncodingStatus> dataAccess =
             (EncodingStatusDataAccess) HdfsStorageFactory
                 .getDataAccess(EncodingStatusDataAccess.class);
-        return dataAccess.findRequestedEncodings(limit);
+        List<EncodingStatus> statuses = new ArrayList<>();
+        statuses.addAll(dataAccess.findRequestedRepairs(activeRepairLimit));
+        statuses.addAll(
+            dataAccess.findRequestedParityRepairs(activeParityRepairLimit));
+        statuses.addAll(dataAccess.findRequestedEncodings(activeEncodingLimit));
+        statuses.addAll(dataAccess.findDeleted(deletionLimit));
+        statuses.addAll(dataAccess.findRevoked());
+        return statuses;
       }
     };
-    Collection<EncodingStatus> requestedEncodings =
+    Collection<EncodingStatus> statuses =
         (Collection<EncodingStatus>) findHandler.handle();
-    for (EncodingStatus encodingStatus : requestedEncodings) {
+    for (EncodingStatus status : statuses) {
+      workQueue.add(status);
+    }
+  }
+
+  private void processWork() {
+    for (ErasureCodingWorkQueue.Work work :
+        workQueue.pollReady(System.currentTimeMillis())) {
+      if (!hasCapacity(work.getType())) {
+        workQueue.requeue(work, work.getNotBefore());
+        continue;
+      }
       try {
-        LOG.info("Trying to schedule encoding for " + encodingStatus);
-        INode iNode = namesystem.findInode(encodingStatus.getInodeId());
-        if (iNode == null) {
-          LOG.error("findInode returned null for id " + encodingStatus.
-              getInodeId());
+        EncodingStatus status = findEncodingStatus(work.getInodeId());
+        if (status == null) {
           continue;
         }
-        if (iNode.isUnderConstruction()) {
-          // It might still be written to the file
-          LOG.info("Still under construction. Encoding not scheduled for " +
-              iNode.getId());
-          continue;
+        switch (work.getType()) {
+          case SOURCE_REPAIR:
+            scheduleSourceRepair(work, status);
+            break;
+          case PARITY_REPAIR:
+            scheduleParityRepair(work, status);
+            break;
+          case ENCODING:
+            scheduleEncoding(work, status);
+            break;
+          case REVOCATION:
+            checkRevoked(work, status);
+            break;
+          case DELETION:
+            garbageCollect(status);
+            break;
         }
+      } catch (IOException e) {
+        LOG.error(StringUtils.stringifyException(e));
+        retryLater(work);
+      }
+    }
+  }
 
-        String path = namesystem.getPath(iNode.getId(), iNode.isInTree());
-        if (iNode == null) {
-          continue;
+  private boolean hasCapacity(ErasureCodingWorkQueue.WorkType type) {
+    switch (type) {
+      case SOURCE_REPAIR:
+        return activeRepairs < activeRepairLimit;
+      case PARITY_REPAIR:
+        return activeParityRepairs < activeParityRepairLimit;
+      case ENCODING:
+        return activeEncodings < activeEncodingLimit;
+      default:
+        return true;
+    }
+  }
+
+  private void retryLater(ErasureCodingWorkQueue.Work work) {
+    workQueue.requeue(work, System.currentTimeMillis() + recheckInterval);
+  }
+
+  private EncodingStatus findEncodingStatus(final long inodeId)
+      throws IOException {
+    LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
+        EncodingStatusOperationType.FIND_BY_INODE_ID) {
+      @Override
+      public Object performTask() throws StorageException, IOException {
+        EncodingStatusDataAccess<EncodingStatus> dataAccess =
+            (EncodingStatusDataAccess) HdfsStorageFactory
+                .getDataAccess(EncodingStatusDataAccess.class);
+        return dataAccess.findByInodeId(inodeId);
+      }
+    };
+    return (EncodingStatus) findHandler.handle();
+  }
+
+  /**
+   * Move a file from a requested state to the matching active state. Fails
+   * if the file is not in the requested state anymore, for instance because
+   * another namenode already scheduled the work.
+   *
+   * @return true if the state was changed
+   */
+  private boolean claim(final String path,
+      final EncodingStatus.Status expectedStatus,
+      final EncodingStatus.Status status,
+      final EncodingStatus.ParityStatus expectedParityStatus,
+      final EncodingStatus.ParityStatus parityStatus, final String parityFile)
+      throws IOException {
+    return (Boolean) new HopsTransactionalRequestHandler(
+        HDFSOperationType.UPDATE_ENCODING_STATUS) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        INodeLock il = lf.getINodeLock(TransactionLockTypes.INodeLockType.WRITE,
+                TransactionLockTypes.INodeResolveType.PATH, path).setNameNodeID(namesystem.getNameNode().getId())
+                .setActiveNameNodes(namesystem.getNameNode().getActiveNameNodes().getActiveNodes());
+        locks.add(il).add(lf.getEncodingStatusLock(TransactionLockTypes.LockType.WRITE, path));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        INode targetNode = namesystem.getINode(path);
+        if (targetNode == null) {
+          return false;
+        }
+        EncodingStatus encodingStatus = EntityManager
+            .find(EncodingStatus.Finder.ByInodeId, targetNode.getId());
+        if (encodingStatus == null) {
+          return false;
+        }
+        if (expectedStatus != null) {
+          if (encodingStatus.getStatus() != expectedStatus) {
+            return false;
+          }
+          encodingStatus.setStatus(status);
+          encodingStatus.setStatusModificationTime(System.currentTimeMillis());
         }
+        if (expectedParityStatus != null) {
+          if (encodingStatus.getParityStatus() != expectedParityStatus) {
+            return false;
+          }
+          encodingStatus.setParityStatus(parityStatus);
+          encodingStatus.setParityStatusModificationTime(
+              System.currentTimeMillis());
+        }
+        if (parityFile != null) {
+          encodingStatus.setParityFileName(parityFile);
+        }
+        EntityManager.update(encodingStatus);
+        return true;
+      }
+    }.handle();
+  }
 
-        LOG.info("Schedule encoding for " + path);
-        UUID parityFileName = UUID.randomUUID();
-        encodingManager.encodeFile(
-            encodingStatus.getEncodingPolicy(),
-            new Path(path),
-            new Path(parityFolder + "/" + parityFileName.toString()),
-            encodingStatus.getStatus() ==
-                EncodingStatus.Status.COPY_ENCODING_REQUESTED ? true : false);
-        namesystem.updateEncodingStatus(path,
-            EncodingStatus.Status.ENCODING_ACTIVE, parityFileName.toString());
-        activeEncodings++;
-      } catch (IOException e) {
-        LOG.error(StringUtils.stringifyException(e));
+  private void scheduleEncoding(ErasureCodingWorkQueue.Work work,
+      EncodingStatus encodingStatus) throws IOException {
+    EncodingStatus.Status requested = encodingStatus.getStatus();
+    RetriedEncoding retried = retriedEncodings.get(encodingStatus.getInodeId());
+    if (retried != null &&
+        requested == EncodingStatus.Status.ENCODING_ACTIVE) {
+      retryEncoding(work, encodingStatus, retried);
+      return;
+    }
+    retriedEncodings.remove(encodingStatus.getInodeId());
+    if (requested != EncodingStatus.Status.ENCODING_REQUESTED &&
+        requested != EncodingStatus.Status.COPY_ENCODING_REQUESTED) {
+      return;
+    }
+    LOG.info("Trying to schedule encoding for " + encodingStatus);
+    INode iNode = namesystem.findInode(encodingStatus.getInodeId());
+    if (iNode == null) {
+      LOG.error("findInode returned null for id " + encodingStatus.
+          getInodeId());
+      return;
+    }
+    if (iNode.isUnderConstruction()) {
+      // It might still be written to the file
+      LOG.info("Still under construction. Encoding not scheduled for " +
+          iNode.getId());
+      retryLater(work);
+      return;
+    }
+
+    String path = namesystem.getPath(iNode.getId(), iNode.isInTree());
+    UUID parityFileName = UUID.randomUUID();
+    // Set status before doing something so that no other namenode schedules
+    // the same encoding.
+    if (!claim(path, requested, EncodingStatus.Status.ENCODING_ACTIVE, null,
+        null, parityFileName.toString())) {
+      LOG.info("Encoding already scheduled for " + path);
+      return;
+    }
+    LOG.info("Schedule encoding for " + path);
+    encodeFile(work, encodingStatus, path, parityFileName.toString(),
+        new RetriedEncoding(
+            requested == EncodingStatus.Status.COPY_ENCODING_REQUESTED));
+  }
+
+  /**
+   * Start again a claimed encoding that could not be started. The file keeps
+   * the status and the parity file name it was claimed with.
+   */
+  private void retryEncoding(ErasureCodingWorkQueue.Work work,
+      EncodingStatus encodingStatus, RetriedEncoding retried)
+      throws IOException {
+    INode iNode = namesystem.findInode(encodingStatus.getInodeId());
+    if (iNode == null) {
+      retriedEncodings.remove(encodingStatus.getInodeId());
+      return;
+    }
+    String path = namesystem.getPath(iNode.getId(), iNode.isInTree());
+    LOG.info("Retry encoding for " + path);
+    encodeFile(work, encodingStatus, path, encodingStatus.getParityFileName(),
+        retried);
+  }
+
+  /**
+   * Start the encoding job of a claimed file. A job that fails to start is
+   * retried at the next recheck, up to the configured number of retries,
+   * before the encoding is marked as failed.
+   */
+  private void encodeFile(ErasureCodingWorkQueue.Work work,
+      EncodingStatus encodingStatus, String path, String parityFileName,
+      RetriedEncoding retried) throws IOException {
+    long inodeId = encodingStatus.getInodeId();
+    try {
+      encodingManager.encodeFile(
+          encodingStatus.getEncodingPolicy(),
+          new Path(path),
+          new Path(parityFolder + "/" + parityFileName),
+          retried.copy);
+    } catch (IOException e) {
+      if (retried.failures < encodingRetries) {
+        retried.failures++;
+        LOG.warn("Could not start the encoding of " + path + ", retry " +
+            retried.failures + " of " + encodingRetries, e);
+        retriedEncodings.put(inodeId, retried);
+        retryLater(work);
+        return;
       }
+      retriedEncodings.remove(inodeId);
+      updateEncodingStatus(path, EncodingStatus.Status.ENCODING_FAILED);
+      throw e;
     }
+    retriedEncodings.remove(inodeId);
+    activeEncodings++;
   }
 
   private void checkActiveRepairs() throws IOException {
@@ -478,166 +744,110 @@ public Object performTask() throws IOException {
     }.handle();
   }
 
-  private void scheduleSourceRepairs() throws IOException {
-    LOG.info("Scheduling repairs");
-    final int limit = activeRepairLimit - activeRepairs;
-    if (limit <= 0) {
+  private void scheduleSourceRepair(ErasureCodingWorkQueue.Work work,
+      EncodingStatus encodingStatus) throws IOException {
+    if (encodingStatus.getStatus() != EncodingStatus.Status.REPAIR_REQUESTED) {
+      return;
+    }
+    LOG.info("Scheduling source repair  for " + encodingStatus);
+    long notBefore = encodingStatus.getStatusModificationTime() + repairDelay;
+    if (System.currentTimeMillis() < notBefore) {
+      LOG.info("Delaying source repair. Delay not reached: " + repairDelay);
+      workQueue.requeue(work, notBefore);
       return;
     }
 
-    LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
-        EncodingStatusOperationType.FIND_REQUESTED_REPAIRS) {
-      @Override
-      public Object performTask() throws IOException {
-        EncodingStatusDataAccess<EncodingStatus> dataAccess =
-            (EncodingStatusDataAccess) HdfsStorageFactory
-                .getDataAccess(EncodingStatusDataAccess.class);
-        return dataAccess.findRequestedRepairs(limit);
-      }
-    };
-
-    Collection<EncodingStatus> requestedRepairs =
-        (Collection<EncodingStatus>) findHandler.handle();
-    for (EncodingStatus encodingStatus : requestedRepairs) {
-      try {
-        LOG.info("Scheduling source repair  for " + encodingStatus);
-        if (System.currentTimeMillis()
-            - encodingStatus.getStatusModificationTime() < repairDelay) {
-          LOG.info("Skipping source repair. Delay not reached: " + repairDelay);
-          continue;
-        }
-
-        if (encodingStatus.isParityRepairActive()) {
-          LOG.info("Skipping source repair. Parity repair is active");
-          continue;
-        }
+    if (encodingStatus.isParityRepairActive()) {
+      LOG.info("Delaying source repair. Parity repair is active");
+      retryLater(work);
+      return;
+    }
 
-        String path = namesystem.getPath(encodingStatus.getInodeId(), encodingStatus.isInTree());
-        // Set status before doing something. In case the file is recovered inbetween we don't have an invalid status.
-        // If starting repair fails somehow then this should be detected by a timeout later.
-        namesystem.updateEncodingStatus(path,
-            EncodingStatus.Status.REPAIR_ACTIVE);
-        LOG.info("Status set to source repair active " + encodingStatus);
-        blockRepairManager.repairSourceBlocks(
-            encodingStatus.getEncodingPolicy().getCodec(),
-            new Path(path),
-            new Path(parityFolder + "/" + encodingStatus.getParityFileName()));
-        LOG.info("Scheduled job for source repair " + encodingStatus);
-        activeRepairs++;
-      } catch (IOException e) {
-        LOG.error(StringUtils.stringifyException(e));
-      }
+    String path = namesystem.getPath(encodingStatus.getInodeId(), encodingStatus.isInTree());
+    // Set status before doing something. In case the file is recovered inbetween we don't have an invalid status.
+    // If starting repair fails somehow then this should be detected by a timeout later.
+    if (!claim(path, EncodingStatus.Status.REPAIR_REQUESTED,
+        EncodingStatus.Status.REPAIR_ACTIVE, null, null, null)) {
+      LOG.info("Source repair already scheduled for " + path);
+      return;
     }
+    LOG.info("Status set to source repair active " + encodingStatus);
+    blockRepairManager.repairSourceBlocks(
+        encodingStatus.getEncodingPolicy().getCodec(),
+        new Path(path),
+        new Path(parityFolder + "/" + encodingStatus.getParityFileName()));
+    LOG.info("Scheduled job for source repair " + encodingStatus);
+    activeRepairs++;
   }
 
-  private void scheduleParityRepairs() {
-    LOG.info("Scheduling parity repairs");
-    final int limit = activeParityRepairLimit - activeParityRepairs;
-    if (limit <= 0) {
+  private void scheduleParityRepair(ErasureCodingWorkQueue.Work work,
+      EncodingStatus encodingStatus) throws IOException {
+    if (encodingStatus.getParityStatus() !=
+        EncodingStatus.ParityStatus.REPAIR_REQUESTED) {
+      return;
+    }
+    LOG.info("Scheduling parity repair for " + encodingStatus);
+    long notBefore = encodingStatus.getParityStatusModificationTime() +
+        parityRepairDelay;
+    if (System.currentTimeMillis() < notBefore) {
+      LOG.info("Delaying parity repair. Delay not reached: " +
+          parityRepairDelay);
+      workQueue.requeue(work, notBefore);
       return;
     }
 
-    LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
-        EncodingStatusOperationType.FIND_REQUESTED_PARITY_REPAIRS) {
-      @Override
-      public Object performTask() throws IOException {
-        EncodingStatusDataAccess<EncodingStatus> dataAccess =
-            (EncodingStatusDataAccess) HdfsStorageFactory
-                .getDataAccess(EncodingStatusDataAccess.class);
-        return dataAccess.findRequestedParityRepairs(limit);
-      }
-    };
-
-    try {
-      Collection<EncodingStatus> requestedRepairs =
-          (Collection<EncodingStatus>) findHandler.handle();
-      for (EncodingStatus encodingStatus : requestedRepairs) {
-        LOG.info("Scheduling parity repair for " + encodingStatus);
-        if (System.currentTimeMillis() -
-            encodingStatus.getParityStatusModificationTime() <
-            parityRepairDelay) {
-          LOG.info("Skipping  parity repair. Delay not reached: " +
-              parityRepairDelay);
-          continue;
-        }
-
-        if (encodingStatus.getStatus().equals(EncodingStatus.Status.ENCODED) ==
-            false) {
-          // Only repair parity for non-broken source files. Otherwise repair source file first.
-          LOG.info("Skipping parity repair. Source file not healthy.");
-          continue;
-        }
+    if (encodingStatus.getStatus().equals(EncodingStatus.Status.ENCODED) ==
+        false) {
+      // Only repair parity for non-broken source files. Otherwise repair source file first.
+      LOG.info("Delaying parity repair. Source file not healthy.");
+      retryLater(work);
+      return;
+    }
 
-        String path = namesystem.getPath(encodingStatus.getInodeId(), encodingStatus.isInTree());
-        // Set status before doing something. In case the file is recovered inbetween we don't have an invalid status.
-        // If starting repair fails somehow then this should be detected by a timeout later.
-        namesystem.updateEncodingStatus(path,
-            EncodingStatus.ParityStatus.REPAIR_ACTIVE);
-        LOG.info("Status set to parity repair active " + encodingStatus);
-        blockRepairManager
-            .repairParityBlocks(encodingStatus.getEncodingPolicy().getCodec(),
-                new Path(path), new Path(
-                parityFolder + "/" + encodingStatus.getParityFileName()));
-        LOG.info("Scheduled job for parity repair " + encodingStatus);
-        activeRepairs++;
-      }
-    } catch (IOException e) {
-      LOG.error(StringUtils.stringifyException(e));
+    String path = namesystem.getPath(encodingStatus.getInodeId(), encodingStatus.isInTree());
+    // Set status before doing something. In case the file is recovered inbetween we don't have an invalid status.
+    // If starting repair fails somehow then this should be detected by a timeout later.
+    if (!claim(path, null, null, EncodingStatus.ParityStatus.REPAIR_REQUESTED,
+        EncodingStatus.ParityStatus.REPAIR_ACTIVE, null)) {
+      LOG.info("Parity repair already scheduled for " + path);
+      return;
     }
+    LOG.info("Status set to parity repair active " + encodingStatus);
+    blockRepairManager
+        .repairParityBlocks(encodingStatus.getEncodingPolicy().getCodec(),
+            new Path(path), new Path(
+            parityFolder + "/" + encodingStatus.getParityFileName()));
+    LOG.info("Scheduled job for parity repair " + encodingStatus);
+    activeParityRepairs++;
   }
 
-  private void garbageCollect() throws IOException {
-    LOG.info("Starting garbage collection");
-    LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
-        EncodingStatusOperationType.FIND_DELETED) {
-      @Override
-      public Object performTask() throws IOException {
-        EncodingStatusDataAccess<EncodingStatus> dataAccess =
-            (EncodingStatusDataAccess) HdfsStorageFactory
-                .getDataAccess(EncodingStatusDataAccess.class);
-        return dataAccess.findDeleted(deletionLimit);
-      }
-    };
-    Collection<EncodingStatus> markedAsDeleted =
-        (Collection<EncodingStatus>) findHandler.handle();
-    for (EncodingStatus status : markedAsDeleted) {
-      LOG.info("Trying to collect " + status);
-      try {
-        namesystem.delete(
-            parityFolder + "/" + status.getParityFileName(), false);
-        namesystem.removeEncodingStatus(status);
-      } catch (IOException e) {
-        LOG.error(StringUtils.stringifyException(e));
-      }
+  private void garbageCollect(EncodingStatus status) throws IOException {
+    if (status.getStatus() != EncodingStatus.Status.DELETED) {
+      return;
     }
+    LOG.info("Trying to collect " + status);
+    namesystem.delete(
+        parityFolder + "/" + status.getParityFileName(), false);
+    namesystem.removeEncodingStatus(status);
   }
 
-  private void checkRevoked() throws IOException {
-    LOG.info("Checking replication for revocations");
-    LightWeightRequestHandler findHandler = new LightWeightRequestHandler(
-        EncodingStatusOperationType.FIND_REVOKED) {
-      @Override
-      public Object performTask() throws IOException {
-        EncodingStatusDataAccess<EncodingStatus> dataAccess =
-            (EncodingStatusDataAccess) HdfsStorageFactory
-                .getDataAccess(EncodingStatusDataAccess.class);
-        return dataAccess.findRevoked();
-      }
-    };
-    Collection<EncodingStatus> markedAsRevoked =
-        (Collection<EncodingStatus>) findHandler.handle();
-    for (EncodingStatus status : markedAsRevoked) {
-      LOG.info("Checking replication for revoked status: " + status);
-      String path = namesystem.getPath(status.getInodeId(), status.isInTree());
-      int replication = namesystem.getFileInfo(path, true, false, false).getReplication();
-      LocatedBlocks blocks = namesystem.getBlockLocations(path, 0,
-          Long.MAX_VALUE, true, true).blocks;
-      if (checkReplication(blocks, replication)) {
-        LOG.info("Revocation successful for " + status);
-        namesystem.delete(
-            parityFolder + "/" + status.getParityFileName(), false);
-        namesystem.removeEncodingStatus(path, status);
-      }
+  private void checkRevoked(ErasureCodingWorkQueue.Work work,
+      EncodingStatus status) throws IOException {
+    if (!Boolean.TRUE.equals(status.getRevoked())) {
+      return;
+    }
+    LOG.info("Checking replication for revoked status: " + status);
+    String path = namesystem.getPath(status.getInodeId(), status.isInTree());
+    int replication = namesystem.getFileInfo(path, true, false, false).getReplication();
+    LocatedBlocks blocks = namesystem.getBlockLocations(path, 0,
+        Long.MAX_VALUE, true, true).blocks;
+    if (checkReplication(blocks, replication)) {
+      LOG.info("Revocation successful for " + status);
+      namesystem.delete(
+          parityFolder + "/" + status.getParityFileName(), false);
+      namesystem.removeEncodingStatus(path, status);
+    } else {
+      retryLater(work);
     }
   }
 
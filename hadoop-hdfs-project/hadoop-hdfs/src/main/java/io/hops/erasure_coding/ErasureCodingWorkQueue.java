@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import io.hops.metadata.hdfs.entity.EncodingStatus;
+import io.hops.transaction.handler.PostCommitHooks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Erasure coding work of a namenode.
+ * <p>
+ * The encoding statuses written by a transaction are staged when the
+ * transaction is prepared and turned into work once it has committed, so
+ * each requested encoding, repair, revocation or deletion is queued by the
+ * namenode that requested it. The work is handed out by priority, repairs of
+ * lost source blocks first, and each item only once its delay has passed.
+ */
+public class ErasureCodingWorkQueue {
+
+  /**
+   * The kinds of work, by decreasing priority.
+   */
+  public enum WorkType {
+    SOURCE_REPAIR,
+    PARITY_REPAIR,
+    ENCODING,
+    REVOCATION,
+    DELETION
+  }
+
+  public static class Work implements Comparable<Work> {
+    private final WorkType type;
+    private final long inodeId;
+    private final long notBefore;
+
+    Work(WorkType type, long inodeId, long notBefore) {
+      this.type = type;
+      this.inodeId = inodeId;
+      this.notBefore = notBefore;
+    }
+
+    public WorkType getType() {
+      return type;
+    }
+
+    public long getInodeId() {
+      return inodeId;
+    }
+
+    public long getNotBefore() {
+      return notBefore;
+    }
+
+    @Override
+    public int compareTo(Work other) {
+      if (type != other.type) {
+        return type.compareTo(other.type);
+      }
+      if (notBefore != other.notBefore) {
+        return notBefore < other.notBefore ? -1 : 1;
+      }
+      return Long.compare(inodeId, other.inodeId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Work)) {
+        return false;
+      }
+      Work other = (Work) o;
+      return type == other.type && inodeId == other.inodeId;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * type.hashCode() + Long.hashCode(inodeId);
+    }
+
+    @Override
+    public String toString() {
+      return type + " of inode " + inodeId;
+    }
+  }
+
+  private final long repairDelay;
+  private final long parityRepairDelay;
+
+  private final PriorityQueue<Work> queue = new PriorityQueue<>();
+  // the work in the queue, to queue each work once
+  private final Set<Work> queued = new HashSet<>();
+  // incremented whenever work is added
+  private long additions = 0;
+
+  public ErasureCodingWorkQueue(long repairDelay, long parityRepairDelay) {
+    this.repairDelay = repairDelay;
+    this.parityRepairDelay = parityRepairDelay;
+  }
+
+  /**
+   * Queue the work requested by the encoding statuses written by the
+   * transaction being committed by the current thread, once it has
+   * committed.
+   */
+  public void stage(Collection<EncodingStatus> statuses) {
+    if (statuses.isEmpty()) {
+      PostCommitHooks.unregister(this);
+      return;
+    }
+    final List<EncodingStatus> committed = new ArrayList<>(statuses);
+    PostCommitHooks.register(this, new Runnable() {
+      @Override
+      public void run() {
+        for (EncodingStatus status : committed) {
+          add(status);
+        }
+      }
+    });
+  }
+
+  /**
+   * Queue the work requested by an encoding status, if any.
+   */
+  public void add(EncodingStatus status) {
+    long inodeId = status.getInodeId();
+    EncodingStatus.Status sourceStatus = status.getStatus();
+    if (sourceStatus != null) {
+      switch (sourceStatus) {
+        case ENCODING_REQUESTED:
+        case COPY_ENCODING_REQUESTED:
+          add(WorkType.ENCODING, inodeId, 0);
+          break;
+        case REPAIR_REQUESTED:
+          add(WorkType.SOURCE_REPAIR, inodeId,
+              status.getStatusModificationTime() + repairDelay);
+          break;
+        case DELETED:
+          add(WorkType.DELETION, inodeId, 0);
+          break;
+        default:
+          break;
+      }
+    }
+    if (status.getParityStatus() ==
+        EncodingStatus.ParityStatus.REPAIR_REQUESTED) {
+      add(WorkType.PARITY_REPAIR, inodeId,
+          status.getParityStatusModificationTime() + parityRepairDelay);
+    }
+    if (Boolean.TRUE.equals(status.getRevoked())) {
+      add(WorkType.REVOCATION, inodeId, 0);
+    }
+  }
+
+  public synchronized void add(WorkType type, long inodeId, long notBefore) {
+    Work work = new Work(type, inodeId, notBefore);
+    if (queued.add(work)) {
+      queue.add(work);
+      additions++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Put back work that could not be done yet. Unlike new work, it does not
+   * wake up the waiting thread.
+   */
+  public synchronized void requeue(Work work, long notBefore) {
+    Work requeued = new Work(work.type, work.inodeId, notBefore);
+    if (queued.add(requeued)) {
+      queue.add(requeued);
+    }
+  }
+
+  /**
+   * Remove the work whose delay has passed.
+   *
+   * @return the work, by priority
+   */
+  public synchronized List<Work> pollReady(long now) {
+    List<Work> ready = new ArrayList<>();
+    List<Work> notReady = new ArrayList<>();
+    Work work;
+    while ((work = queue.poll()) != null) {
+      if (work.notBefore <= now) {
+        queued.remove(work);
+        ready.add(work);
+      } else {
+        notReady.add(work);
+      }
+    }
+    queue.addAll(notReady);
+    return ready;
+  }
+
+  /**
+   * Wait until work is added, the delay of queued work passes or the
+   * timeout expires.
+   */
+  public synchronized void await(long timeout) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    long deadline = start + timeout;
+    for (Work work : queue) {
+      if (work.notBefore > start) {
+        deadline = Math.min(deadline, work.notBefore);
+      }
+    }
+    long seen = additions;
+    long now = start;
+    while (additions == seen && now < deadline) {
+      wait(deadline - now);
+      now = System.currentTimeMillis();
+    }
+  }
+
+  public synchronized int size() {
+    return queue.size();
+  }
+}
@@ -142,11 +142,20 @@ public static Properties getMetadataClusterConfiguration(Configuration conf)
     String configFile = conf.get(DFSConfigKeys.DFS_STORAGE_DRIVER_CONFIG_FILE,
         DFSConfigKeys.DFS_STORAGE_DRIVER_CONFIG_FILE_DEFAULT);
     Properties clusterConf = new Properties();
+    //drivers that keep the metadata in-process (e.g. for benchmarking the
+    //transaction layer without a database) do not need a cluster config file
+    if (configFile == null || configFile.isEmpty()) {
+      return clusterConf;
+    }
     InputStream inStream =
         StorageConnector.class.getClassLoader().getResourceAsStream(configFile);
-    clusterConf.load(inStream);
     if(inStream == null){
-      throw new FileNotFoundException("Unable to load database configuration file");
+      throw new FileNotFoundException("Unable to load database configuration file " + configFile);
+    }
+    try {
+      clusterConf.load(inStream);
+    } finally {
+      inStream.close();
     }
     return clusterConf;
   }
@@ -154,6 +163,10 @@ public static Properties getMetadataClusterConfiguration(Configuration conf)
   //[M]: just for testing purposes
   private static void addToClassPath(String s)
       throws StorageInitializtionException {
+    if (s == null || s.isEmpty()) {
+      //the driver is already on the classpath
+      return;
+    }
     try {
       File f = new File(s);
       URL u = f.toURI().toURL();
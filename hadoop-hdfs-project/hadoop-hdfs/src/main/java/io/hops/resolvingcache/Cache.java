@@ -27,7 +27,9 @@
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import static io.hops.transaction.context.TransactionsStats.ResolvingCacheStat;
 
 public abstract class Cache {
@@ -39,6 +41,19 @@ public abstract class Cache {
   private boolean isStarted;
   private boolean isEnabled;
 
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private volatile InvalidationListener invalidationListener;
+
+  /**
+   * Notified of every path component invalidated because its inode was
+   * removed or renamed by a transaction of this namenode.
+   */
+  public interface InvalidationListener {
+    void invalidated(long parentId, String name);
+  }
+
   protected Cache() {
   }
 
@@ -48,9 +63,11 @@ public static Cache getInstance(Configuration conf) throws IOException {
           DFSConfigKeys.DFS_RESOLVING_CACHE_TYPE_DEFAULT).toLowerCase();
       if(memType.equals("inmemory")){
         instance = new InMemoryCache();
+      }else if(memType.equals("striped")){
+        instance = new StripedCache();
       }else {
         throw new IllegalArgumentException("Cache has only two " +
-            "Memcache implementations, Inode based and Path based: wrong " +
+            "implementations, InMemory and Striped: wrong " +
             "parameter " +
             memType);
       }
@@ -59,6 +76,13 @@ public static Cache getInstance(Configuration conf) throws IOException {
     return instance;
   }
 
+  /**
+   * @return the cache or null if it has not been created yet
+   */
+  public static Cache peekInstance() {
+    return instance;
+  }
+
   public static Cache getInstance() {
     if (instance == null) {
       throw new IllegalStateException("Memcache should have started first " +
@@ -135,6 +159,11 @@ public final long[] get(final String path) throws IOException{
       final long startTime = System.currentTimeMillis();
       long[] result = getInternal(path);
       final long elapsed =  (System.currentTimeMillis() - startTime);
+      if (result == null) {
+        misses.incrementAndGet();
+      } else {
+        hits.incrementAndGet();
+      }
       LOG.trace("GET for path (" + path + ")  got value = " + Arrays.toString
           (result) + " in " + elapsed + " " +
           "msec");
@@ -182,6 +211,35 @@ public final void delete(final INodeIdentifier inode) {
     }
   }
 
+  public final void delete(final long parentId, final String name) {
+    if (isStarted) {
+      deleteInternal(parentId, name);
+    }
+  }
+
+  /**
+   * Invalidate the path components of inodes removed by a transaction and
+   * pass them on to the invalidation listener, if any.
+   */
+  public final void invalidate(final Collection<INode> removed) {
+    if (isStarted) {
+      InvalidationListener listener = invalidationListener;
+      for (INode inode : removed) {
+        if (inode.getLocalName() == null) {
+          continue;
+        }
+        deleteInternal(inode);
+        if (listener != null) {
+          listener.invalidated(inode.getParentId(), inode.getLocalName());
+        }
+      }
+    }
+  }
+
+  public void setInvalidationListener(InvalidationListener listener) {
+    this.invalidationListener = listener;
+  }
+
   public final void flush(){
     if(isStarted){
      flushInternal();
@@ -189,6 +247,38 @@ public final void flush(){
   }
 
 
+  /**
+   * @return number of path lookups that resolved at least one path component
+   * besides the root
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of path lookups that did not resolve any path component
+   * besides the root
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of path components evicted to keep the cache bounded, if
+   * tracked by the implementation
+   */
+  public long getEvictions() {
+    return 0;
+  }
+
+  /**
+   * @return number of cached path components, if tracked by the
+   * implementation
+   */
+  public long getSize() {
+    return 0;
+  }
+
   protected abstract void startInternal() throws IOException;
   protected abstract void stopInternal();
 
@@ -202,6 +292,7 @@ protected abstract void setInternal(final String path, final List<INode>
   protected abstract void deleteInternal(final String path);
   protected abstract void deleteInternal(final INode inode);
   protected abstract void deleteInternal(final INodeIdentifier inode);
+  protected abstract void deleteInternal(final long parentId, final String name);
   protected abstract void flushInternal();
 
   protected abstract int getRoundTrips(String path);
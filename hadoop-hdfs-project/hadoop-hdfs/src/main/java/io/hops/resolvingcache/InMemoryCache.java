@@ -121,6 +121,11 @@ protected void deleteInternal(INodeIdentifier inode) {
     inodeIdCache.remove(inode.getInodeId());
   }
   
+  @Override
+  protected void deleteInternal(long parentId, String name) {
+    pathCache.remove(INode.nameParentKey(parentId, name));
+  }
+
   @Override
   protected void flushInternal() {
     pathCache.clear();
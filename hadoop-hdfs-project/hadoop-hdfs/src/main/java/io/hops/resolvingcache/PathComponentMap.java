@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded map from a path component, i.e. a (parent inode id, name) pair, to
+ * the id of the inode it names.
+ * <p>
+ * Lookups go to a {@link ConcurrentHashMap} and never block. The eviction
+ * policy is W-TinyLFU and is kept per stripe: new entries enter a small LRU
+ * window, and an entry leaving the window is only admitted to the main LRU
+ * region if it has been used more often than the entry it would evict, as
+ * estimated by a count-min sketch. Accesses are recorded in the policy only
+ * if the stripe lock is free, so a busy stripe loses some access history
+ * instead of making readers wait.
+ */
+class PathComponentMap {
+
+  static final long NOT_FOUND = -1;
+
+  private static final int WINDOW_PERCENTAGE = 1;
+
+  private final ConcurrentHashMap<PathComponent, PathComponent> data;
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final AtomicLong evictions = new AtomicLong();
+
+  PathComponentMap(int maximumSize, int numStripes) {
+    if (maximumSize <= 0 || numStripes <= 0) {
+      throw new IllegalArgumentException("maximumSize and numStripes should " +
+          "be positive: " + maximumSize + ", " + numStripes);
+    }
+    int stripeCount = Integer.highestOneBit(numStripes);
+    while (stripeCount > 1 && maximumSize / stripeCount < 2) {
+      stripeCount >>= 1;
+    }
+    this.stripes = new Stripe[stripeCount];
+    this.stripeMask = stripeCount - 1;
+    int perStripe = Math.max(2, maximumSize / stripeCount);
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe(perStripe);
+    }
+    this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16),
+        0.75f, stripeCount);
+  }
+
+  long get(long parentId, String name) {
+    PathComponent probe = new PathComponent(parentId, name);
+    PathComponent found = data.get(probe);
+    Stripe stripe = stripeFor(probe);
+    if (stripe.lock.tryLock()) {
+      try {
+        stripe.sketch.increment(probe.hash);
+        if (found != null) {
+          stripe.touch(found);
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return found == null ? NOT_FOUND : found.inodeId;
+  }
+
+  void put(long parentId, String name, long inodeId) {
+    PathComponent entry = new PathComponent(parentId, name);
+    entry.inodeId = inodeId;
+    Stripe stripe = stripeFor(entry);
+    stripe.lock.lock();
+    try {
+      stripe.sketch.increment(entry.hash);
+      PathComponent existing = data.get(entry);
+      if (existing != null) {
+        existing.inodeId = inodeId;
+        stripe.touch(existing);
+        return;
+      }
+      data.put(entry, entry);
+      stripe.window.put(entry, entry);
+      if (stripe.window.size() > stripe.windowCapacity) {
+        PathComponent candidate = removeEldest(stripe.window);
+        admit(stripe, candidate);
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  void remove(long parentId, String name) {
+    PathComponent probe = new PathComponent(parentId, name);
+    Stripe stripe = stripeFor(probe);
+    stripe.lock.lock();
+    try {
+      if (data.remove(probe) != null) {
+        if (stripe.window.remove(probe) == null) {
+          stripe.main.remove(probe);
+        }
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
+    try {
+      data.clear();
+      for (Stripe stripe : stripes) {
+        stripe.window.clear();
+        stripe.main.clear();
+      }
+    } finally {
+      for (Stripe stripe : stripes) {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  int size() {
+    return data.size();
+  }
+
+  long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Move the candidate evicted from the window to the main region if it is
+   * used more frequently than the least recently used entry of the main
+   * region, otherwise drop it.
+   */
+  private void admit(Stripe stripe, PathComponent candidate) {
+    if (stripe.main.size() < stripe.mainCapacity) {
+      stripe.main.put(candidate, candidate);
+      return;
+    }
+    PathComponent victim = stripe.main.keySet().iterator().next();
+    if (stripe.sketch.frequency(candidate.hash) >
+        stripe.sketch.frequency(victim.hash)) {
+      stripe.main.remove(victim);
+      data.remove(victim);
+      stripe.main.put(candidate, candidate);
+    } else {
+      data.remove(candidate);
+    }
+    evictions.incrementAndGet();
+  }
+
+  private static PathComponent removeEldest(
+      LinkedHashMap<PathComponent, PathComponent> region) {
+    Iterator<PathComponent> it = region.keySet().iterator();
+    PathComponent eldest = it.next();
+    it.remove();
+    return eldest;
+  }
+
+  private Stripe stripeFor(PathComponent component) {
+    int h = component.hash;
+    return stripes[(h ^ (h >>> 16)) & stripeMask];
+  }
+
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<PathComponent, PathComponent> window;
+    private final LinkedHashMap<PathComponent, PathComponent> main;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final FrequencySketch sketch;
+
+    Stripe(int capacity) {
+      this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENTAGE / 100);
+      this.mainCapacity = Math.max(1, capacity - windowCapacity);
+      this.window = new LinkedHashMap<>(16, 0.75f, true);
+      this.main = new LinkedHashMap<>(16, 0.75f, true);
+      this.sketch = new FrequencySketch(capacity);
+    }
+
+    private void touch(PathComponent entry) {
+      // access ordered maps move the entry to the tail on get
+      if (window.get(entry) == null) {
+        main.get(entry);
+      }
+    }
+  }
+
+  private static final class PathComponent {
+    private final long parentId;
+    private final String name;
+    private final int hash;
+    private volatile long inodeId;
+
+    PathComponent(long parentId, String name) {
+      this.parentId = parentId;
+      this.name = name;
+      this.hash = 31 * (int) (parentId ^ (parentId >>> 32)) + name.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PathComponent)) {
+        return false;
+      }
+      PathComponent other = (PathComponent) o;
+      return parentId == other.parentId && name.equals(other.name);
+    }
+  }
+
+  /**
+   * Count-min sketch with four 4-bit counters per entry. All the counters
+   * are halved once the number of increments reaches ten times the capacity
+   * so that the frequencies reflect recent history.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L,
+        0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int capacity) {
+      int length = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+      this.table = new long[length];
+      this.tableMask = length - 1;
+      this.sampleSize = 10 * Math.max(16, capacity);
+    }
+
+    int frequency(int hash) {
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(int hash) {
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++size == sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+      int offset = counter << 2;
+      long mask = 0xfL << offset;
+      if ((table[index] & mask) != mask) {
+        table[index] += 1L << offset;
+        return true;
+      }
+      return false;
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size >>>= 1;
+    }
+
+    private int indexOf(int item, int i) {
+      long hash = (item + SEED[i]) * SEED[i];
+      hash += hash >>> 32;
+      return ((int) hash) & tableMask;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsConstantsClient;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolving cache keyed by (parent inode id, name) path components, backed by
+ * a {@link PathComponentMap}. Lookups do not block each other and the memory
+ * is bounded using W-TinyLFU admission and eviction.
+ * <p>
+ * Since every component is keyed by its parent's inode id, removing the entry
+ * of a renamed or deleted directory makes the whole subtree below it
+ * unreachable through the cache. The now unreachable entries of the subtree
+ * are never hit again and age out of the cache.
+ */
+public class StripedCache extends Cache {
+
+  private PathComponentMap pathCache;
+  //store INodeIdentifier instead of INode to save memory and avoid risk of modifying the INode object by accident
+  private ConcurrentLinkedHashMap<Long, INodeIdentifier> inodeIdCache;
+  private int maximumSize;
+  private int numStripes;
+
+  @Override
+  protected void setConfiguration(Configuration conf) throws IOException {
+    maximumSize = conf.getInt(DFSConfigKeys.DFS_STRIPED_CACHE_MAX_SIZE,
+        DFSConfigKeys.DFS_STRIPED_CACHE_MAX_SIZE_DEFAULT);
+    numStripes = conf.getInt(DFSConfigKeys.DFS_STRIPED_CACHE_STRIPES,
+        DFSConfigKeys.DFS_STRIPED_CACHE_STRIPES_DEFAULT);
+    super.setConfiguration(conf);
+  }
+
+  @Override
+  protected void startInternal() throws IOException {
+    pathCache = new PathComponentMap(maximumSize, numStripes);
+    inodeIdCache = new ConcurrentLinkedHashMap.Builder<Long, INodeIdentifier>()
+        .maximumWeightedCapacity(maximumSize).build();
+  }
+
+  @Override
+  protected void stopInternal() {
+  }
+
+  @Override
+  protected void setInternal(String path, List<INode> inodes) {
+    for (INode inode : inodes) {
+      if (inode != null && inode.getLocalName() != null) {
+        pathCache.put(inode.getParentId(), inode.getLocalName(), inode.getId());
+        inodeIdCache.put(inode.getId(), new INodeIdentifier(inode.getId(), inode.getParentId(), inode.getLocalName(),
+            inode.getPartitionId()));
+      }
+    }
+  }
+
+  @Override
+  protected void setInternal(INode inode) {
+    if (inode != null) {
+      inodeIdCache.put(inode.getId(), new INodeIdentifier(inode.getId(), inode.getParentId(), inode.getLocalName(),
+          inode.getPartitionId()));
+    }
+  }
+
+  @Override
+  protected long[] getInternal(String path) throws IOException {
+    String[] pathComponents = INode.getPathNames(path);
+    long[] inodeIds = new long[pathComponents.length];
+    long parentId = HdfsConstantsClient.GRANDFATHER_INODE_ID;
+    int index = 0;
+    while (index < pathComponents.length) {
+      long inodeId = pathCache.get(parentId, pathComponents[index]);
+      if (inodeId == PathComponentMap.NOT_FOUND) {
+        break;
+      }
+      parentId = inodeId;
+      inodeIds[index] = inodeId;
+      index++;
+    }
+
+    //only the root was found
+    if (index <= 1) {
+      return null;
+    }
+
+    return index == inodeIds.length ? inodeIds : Arrays.copyOf(inodeIds, index);
+  }
+
+  @Override
+  protected INodeIdentifier getInternal(long inodeId) throws IOException {
+    return inodeIdCache.get(inodeId);
+  }
+
+  /**
+   * Invalidate the path and, implicitly, all the paths it is a prefix of.
+   */
+  @Override
+  protected void deleteInternal(String path) {
+    String[] pathComponents = INode.getPathNames(path);
+    long parentId = HdfsConstantsClient.GRANDFATHER_INODE_ID;
+    for (int index = 0; index < pathComponents.length - 1; index++) {
+      parentId = pathCache.get(parentId, pathComponents[index]);
+      if (parentId == PathComponentMap.NOT_FOUND) {
+        // an ancestor is not cached, nothing below it can be resolved
+        return;
+      }
+    }
+    if (pathComponents.length > 0) {
+      pathCache.remove(parentId, pathComponents[pathComponents.length - 1]);
+    }
+  }
+
+  @Override
+  protected void deleteInternal(INode inode) {
+    if (inode.getLocalName() != null) {
+      pathCache.remove(inode.getParentId(), inode.getLocalName());
+    }
+    inodeIdCache.remove(inode.getId());
+  }
+
+  @Override
+  protected void deleteInternal(INodeIdentifier inode) {
+    inodeIdCache.remove(inode.getInodeId());
+  }
+
+  @Override
+  protected void deleteInternal(long parentId, String name) {
+    pathCache.remove(parentId, name);
+  }
+
+  @Override
+  protected void flushInternal() {
+    pathCache.clear();
+    inodeIdCache.clear();
+  }
+
+  @Override
+  protected int getRoundTrips(String path) {
+    return INode.getPathNames(path).length;
+  }
+
+  @Override
+  protected int getRoundTrips(List<INode> inodes) {
+    return inodes.size();
+  }
+
+  @Override
+  public long getEvictions() {
+    return pathCache == null ? 0 : pathCache.getEvictions();
+  }
+
+  @Override
+  public long getSize() {
+    return pathCache == null ? 0 : pathCache.size();
+  }
+}
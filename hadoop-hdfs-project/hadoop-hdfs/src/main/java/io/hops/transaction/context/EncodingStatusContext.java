@@ -17,6 +17,8 @@
  */
 package io.hops.transaction.context;
 
+import io.hops.erasure_coding.ErasureCodingManager;
+import io.hops.erasure_coding.ErasureCodingWorkQueue;
 import io.hops.exception.StorageCallPreventedException;
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
@@ -134,6 +136,13 @@ public void prepare(TransactionLocks tlm)
     for (EncodingStatus status : getRemoved()) {
       dataAccess.delete(status);
     }
+
+    ErasureCodingWorkQueue workQueue = ErasureCodingManager.getWorkQueue();
+    if (workQueue != null) {
+      List<EncodingStatus> written = new ArrayList<>(getAdded());
+      written.addAll(getModified());
+      workQueue.stage(written);
+    }
   }
 
   @Override
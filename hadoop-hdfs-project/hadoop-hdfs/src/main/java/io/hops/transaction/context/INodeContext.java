@@ -25,6 +25,7 @@
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.resolvingcache.Cache;
 import io.hops.transaction.lock.BaseINodeLock;
 import io.hops.transaction.lock.Lock;
 import io.hops.transaction.lock.TransactionLockTypes;
@@ -173,6 +174,12 @@ public void prepare(TransactionLocks lks)
     }
     
     dataAccess.prepare(removed, added, modified);
+
+    // removed also holds the old identity of renamed inodes
+    Cache cache = Cache.peekInstance();
+    if (cache != null && !removed.isEmpty()) {
+      cache.invalidate(removed);
+    }
   }
 
   @Override
@@ -20,6 +20,8 @@
 import io.hops.metadata.hdfs.dal.MetadataLogDataAccess;
 import io.hops.metadata.hdfs.entity.MetadataLogEntry;
 import io.hops.transaction.lock.TransactionLocks;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.MetadataLogFeed;
 
 public class MetadataLogContext
     extends BaseEntityContext<MetadataLogContext.Key, MetadataLogEntry> {
@@ -92,6 +94,10 @@ Key getKey(MetadataLogEntry metadataLogEntry) {
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
     dataAccess.addAll(getAdded());
+    MetadataLogFeed feed = FSNamesystem.getMetadataLogFeed();
+    if (feed != null) {
+      feed.stage(getAdded());
+    }
   }
 
 }
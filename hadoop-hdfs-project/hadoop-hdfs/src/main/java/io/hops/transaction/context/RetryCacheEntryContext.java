@@ -25,6 +25,7 @@
 import io.hops.metadata.hdfs.entity.RetryCacheEntry;
 import io.hops.metadata.hdfs.entity.RetryCacheEntry.PrimaryKey;
 import io.hops.transaction.lock.TransactionLocks;
+import org.apache.hadoop.hdfs.server.namenode.LightWeightCacheDistributed;
 
 public class RetryCacheEntryContext extends BaseEntityContext<PrimaryKey, RetryCacheEntry> {
   private RetryCacheEntryDataAccess dataAccess;
@@ -69,6 +70,7 @@ private RetryCacheEntry findByPrimaryKey(RetryCacheEntry.Finder hbFinder, Object
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
     dataAccess.prepare(getRemoved(),getModified());
+    LightWeightCacheDistributed.stage(getModified());
   }
   
   @Override
@@ -49,6 +49,7 @@ public enum HDFSOperationType implements OperationType {
   GET_FILE_INFO,
   IS_FILE_CLOSED,
   MKDIRS,
+  BATCH_MKDIRS,
   GET_CONTENT_SUMMARY,
   SET_QUOTA,
   FSYNC,
@@ -102,6 +103,7 @@ public enum HDFSOperationType implements OperationType {
   GET_ALL_BLOCKS_SIZE,
   REPLICATION_MONITOR,
   COMPUTE_REPLICATION_WORK_FOR_BLOCK,
+  COMPUTE_REPLICATION_WORK_FOR_BLOCKS,
   PROCESS_QUEUED_REPORT,
   PROCESS_TIMEDOUT_PENDING_BLOCK,
   GET_VALID_BLK_LOCS,
@@ -20,6 +20,9 @@
 import io.hops.transaction.lock.TransactionLockAcquirer;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
 
@@ -46,7 +49,21 @@ protected TransactionLockAcquirer newLockAcquirer() {
   
   @Override
   protected Object execute(final Object namesystem) throws IOException {
+    final long start = Time.monotonicNow();
+    PostCommitHooks.begin();
+    try {
+      return executeTransaction(namesystem);
+    } finally {
+      PostCommitHooks.end();
+      NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.addTransaction(Time.monotonicNow() - start);
+      }
+    }
+  }
 
+  private Object executeTransaction(final Object namesystem)
+      throws IOException {
     return super.execute(new TransactionInfo() {
       @Override
       public String getContextName(OperationType opType) {
@@ -60,6 +77,7 @@ public String getContextName(OperationType opType) {
 
       @Override
       public void performPostTransactionAction() throws IOException {
+        PostCommitHooks.runAll();
         if (namesystem != null && namesystem instanceof FSNamesystem) {
           ((FSNamesystem) namesystem).performPendingSafeModeOperation();
         }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.handler;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actions to run once the transaction of the current thread has committed.
+ * <p>
+ * The transaction contexts register them when the transaction is prepared,
+ * so that what a transaction wrote is only made visible in memory once it is
+ * in the database. Each action is registered under a key, the prepare of a
+ * retried commit replaces the action registered by the previous attempt.
+ * The actions are dropped if the transaction does not commit.
+ * <p>
+ * The transactions are delimited by {@link #begin()} and {@link #end()}, so
+ * that code that may run outside of a transaction can use
+ * {@link #runAfterCommit(Object, Runnable)}.
+ */
+public final class PostCommitHooks {
+  private static final Log LOG = LogFactory.getLog(PostCommitHooks.class);
+
+  private static final ThreadLocal<Map<Object, Runnable>> hooks =
+      new ThreadLocal<Map<Object, Runnable>>() {
+        @Override
+        protected Map<Object, Runnable> initialValue() {
+          return new LinkedHashMap<>();
+        }
+      };
+  private static final ThreadLocal<Boolean> inTransaction =
+      new ThreadLocal<>();
+
+  private PostCommitHooks() {
+  }
+
+  /**
+   * Run the action once the transaction being committed by the current
+   * thread has committed, replacing the action registered under the same
+   * key.
+   */
+  public static void register(Object key, Runnable action) {
+    hooks.get().put(key, action);
+  }
+
+  /**
+   * Run the action once the transaction of the current thread has
+   * committed, replacing the action registered under the same key, or now
+   * if the current thread is not running a transaction.
+   */
+  public static void runAfterCommit(Object key, Runnable action) {
+    if (inTransaction.get() != null) {
+      register(key, action);
+    } else {
+      action.run();
+    }
+  }
+
+  /**
+   * Drop the action registered under the key for the transaction being
+   * committed by the current thread.
+   */
+  public static void unregister(Object key) {
+    hooks.get().remove(key);
+  }
+
+  /**
+   * Drop the actions of the current thread.
+   */
+  public static void clear() {
+    hooks.remove();
+  }
+
+  /**
+   * Start a transaction on the current thread, dropping the actions left by
+   * the previous one.
+   */
+  public static void begin() {
+    hooks.remove();
+    inTransaction.set(Boolean.TRUE);
+  }
+
+  /**
+   * End the transaction of the current thread, dropping the actions that
+   * were not run.
+   */
+  public static void end() {
+    hooks.remove();
+    inTransaction.remove();
+  }
+
+  /**
+   * Run the actions registered by the transaction that was just committed by
+   * the current thread, in the order they were registered. The transaction
+   * is committed, so a failing action does not prevent the others from
+   * running.
+   */
+  public static void runAll() {
+    Map<Object, Runnable> registered = hooks.get();
+    if (registered.isEmpty()) {
+      return;
+    }
+    List<Runnable> actions = new ArrayList<>(registered.values());
+    hooks.remove();
+    for (Runnable action : actions) {
+      try {
+        action.run();
+      } catch (RuntimeException e) {
+        LOG.warn("Post commit action failed", e);
+      }
+    }
+  }
+}
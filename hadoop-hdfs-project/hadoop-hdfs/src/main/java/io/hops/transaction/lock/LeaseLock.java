@@ -34,6 +34,7 @@ public final class LeaseLock extends Lock {
 
   private final TransactionLockTypes.LockType lockType;
   private final String leaseHolder;
+  private final Collection<String> leaseHolders;
   private final List<Lease> leases;
   private final String singleFileLock;
   private final LeaseHolderResolveType resolveType;
@@ -43,6 +44,7 @@ public final class LeaseLock extends Lock {
             String leaseHolder, String singleFileLock, int leaseCreationLockRows ) {
     this.lockType = lockType;
     this.leaseHolder = leaseHolder;
+    this.leaseHolders = Collections.emptyList();
     this.leases = new ArrayList<>();
     this.resolveType = resolveType;
     this.singleFileLock = singleFileLock;
@@ -58,6 +60,20 @@ public final class LeaseLock extends Lock {
     this(lockType, LeaseHolderResolveType.ALL_PATHS, null, null, leaseCreationLockRows);
   }
 
+  LeaseLock(TransactionLockTypes.LockType lockType, Collection<String> leaseHolders,
+            int leaseCreationLockRows) {
+    if (leaseHolders.isEmpty()) {
+      throw new IllegalArgumentException("Please specify the lease holders to lock");
+    }
+    this.lockType = lockType;
+    this.leaseHolder = null;
+    this.leaseHolders = leaseHolders;
+    this.leases = new ArrayList<>();
+    this.resolveType = LeaseHolderResolveType.ALL_PATHS;
+    this.singleFileLock = null;
+    this.LEASE_CREATION_LOCK_ROWS = leaseCreationLockRows;
+  }
+
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
     setLockMode(lockType);
@@ -66,6 +82,7 @@ protected void acquire(TransactionLocks locks) throws IOException {
     if (leaseHolder != null) {
       hldrs.add(leaseHolder);
     }
+    hldrs.addAll(leaseHolders);
 
     if (locks.containsLock(Type.INode)) {
       BaseINodeLock inodeLock = (BaseINodeLock) locks.getLock(Type.INode);
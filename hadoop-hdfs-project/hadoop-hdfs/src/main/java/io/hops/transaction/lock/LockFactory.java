@@ -160,6 +160,14 @@ public Lock getIndividualBlockLock(long blockId, INodeIdentifier inode) {
     return new IndividualBlockLock(blockId, inode);
   }
 
+  /**
+   * Lock blocks of several files, unlike {@link #getBlockReportingLocks} the
+   * blocks do not come from the report of a storage.
+   */
+  public Lock getBatchedBlocksLock(long[] blockIds, long[] inodeIds) {
+    return new BatchedBlockLock(blockIds, inodeIds, null);
+  }
+
   public Lock getBatchedINodesLock(List<INodeIdentifier> inodeIdentifiers) {
     return new BatchedINodeLock(inodeIdentifiers);
   }
@@ -227,6 +235,11 @@ public Lock getLeaseLockAllPaths(TransactionLockTypes.LockType lockType, int lea
     return new LeaseLock(lockType, leaseCreationLockRows);
   }
 
+  public Lock getLeaseLockAllPaths(TransactionLockTypes.LockType lockType,
+                                   Collection<String> leaseHolders, int leaseCreationLockRows) {
+    return new LeaseLock(lockType, leaseHolders, leaseCreationLockRows);
+  }
+
   public Lock getLeaseLockAllSystemPathsTesting(TransactionLockTypes.LockType lockType,
                                     int leaseCreationLockRows) {
     return new LeaseLock(lockType, TransactionLockTypes.LeaseHolderResolveType.ALL_SYSTEM_PATHS_FOR_TESTSING, null,
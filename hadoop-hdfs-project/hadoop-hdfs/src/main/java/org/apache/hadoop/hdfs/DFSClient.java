@@ -48,10 +48,12 @@
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -118,6 +120,8 @@
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEvent;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
@@ -2412,6 +2416,120 @@ public boolean primitiveMkdir(String src, FsPermission absPermission,
     }
   }
 
+  /**
+   * Create several directories with the given permission. Directories
+   * sharing a parent are created in a single namenode transaction.
+   *
+   * @param srcs The paths of the directories being created
+   * @param permission The permission of the directories being created.
+   * If permission == null, use {@link FsPermission#getDirDefault()}.
+   * @param createParent create missing parent directories if true
+   *
+   * @return the paths that could not be created mapped to the reason
+   *
+   * @see ClientProtocol#batchMkdirs(List, FsPermission, boolean)
+   */
+  public Map<String, IOException> batchMkdirs(List<String> srcs,
+      FsPermission permission, boolean createParent) throws IOException {
+    checkOpen();
+    final FsPermission masked = applyUMaskDir(permission);
+    if(LOG.isDebugEnabled()) {
+      LOG.debug("batchMkdirs: " + srcs.size() + " directories, masked=" + masked);
+    }
+    try (TraceScope ignored = tracer.newScope("batchMkdirs")) {
+      Map<String, IOException> failed = namenode.batchMkdirs(srcs, masked,
+          createParent);
+      for (Map.Entry<String, IOException> entry : failed.entrySet()) {
+        if (entry.getValue() instanceof RemoteException) {
+          entry.setValue(((RemoteException) entry.getValue())
+              .unwrapRemoteException(AccessControlException.class,
+                  InvalidPathException.class,
+                  FileAlreadyExistsException.class,
+                  FileNotFoundException.class,
+                  ParentNotDirectoryException.class,
+                  SafeModeException.class,
+                  NSQuotaExceededException.class,
+                  DSQuotaExceededException.class,
+                  QuotaByStorageTypeExceededException.class,
+                  UnresolvedPathException.class));
+        }
+      }
+      return failed;
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     SafeModeException.class);
+    }
+  }
+
+  /**
+   * Get the metadata log events committed after the position of the cursor
+   * by every active namenode, and advance the cursor past them. The events
+   * of a namenode are in commit order, the events of different namenodes
+   * are not ordered.
+   *
+   * @param cursor the position of the client, advanced by the call
+   * @param pathPrefix only return the events of inodes below this path, or
+   * null to return all events
+   * @param maxEvents the maximum number of events to return
+   * @param waitTime time in milliseconds to wait for events if there are none
+   *
+   * @see ClientProtocol#getMetadataLogEvents(long[], long[], int, long, String)
+   */
+  public List<MetadataLogEvent> getMetadataLogEvents(MetadataLogCursor cursor,
+      String pathPrefix, int maxEvents, long waitTime) throws IOException {
+    checkOpen();
+    Preconditions.checkArgument(maxEvents > 0, "maxEvents must be positive");
+    List<ClientProtocol> nns = allNNs.isEmpty() ?
+        Collections.singletonList(namenode) : allNNs;
+    try (TraceScope ignored = tracer.newScope("getMetadataLogEvents")) {
+      List<MetadataLogEvent> events = getMetadataLogEvents(nns, cursor,
+          pathPrefix, maxEvents, 0);
+      if (events.isEmpty() && waitTime > 0) {
+        // long poll each namenode in turn for its share of the wait
+        events = getMetadataLogEvents(nns, cursor, pathPrefix, maxEvents,
+            Math.max(1, waitTime / nns.size()));
+      }
+      return events;
+    }
+  }
+
+  private List<MetadataLogEvent> getMetadataLogEvents(List<ClientProtocol> nns,
+      MetadataLogCursor cursor, String pathPrefix, int maxEvents,
+      long waitTime) throws IOException {
+    List<MetadataLogEvent> events = new ArrayList<>();
+    Set<Long> servedFeeds = new HashSet<>();
+    boolean allServed = true;
+    IOException lastException = null;
+    for (ClientProtocol nn : nns) {
+      if (events.size() >= maxEvents) {
+        allServed = false;
+        break;
+      }
+      try {
+        MetadataLogEventBatch batch = nn.getMetadataLogEvents(
+            cursor.getFeedIds(), cursor.getSequences(),
+            maxEvents - events.size(), waitTime, pathPrefix);
+        servedFeeds.add(batch.getFeedId());
+        cursor.advance(batch.getFeedId(), batch.getLastSequence(),
+            batch.isMissed());
+        events.addAll(batch.getEvents());
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class);
+      } catch (IOException e) {
+        LOG.warn("Could not get the metadata log events of a namenode", e);
+        allServed = false;
+        lastException = e;
+      }
+    }
+    if (servedFeeds.isEmpty() && lastException != null) {
+      throw lastException;
+    }
+    if (allServed) {
+      cursor.retainFeeds(servedFeeds);
+    }
+    return events;
+  }
+
   /**
    * Get {@link ContentSummary} rooted at the specified directory.
    * @param src The string representation of the path
@@ -3076,18 +3194,6 @@ public void addUserToGroup(String userName, String groupName) throws IOException
     }catch (RemoteException re){
       throw re.unwrapRemoteException();
     }
-
-    if(userName != null && groupName != null){
-      for(ClientProtocol nn : allNNs) {
-        try{
-          if(!proxyEquals(nn,namenode)) {
-            nn.invCachesUserAddedToGroup(userName, groupName);
-          }
-        }catch (RemoteException re){
-          throw re.unwrapRemoteException();
-        }
-      }
-    }
   }
 
   public void removeUser(String userName) throws IOException{
@@ -3096,18 +3202,6 @@ public void removeUser(String userName) throws IOException{
     }catch (RemoteException re){
       throw re.unwrapRemoteException();
     }
-
-    if(userName != null){
-      for(ClientProtocol nn : allNNs) {
-        try{
-          if(!proxyEquals(nn,namenode)) {
-            nn.invCachesUserRemoved(userName);
-          }
-        }catch (RemoteException re){
-          throw re.unwrapRemoteException();
-        }
-      }
-    }
   }
 
   public void removeGroup(String groupName) throws IOException{
@@ -3116,18 +3210,6 @@ public void removeGroup(String groupName) throws IOException{
     }catch (RemoteException re){
       throw re.unwrapRemoteException();
     }
-
-    if(groupName != null){
-      for(ClientProtocol nn : allNNs) {
-        try{
-          if(!proxyEquals(nn,namenode)) {
-            nn.invCachesGroupRemoved(groupName);
-          }
-        }catch (RemoteException re){
-          throw re.unwrapRemoteException();
-        }
-      }
-    }
   }
 
   public void removeUserFromGroup(String userName, String groupName) throws IOException{
@@ -3136,18 +3218,6 @@ public void removeUserFromGroup(String userName, String groupName) throws IOExce
     }catch (RemoteException re){
       throw re.unwrapRemoteException();
     }
-
-    if(userName != null && groupName != null){
-      for(ClientProtocol nn : allNNs) {
-        try{
-          if(!proxyEquals(nn,namenode)) {
-            nn.invCachesUserRemovedFromGroup(userName, groupName);
-          }
-        }catch (RemoteException re){
-          throw re.unwrapRemoteException();
-        }
-      }
-    }
   }
 
   @VisibleForTesting
@@ -48,6 +48,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_NAMENODE_QUOTA_UPDATE_INTERVAL_DEFAULT = 1000;
   public static final String DFS_NAMENODE_QUOTA_UPDATE_LIMIT_KEY = "dfs.namenode.quota.update.limit";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT = 5000;
+  // number of inodes whose quota updates are applied in parallel
+  public static final String DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY = "dfs.namenode.quota.update.threads";
+  public static final int DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT = 8;
+  // how long the content counts of a directory may be served, 0 to disable
+  public static final String DFS_NAMENODE_CONTENT_SUMMARY_CACHE_STALENESS_KEY = "dfs.namenode.content.summary.cache.staleness";
+  public static final long DFS_NAMENODE_CONTENT_SUMMARY_CACHE_STALENESS_DEFAULT = 0; // ms
+  public static final String DFS_NAMENODE_CONTENT_SUMMARY_CACHE_SIZE_KEY = "dfs.namenode.content.summary.cache.size";
+  public static final int DFS_NAMENODE_CONTENT_SUMMARY_CACHE_SIZE_DEFAULT = 10000;
+  // number of committed metadata log entries kept for the clients, 0 to disable
+  public static final String DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_KEY = "dfs.namenode.metadata.log.feed.capacity";
+  public static final int DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_DEFAULT = 0;
+  public static final String DFS_NAMENODE_METADATA_LOG_FEED_MAX_EVENTS_PER_RPC_KEY = "dfs.namenode.metadata.log.feed.max.events.per.rpc";
+  public static final int DFS_NAMENODE_METADATA_LOG_FEED_MAX_EVENTS_PER_RPC_DEFAULT = 10000;
+  public static final String DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_KEY = "dfs.namenode.metadata.log.feed.max.wait";
+  public static final long DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_DEFAULT = 200; // ms
   public static final String DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZE = "dfs.namenode.quota.update.id.batchsize";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZ_DEFAULT = 100000;
   public static final String DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD = "dfs.namenode.quota.update.updateThreshold";
@@ -68,8 +83,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final float DFS_NAMENODE_CACHE_DIRECTIVE_ID_UPDATE_THRESHOLD_DEFAULT = (float) 0.5;
   public static final String DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS = "dfs.namenode.id.updateThreshold";
   public static final int DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS_DEFAULT = 1000;
+  // number of ids a handler thread takes at once from the shared ids queues
+  public static final String DFS_NAMENODE_IDS_SLICE_SIZE = "dfs.namenode.ids.slice.size";
+  public static final int DFS_NAMENODE_IDS_SLICE_SIZE_DEFAULT = 16;
   public static final String DFS_NAMENODE_SLICER_BATCH_SIZE = "dfs.namenode.slicer.batchsize";
   public static final int DFS_NAMENODE_SLICER_BATCH_SIZE_DEFAULT = 500;
+  // number of under replicated blocks handled per replication work transaction
+  public static final String DFS_NAMENODE_REPLICATION_WORK_BATCH_SIZE = "dfs.namenode.replication.work.batchsize";
+  public static final int DFS_NAMENODE_REPLICATION_WORK_BATCH_SIZE_DEFAULT = 100;
   public static final String DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS = "dfs.namenode.misreplicated.noofbatches";
   public static final int DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS_DEFAULT = 100;
   public static final String DFS_NAMENODE_SLICER_NB_OF_THREADS = "dfs.namenode.slicer.nbofthreads";
@@ -84,6 +105,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_TRANSACTION_STATS_WRITER_ROUND_DEFAULT = 120;
   public static final String  DFS_DIR_DELETE_BATCH_SIZE= "dfs.dir.delete.batch.size";
   public static final int DFS_DIR_DELETE_BATCH_SIZE_DEFAULT = 50;
+  public static final String DFS_NAMENODE_BATCH_MKDIRS_SIZE_KEY = "dfs.namenode.batch.mkdirs.size";
+  public static final int DFS_NAMENODE_BATCH_MKDIRS_SIZE_DEFAULT = 1000;
 
   /*for client failover api*/
   // format {ip:port, ip:port, ip:port} comma separated
@@ -113,11 +136,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String DFS_RESOLVING_CACHE_TYPE = "dfs.resolvingcache.type";
 
-  //INode, Path, InMemory, Optimal
+  //InMemory, Striped
   public static final String DFS_RESOLVING_CACHE_TYPE_DEFAULT = "InMemory";
 
   public static final String DFS_INMEMORY_CACHE_MAX_SIZE = "dfs.resolvingcache.inmemory.maxsize";
   public static final int DFS_INMEMORY_CACHE_MAX_SIZE_DEFAULT = 100000;
+
+  public static final String DFS_STRIPED_CACHE_MAX_SIZE = "dfs.resolvingcache.striped.maxsize";
+  public static final int DFS_STRIPED_CACHE_MAX_SIZE_DEFAULT = 100000;
+
+  public static final String DFS_STRIPED_CACHE_STRIPES = "dfs.resolvingcache.striped.stripes";
+  public static final int DFS_STRIPED_CACHE_STRIPES_DEFAULT = 64;
+
+  public static final String DFS_RESOLVING_CACHE_INVALIDATION_ENABLED = "dfs.resolvingcache.invalidation.enabled";
+  public static final boolean DFS_RESOLVING_CACHE_INVALIDATION_ENABLED_DEFAULT = false;
+
+  public static final String DFS_RESOLVING_CACHE_INVALIDATION_INTERVAL = "dfs.resolvingcache.invalidation.interval";
+  public static final int DFS_RESOLVING_CACHE_INVALIDATION_INTERVAL_DEFAULT = 100; // ms
+
+  public static final String DFS_RESOLVING_CACHE_INVALIDATION_BATCH_SIZE = "dfs.resolvingcache.invalidation.batchsize";
+  public static final int DFS_RESOLVING_CACHE_INVALIDATION_BATCH_SIZE_DEFAULT = 10000;
   
   public static final String DFS_NDC_ENABLED_KEY = "dfs.ndc.enable";
   public static final boolean DFS_NDC_ENABLED_DEFAULT = false;
@@ -160,6 +198,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DEFAULT_PARITY_REPAIR_DELAY = 30 * 60 * 1000;
   public static final String DELETION_LIMIT_KEY = "dfs.erasure_coding.deletion_limit";
   public static final int DEFAULT_DELETION_LIMIT = 100;
+  // the leader rescans the encoding statuses to pick up the work of
+  // namenodes that failed before doing it when the active namenodes change,
+  // and at least this often
+  public static final String FULL_SCAN_INTERVAL_KEY = "dfs.erasure_coding.full_scan_interval";
+  public static final long DEFAULT_FULL_SCAN_INTERVAL = 60 * 60 * 1000;
+  // how many times an encoding that could not be started is retried
+  public static final String ENCODING_RETRIES_KEY = "dfs.erasure_coding.encoding_retries";
+  public static final int DEFAULT_ENCODING_RETRIES = 3;
 
   public static final String DFS_BR_LB_MAX_CONCURRENT_BR_PER_NN = "dfs.block.report.load.balancer.max.concurrent.block.reports.per.nn";
   public static final long DFS_BR_LB_MAX_CONCURRENT_BR_PER_NN_DEFAULT = 1;
@@ -178,8 +224,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DB_FILE_MAX_SIZE_KEY = "dfs.db.file.max.size";
   public static final int DFS_DB_FILE_MAX_SIZE_DEFAULT = 64 * 1024;
 
+  // bytes of small file data cached off heap by the namenode and the
+  // datanode, the caches are disabled by default
+  public static final String DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_KEY = "dfs.namenode.small.file.cache.size";
+  public static final long DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_DEFAULT = 0;
+  public static final String DFS_DATANODE_SMALL_FILE_CACHE_SIZE_KEY = "dfs.datanode.small.file.cache.size";
+  public static final long DFS_DATANODE_SMALL_FILE_CACHE_SIZE_DEFAULT = 0;
+  // the datanode entries are validated by the generation stamp of the block
+  // of the file, its modification time, the expiry is an additional bound
+  public static final String DFS_DATANODE_SMALL_FILE_CACHE_EXPIRY_KEY = "dfs.datanode.small.file.cache.expiry.ms";
+  public static final long DFS_DATANODE_SMALL_FILE_CACHE_EXPIRY_DEFAULT = 0;
+
   public static final String DFS_LEASE_CREATION_LOCKS_COUNT_KEY = "dfs.lease.creation.locks.count.key";
   public static final int DFS_LEASE_CREATION_LOCKS_COUNT_DEFAULT = 1000;
+  // how often queued lease renewals are written, 0 to write every renewal
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY = "dfs.namenode.lease.renewal.flush.interval";
+  public static final long DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT = 0; // ms
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_BATCH_SIZE_KEY = "dfs.namenode.lease.renewal.batchsize";
+  public static final int DFS_NAMENODE_LEASE_RENEWAL_BATCH_SIZE_DEFAULT = 500;
+  public static final String DFS_NAMENODE_LEASE_RECOVERY_BATCH_SIZE_KEY = "dfs.namenode.lease.recovery.batchsize";
+  public static final int DFS_NAMENODE_LEASE_RECOVERY_BATCH_SIZE_DEFAULT = 10;
 
   public static final String  DFS_BLOCK_SIZE_KEY =
       HdfsClientConfigKeys.DFS_BLOCK_SIZE_KEY;
@@ -464,6 +528,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_HTTP_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_DATANODE_HTTP_DEFAULT_PORT;
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY = "dfs.datanode.max.transfer.threads";
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_KEY = "dfs.datanode.transfer.dispatcher.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_TRANSFER_DISPATCHER_THREADS_KEY = "dfs.datanode.transfer.dispatcher.threads";
+  public static final int     DFS_DATANODE_TRANSFER_DISPATCHER_THREADS_DEFAULT = DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT;
+  public static final String  DFS_DATANODE_TRANSFER_DISPATCHER_QUEUE_SIZE_KEY = "dfs.datanode.transfer.dispatcher.queue.size";
+  public static final int     DFS_DATANODE_TRANSFER_DISPATCHER_QUEUE_SIZE_DEFAULT = 1024;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 0;
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -611,6 +681,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // Hash bucket config
   public static final String DFS_NUM_BUCKETS_KEY = "dfs.blockreport.numbuckets";
   public static final int    DFS_NUM_BUCKETS_DEFAULT = 1000;
+  // number of bucket hashes combined into a top level digest, 1 disables digests
+  public static final String DFS_BLOCKREPORT_BUCKETS_PER_DIGEST_KEY = "dfs.blockreport.buckets.per.digest";
+  public static final int    DFS_BLOCKREPORT_BUCKETS_PER_DIGEST_DEFAULT = 1;
   
   public static final String DFS_BLOCK_FETCHER_NB_THREADS = "dfs.block.fetcher.nb.threads";
   public static final int    DFS_BLOCK_FETCHER_NB_THREADS_DEFAULT = 10;
@@ -627,6 +700,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long   DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT = 600000; // 10 minutes
   public static final String DFS_NAMENODE_RETRY_CACHE_DELETE_BATCH_SIZE_KEY = "dfs.namenode.retrycache.delete.batch.size";
   public static final int    DFS_NAMENODE_RETRY_CACHE_DELETE_BATCH_SIZE_DEFAULT = 5000;
+  // successful outcomes kept in memory by each namenode, 0 to disable
+  public static final String DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_KEY = "dfs.namenode.retrycache.local.max.entries";
+  public static final int    DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_DEFAULT = 100000;
 
   // Hidden configuration undocumented in hdfs-site. xml
   // Timeout to wait for block receiver and responder thread to stop
@@ -85,6 +85,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -1096,6 +1097,62 @@ public boolean mkdirs(Path f, FsPermission permission) throws IOException {
     return mkdirsInternal(f, permission, true);
   }
 
+  /**
+   * Create several directories and their parent directories. Directories
+   * sharing a parent are created in a single namenode transaction. Symbolic
+   * links in the paths are not resolved.
+   *
+   * See {@link FsPermission#applyUMask(FsPermission)} for details of how
+   * the permission is applied.
+   *
+   * @param paths       The paths to create
+   * @param permission  The permission of the created directories.
+   * @return the paths that could not be created mapped to the reason. An
+   *         empty map if all the directories were created.
+   */
+  public Map<Path, IOException> batchMkdirs(List<Path> paths,
+      FsPermission permission) throws IOException {
+    statistics.incrementWriteOps(1);
+    Map<String, Path> srcs = new LinkedHashMap<>();
+    for (Path path : paths) {
+      srcs.put(getPathName(fixRelativePart(path)), path);
+    }
+    Map<String, IOException> failed = dfs.batchMkdirs(
+        new ArrayList<>(srcs.keySet()), permission, true);
+    Map<Path, IOException> result = new LinkedHashMap<>();
+    for (Map.Entry<String, IOException> entry : failed.entrySet()) {
+      Path path = srcs.get(entry.getKey());
+      result.put(path != null ? path : new Path(entry.getKey()), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Tail the metadata log. Returns up to maxEvents of the metadata log
+   * events committed by the namenodes after the position of the cursor, and
+   * advances the cursor past them. If there are no events, waits for up to
+   * waitTime milliseconds for new ones. The cursor can be saved after the
+   * events are processed to resume from there. Requires superuser privilege
+   * and dfs.namenode.metadata.log.feed.capacity to be set on the namenodes.
+   *
+   * @param cursor     The position in the metadata log, advanced by the call
+   * @param pathPrefix Only return the events of inodes below this path, or
+   *                   null for all events. The events returned for a prefix
+   *                   carry their path.
+   * @param maxEvents  The maximum number of events to return
+   * @param waitTime   How long to wait for new events, capped by
+   *                   dfs.namenode.metadata.log.feed.max.wait on the
+   *                   namenodes, callers should poll again on an empty result
+   * @return the events, empty if there were none
+   */
+  public List<MetadataLogEvent> getMetadataLogEvents(MetadataLogCursor cursor,
+      Path pathPrefix, int maxEvents, long waitTime) throws IOException {
+    statistics.incrementReadOps(1);
+    String prefix = pathPrefix == null ? null :
+        getPathName(fixRelativePart(pathPrefix));
+    return dfs.getMetadataLogEvents(cursor, prefix, maxEvents, waitTime);
+  }
+
   private boolean mkdirsInternal(Path f, final FsPermission permission,
       final boolean createParent) throws IOException {
     statistics.incrementWriteOps(1);
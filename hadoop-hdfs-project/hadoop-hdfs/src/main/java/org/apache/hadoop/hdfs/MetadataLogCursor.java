@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Position of a client in the metadata log feeds of the namenodes.
+ * <p>
+ * Every namenode serves the metadata log entries it committed since it
+ * started, so the cursor keeps the last sequence read from the feed of each
+ * namenode. The cursor can be saved with {@link #toString()} and restored
+ * with {@link #valueOf(String)} to resume tailing the metadata log.
+ * <p>
+ * The namenodes only keep a bounded number of events and lose them when
+ * they restart. {@link #isMissed()} tells that the reader fell behind or that
+ * a namenode it was reading from restarted, and that the events it got are
+ * not complete.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class MetadataLogCursor {
+
+  private final TreeMap<Long, Long> sequences = new TreeMap<>();
+  private boolean missed = false;
+
+  public MetadataLogCursor() {
+  }
+
+  /**
+   * @return the cursor saved with {@link #toString()}
+   */
+  public static MetadataLogCursor valueOf(String saved) {
+    MetadataLogCursor cursor = new MetadataLogCursor();
+    if (saved == null || saved.isEmpty()) {
+      return cursor;
+    }
+    for (String position : saved.split(",")) {
+      int separator = position.indexOf(':');
+      if (separator < 0) {
+        throw new IllegalArgumentException("Invalid metadata log cursor " +
+            saved);
+      }
+      cursor.sequences.put(Long.parseLong(position.substring(0, separator)),
+          Long.parseLong(position.substring(separator + 1)));
+    }
+    return cursor;
+  }
+
+  synchronized long[] getFeedIds() {
+    long[] feedIds = new long[sequences.size()];
+    int i = 0;
+    for (long feedId : sequences.keySet()) {
+      feedIds[i++] = feedId;
+    }
+    return feedIds;
+  }
+
+  synchronized long[] getSequences() {
+    long[] result = new long[sequences.size()];
+    int i = 0;
+    for (long sequence : sequences.values()) {
+      result[i++] = sequence;
+    }
+    return result;
+  }
+
+  synchronized void advance(long feedId, long sequence, boolean missed) {
+    sequences.put(feedId, sequence);
+    this.missed |= missed;
+  }
+
+  /**
+   * Forget the feeds no namenode serves anymore, their namenodes restarted
+   * and the events they did not return yet are lost.
+   */
+  synchronized void retainFeeds(Set<Long> feedIds) {
+    Iterator<Map.Entry<Long, Long>> it = sequences.entrySet().iterator();
+    while (it.hasNext()) {
+      if (!feedIds.contains(it.next().getKey())) {
+        it.remove();
+        missed = true;
+      }
+    }
+  }
+
+  /**
+   * @return true if events were lost since the cursor was created or last
+   * cleared
+   */
+  public synchronized boolean isMissed() {
+    return missed;
+  }
+
+  public synchronized void clearMissed() {
+    missed = false;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<Long, Long> entry : sequences.entrySet()) {
+      if (builder.length() > 0) {
+        builder.append(',');
+      }
+      builder.append(entry.getKey()).append(':').append(entry.getValue());
+    }
+    return builder.toString();
+  }
+}
@@ -65,6 +65,7 @@
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import org.apache.hadoop.fs.CacheFlag;
 import org.apache.hadoop.io.retry.AtMostOnce;
 
@@ -828,6 +829,28 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
       ParentNotDirectoryException, SafeModeException, UnresolvedLinkException,
       IOException;
 
+  /**
+   * Create several directories with the same permission. Directories sharing
+   * a parent are created in a single transaction on the namenode.
+   *
+   * @param srcs
+   *     The paths of the directories being created
+   * @param masked
+   *     The masked permission of the directories being created
+   * @param createParent
+   *     create missing parent directories if true
+   * @return the paths that could not be created mapped to the exception
+   *     {@link #mkdirs(String, FsPermission, boolean)} would have thrown for
+   *     them. An empty map if all the directories were created.
+   * @throws SafeModeException
+   *     create not allowed in safemode
+   * @throws IOException
+   *     If an I/O error occurred.
+   */
+  @Idempotent
+  public Map<String, IOException> batchMkdirs(List<String> srcs,
+      FsPermission masked, boolean createParent) throws IOException;
+
   /**
    * Get a partial listing of the indicated directory
    *
@@ -1832,6 +1855,64 @@ public BatchedEntries<CachePoolEntry> listCachePools(String prevPool)
   @Idempotent
   public void invCachesUserAddedToGroup(String userName, String groupName) throws IOException;
 
+  /**
+   * Invalidate caches upon user addition
+   * @param userName
+   * @throws IOException
+   */
+  @Idempotent
+  public void invCachesUserAdded(String userName) throws IOException;
+
+  /**
+   * Invalidate caches upon group addition
+   * @param groupName
+   * @throws IOException
+   */
+  @Idempotent
+  public void invCachesGroupAdded(String groupName) throws IOException;
+
+  /**
+   * Invalidate the resolving cache entries of path components whose inodes
+   * were removed or renamed by another namenode. Used between namenodes only.
+   * @param senderId
+   *     id of the namenode that sent the invalidations
+   * @param senderEpoch
+   *     start time of the sending namenode
+   * @param sequence
+   *     sequence number of this batch, starting at 1 for every sender epoch
+   * @param parentIds
+   *     parent inode ids of the invalidated path components
+   * @param names
+   *     names of the invalidated path components
+   * @throws IOException
+   */
+  @Idempotent
+  public void invalidateResolvingCache(long senderId, long senderEpoch,
+      long sequence, long[] parentIds, String[] names) throws IOException;
+
+  /**
+   * Get the metadata log events committed by this namenode after the
+   * position of the client in the feed of this namenode. Only the superuser
+   * can tail the metadata log.
+   * @param feedIds
+   *     ids of the feeds the client has read from
+   * @param sequences
+   *     sequence of the last event read from each feed
+   * @param maxEvents
+   *     maximum number of events to return
+   * @param waitTime
+   *     time in milliseconds to wait for events if there are none yet,
+   *     capped by the namenode
+   * @param pathPrefix
+   *     only return the events of inodes below this path, null for all
+   * @return the events and the new position of the client in the feed
+   * @throws IOException
+   */
+  @Idempotent
+  public MetadataLogEventBatch getMetadataLogEvents(long[] feedIds,
+      long[] sequences, int maxEvents, long waitTime, String pathPrefix)
+      throws IOException;
+
   /**
    * Get the Epoch from the NN
    */
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A committed entry of the metadata log, as streamed to the clients.
+ * <p>
+ * The operation id is the id of the INodeMetadataLogEntry operation, or of
+ * the XAttrMetadataLogEntry operation for xattr events. The path is only set
+ * when the events were requested with a path prefix.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class MetadataLogEvent {
+
+  public enum Type {
+    INODE,
+    XATTR
+  }
+
+  private final long sequence;
+  private final long timestamp;
+  private final Type type;
+  private final int operationId;
+  private final long datasetId;
+  private final long inodeId;
+  private final long inodePartitionId;
+  private final long inodeParentId;
+  private final String inodeName;
+  private final int logicalTime;
+  private final String xAttrName;
+  private final String path;
+
+  public MetadataLogEvent(long sequence, long timestamp, Type type,
+      int operationId, long datasetId, long inodeId, long inodePartitionId,
+      long inodeParentId, String inodeName, int logicalTime, String xAttrName,
+      String path) {
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.type = type;
+    this.operationId = operationId;
+    this.datasetId = datasetId;
+    this.inodeId = inodeId;
+    this.inodePartitionId = inodePartitionId;
+    this.inodeParentId = inodeParentId;
+    this.inodeName = inodeName;
+    this.logicalTime = logicalTime;
+    this.xAttrName = xAttrName;
+    this.path = path;
+  }
+
+  public MetadataLogEvent withPath(String path) {
+    return new MetadataLogEvent(sequence, timestamp, type, operationId,
+        datasetId, inodeId, inodePartitionId, inodeParentId, inodeName,
+        logicalTime, xAttrName, path);
+  }
+
+  /**
+   * @return the position of the event in the feed of the namenode that
+   * committed it
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return the time the transaction of the event was committed
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getOperationId() {
+    return operationId;
+  }
+
+  public long getDatasetId() {
+    return datasetId;
+  }
+
+  public long getInodeId() {
+    return inodeId;
+  }
+
+  public long getInodePartitionId() {
+    return inodePartitionId;
+  }
+
+  public long getInodeParentId() {
+    return inodeParentId;
+  }
+
+  public String getInodeName() {
+    return inodeName;
+  }
+
+  public int getLogicalTime() {
+    return logicalTime;
+  }
+
+  public String getXAttrName() {
+    return xAttrName;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataLogEvent{" +
+        "sequence=" + sequence +
+        ", type=" + type +
+        ", operationId=" + operationId +
+        ", datasetId=" + datasetId +
+        ", inodeId=" + inodeId +
+        ", inodeParentId=" + inodeParentId +
+        ", inodeName='" + inodeName + '\'' +
+        ", logicalTime=" + logicalTime +
+        (xAttrName != null ? ", xAttrName='" + xAttrName + '\'' : "") +
+        (path != null ? ", path='" + path + '\'' : "") +
+        '}';
+  }
+}
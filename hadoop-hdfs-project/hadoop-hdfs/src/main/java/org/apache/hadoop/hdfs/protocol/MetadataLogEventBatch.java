@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.util.List;
+
+/**
+ * The metadata log events returned by one namenode.
+ * <p>
+ * Every namenode numbers the events it commits in a feed identified by
+ * the feed id, which changes when the namenode restarts. The last sequence
+ * is the last event the namenode looked at, it can be past the last
+ * returned event if the following events did not match the path prefix.
+ * Missed is set if the events following the sequence requested by the
+ * client were already dropped by the namenode.
+ */
+@InterfaceAudience.Private
+public class MetadataLogEventBatch {
+
+  private final long feedId;
+  private final long lastSequence;
+  private final boolean missed;
+  private final List<MetadataLogEvent> events;
+
+  public MetadataLogEventBatch(long feedId, long lastSequence, boolean missed,
+      List<MetadataLogEvent> events) {
+    this.feedId = feedId;
+    this.lastSequence = lastSequence;
+    this.missed = missed;
+    this.events = events;
+  }
+
+  public long getFeedId() {
+    return feedId;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public boolean isMissed() {
+    return missed;
+  }
+
+  public List<MetadataLogEvent> getEvents() {
+    return events;
+  }
+}
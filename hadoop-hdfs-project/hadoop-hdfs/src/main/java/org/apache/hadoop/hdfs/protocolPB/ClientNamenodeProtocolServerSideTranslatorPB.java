@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.GetAclStatusRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.GetAclStatusResponseProto;
@@ -197,6 +198,7 @@
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import org.apache.hadoop.fs.BatchedRemoteIterator.BatchedEntries;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -740,6 +742,31 @@ public MkdirsResponseProto mkdirs(RpcController controller,
     }
   }
 
+  @Override
+  public ClientNamenodeProtocolProtos.BatchMkdirsResponseProto batchMkdirs(
+      RpcController controller, ClientNamenodeProtocolProtos.BatchMkdirsRequestProto req)
+      throws ServiceException {
+    try {
+      Map<String, IOException> failed = server.batchMkdirs(req.getSrcsList(),
+          PBHelper.convert(req.getMasked()), req.getCreateParent());
+      ClientNamenodeProtocolProtos.BatchMkdirsResponseProto.Builder builder =
+          ClientNamenodeProtocolProtos.BatchMkdirsResponseProto.newBuilder();
+      for (Map.Entry<String, IOException> entry : failed.entrySet()) {
+        ClientNamenodeProtocolProtos.BatchOperationFailureProto.Builder failure =
+            ClientNamenodeProtocolProtos.BatchOperationFailureProto.newBuilder()
+                .setSrc(entry.getKey())
+                .setExceptionClassName(entry.getValue().getClass().getName());
+        if (entry.getValue().getMessage() != null) {
+          failure.setErrorMsg(entry.getValue().getMessage());
+        }
+        builder.addFailures(failure);
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetListingResponseProto getListing(RpcController controller,
       GetListingRequestProto req) throws ServiceException {
@@ -1703,4 +1730,60 @@ public ClientNamenodeProtocolProtos.InvCachesUserAddedToGroupResponseProto invCa
     }
   }
 
+  @Override
+  public ClientNamenodeProtocolProtos.InvCachesUserAddedResponseProto invCachesUserAdded(RpcController controller, ClientNamenodeProtocolProtos.InvCachesUserAddedRequestProto request) throws ServiceException {
+    try {
+      server.invCachesUserAdded(request.hasUserName() ? request.getUserName() : null);
+      return ClientNamenodeProtocolProtos.InvCachesUserAddedResponseProto.newBuilder().build();
+    } catch (IOException ex) {
+      throw new ServiceException(ex);
+    }
+  }
+
+  @Override
+  public ClientNamenodeProtocolProtos.InvCachesGroupAddedResponseProto invCachesGroupAdded(RpcController controller, ClientNamenodeProtocolProtos.InvCachesGroupAddedRequestProto request) throws ServiceException {
+    try {
+      server.invCachesGroupAdded(request.hasGroupName() ? request.getGroupName() : null);
+      return ClientNamenodeProtocolProtos.InvCachesGroupAddedResponseProto.newBuilder().build();
+    } catch (IOException ex) {
+      throw new ServiceException(ex);
+    }
+  }
+
+  @Override
+  public ClientNamenodeProtocolProtos.InvalidateResolvingCacheResponseProto invalidateResolvingCache(
+      RpcController controller, ClientNamenodeProtocolProtos.InvalidateResolvingCacheRequestProto request)
+      throws ServiceException {
+    try {
+      long[] parentIds = new long[request.getParentIdsCount()];
+      for (int i = 0; i < parentIds.length; i++) {
+        parentIds[i] = request.getParentIds(i);
+      }
+      server.invalidateResolvingCache(request.getSenderId(), request.getSenderEpoch(), request.getSequence(),
+          parentIds, request.getNamesList().toArray(new String[request.getNamesCount()]));
+      return ClientNamenodeProtocolProtos.InvalidateResolvingCacheResponseProto.newBuilder().build();
+    } catch (IOException ex) {
+      throw new ServiceException(ex);
+    }
+  }
+
+  @Override
+  public ClientNamenodeProtocolProtos.GetMetadataLogEventsResponseProto getMetadataLogEvents(
+      RpcController controller, ClientNamenodeProtocolProtos.GetMetadataLogEventsRequestProto request)
+      throws ServiceException {
+    try {
+      long[] feedIds = new long[request.getFeedIdsCount()];
+      long[] sequences = new long[request.getSequencesCount()];
+      for (int i = 0; i < feedIds.length; i++) {
+        feedIds[i] = request.getFeedIds(i);
+        sequences[i] = request.getSequences(i);
+      }
+      MetadataLogEventBatch batch = server.getMetadataLogEvents(feedIds, sequences, request.getMaxEvents(),
+          request.getWaitTime(), request.hasPathPrefix() ? request.getPathPrefix() : null);
+      return PBHelper.convert(batch);
+    } catch (IOException ex) {
+      throw new ServiceException(ex);
+    }
+  }
+
 }
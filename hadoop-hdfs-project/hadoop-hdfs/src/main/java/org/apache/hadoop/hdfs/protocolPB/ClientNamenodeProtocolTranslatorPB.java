@@ -68,6 +68,7 @@
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos;
@@ -165,6 +166,7 @@
 import org.apache.hadoop.ipc.ProtocolMetaInterface;
 import org.apache.hadoop.ipc.ProtocolTranslator;
 import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RpcClientUtil;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.proto.SecurityProtos.CancelDelegationTokenRequestProto;
@@ -178,7 +180,9 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
@@ -662,6 +666,29 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
     }
   }
 
+  @Override
+  public Map<String, IOException> batchMkdirs(List<String> srcs,
+      FsPermission masked, boolean createParent) throws IOException {
+    ClientNamenodeProtocolProtos.BatchMkdirsRequestProto req =
+        ClientNamenodeProtocolProtos.BatchMkdirsRequestProto.newBuilder()
+            .addAllSrcs(srcs).setMasked(PBHelper.convert(masked))
+            .setCreateParent(createParent).build();
+    try {
+      ClientNamenodeProtocolProtos.BatchMkdirsResponseProto response =
+          rpcProxy.batchMkdirs(null, req);
+      Map<String, IOException> failed = new LinkedHashMap<>();
+      for (ClientNamenodeProtocolProtos.BatchOperationFailureProto failure :
+          response.getFailuresList()) {
+        failed.put(failure.getSrc(), new RemoteException(
+            failure.getExceptionClassName(),
+            failure.hasErrorMsg() ? failure.getErrorMsg() : null));
+      }
+      return failed;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation)
@@ -1601,6 +1628,74 @@ public void invCachesUserAddedToGroup(String userName, String groupName) throws
     }
   }
 
+  @Override
+  public void invCachesUserAdded(String userName) throws IOException {
+    try {
+      ClientNamenodeProtocolProtos.InvCachesUserAddedRequestProto.Builder req =
+              ClientNamenodeProtocolProtos.InvCachesUserAddedRequestProto.newBuilder();
+      if(userName != null) {
+        req.setUserName(userName);
+      }
+      rpcProxy.invCachesUserAdded(null, req.build());
+    } catch (ServiceException ex) {
+      throw ProtobufHelper.getRemoteException(ex);
+    }
+  }
+
+  @Override
+  public void invCachesGroupAdded(String groupName) throws IOException {
+    try {
+      ClientNamenodeProtocolProtos.InvCachesGroupAddedRequestProto.Builder req =
+              ClientNamenodeProtocolProtos.InvCachesGroupAddedRequestProto.newBuilder();
+      if(groupName != null) {
+        req.setGroupName(groupName);
+      }
+      rpcProxy.invCachesGroupAdded(null, req.build());
+    } catch (ServiceException ex) {
+      throw ProtobufHelper.getRemoteException(ex);
+    }
+  }
+
+  @Override
+  public void invalidateResolvingCache(long senderId, long senderEpoch, long sequence, long[] parentIds,
+      String[] names) throws IOException {
+    try {
+      ClientNamenodeProtocolProtos.InvalidateResolvingCacheRequestProto.Builder req =
+              ClientNamenodeProtocolProtos.InvalidateResolvingCacheRequestProto.newBuilder()
+                  .setSenderId(senderId)
+                  .setSenderEpoch(senderEpoch)
+                  .setSequence(sequence)
+                  .addAllNames(Arrays.asList(names));
+      for (long parentId : parentIds) {
+        req.addParentIds(parentId);
+      }
+      rpcProxy.invalidateResolvingCache(null, req.build());
+    } catch (ServiceException ex) {
+      throw ProtobufHelper.getRemoteException(ex);
+    }
+  }
+
+  @Override
+  public MetadataLogEventBatch getMetadataLogEvents(long[] feedIds, long[] sequences, int maxEvents,
+      long waitTime, String pathPrefix) throws IOException {
+    try {
+      ClientNamenodeProtocolProtos.GetMetadataLogEventsRequestProto.Builder req =
+              ClientNamenodeProtocolProtos.GetMetadataLogEventsRequestProto.newBuilder()
+                  .setMaxEvents(maxEvents)
+                  .setWaitTime(waitTime);
+      for (int i = 0; i < feedIds.length; i++) {
+        req.addFeedIds(feedIds[i]);
+        req.addSequences(sequences[i]);
+      }
+      if (pathPrefix != null) {
+        req.setPathPrefix(pathPrefix);
+      }
+      return PBHelper.convert(rpcProxy.getMetadataLogEvents(null, req.build()));
+    } catch (ServiceException ex) {
+      throw ProtobufHelper.getRemoteException(ex);
+    }
+  }
+
   @Override
   public long getEpochMS() throws IOException {
     try {
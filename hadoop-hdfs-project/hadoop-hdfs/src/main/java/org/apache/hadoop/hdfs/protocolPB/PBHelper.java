@@ -82,6 +82,8 @@
 import org.apache.hadoop.hdfs.protocol.LastUpdatedContentSummary;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEvent;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeStatus;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclEntryProto;
@@ -2595,7 +2597,8 @@ public static DatanodeProtocolProtos.BlockReportProto convert(BlockReport report
     }
 
     return DatanodeProtocolProtos.BlockReportProto.newBuilder()
-            .addAllBuckets(bucketProtos).build();
+            .addAllBuckets(bucketProtos)
+            .setBucketsPerDigest(report.getBucketsPerDigest()).build();
   }
     
   public static BlockReport convert(
@@ -2629,7 +2632,8 @@ public static BlockReport convert(
       buckets[i] = bucket;
     }
     
-    return new BlockReport(buckets, numBlocks);
+    return new BlockReport(buckets, numBlocks,
+        blockReportProto.getBucketsPerDigest());
   }
     
   public static CipherOptionProto convert(CipherOption option) {
@@ -2880,6 +2884,67 @@ public static BlockReportContextProto convert(BlockReportContext context) {
         build();
   }
 
+  public static ClientNamenodeProtocolProtos.MetadataLogEventProto convert(
+      MetadataLogEvent event) {
+    ClientNamenodeProtocolProtos.MetadataLogEventProto.Builder builder =
+        ClientNamenodeProtocolProtos.MetadataLogEventProto.newBuilder()
+            .setSequence(event.getSequence())
+            .setTimestamp(event.getTimestamp())
+            .setType(ClientNamenodeProtocolProtos.MetadataLogEventProto
+                .TypeProto.valueOf(event.getType().name()))
+            .setOperationId(event.getOperationId())
+            .setDatasetId(event.getDatasetId())
+            .setInodeId(event.getInodeId())
+            .setInodePartitionId(event.getInodePartitionId())
+            .setInodeParentId(event.getInodeParentId())
+            .setInodeName(event.getInodeName())
+            .setLogicalTime(event.getLogicalTime());
+    if (event.getXAttrName() != null) {
+      builder.setXAttrName(event.getXAttrName());
+    }
+    if (event.getPath() != null) {
+      builder.setPath(event.getPath());
+    }
+    return builder.build();
+  }
+
+  public static MetadataLogEvent convert(
+      ClientNamenodeProtocolProtos.MetadataLogEventProto proto) {
+    return new MetadataLogEvent(proto.getSequence(), proto.getTimestamp(),
+        MetadataLogEvent.Type.valueOf(proto.getType().name()),
+        proto.getOperationId(), proto.getDatasetId(), proto.getInodeId(),
+        proto.getInodePartitionId(), proto.getInodeParentId(),
+        proto.getInodeName(), proto.getLogicalTime(),
+        proto.hasXAttrName() ? proto.getXAttrName() : null,
+        proto.hasPath() ? proto.getPath() : null);
+  }
+
+  public static ClientNamenodeProtocolProtos.GetMetadataLogEventsResponseProto
+      convert(MetadataLogEventBatch batch) {
+    ClientNamenodeProtocolProtos.GetMetadataLogEventsResponseProto.Builder
+        builder = ClientNamenodeProtocolProtos.GetMetadataLogEventsResponseProto
+        .newBuilder()
+        .setFeedId(batch.getFeedId())
+        .setLastSequence(batch.getLastSequence())
+        .setMissed(batch.isMissed());
+    for (MetadataLogEvent event : batch.getEvents()) {
+      builder.addEvents(convert(event));
+    }
+    return builder.build();
+  }
+
+  public static MetadataLogEventBatch convert(
+      ClientNamenodeProtocolProtos.GetMetadataLogEventsResponseProto proto) {
+    List<MetadataLogEvent> events =
+        new ArrayList<>(proto.getEventsCount());
+    for (ClientNamenodeProtocolProtos.MetadataLogEventProto event :
+        proto.getEventsList()) {
+      events.add(convert(event));
+    }
+    return new MetadataLogEventBatch(proto.getFeedId(),
+        proto.getLastSequence(), proto.getMissed(), events);
+  }
+
   public static StorageReceivedDeletedBlocks[] convert
           (DatanodeProtocolProtos.BlockReceivedAndDeletedResponseProto proto) {
 
@@ -39,6 +39,7 @@
 import io.hops.transaction.handler.HDFSOperationType;
 import io.hops.transaction.handler.HopsTransactionalRequestHandler;
 import io.hops.transaction.handler.LightWeightRequestHandler;
+import io.hops.transaction.handler.PostCommitHooks;
 import io.hops.transaction.lock.LockFactory;
 import io.hops.transaction.lock.TransactionLockTypes.INodeLockType;
 import io.hops.transaction.lock.TransactionLockTypes.LockType;
@@ -281,6 +282,11 @@ public long getPostponedMisreplicatedBlocksCount() {
    */
   private final int slicerBatchSize;
 
+  /**
+   * Number of under replicated blocks handled per replication work transaction
+   */
+  private final int replicationWorkBatchSize;
+
   /**
    * Number of batches to be processed by this namenode at one time
    */
@@ -388,6 +394,10 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_SLICER_BATCH_SIZE,
             DFSConfigKeys.DFS_NAMENODE_SLICER_BATCH_SIZE_DEFAULT);
 
+    this.replicationWorkBatchSize =
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_BATCH_SIZE,
+            DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_BATCH_SIZE_DEFAULT);
+
     this.processMisReplicatedNoOfBatchs = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS,
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS_DEFAULT);
@@ -405,6 +415,7 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
     LOG.info("slicerBatchSize            = " + slicerBatchSize);
+    LOG.info("replicationWorkBatchSize   = " + replicationWorkBatchSize);
     LOG.info("misReplicatedNoOfBatchs    = " + processMisReplicatedNoOfBatchs);   
     LOG.info("slicerNbOfBatchs           = " + processMisReplicatedNoOfBatchs);   
   }
@@ -1577,7 +1588,11 @@ int computeReplicationWork(int blocksToProcess) throws IOException {
 
   /**
    * Replicate a set of blocks
-   * Calls {@link #computeReplicationWorkForBlock(Block, int)} for every block.
+   * The blocks are grouped by file into batches of about
+   * {@link #replicationWorkBatchSize} blocks, each batch is handled in one
+   * transaction and the batches are handled in parallel. Calls
+   * {@link #computeReplicationWorkForBlock(Block, int)} for every block if
+   * batching is disabled.
    *
    * @param blocksToReplicate blocks to be replicated, for each priority
    * @return the number of blocks scheduled for replication
@@ -1586,21 +1601,129 @@ int computeReplicationWork(int blocksToProcess) throws IOException {
   int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate)
       throws IOException {
     int scheduledWork = 0;
+    if (replicationWorkBatchSize <= 1) {
+      for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
+        for (Block block : blocksToReplicate.get(priority)) {
+          scheduledWork += computeReplicationWorkForBlock(block, priority);
+        }
+      }
+      return scheduledWork;
+    }
+
+    final List<Callable<Integer>> batches = new ArrayList<>();
+    for (final ReplicationWorkBatch batch : groupReplicationWork(blocksToReplicate)) {
+      batches.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          try {
+            return computeReplicationWorkForBatch(batch);
+          } catch (IOException e) {
+            // a bad block must not hold back the replication of the others
+            LOG.warn("Replication work for a batch of " + batch.blocks.size() +
+                " blocks failed, retrying the blocks one by one", e);
+            return computeReplicationWorkForBlocksIndividually(batch);
+          }
+        }
+      });
+    }
+
+    try {
+      List<Future<Integer>> futures = ((FSNamesystem) namesystem).getFSOperationsExecutor().invokeAll(batches);
+      for (Future<Integer> future : futures) {
+        scheduledWork += future.get();
+      }
+    } catch (InterruptedException e) {
+      LOG.error("Exception was thrown during replication work computation", e);
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    return scheduledWork;
+  }
+
+  /**
+   * Blocks to be replicated, with their priorities and the files they belong
+   * to, that are handled in the same transaction.
+   */
+  private static class ReplicationWorkBatch {
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<Integer> priorities = new ArrayList<>();
+    private final List<Long> blockIds = new ArrayList<>();
+    private final List<Long> inodeIds = new ArrayList<>();
+  }
+
+  /**
+   * Group the blocks by file, the blocks of a file are never split over
+   * several batches so that concurrent batches do not lock the same inodes.
+   */
+  private List<ReplicationWorkBatch> groupReplicationWork(List<List<Block>> blocksToReplicate)
+      throws StorageException {
+    List<Block> unresolved = new ArrayList<>();
+    for (List<Block> blocks : blocksToReplicate) {
+      for (Block block : blocks) {
+        if (!(block instanceof BlockInfoContiguous)) {
+          unresolved.add(block);
+        }
+      }
+    }
+    Map<Long, Long> unresolvedINodeIds = new HashMap<>();
+    if (!unresolved.isEmpty()) {
+      long[] blockIds = new long[unresolved.size()];
+      for (int i = 0; i < blockIds.length; i++) {
+        blockIds[i] = unresolved.get(i).getBlockId();
+      }
+      long[] inodeIds = INodeUtil.resolveINodesFromBlockIds(blockIds);
+      for (int i = 0; i < blockIds.length; i++) {
+        unresolvedINodeIds.put(blockIds[i], inodeIds[i]);
+      }
+    }
+
+    // keep the priority order of the blocks within each file
+    Map<Long, ReplicationWorkBatch> perINode = new LinkedHashMap<>();
     for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
       for (Block block : blocksToReplicate.get(priority)) {
-        scheduledWork += computeReplicationWorkForBlock(block, priority);
+        long inodeId = block instanceof BlockInfoContiguous ?
+            ((BlockInfoContiguous) block).getInodeId() : unresolvedINodeIds.get(block.getBlockId());
+        ReplicationWorkBatch work = perINode.get(inodeId);
+        if (work == null) {
+          work = new ReplicationWorkBatch();
+          perINode.put(inodeId, work);
+        }
+        work.blocks.add(block);
+        work.priorities.add(priority);
+        work.blockIds.add(block.getBlockId());
+        work.inodeIds.add(inodeId);
       }
     }
-    return scheduledWork;
+
+    List<ReplicationWorkBatch> batches = new ArrayList<>();
+    ReplicationWorkBatch batch = null;
+    for (ReplicationWorkBatch work : perINode.values()) {
+      if (batch == null || batch.blocks.size() >= replicationWorkBatchSize) {
+        batch = new ReplicationWorkBatch();
+        batches.add(batch);
+      }
+      batch.blocks.addAll(work.blocks);
+      batch.priorities.addAll(work.priorities);
+      batch.blockIds.addAll(work.blockIds);
+      batch.inodeIds.addAll(work.inodeIds);
+    }
+    return batches;
   }
 
   /**
    * Replicate a set of blocks
    *
+   * @param scheduled
+   *     where to add the replications to send to the source datanodes once
+   *     the transaction committed
    * @return the number of blocks scheduled for replication
    */
-  private int computeReplicationWorkForBlockInternal(Block blk, int priority1)
-      throws StorageException, IOException {
+  private int computeReplicationWorkForBlockInternal(Block blk, int priority1,
+      List<ReplicationWork> scheduled) throws StorageException, IOException {
     int requiredReplication, numEffectiveReplicas;
     List<DatanodeDescriptor> containingNodes;
     DatanodeDescriptor srcNode;
@@ -1610,6 +1733,8 @@ private int computeReplicationWorkForBlockInternal(Block blk, int priority1)
     int scheduledWork = 0;
     List<ReplicationWork> work = new LinkedList<>();
 
+    BlockManagerFaultInjector.getInstance().computeReplicationWorkForBlock(blk);
+
     // block should exist 
     BlockInfoContiguous storedBlock = getStoredBlock(blk);
     synchronized (neededReplications) {
@@ -1727,10 +1852,9 @@ private int computeReplicationWorkForBlockInternal(Block blk, int priority1)
           }
         }
 
-        // Add block to the to be replicated list
-        rw.srcNode.addBlockToBeReplicated(block, targets);
+        // Add block to the to be replicated list once committed
+        scheduled.add(rw);
         scheduledWork++;
-        DatanodeStorageInfo.incrementBlocksScheduled(targets);
 
         // Move the block-replication into a "pending" state.
         // The reason we use 'pending' is so we can retry
@@ -2565,43 +2689,6 @@ public String toString() {
     }
   }
 
-  Map<Long, Long> replicasInBucketsMT(final DatanodeStorageInfo storage,
-                                                  List<Integer> mismatchedBuckets) throws IOException {
-
-    Map<Long, Long>  mismatchedBlocksAndInodes = new ConcurrentHashMap<>();
-
-    final Collection<Callable<Map<Long, Long>>> subTasks = new ArrayList<>();
-
-    for(final Integer bucket : mismatchedBuckets){
-      final Callable<Map<Long, Long>> subTask = new Callable<Map<Long, Long>>() {
-        @Override
-        public Map<Long, Long> call() throws IOException {
-          List<Integer> buckets = new ArrayList();
-          buckets.add(bucket);
-          final Map<Long, Long> mismatchedBlocksAndInodes = storage
-                  .getAllStorageReplicasInBuckets(buckets);
-          return mismatchedBlocksAndInodes;
-        }
-      };
-      subTasks.add(subTask); // collect subtasks
-    }
-
-    try {
-      List<Future<Map<Long, Long>>> futures = ((FSNamesystem) namesystem)
-              .getFSOperationsExecutor().invokeAll(subTasks);
-      for (Future<Map<Long, Long>> maybeException : futures){
-        mismatchedBlocksAndInodes.putAll(maybeException.get());
-      }
-    } catch (InterruptedException e) {
-      LOG.error("Exception was thrown during block report processing", e);
-      throw new IOException(e);
-    } catch (ExecutionException e) {
-      throw (IOException) e.getCause();
-    }
-
-    return mismatchedBlocksAndInodes;
-  }
-
   private ReportStatistics reportDiff(final DatanodeStorageInfo storage,
       final BlockReport newReport,
       final Collection<BlockInfoContiguous> toAdd, // add to DatanodeStorageInfo
@@ -2632,79 +2719,122 @@ private ReportStatistics reportDiff(final DatanodeStorageInfo storage,
           newReport.getBuckets().length-mismatchedBuckets.size(),
           newReport.getBuckets().length));
     }
-    
-    final Set<Long> aggregatedSafeBlocks = new HashSet<>();
-
-    final Map<Long, Long> mismatchedBlocksAndInodes = replicasInBucketsMT(storage, mismatchedBuckets);
 
     //Safe mode report and first report for storage will have all buckets mismatched.
-    aggregatedSafeBlocks.addAll(mismatchedBlocksAndInodes.keySet());
+    final boolean trackSafeBlocks = namesystem.isInStartupSafeMode();
+
+    // Each bucket is read from the database and processed by the same task.
+    // Only the replicas of the buckets being processed are kept in memory,
+    // and reading some buckets overlaps with processing others.
+    final List<Future<BucketDiff>> futures = new ArrayList<>(mismatchedBuckets.size());
+    final ExecutorService executor = ((FSNamesystem) namesystem).getFSOperationsExecutor();
+    for (final int bucketId : mismatchedBuckets) {
+      final BlockListAsLongs bucketBlocks = newReport.getBuckets()[bucketId].getBlocks();
+      futures.add(executor.submit(new Callable<BucketDiff>() {
+        @Override
+        public BucketDiff call() throws IOException {
+          return processMisMatchingBucket(storage, bucketId, bucketBlocks, toAdd,
+              toInvalidate, toCorrupt, toUC, firstBlockReport,
+              invalidatedReplicas, trackSafeBlocks);
+        }
+      }));
+    }
 
-    processMisMatchingBuckets(storage, newReport, mismatchedBuckets, toAdd,
-            toInvalidate,
-            toCorrupt, toUC, firstBlockReport,
-            mismatchedBlocksAndInodes,
-            aggregatedSafeBlocks,
-            invalidatedReplicas);
+    List<Long> safeBlocks = new ArrayList<>();
+    int numSafeBlocks = 0;
+    try {
+      for (Future<BucketDiff> future : futures) {
+        BucketDiff diff = future.get();
+        for (long blockId : diff.toRemove) {
+          toRemove.add(blockId);
+        }
+        if (trackSafeBlocks) {
+          for (long blockId : diff.safeBlocks) {
+            safeBlocks.add(blockId);
+          }
+          // adjust the safe blocks while the remaining buckets are processed
+          if (safeBlocks.size() >= slicerBatchSize) {
+            namesystem.adjustSafeModeBlocks(safeBlocks);
+            numSafeBlocks += safeBlocks.size();
+            safeBlocks = new ArrayList<>();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      cancelAll(futures);
+      LOG.error("Exception was thrown during block report processing", e);
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      cancelAll(futures);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
 
     stats.numToAdd = toAdd.size();
     stats.numToInvalidate = toInvalidate.size();
     stats.numToCorrupt = toCorrupt.size();
     stats.numToUC = toUC.size();
-    toRemove.addAll(mismatchedBlocksAndInodes.keySet());
     stats.numToRemove = toRemove.size();
-    if (namesystem.isInStartupSafeMode()) {
-      aggregatedSafeBlocks.removeAll(toRemove);
-      LOG.debug("AGGREGATED SAFE BLOCK #: " + aggregatedSafeBlocks.size() +
+    if (trackSafeBlocks) {
+      namesystem.adjustSafeModeBlocks(safeBlocks);
+      numSafeBlocks += safeBlocks.size();
+      LOG.debug("AGGREGATED SAFE BLOCK #: " + numSafeBlocks +
           " REPORTED BLOCK #: " + newReport.getNumberOfBlocks());
-      namesystem.adjustSafeModeBlocks(aggregatedSafeBlocks);
-      stats.numConsideredSafeIfInSafemode = aggregatedSafeBlocks.size();
+      stats.numConsideredSafeIfInSafemode = numSafeBlocks;
     }
     return stats;
   }
 
-  private void processMisMatchingBuckets(final DatanodeStorageInfo storage,
-                                               final BlockReport newReport,
-                                               final List<Integer> mismatchedBuckets,
-                                               final Collection<BlockInfoContiguous> toAdd,
-                                               final Collection<Block> toInvalidate,
-                                               final Collection<BlockToMarkCorrupt> toCorrupt,
-                                               final Collection<StatefulBlockInfo> toUC, final boolean firstBlockReport,
-                                               final Map<Long, Long> mismatchedBlocksAndInodes,
-                                               final Set<Long> aggregatedSafeBlocks,
-                                               final Map<Long,Long> invalidatedReplicas) throws IOException {
-
-    final Collection<Callable<Void>> subTasks = new ArrayList<>();
-    for (final int bucketId : mismatchedBuckets) {
-      final Bucket bucket = newReport.getBuckets()[bucketId];
-      final BlockListAsLongs bucketBlocks =bucket.getBlocks();
-      final Callable<Void> subTask = new Callable<Void>() {
-        @Override
-        public Void call() throws IOException {
-          final HopsTransactionalRequestHandler processReportHandler = processBucketInternal(storage, bucketId, toAdd,
-              toInvalidate,
-              toCorrupt, toUC, firstBlockReport,
-              mismatchedBlocksAndInodes,
-              aggregatedSafeBlocks,
-              invalidatedReplicas, bucketBlocks);
-          processReportHandler.handle();
-          return null;
-        }
-      };
-      subTasks.add(subTask); // collect subtasks
+  private static void cancelAll(List<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(false);
     }
+  }
 
-    try {
-      List<Future<Void>> futures = ((FSNamesystem) namesystem).getFSOperationsExecutor().invokeAll(subTasks);
-      for (Future<Void> maybeException : futures){
-        maybeException.get();
-      }
-    } catch (InterruptedException e) {
-      LOG.error("Exception was thrown during block report processing", e);
-      throw new IOException(e);
-    } catch (ExecutionException e) {
-      throw (IOException) e.getCause();
-    }
+  /**
+   * Result of processing a mismatched bucket of a block report.
+   */
+  private static class BucketDiff {
+    // stored replicas that were not reported
+    private final long[] toRemove;
+    // blocks of the bucket considered safe, empty if not in safe mode
+    private final long[] safeBlocks;
+
+    BucketDiff(long[] toRemove, long[] safeBlocks) {
+      this.toRemove = toRemove;
+      this.safeBlocks = safeBlocks;
+    }
+  }
+
+  private BucketDiff processMisMatchingBucket(final DatanodeStorageInfo storage,
+                                              final int bucketId,
+                                              final BlockListAsLongs bucketBlocks,
+                                              final Collection<BlockInfoContiguous> toAdd,
+                                              final Collection<Block> toInvalidate,
+                                              final Collection<BlockToMarkCorrupt> toCorrupt,
+                                              final Collection<StatefulBlockInfo> toUC,
+                                              final boolean firstBlockReport,
+                                              final Map<Long,Long> invalidatedReplicas,
+                                              final boolean trackSafeBlocks) throws IOException {
+    // replicas stored in this bucket and their inode ids, the replicas left
+    // after processing the report were not reported and have to be removed
+    final Map<Long, Long> storedBlocksAndInodes = new HashMap<>(
+        storage.getAllStorageReplicasInBuckets(Collections.singletonList(bucketId)));
+    final Set<Long> safeBlocks = trackSafeBlocks ?
+        new HashSet<>(storedBlocksAndInodes.keySet()) : Collections.<Long>emptySet();
+
+    processBucketInternal(storage, bucketId, toAdd, toInvalidate, toCorrupt,
+        toUC, firstBlockReport, storedBlocksAndInodes, safeBlocks,
+        invalidatedReplicas, bucketBlocks).handle();
+
+    long[] toRemove = Longs.toArray(storedBlocksAndInodes.keySet());
+    if (!trackSafeBlocks) {
+      return new BucketDiff(toRemove, new long[0]);
+    }
+    safeBlocks.removeAll(storedBlocksAndInodes.keySet());
+    return new BucketDiff(toRemove, Longs.toArray(safeBlocks));
   }
   
   private HopsTransactionalRequestHandler processBucketInternal(final DatanodeStorageInfo storage,
@@ -2715,7 +2845,7 @@ private HopsTransactionalRequestHandler processBucketInternal(final DatanodeStor
                                                                 final Collection<StatefulBlockInfo> toUC,
                                                                 final boolean firstBlockReport,
                                                                 final Map<Long, Long> mismatchedBlocksAndInodes,
-                                                                final Set<Long> aggregatedSafeBlocks,
+                                                                final Set<Long> safeBlocks,
                                                                 final Map<Long,Long> invalidatedReplicas,
                                                                 final BlockListAsLongs reportedBlocks ) {
 
@@ -2723,24 +2853,27 @@ private HopsTransactionalRequestHandler processBucketInternal(final DatanodeStor
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = LockFactory.getInstance();
-        if (reportedBlocks.getNumberOfBlocks()!=0) {
-          List<Long> resolvedBlockIds = new ArrayList<>();
-          List<Long> inodeIds = new ArrayList<>();
-          List<Long> unResolvedBlockIds = new ArrayList<>();
+        int numBlocks = reportedBlocks.getNumberOfBlocks();
+        if (numBlocks != 0) {
+          long[] resolvedBlockIds = new long[numBlocks];
+          long[] inodeIds = new long[numBlocks];
+          long[] unResolvedBlockIds = new long[numBlocks];
+          int numResolved = 0;
+          int numUnResolved = 0;
 
           for (BlockListAsLongs.BlockReportReplica reportedBlock : reportedBlocks) {
             Long inodeId = mismatchedBlocksAndInodes.get(reportedBlock.getBlockId());
             if (inodeId != null) {
-              resolvedBlockIds.add(reportedBlock.getBlockId());
-              inodeIds.add(inodeId);
+              resolvedBlockIds[numResolved] = reportedBlock.getBlockId();
+              inodeIds[numResolved++] = inodeId;
             } else {
-              unResolvedBlockIds.add(reportedBlock.getBlockId());
+              unResolvedBlockIds[numUnResolved++] = reportedBlock.getBlockId();
             }
           }
 
-          locks.add(lf.getBlockReportingLocks(Longs.toArray(resolvedBlockIds),
-              Longs.toArray(inodeIds),
-              Longs.toArray(unResolvedBlockIds), storage.getSid()));
+          locks.add(lf.getBlockReportingLocks(Arrays.copyOf(resolvedBlockIds, numResolved),
+              Arrays.copyOf(inodeIds, numResolved),
+              Arrays.copyOf(unResolvedBlockIds, numUnResolved), storage.getSid()));
         }
         locks.add(lf.getIndividualHashBucketLock(storage.getSid(), bucketId));
       }
@@ -2759,7 +2892,7 @@ public Object performTask() throws IOException {
                           block, brb.getState(),
                           toAdd,
                           toInvalidate,
-                          toCorrupt, toUC, aggregatedSafeBlocks,
+                          toCorrupt, toUC, safeBlocks,
                           firstBlockReport,
                           mismatchedBlocksAndInodes.containsKey(brb.getBlockId()),
                           invalidatedReplicas);
@@ -2806,7 +2939,17 @@ private HashMatchingResult calculateMismatchedHashes(DatanodeStorageInfo storage
     List<Integer> matchedBuckets = new ArrayList<>();
     List<Integer> mismatchedBuckets = new ArrayList<>();
 
+    if (report.getBucketsPerDigest() > 1) {
+      return calculateMismatchedDigests(storedHashesMap, report, firstBlockReport);
+    }
+
     for (int i = 0; i < report.getBuckets().length; i++){
+      if (report.getBuckets()[i].isSkip()) {
+        // the datanode already knows that the bucket matches
+        matchedBuckets.add(i);
+        continue;
+      }
+
       if (!storedHashesMap.containsKey(i)){
         //escape early
         mismatchedBuckets.add(i);
@@ -2832,6 +2975,43 @@ private HashMatchingResult calculateMismatchedHashes(DatanodeStorageInfo storage
     assert matchedBuckets.size() + mismatchedBuckets.size() == report.getBuckets().length;
     return new HashMatchingResult(matchedBuckets, mismatchedBuckets);
   }
+
+  /**
+   * Compare the top level digests of a report, each combining the hashes of
+   * {@link BlockReport#getBucketsPerDigest()} consecutive buckets, to the
+   * digests of the stored bucket hashes.
+   * @return the digests that do not match
+   */
+  private HashMatchingResult calculateMismatchedDigests(Map<Integer, HashBucket> storedHashesMap,
+      BlockReport report, boolean firstBlockReport) {
+    int bucketsPerDigest = report.getBucketsPerDigest();
+    List<Integer> matchedDigests = new ArrayList<>();
+    List<Integer> mismatchedDigests = new ArrayList<>();
+
+    for (int i = 0; i < report.getBuckets().length; i++) {
+      if (firstBlockReport) {
+        mismatchedDigests.add(i);
+        continue;
+      }
+      byte[] storedDigest = HashBuckets.initalizeHash();
+      boolean complete = true;
+      for (int bucketId = i * bucketsPerDigest;
+           bucketId < numBuckets && bucketId < (i + 1) * bucketsPerDigest; bucketId++) {
+        HashBucket storedHash = storedHashesMap.get(bucketId);
+        if (storedHash == null) {
+          complete = false;
+          break;
+        }
+        HashBuckets.XORHashes(storedDigest, storedHash.getHash());
+      }
+      if (complete && HashBuckets.hashEquals(storedDigest, report.getBuckets()[i].getHash())) {
+        matchedDigests.add(i);
+      } else {
+        mismatchedDigests.add(i);
+      }
+    }
+    return new HashMatchingResult(matchedDigests, mismatchedDigests);
+  }
   
   /**
    * Process a block replica reported by the data-node.
@@ -5236,12 +5416,94 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
+        List<ReplicationWork> scheduled = new ArrayList<>();
         //We check if the block b is still in the db in the called function
-        return computeReplicationWorkForBlockInternal(b, priority);
+        int scheduledWork =
+            computeReplicationWorkForBlockInternal(b, priority, scheduled);
+        scheduleAfterCommit(this, scheduled);
+        return scheduledWork;
       }
     }.handle(namesystem);
   }
 
+  /**
+   * Send the replications to their source datanodes once the transaction
+   * that scheduled them committed, so that a failed or retried transaction
+   * does not schedule the same replications twice. The replications of a
+   * retry replace the ones of the previous attempt.
+   *
+   * @param key
+   *     the handler of the transaction
+   */
+  private static void scheduleAfterCommit(Object key,
+      final List<ReplicationWork> scheduled) {
+    PostCommitHooks.register(key, new Runnable() {
+      @Override
+      public void run() {
+        for (ReplicationWork rw : scheduled) {
+          rw.srcNode.addBlockToBeReplicated(rw.block, rw.targets);
+          DatanodeStorageInfo.incrementBlocksScheduled(rw.targets);
+        }
+      }
+    });
+  }
+
+  private int computeReplicationWorkForBlocksIndividually(
+      ReplicationWorkBatch batch) {
+    int scheduledWork = 0;
+    for (int i = 0; i < batch.blocks.size(); i++) {
+      Block block = batch.blocks.get(i);
+      try {
+        scheduledWork += computeReplicationWorkForBlock(block,
+            batch.priorities.get(i));
+      } catch (IOException e) {
+        LOG.warn("Replication work for " + block + " failed", e);
+      }
+    }
+    return scheduledWork;
+  }
+
+  private int computeReplicationWorkForBatch(final ReplicationWorkBatch batch)
+      throws IOException {
+    final long startTime = Time.monotonicNow();
+    int scheduledWork = (Integer) new HopsTransactionalRequestHandler(
+        HDFSOperationType.COMPUTE_REPLICATION_WORK_FOR_BLOCKS) {
+      List<INodeIdentifier> inodeIdentifiers;
+
+      @Override
+      public void setUp() throws StorageException {
+        inodeIdentifiers = INodeUtil.resolveINodesFromIds(new ArrayList<>(new LinkedHashSet<>(batch.inodeIds)));
+      }
+
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodesLocks(INodeLockType.WRITE, inodeIdentifiers))
+            .add(lf.getBatchedBlocksLock(Longs.toArray(batch.blockIds), Longs.toArray(batch.inodeIds)))
+            .add(lf.getVariableLock(Variable.Finder.ReplicationIndex, LockType.WRITE))
+            .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.PE, BLK.UR, BLK.UC));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        int scheduledWork = 0;
+        List<ReplicationWork> scheduled = new ArrayList<>();
+        for (int i = 0; i < batch.blocks.size(); i++) {
+          //We check if the block is still in the db in the called function
+          scheduledWork += computeReplicationWorkForBlockInternal(batch.blocks.get(i), batch.priorities.get(i), scheduled);
+        }
+        scheduleAfterCommit(this, scheduled);
+        return scheduledWork;
+      }
+    }.handle(namesystem);
+
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addReplicationWork(scheduledWork, Time.monotonicNow() - startTime);
+    }
+    return scheduledWork;
+  }
+
   @VisibleForTesting
   public void processTimedOutPendingBlock(final long timedOutItemId)
       throws IOException {
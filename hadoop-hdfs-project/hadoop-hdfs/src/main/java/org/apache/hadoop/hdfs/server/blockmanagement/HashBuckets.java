@@ -282,6 +282,15 @@ public static byte[] XORHashes(byte[] a, byte[] b){
     return a;
   }
 
+  /**
+   * Digests combine the hashes of consecutive buckets, digest {@code i}
+   * covers the buckets {@code [i * bucketsPerDigest, (i + 1) * bucketsPerDigest)}.
+   * @return the number of digests covering {@code numBuckets} buckets
+   */
+  public static int numDigests(int numBuckets, int bucketsPerDigest){
+    return (numBuckets + bucketsPerDigest - 1) / bucketsPerDigest;
+  }
+
   public static String hashToString(byte[] hash){
     StringBuilder sb = new StringBuilder();
     for (byte b : hash) {
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.common;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Time;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the data of the files stored in the database, keyed by inode
+ * id and bounded by the number of bytes cached.
+ * <p>
+ * The data is kept in direct buffers, outside of the java heap, so that a
+ * large cache does not add to the garbage collection work of the namenode or
+ * the datanode. Every entry carries the version of the file it was read for,
+ * e.g. its size and modification time, and a lookup with another version is
+ * a miss. This keeps the cache correct when the file is changed by another
+ * namenode, the local writers also invalidate the entries they change.
+ */
+@InterfaceAudience.Private
+public class SmallFileDataCache {
+
+  private final long capacity;
+  private final long expiry;
+  private final LinkedHashMap<Long, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesServed = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of bytes cached
+   * @param expiry the time in milliseconds after which an entry is dropped,
+   * 0 to keep the entries until they are evicted or invalidated
+   */
+  public SmallFileDataCache(long capacity, long expiry) {
+    this.capacity = capacity;
+    this.expiry = expiry;
+  }
+
+  /**
+   * @return a copy of the cached data of the file, or null if the data of the
+   * given version of the file is not cached
+   */
+  public byte[] get(long inodeId, long size, long version) {
+    ByteBuffer data = null;
+    synchronized (this) {
+      Entry entry = entries.get(inodeId);
+      if (entry != null) {
+        if (entry.size == size && entry.version == version &&
+            (expiry <= 0 || Time.monotonicNow() - entry.time < expiry)) {
+          data = entry.data.duplicate();
+        } else {
+          remove(inodeId);
+        }
+      }
+    }
+    if (data == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    // the buffers are never written after they are cached, so the copy can
+    // be done without holding the lock
+    byte[] copy = new byte[data.remaining()];
+    data.get(copy);
+    hits.incrementAndGet();
+    bytesServed.addAndGet(copy.length);
+    return copy;
+  }
+
+  public void put(long inodeId, long version, byte[] data) {
+    if (data == null || data.length > capacity) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data);
+    buffer.flip();
+    Entry entry = new Entry(buffer, data.length, version, Time.monotonicNow());
+    synchronized (this) {
+      remove(inodeId);
+      entries.put(inodeId, entry);
+      size += entry.size;
+      Iterator<Entry> it = entries.values().iterator();
+      while (size > capacity && it.hasNext()) {
+        size -= it.next().size;
+        it.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  public synchronized void invalidate(long inodeId) {
+    remove(inodeId);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  private void remove(long inodeId) {
+    Entry entry = entries.remove(inodeId);
+    if (entry != null) {
+      size -= entry.size;
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getBytesServed() {
+    return bytesServed.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  private static class Entry {
+    private final ByteBuffer data;
+    private final long size;
+    private final long version;
+    private final long time;
+
+    Entry(ByteBuffer data, long size, long version, long time) {
+      this.data = data;
+      this.size = size;
+      this.version = version;
+      this.time = time;
+    }
+  }
+}
@@ -1047,8 +1047,7 @@ List<DatanodeCommand> blockReport() throws IOException {
       try {
         if (totalBlockCount < dnConf.blockReportSplitThreshold) {
           // Below split threshold, send all reports in a single message.
-          DatanodeCommand buckets = blkReportHander.reportHashes(bpRegistration, getBlockPoolId()
-                  , slimBlockReports(reports));
+          DatanodeCommand buckets = reportHashes(blkReportHander, reports);
           removeMatchingBuckets(buckets, reports);
           DatanodeCommand cmd = blkReportHander.blockReport(
               bpRegistration, getBlockPoolId(), reports,
@@ -1062,8 +1061,7 @@ bpRegistration, getBlockPoolId(), reports,
           // Send one block report per message.
           for (int r = 0; r < reports.length; r++) {
             StorageBlockReport singleReport[] = { reports[r] };
-            DatanodeCommand buckets = blkReportHander.reportHashes(bpRegistration,
-                    getBlockPoolId(), slimBlockReports(singleReport));
+            DatanodeCommand buckets = reportHashes(blkReportHander, singleReport);
             removeMatchingBuckets(buckets, singleReport);
             DatanodeCommand cmd = blkReportHander.blockReport(bpRegistration, getBlockPoolId(), singleReport,
                 new BlockReportContext(reports.length, r, reportId));
@@ -1111,6 +1109,111 @@ bpRegistration, getBlockPoolId(), reports,
     return cmds.size() == 0 ? null : cmds;
   }
 
+  /**
+   * Find the buckets of the reports whose hashes do not match the hashes
+   * stored by the namenode. If digests are enabled, the digests of groups of
+   * buckets are compared first and only the bucket hashes of the mismatched
+   * groups are sent.
+   */
+  private DatanodeCommand reportHashes(BPServiceActor actor,
+      StorageBlockReport[] reports) throws IOException {
+    int bucketsPerDigest = dnConf.blockReportBucketsPerDigest;
+    if (bucketsPerDigest <= 1) {
+      return actor.reportHashes(bpRegistration, getBlockPoolId(),
+          slimBlockReports(reports));
+    }
+
+    DatanodeCommand digests = actor.reportHashes(bpRegistration,
+        getBlockPoolId(), digestBlockReports(reports, bucketsPerDigest));
+    Map<String, List<Integer>> mismatchingDigests =
+        ((HashesMismatchCommand) digests).getMissMatchingBuckets();
+    boolean allMatching = true;
+    for (List<Integer> storageDigests : mismatchingDigests.values()) {
+      allMatching &= storageDigests.isEmpty();
+    }
+    if (allMatching) {
+      HashesMismatchCommand noMismatches = new HashesMismatchCommand();
+      for (StorageBlockReport report : reports) {
+        noMismatches.addStorageBuckets(report.getStorage().getStorageID(),
+            Collections.<Integer>emptyList());
+      }
+      return noMismatches;
+    }
+    return actor.reportHashes(bpRegistration, getBlockPoolId(),
+        slimBlockReports(reports, mismatchingDigests, bucketsPerDigest));
+  }
+
+  /**
+   * @return reports carrying only the digests of every
+   * {@code bucketsPerDigest} consecutive bucket hashes
+   */
+  static StorageBlockReport[] digestBlockReports(StorageBlockReport[] reports,
+      int bucketsPerDigest) {
+    StorageBlockReport[] digestReports = new StorageBlockReport[reports.length];
+
+    for (int i = 0; i < reports.length; i++) {
+      BlockReport fatBR = reports[i].getReport();
+      Bucket[] fatBuckets = fatBR.getBuckets();
+      Bucket[] digests = new Bucket[HashBuckets.numDigests(fatBuckets.length,
+          bucketsPerDigest)];
+
+      for (int j = 0; j < digests.length; j++) {
+        byte[] digest = HashBuckets.initalizeHash();
+        for (int b = j * bucketsPerDigest;
+             b < fatBuckets.length && b < (j + 1) * bucketsPerDigest; b++) {
+          HashBuckets.XORHashes(digest, fatBuckets[b].getHash());
+        }
+        digests[j] = new Bucket(BlockListAsLongs.EMPTY);
+        digests[j].setHash(digest);
+      }
+
+      BlockReport digestBR = new BlockReport(digests,
+          fatBR.getNumberOfBlocks(), bucketsPerDigest);
+      digestReports[i] = new StorageBlockReport(reports[i].getStorage(),
+          digestBR);
+    }
+
+    return digestReports;
+  }
+
+  /**
+   * @return reports carrying the bucket hashes of the mismatching digests,
+   * the other buckets are marked as skipped
+   */
+  static StorageBlockReport[] slimBlockReports(StorageBlockReport[] reports,
+      Map<String, List<Integer>> mismatchingDigests, int bucketsPerDigest) {
+    StorageBlockReport[] slimStorageReports =
+        new StorageBlockReport[reports.length];
+
+    for (int i = 0; i < reports.length; i++) {
+      StorageBlockReport fatSR = reports[i];
+      Bucket[] fatBuckets = fatSR.getReport().getBuckets();
+      List<Integer> storageDigests =
+          mismatchingDigests.get(fatSR.getStorage().getStorageID());
+      Set<Integer> mismatching = storageDigests == null ?
+          Collections.<Integer>emptySet() : new HashSet<>(storageDigests);
+      Bucket[] slimBuckets = new Bucket[fatBuckets.length];
+
+      for (int j = 0; j < fatBuckets.length; j++) {
+        Bucket slimBucket = new Bucket(BlockListAsLongs.EMPTY);
+        if (mismatching.contains(j / bucketsPerDigest)) {
+          slimBucket.setHash(fatBuckets[j].getHash());
+        } else {
+          slimBucket.setHash(new byte[0]);
+          slimBucket.setSkip(true);
+        }
+        slimBuckets[j] = slimBucket;
+      }
+
+      BlockReport slimBR = new BlockReport(slimBuckets,
+          fatSR.getReport().getNumberOfBlocks());
+      slimStorageReports[i] = new StorageBlockReport(fatSR.getStorage(),
+          slimBR);
+    }
+
+    return slimStorageReports;
+  }
+
   StorageBlockReport[] slimBlockReports(StorageBlockReport[] reports){
     StorageBlockReport[] slimStorageReports = new StorageBlockReport[reports.length];
 
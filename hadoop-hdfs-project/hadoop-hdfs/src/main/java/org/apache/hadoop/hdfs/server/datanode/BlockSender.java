@@ -32,6 +32,7 @@
 import org.apache.hadoop.io.ReadaheadPool.ReadaheadRequest;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.net.SocketOutputStream;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
 
 import java.io.*;
@@ -265,7 +266,7 @@ class BlockSender implements java.io.Closeable {
       }
 
       if (replica == null) {
-        synchronized (datanode.data) {
+        try (AutoCloseableLock lock = datanode.data.acquireDatasetReadLock()) {
           replica = getReplica(block, datanode);
         }
 
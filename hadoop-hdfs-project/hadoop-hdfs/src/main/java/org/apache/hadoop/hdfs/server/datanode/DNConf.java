@@ -85,6 +85,9 @@ public class DNConf {
   final long heartBeatInterval;
   final long blockReportInterval;
   final long blockReportSplitThreshold;
+  final int blockReportBucketsPerDigest;
+  final long smallFileCacheSize;
+  final long smallFileCacheExpiry;
   final long initialBlockReportDelay;
   final long cacheReportInterval;
   final long dfsclientSlowIoWarningThresholdMs;
@@ -144,6 +147,15 @@ public DNConf(Configuration conf) {
         DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT);
     this.blockReportSplitThreshold = conf.getLong(DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY,
         DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT);
+    this.blockReportBucketsPerDigest = conf.getInt(
+        DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_PER_DIGEST_KEY,
+        DFSConfigKeys.DFS_BLOCKREPORT_BUCKETS_PER_DIGEST_DEFAULT);
+    this.smallFileCacheSize = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_SIZE_DEFAULT);
+    this.smallFileCacheExpiry = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_EXPIRY_KEY,
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_EXPIRY_DEFAULT);
     long initBRDelay = conf.getLong(DFS_BLOCKREPORT_INITIAL_DELAY_KEY,
         DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT) * 1000L;
     
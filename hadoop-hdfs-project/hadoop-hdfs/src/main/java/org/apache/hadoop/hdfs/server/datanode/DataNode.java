@@ -114,6 +114,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.common.JspHelper;
+import org.apache.hadoop.hdfs.server.common.SmallFileDataCache;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.SecureDataNodeStarter.SecureResources;
@@ -148,6 +149,7 @@
 import org.apache.hadoop.tracing.TraceAdminPB.TraceAdminService;
 import org.apache.hadoop.tracing.TraceAdminProtocolPB;
 import org.apache.hadoop.tracing.TraceAdminProtocolServerSideTranslatorPB;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
@@ -323,6 +325,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   private int infoPort;
   private int infoSecurePort;
   DataNodeMetrics metrics;
+  private SmallFileDataCache smallFileDataCache = null;
   private InetSocketAddress streamingAddr;
   
   // See the note below in incrDatanodeNetworkErrors re: concurrency.
@@ -1237,6 +1240,10 @@ void startDataNode(Configuration conf, AbstractList<StorageLocation> dataDirs,
     initIpcServer(conf);
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
+    if (dnConf.smallFileCacheSize > 0) {
+      smallFileDataCache = new SmallFileDataCache(dnConf.smallFileCacheSize,
+          dnConf.smallFileCacheExpiry);
+    }
     
     metrics.getJvmMetrics().setPauseMonitor(pauseMonitor);
 
@@ -2075,7 +2082,9 @@ private void handleDiskError(String errMsgr) {
    */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    int count = threadGroup == null ? 0 : threadGroup.activeCount();
+    // the pooled DataXceivers run outside of the thread group
+    return xserver == null ? count : count + xserver.getNumActiveWorkers();
   }
 
   @Override // DataNodeMXBean
@@ -3206,7 +3215,7 @@ void transferReplicaForPipelineRecovery(final ExtendedBlock b,
     final BlockConstructionStage stage;
 
     //get replica information
-    synchronized (data) {
+    try (AutoCloseableLock lock = data.acquireDatasetLock()) {
       Block storedBlock =
           data.getStoredBlock(b.getBlockPoolId(), b.getBlockId());
       if (null == storedBlock) {
@@ -3478,8 +3487,26 @@ boolean shouldRun() {
   }
 
   byte[] getSmallFileDataFromNN(ExtendedBlock block) throws IOException {
+    // the block of a file stored in the database is named after the inode
+    // and stamped with the modification time of the file, which changes with
+    // every rewrite of the data
+    final long inodeId = -block.getBlockId();
+    final long version = block.getGenerationStamp();
+    if (smallFileDataCache != null) {
+      byte[] data = smallFileDataCache.get(inodeId, block.getNumBytes(),
+          version);
+      if (data != null) {
+        metrics.incrSmallFileCacheHits(data.length);
+        return data;
+      }
+      metrics.incrSmallFileCacheMisses();
+    }
     BPOfferService bpos = getBPOSForBlock(block);
-    return bpos.getSmallFileDataFromNN((int)block.getBlockId());
+    byte[] data = bpos.getSmallFileDataFromNN((int)block.getBlockId());
+    if (smallFileDataCache != null) {
+      smallFileDataCache.put(inodeId, version, data);
+    }
+    return data;
   }
   
   @VisibleForTesting
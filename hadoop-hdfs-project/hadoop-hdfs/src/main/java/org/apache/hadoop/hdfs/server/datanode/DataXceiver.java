@@ -72,6 +72,7 @@
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
 import java.util.Arrays;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
@@ -111,6 +112,11 @@ class DataXceiver extends Receiver implements Runnable {
   private final InputStream socketIn;
   private OutputStream socketOut;
   private BlockReceiver blockReceiver = null;
+  private int opsProcessed = 0;
+  private boolean initialized = false;
+  // the channel watched for the next operation between two operations, null
+  // if the connection keeps its thread
+  private SelectableChannel selectableChannel;
   
   /**
    * Client Name used in previous operation. Not available on first request
@@ -170,6 +176,10 @@ private OutputStream getOutputStream() {
     return socketOut;
   }
 
+  SelectableChannel getSelectableChannel() {
+    return selectableChannel;
+  }
+
   public void sendOOB() throws IOException, InterruptedException {
     LOG.info("Sending OOB to peer: " + peer);
     if(blockReceiver!=null)
@@ -178,51 +188,44 @@ public void sendOOB() throws IOException, InterruptedException {
   
   /**
    * Read/write data from/to the DataXceiverServer.
+   * <p>
+   * When the server runs the operations on a pool of threads, this returns
+   * once no more data is buffered after an operation, and the connection is
+   * parked until its next operation arrives, which is processed by another
+   * call.
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean resumed = false;
+    boolean parked = false;
 
     try {
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-          HdfsConstants.SMALL_BUFFER_SIZE);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
-        }
+      if (initialized) {
+        dataXceiverServer.resumePeer(peer, Thread.currentThread());
+        resumed = true;
+      } else if (!init()) {
         return;
       }
       
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
+        if (opsProcessed != 0 && !resumed && selectableChannel != null &&
+            in.available() == 0) {
+          // wait for the next operation without holding the thread
+          parked = true;
+          break;
+        }
         updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
 
         try {
-          if (opsProcessed != 0) {
+          if (opsProcessed != 0 && !resumed) {
             assert dnConf.socketKeepaliveTimeout > 0;
             peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
           } else {
+            // the next operation of a resumed connection is already arriving
             peer.setReadTimeout(dnConf.socketTimeout);
           }
           op = readOp();
@@ -247,6 +250,7 @@ public void run() {
         if (opsProcessed != 0) {
           peer.setReadTimeout(dnConf.socketTimeout);
         }
+        resumed = false;
 
         opStartTime = monotonicNow();
         processOp(op);
@@ -283,13 +287,68 @@ public void run() {
         LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
             + datanode.getXceiverCount());
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+      if (parked) {
+        // another thread may resume the connection from now on
+        updateCurrentThreadName("Parked");
+        dataXceiverServer.parkPeer(peer, this);
+      } else {
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          close();
+        }
       }
     }
   }
+
+  /**
+   * Register the connection with the server and set up its streams.
+   *
+   * @return false if the client failed the handshake
+   */
+  private boolean init() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+        HdfsConstants.SMALL_BUFFER_SIZE);
+      socketOut = saslStreams.out;
+      // the connections wrapped by SASL may buffer data out of sight of the
+      // selector, they keep their thread
+      if (saslStreams.in == socketIn &&
+          dataXceiverServer.getDispatcher() != null) {
+        selectableChannel = DataXceiverDispatcher.getSelectableChannel(peer);
+      }
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at " + peer.getRemoteAddressString() + 
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection");
+      }
+      return false;
+    }
+    
+    super.initialize(new DataInputStream(input));
+    initialized = true;
+    return true;
+  }
+
+  /**
+   * Close the connection and unregister it from the server.
+   */
+  void close() {
+    dataXceiverServer.closePeer(peer);
+    IOUtils.closeStream(in);
+  }
   
   /**
    * Returns InetAddress from peer
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.net.SocketInputStream;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+/**
+ * Runs the operations of the data transfer connections on a bounded pool of
+ * threads.
+ * <p>
+ * A connection only holds a thread while one of its operations is read and
+ * processed. Between operations, the connection is watched by a selector and
+ * handed back to the pool once its next operation arrives, or closed once it
+ * has been idle for longer than the keepalive timeout. Operations wait in a
+ * bounded queue while all the threads are busy, the connections whose
+ * operation cannot be queued are closed.
+ */
+class DataXceiverDispatcher implements Runnable {
+  public static final Log LOG = DataNode.LOG;
+
+  // how often the idle connections are looked for
+  private static final long IDLE_CHECK_INTERVAL = 1000;
+
+  private final DataNode datanode;
+  private final int keepaliveTimeout;
+  private final ThreadPoolExecutor workers;
+  private final Selector selector;
+  // the connections to watch for their next operation
+  private final Queue<DataXceiver> parked = new ConcurrentLinkedQueue<>();
+  private volatile boolean running = true;
+
+  /**
+   * A connection waiting for its next operation.
+   */
+  private static class Waiting {
+    private final DataXceiver xceiver;
+    private final long deadline;
+
+    Waiting(DataXceiver xceiver, long deadline) {
+      this.xceiver = xceiver;
+      this.deadline = deadline;
+    }
+  }
+
+  DataXceiverDispatcher(DataNode datanode, int numThreads, int queueSize,
+      int keepaliveTimeout) throws IOException {
+    this.datanode = datanode;
+    this.keepaliveTimeout = keepaliveTimeout;
+    this.workers = new ThreadPoolExecutor(numThreads, numThreads, 60,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("DataXceiver worker %d")
+            .build());
+    this.workers.allowCoreThreadTimeOut(true);
+    this.selector = Selector.open();
+  }
+
+  /**
+   * @return the channel to watch for the next operation of the connection,
+   * null if the connection cannot be watched by a selector
+   */
+  static SelectableChannel getSelectableChannel(Peer peer) {
+    ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream) {
+      channel = ((SocketInputStream) channel).getChannel();
+      if (channel instanceof SelectableChannel) {
+        return (SelectableChannel) channel;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Run the next operations of a connection on the pool.
+   *
+   * @throws RejectedExecutionException
+   *     if the queue of the pool is full
+   */
+  void execute(final DataXceiver xceiver) {
+    final long queued = monotonicNow();
+    workers.execute(new Runnable() {
+      @Override
+      public void run() {
+        DataNodeMetrics metrics = datanode.getMetrics();
+        if (metrics != null) {
+          metrics.addDataXceiverQueueTime(monotonicNow() - queued);
+        }
+        xceiver.run();
+      }
+    });
+  }
+
+  /**
+   * Watch a connection for its next operation. The connection must not be
+   * used by the caller afterwards.
+   */
+  void park(DataXceiver xceiver) {
+    parked.add(xceiver);
+    selector.wakeup();
+  }
+
+  /**
+   * @return the number of threads running operations
+   */
+  int getNumActiveWorkers() {
+    return workers.getActiveCount();
+  }
+
+  @Override
+  public void run() {
+    long lastIdleCheck = monotonicNow();
+    while (running) {
+      try {
+        if (parked.isEmpty()) {
+          selector.select(IDLE_CHECK_INTERVAL);
+        } else {
+          selector.selectNow();
+        }
+        dispatchReadable();
+        registerParked();
+        long now = monotonicNow();
+        if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+          closeIdle(now);
+          lastIdleCheck = now;
+        }
+      } catch (ClosedSelectorException e) {
+        break;
+      } catch (IOException e) {
+        LOG.warn("DataXceiverDispatcher: error selecting connections", e);
+      }
+    }
+  }
+
+  private void dispatchReadable() {
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      key.cancel();
+      DataXceiver xceiver = ((Waiting) key.attachment()).xceiver;
+      try {
+        execute(xceiver);
+      } catch (RejectedExecutionException e) {
+        DataNodeMetrics metrics = datanode.getMetrics();
+        if (metrics != null) {
+          metrics.incrDataXceiverRejected();
+        }
+        LOG.warn("DataXceiverDispatcher: closing a connection, all the " +
+            "workers are busy and the queue is full");
+        xceiver.close();
+      }
+    }
+  }
+
+  private void registerParked() {
+    List<DataXceiver> deferred = new ArrayList<>();
+    DataXceiver xceiver;
+    long deadline = monotonicNow() + keepaliveTimeout;
+    while ((xceiver = parked.poll()) != null) {
+      try {
+        xceiver.getSelectableChannel().register(selector,
+            SelectionKey.OP_READ, new Waiting(xceiver, deadline));
+      } catch (CancelledKeyException e) {
+        // the key of its previous wait is removed by the next selection
+        deferred.add(xceiver);
+      } catch (ClosedChannelException e) {
+        xceiver.close();
+      }
+    }
+    parked.addAll(deferred);
+  }
+
+  private void closeIdle(long now) {
+    for (SelectionKey key : selector.keys()) {
+      Waiting waiting = (Waiting) key.attachment();
+      if (key.isValid() && waiting.deadline <= now) {
+        key.cancel();
+        DataNodeMetrics metrics = datanode.getMetrics();
+        if (metrics != null) {
+          metrics.incrDataXceiverIdleClosed();
+        }
+        waiting.xceiver.close();
+      }
+    }
+  }
+
+  /**
+   * Stop watching the connections and stop the pool. The connections are
+   * closed by the server.
+   */
+  void shutdown() {
+    running = false;
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn("DataXceiverDispatcher: error closing the selector", e);
+    }
+    workers.shutdownNow();
+    try {
+      workers.awaitTermination(2, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
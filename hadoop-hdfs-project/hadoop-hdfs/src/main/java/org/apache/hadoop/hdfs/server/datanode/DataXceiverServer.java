@@ -23,6 +23,8 @@
 import org.apache.hadoop.hdfs.server.balancer.Balancer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -32,11 +34,15 @@
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
 
@@ -56,6 +62,9 @@ class DataXceiverServer implements Runnable {
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
+  // runs the operations on a pool of threads, null if each connection has
+  // its own thread
+  private final DataXceiverDispatcher dispatcher;
 
   /**
    * Maximal number of concurrent xceivers per node.
@@ -118,7 +127,8 @@ synchronized void release() {
   long estimateBlockSize;
   
   
-  DataXceiverServer(PeerServer peerServer, Configuration conf, DataNode datanode) {
+  DataXceiverServer(PeerServer peerServer, Configuration conf, DataNode datanode)
+      throws IOException {
     
     this.peerServer = peerServer;
     this.datanode = datanode;
@@ -136,11 +146,28 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    // the domain socket connections are not selectable
+    if (peerServer instanceof TcpPeerServer && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_DEFAULT)) {
+      this.dispatcher = new DataXceiverDispatcher(datanode,
+          conf.getInt(DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_THREADS_KEY,
+              DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_THREADS_DEFAULT),
+          conf.getInt(DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_QUEUE_SIZE_KEY,
+              DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_QUEUE_SIZE_DEFAULT),
+          datanode.getDnConf().socketKeepaliveTimeout);
+    } else {
+      this.dispatcher = null;
+    }
   }
 
   @Override
   public void run() {
     Peer peer = null;
+    if (dispatcher != null) {
+      new Daemon(dispatcher).start();
+    }
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
         peer = peerServer.accept();
@@ -152,8 +179,21 @@ public void run() {
               " exceeds the limit of concurrent xcievers: " + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup, DataXceiver.create(peer, datanode, this))
-            .start();
+        if (dispatcher != null) {
+          try {
+            dispatcher.execute(DataXceiver.create(peer, datanode, this));
+          } catch (RejectedExecutionException e) {
+            DataNodeMetrics metrics = datanode.getMetrics();
+            if (metrics != null) {
+              metrics.incrDataXceiverRejected();
+            }
+            throw new IOException("All the DataXceiver workers are busy and " +
+                "the queue is full", e);
+          }
+        } else {
+          new Daemon(datanode.threadGroup,
+              DataXceiver.create(peer, datanode, this)).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -212,6 +252,9 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
   }
   
   void kill() {
@@ -235,6 +278,36 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     peersXceiver.put(peer, xceiver);
   }
 
+  /**
+   * Register the thread resuming a parked connection.
+   */
+  synchronized void resumePeer(Peer peer, Thread t) throws IOException {
+    if (closed || !peers.containsKey(peer)) {
+      throw new IOException("Server closed.");
+    }
+    peers.put(peer, t);
+  }
+
+  /**
+   * Hand a connection waiting for its next operation to the dispatcher, or
+   * close it if the server is closed.
+   */
+  void parkPeer(Peer peer, DataXceiver xceiver) {
+    boolean open;
+    synchronized (this) {
+      open = !closed && peers.containsKey(peer);
+      if (open) {
+        // no thread to interrupt while parked
+        peers.put(peer, null);
+      }
+    }
+    if (open) {
+      dispatcher.park(xceiver);
+    } else {
+      xceiver.close();
+    }
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -263,9 +336,18 @@ public synchronized void sendOOBToPeers() {
   // be set true before calling this method.
   synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
-    for (Thread t : peers.values()) {
-      // interrupt each and every DataXceiver thread.
-      t.interrupt();
+    List<Peer> parked = new ArrayList<Peer>();
+    for (Map.Entry<Peer, Thread> e : peers.entrySet()) {
+      if (e.getValue() != null) {
+        // interrupt each and every DataXceiver thread.
+        e.getValue().interrupt();
+      } else {
+        // the parked connections have no operation in progress
+        parked.add(e.getKey());
+      }
+    }
+    for (Peer p : parked) {
+      closePeer(p);
     }
   }
 
@@ -290,6 +372,15 @@ synchronized int getNumPeersXceiver() {
     return peersXceiver.size();
   }
   
+  DataXceiverDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  // Return the number of threads of the dispatcher running operations.
+  int getNumActiveWorkers() {
+    return dispatcher == null ? 0 : dispatcher.getNumActiveWorkers();
+  }
+
   synchronized void releasePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
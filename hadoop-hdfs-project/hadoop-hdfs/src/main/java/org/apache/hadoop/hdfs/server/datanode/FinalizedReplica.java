@@ -22,12 +22,21 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 
 import java.io.File;
+import java.util.Queue;
 
 /**
  * This class describes a replica that has been finalized.
  */
 public class FinalizedReplica extends ReplicaInfo {
   private boolean unlinked;      // copy-on-write done for block
+  // the generation stamp, length and storage with which the replica is
+  // included in the bucket hashes of its block pool, if it is
+  private boolean hashed;
+  private long hashedGenerationStamp;
+  private long hashedNumBytes;
+  private String hashedStorageUuid;
+  // where the replica is queued when it is changed in place while hashed
+  private volatile Queue<FinalizedReplica> changes;
 
   /**
    * Constructor
@@ -87,6 +96,74 @@ public void setUnlinked() {
     unlinked = true;
   }
   
+  /**
+   * Record that the replica is included in the bucket hashes of its block
+   * pool with the given state.
+   *
+   * @param changes
+   *     where to queue the replica when its generation stamp or length is
+   *     changed, until it is rehashed
+   */
+  public void setHashed(long genStamp, long numBytes, String storageUuid,
+      Queue<FinalizedReplica> changes) {
+    this.hashed = true;
+    this.hashedGenerationStamp = genStamp;
+    this.hashedNumBytes = numBytes;
+    this.hashedStorageUuid = storageUuid;
+    this.changes = changes;
+  }
+
+  /**
+   * Record that the replica is no longer included in the bucket hashes.
+   */
+  public void clearHashed() {
+    this.hashed = false;
+    this.hashedStorageUuid = null;
+    this.changes = null;
+  }
+
+  @Override
+  public void setNoPersistance(long blkid, long len, long genStamp) {
+    super.setNoPersistance(blkid, len, genStamp);
+    changed();
+  }
+
+  @Override
+  public void setNumBytesNoPersistance(long len) {
+    super.setNumBytesNoPersistance(len);
+    changed();
+  }
+
+  @Override
+  public void setGenerationStampNoPersistance(long stamp) {
+    super.setGenerationStampNoPersistance(stamp);
+    changed();
+  }
+
+  private void changed() {
+    // also called by the constructor of Block, before the fields are set
+    Queue<FinalizedReplica> queue = changes;
+    if (queue != null) {
+      queue.add(this);
+    }
+  }
+
+  public boolean isHashed() {
+    return hashed;
+  }
+
+  public long getHashedGenerationStamp() {
+    return hashedGenerationStamp;
+  }
+
+  public long getHashedNumBytes() {
+    return hashedNumBytes;
+  }
+
+  public String getHashedStorageUuid() {
+    return hashedStorageUuid;
+  }
+
   @Override
   public long getVisibleLength() {
     return getNumBytes();       // all bytes are visible
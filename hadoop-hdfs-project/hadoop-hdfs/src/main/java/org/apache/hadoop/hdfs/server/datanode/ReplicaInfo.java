@@ -24,6 +24,7 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.LightWeightGSet;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,7 +40,14 @@
  * It provides a general interface for meta information of a replica.
  */
 @InterfaceAudience.Private
-abstract public class ReplicaInfo extends Block implements Replica {
+abstract public class ReplicaInfo extends Block
+    implements Replica, LightWeightGSet.LinkedElement {
+
+  /**
+   * the next replica in the replica map bucket of this replica
+   */
+  private LightWeightGSet.LinkedElement next;
+
   /**
    * volume where the replica belongs
    */
@@ -158,6 +166,16 @@ void setVolume(FsVolumeSpi vol) {
     this.volume = vol;
   }
 
+  @Override
+  public LightWeightGSet.LinkedElement getNext() {
+    return next;
+  }
+
+  @Override
+  public void setNext(LightWeightGSet.LinkedElement next) {
+    this.next = next;
+  }
+
   /**
    * Get the storageUuid of the volume that stores this replica.
    */
@@ -50,6 +50,7 @@
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.File;
@@ -600,4 +601,17 @@ public ReplicaInfo moveBlockAcrossStorage(final ExtendedBlock block,
    * Confirm whether the block is deleting
    */
   public boolean isDeletingBlock(String bpid, long blockId);
+
+  /**
+   * Acquire the lock of the dataset, excluding all the other operations on
+   * it until the lock is released.
+   */
+  public AutoCloseableLock acquireDatasetLock();
+
+  /**
+   * Acquire the lock of the dataset shared with the other readers. Volumes
+   * and block pools do not change while it is held, but single replicas
+   * still may.
+   */
+  public AutoCloseableLock acquireDatasetReadLock();
 }
@@ -279,7 +279,8 @@ File createRbwFile(Block b) throws IOException {
   File addBlock(Block b, File f) throws IOException {
     File blockDir = DatanodeUtil.idToBlockDir(finalizedDir, b.getBlockId());
     if (!blockDir.exists()) {
-      if (!blockDir.mkdirs()) {
+      // blocks of the same directory can be finalized concurrently
+      if (!blockDir.mkdirs() && !blockDir.isDirectory()) {
         throw new IOException("Failed to mkdirs " + blockDir);
       }
     }
@@ -572,7 +573,8 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap) {
       // Now it is safe to add the replica into volumeMap
       // In case of any exception during parsing this cache file, fall back
       // to scan all the files on disk.
-      for (ReplicaInfo info: tmpReplicaMap.replicas(bpid)) {
+      // adding a replica to the volume map unlinks it from the temporary one
+      for (ReplicaInfo info: tmpReplicaMap.snapshot(bpid)) {
         volumeMap.add(bpid, info);
       }
       LOG.info("Successfully read replica from cache file : " 
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import org.apache.hadoop.hdfs.server.blockmanagement.HashBuckets;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.protocol.BlockReport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The block report bucket hashes of the finalized replicas of a block pool,
+ * by storage.
+ * <p>
+ * The hashes are updated as finalized replicas are added to and removed from
+ * the replica map, so that block reports do not hash every replica. Each
+ * replica records the state it was hashed with, so that it can be taken out
+ * of the hashes after it was changed in place. The replicas changed in
+ * place queue themselves, so that only they are rehashed before a report.
+ * Replicas in other states change with every packet written and are hashed
+ * when reported.
+ * <p>
+ * This class is not thread safe, it is guarded by the mutex of the replica
+ * map. The replicas are changed in place without the mutex, so only the
+ * queue of the changed replicas is thread safe.
+ */
+class BucketHashes {
+  private final int numBuckets;
+  private final Map<String, byte[][]> hashes = new HashMap<>();
+  // the hashed replicas changed in place since they were hashed, a replica
+  // changed several times may be queued several times
+  private final Queue<FinalizedReplica> changed =
+      new ConcurrentLinkedQueue<>();
+
+  BucketHashes(int numBuckets) {
+    this.numBuckets = numBuckets;
+  }
+
+  void add(FinalizedReplica replica) {
+    FsVolumeSpi volume = replica.getVolume();
+    String storageUuid = volume != null ? volume.getStorageID() : null;
+    xor(storageUuid, replica.getBlockId(), replica.getGenerationStamp(),
+        replica.getNumBytes());
+    replica.setHashed(replica.getGenerationStamp(), replica.getNumBytes(),
+        storageUuid, changed);
+  }
+
+  void remove(FinalizedReplica replica) {
+    if (!replica.isHashed()) {
+      return;
+    }
+    xor(replica.getHashedStorageUuid(), replica.getBlockId(),
+        replica.getHashedGenerationStamp(), replica.getHashedNumBytes());
+    replica.clearHashed();
+  }
+
+  /**
+   * Rehash the replicas whose generation stamp or length were changed in
+   * place since they were hashed.
+   */
+  void updateChanged() {
+    FinalizedReplica replica;
+    while ((replica = changed.poll()) != null) {
+      // the replica may have been removed or rehashed since it was queued
+      if (!replica.isHashed() ||
+          (replica.getHashedGenerationStamp() == replica.getGenerationStamp()
+              && replica.getHashedNumBytes() == replica.getNumBytes())) {
+        continue;
+      }
+      remove(replica);
+      add(replica);
+    }
+  }
+
+  /**
+   * @return a copy of the hashes of the buckets of a storage, null if it has
+   * no finalized replica
+   */
+  byte[][] get(String storageUuid) {
+    byte[][] storageHashes = hashes.get(storageUuid);
+    if (storageHashes == null) {
+      return null;
+    }
+    byte[][] copy = new byte[numBuckets][];
+    for (int i = 0; i < numBuckets; i++) {
+      copy[i] = storageHashes[i].clone();
+    }
+    return copy;
+  }
+
+  private void xor(String storageUuid, long blockId, long genStamp,
+      long numBytes) {
+    byte[][] storageHashes = hashes.get(storageUuid);
+    if (storageHashes == null) {
+      storageHashes = new byte[numBuckets][HashBuckets.HASH_LENGTH];
+      hashes.put(storageUuid, storageHashes);
+    }
+    HashBuckets.XORHashes(storageHashes[BlockReport.bucket(blockId,
+        numBuckets)], HashBuckets.hash(blockId, genStamp, numBytes,
+        ReplicaState.FINALIZED.getValue()));
+  }
+}
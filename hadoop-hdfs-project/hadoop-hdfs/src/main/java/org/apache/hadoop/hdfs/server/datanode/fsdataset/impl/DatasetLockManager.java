@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.util.AutoCloseableLock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The locks of a {@link FsDatasetImpl}.
+ * <p>
+ * Changes to the whole dataset, like adding or removing volumes and block
+ * pools, take the dataset lock exclusively. Operations that read many
+ * replicas, like block reports, share it. Operations on a single replica
+ * share the dataset lock and take the lock of the stripe of the replica,
+ * chosen by its block pool and block id, so that operations on different
+ * replicas, whatever their volume, do not wait for each other. A thread
+ * holding a replica lock must not take the exclusive dataset lock.
+ * <p>
+ * The time spent waiting for and holding the locks is added to the datanode
+ * metrics. The hold time is measured from the outermost acquisition by a
+ * thread.
+ */
+class DatasetLockManager {
+  static final int NUM_STRIPES = 256;
+
+  private final DataNode datanode;
+  private final ReentrantReadWriteLock datasetLock =
+      new ReentrantReadWriteLock();
+  private final AutoCloseableLock writeLock =
+      new AutoCloseableLock(new DatasetWriteLock());
+  private final AutoCloseableLock readLock =
+      new AutoCloseableLock(new DatasetReadLock());
+  private final AutoCloseableLock[] replicaLocks =
+      new AutoCloseableLock[NUM_STRIPES];
+
+  DatasetLockManager(DataNode datanode) {
+    this.datanode = datanode;
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      replicaLocks[i] = new AutoCloseableLock(new ReplicaLock());
+    }
+  }
+
+  AutoCloseableLock acquireDatasetLock() {
+    return writeLock.acquire();
+  }
+
+  AutoCloseableLock acquireDatasetReadLock() {
+    return readLock.acquire();
+  }
+
+  AutoCloseableLock acquireReplicaLock(String bpid, long blockId) {
+    return replicaLocks[stripe(bpid, blockId)].acquire();
+  }
+
+  static int stripe(String bpid, long blockId) {
+    int hash = 31 * bpid.hashCode() + (int) (blockId ^ (blockId >>> 32));
+    hash ^= hash >>> 16;
+    return (hash & Integer.MAX_VALUE) % NUM_STRIPES;
+  }
+
+  private DataNodeMetrics getMetrics() {
+    // the datanode is a mock without metrics in some tests
+    return datanode != null ? datanode.getMetrics() : null;
+  }
+
+  /**
+   * A lock whose wait and hold times are added to the metrics.
+   */
+  private abstract class MeasuredLock implements Lock {
+
+    /**
+     * @return how many times the current thread holds the lock
+     */
+    abstract int getHoldCount();
+
+    abstract void doLock();
+
+    abstract void doLockInterruptibly() throws InterruptedException;
+
+    abstract boolean doTryLock();
+
+    abstract boolean doTryLock(long timeNanos) throws InterruptedException;
+
+    abstract void doUnlock();
+
+    /**
+     * Record the outermost acquisition of the lock by the current thread.
+     */
+    abstract void acquired(DataNodeMetrics metrics, long start, long now);
+
+    /**
+     * Record the outermost release of the lock by the current thread.
+     */
+    abstract void released(DataNodeMetrics metrics, long now);
+
+    @Override
+    public void lock() {
+      long start = System.nanoTime();
+      doLock();
+      onAcquired(start);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      long start = System.nanoTime();
+      doLockInterruptibly();
+      onAcquired(start);
+    }
+
+    @Override
+    public boolean tryLock() {
+      long start = System.nanoTime();
+      if (!doTryLock()) {
+        return false;
+      }
+      onAcquired(start);
+      return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit)
+        throws InterruptedException {
+      long start = System.nanoTime();
+      if (!doTryLock(unit.toNanos(time))) {
+        return false;
+      }
+      onAcquired(start);
+      return true;
+    }
+
+    @Override
+    public void unlock() {
+      if (getHoldCount() == 1) {
+        DataNodeMetrics metrics = getMetrics();
+        if (metrics != null) {
+          released(metrics, System.nanoTime());
+        }
+      }
+      doUnlock();
+    }
+
+    private void onAcquired(long start) {
+      if (getHoldCount() == 1) {
+        DataNodeMetrics metrics = getMetrics();
+        if (metrics != null) {
+          acquired(metrics, start, System.nanoTime());
+        }
+      }
+    }
+  }
+
+  private class DatasetWriteLock extends MeasuredLock {
+    private final Lock lock = datasetLock.writeLock();
+    private long acquired;
+
+    @Override
+    int getHoldCount() {
+      return datasetLock.getWriteHoldCount();
+    }
+
+    @Override
+    void doLock() {
+      lock.lock();
+    }
+
+    @Override
+    void doLockInterruptibly() throws InterruptedException {
+      lock.lockInterruptibly();
+    }
+
+    @Override
+    boolean doTryLock() {
+      return lock.tryLock();
+    }
+
+    @Override
+    boolean doTryLock(long timeNanos) throws InterruptedException {
+      return lock.tryLock(timeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    void doUnlock() {
+      lock.unlock();
+    }
+
+    @Override
+    void acquired(DataNodeMetrics metrics, long start, long now) {
+      acquired = now;
+      metrics.addDatasetLockWaitNanos(now - start);
+    }
+
+    @Override
+    void released(DataNodeMetrics metrics, long now) {
+      metrics.addDatasetLockHeldNanos(now - acquired);
+    }
+
+    /**
+     * The hold time includes the time spent waiting for the condition.
+     */
+    @Override
+    public Condition newCondition() {
+      return lock.newCondition();
+    }
+  }
+
+  private class DatasetReadLock extends MeasuredLock {
+    private final Lock lock = datasetLock.readLock();
+    // the lock is shared, so each thread keeps its own acquisition time
+    private final ThreadLocal<long[]> acquired = new ThreadLocal<long[]>() {
+      @Override
+      protected long[] initialValue() {
+        return new long[1];
+      }
+    };
+
+    @Override
+    int getHoldCount() {
+      return datasetLock.getReadHoldCount();
+    }
+
+    @Override
+    void doLock() {
+      lock.lock();
+    }
+
+    @Override
+    void doLockInterruptibly() throws InterruptedException {
+      lock.lockInterruptibly();
+    }
+
+    @Override
+    boolean doTryLock() {
+      return lock.tryLock();
+    }
+
+    @Override
+    boolean doTryLock(long timeNanos) throws InterruptedException {
+      return lock.tryLock(timeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    void doUnlock() {
+      lock.unlock();
+    }
+
+    @Override
+    void acquired(DataNodeMetrics metrics, long start, long now) {
+      acquired.get()[0] = now;
+      metrics.addDatasetReadLockWaitNanos(now - start);
+    }
+
+    @Override
+    void released(DataNodeMetrics metrics, long now) {
+      metrics.addDatasetReadLockHeldNanos(now - acquired.get()[0]);
+    }
+
+    /**
+     * @throws UnsupportedOperationException
+     *     a shared lock has no conditions
+     */
+    @Override
+    public Condition newCondition() {
+      return lock.newCondition();
+    }
+  }
+
+  /**
+   * The lock of a stripe of replicas, taken with the shared dataset lock.
+   */
+  private class ReplicaLock extends MeasuredLock {
+    private final Lock datasetReadLock = datasetLock.readLock();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long acquired;
+
+    @Override
+    int getHoldCount() {
+      return lock.getHoldCount();
+    }
+
+    @Override
+    void doLock() {
+      datasetReadLock.lock();
+      lock.lock();
+    }
+
+    @Override
+    void doLockInterruptibly() throws InterruptedException {
+      datasetReadLock.lockInterruptibly();
+      try {
+        lock.lockInterruptibly();
+      } catch (InterruptedException e) {
+        datasetReadLock.unlock();
+        throw e;
+      }
+    }
+
+    @Override
+    boolean doTryLock() {
+      if (!datasetReadLock.tryLock()) {
+        return false;
+      }
+      if (!lock.tryLock()) {
+        datasetReadLock.unlock();
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    boolean doTryLock(long timeNanos) throws InterruptedException {
+      long deadline = System.nanoTime() + timeNanos;
+      if (!datasetReadLock.tryLock(timeNanos, TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+      boolean locked = false;
+      try {
+        locked = lock.tryLock(deadline - System.nanoTime(),
+            TimeUnit.NANOSECONDS);
+      } finally {
+        if (!locked) {
+          datasetReadLock.unlock();
+        }
+      }
+      return locked;
+    }
+
+    @Override
+    void doUnlock() {
+      lock.unlock();
+      datasetReadLock.unlock();
+    }
+
+    @Override
+    void acquired(DataNodeMetrics metrics, long start, long now) {
+      acquired = now;
+      metrics.addReplicaLockWaitNanos(now - start);
+    }
+
+    @Override
+    void released(DataNodeMetrics metrics, long now) {
+      metrics.addReplicaLockHeldNanos(now - acquired);
+    }
+
+    /**
+     * Waiting for the condition only releases the replica lock, the shared
+     * dataset lock is kept. The hold time includes the time spent waiting.
+     */
+    @Override
+    public Condition newCondition() {
+      return lock.newCondition();
+    }
+  }
+}
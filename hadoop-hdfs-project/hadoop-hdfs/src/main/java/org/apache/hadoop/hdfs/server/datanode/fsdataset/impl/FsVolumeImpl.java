@@ -59,6 +59,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.CloseableReferenceCount;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
@@ -267,7 +268,7 @@ File getTmpDir(String bpid) throws IOException {
   }
 
   void decDfsUsed(String bpid, long value) {
-    synchronized (dataset) {
+    try (AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       BlockPoolSlice bp = bpSlices.get(bpid);
       if (bp != null) {
         bp.decDfsUsed(value);
@@ -278,7 +279,7 @@ void decDfsUsed(String bpid, long value) {
   @VisibleForTesting
   public long getDfsUsed() throws IOException {
     long dfsUsed = 0;
-    synchronized (dataset) {
+    try (AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       for (BlockPoolSlice s : bpSlices.values()) {
         dfsUsed += s.getDfsUsed();
       }
@@ -17,31 +17,90 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import com.sun.management.HotSpotDiagnosticMXBean;
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.util.LightWeightResizableGSet;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Maintains the replica map.
+ * <p>
+ * The replicas of each block pool are kept in a {@link
+ * LightWeightResizableGSet} linking the replicas to each other, rather than
+ * in a map with an entry and a boxed block id per replica. A replica can
+ * only be in one of these sets at a time.
  */
 class ReplicaMap {
   // Object using which this class is synchronized
   private final Object mutex;
   
-  // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private Map<String, Map<Long, ReplicaInfo>> map =
-      new HashMap<>();
+  // Map of block pool Id to the set of its replicas
+  private Map<String, ReplicaSet> map = new HashMap<>();
+
+  // the number of block report buckets, 0 if the map keeps no bucket hashes
+  private final int numBuckets;
+  // Map of block pool Id to the bucket hashes of its finalized replicas
+  private final Map<String, BucketHashes> hashes = new HashMap<>();
+
+  private static final int REFERENCE_SIZE = getReferenceSize();
+
+  /**
+   * @return the size of an object reference: 4 bytes on a 32-bit JVM or with
+   * compressed oops, which are on by default for heaps under 32 GB, and 8
+   * bytes otherwise or if the JVM does not tell
+   */
+  private static int getReferenceSize() {
+    if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+      return 4;
+    }
+    try {
+      HotSpotDiagnosticMXBean hotspot =
+          ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      if (hotspot != null && Boolean.parseBoolean(
+          hotspot.getVMOption("UseCompressedOops").getValue())) {
+        return 4;
+      }
+    } catch (RuntimeException | LinkageError e) {
+      // not a HotSpot JVM
+    }
+    return 8;
+  }
+
+  /**
+   * The replicas of a block pool, looked up by block id.
+   */
+  private static class ReplicaSet
+      extends LightWeightResizableGSet<Block, ReplicaInfo> {
+    int capacity() {
+      return entries.length;
+    }
+  }
   
   ReplicaMap(Object mutex) {
+    this(mutex, 0);
+  }
+
+  /**
+   * @param numBuckets
+   *     the number of block report buckets to keep the hashes of the
+   *     finalized replicas for, 0 to keep no hashes
+   */
+  ReplicaMap(Object mutex, int numBuckets) {
     if (mutex == null) {
       throw new HadoopIllegalArgumentException(
           "Object to synchronize on cannot be null");
     }
     this.mutex = mutex;
+    this.numBuckets = numBuckets;
   }
   
   String[] getBlockPoolList() {
@@ -98,8 +157,8 @@ ReplicaInfo get(String bpid, Block block) {
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
     synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
+      ReplicaSet m = map.get(bpid);
+      return m != null ? m.get(new Block(blockId)) : null;
     }
   }
   
@@ -118,21 +177,42 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
     synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
+      ReplicaSet m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<>();
+        m = new ReplicaSet();
         map.put(bpid, m);
       }
-      return m.put(replicaInfo.getBlockId(), replicaInfo);
+      ReplicaInfo old = m.put(replicaInfo);
+      unhash(bpid, old);
+      hash(bpid, replicaInfo);
+      return old;
     }
   }
 
   /**
    * Add all entries from the given replica map into the local replica map.
+   * The replicas of the block pools that are not in the local map are
+   * shared with the given map, the others are moved from it.
    */
   void addAll(ReplicaMap other) {
-    map.putAll(other.map);
+    synchronized (mutex) {
+      for (Map.Entry<String, ReplicaSet> entry : other.map.entrySet()) {
+        String bpid = entry.getKey();
+        if (!map.containsKey(bpid)) {
+          map.put(bpid, entry.getValue());
+          for (ReplicaInfo replicaInfo : entry.getValue()) {
+            hash(bpid, replicaInfo);
+          }
+          continue;
+        }
+        // adding a replica unlinks it from the set it is iterated from
+        for (ReplicaInfo replicaInfo :
+            new ArrayList<>(entry.getValue().values())) {
+          add(bpid, replicaInfo);
+        }
+      }
+    }
   }
   
   /**
@@ -151,13 +231,14 @@ ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
     synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
+      ReplicaSet m = map.get(bpid);
       if (m != null) {
-        Long key = block.getBlockId();
-        ReplicaInfo replicaInfo = m.get(key);
+        ReplicaInfo replicaInfo = m.get(block);
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return m.remove(key);
+          m.remove(block);
+          unhash(bpid, replicaInfo);
+          return replicaInfo;
         }
       }
     }
@@ -177,9 +258,11 @@ ReplicaInfo remove(String bpid, Block block) {
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
     synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
+      ReplicaSet m = map.get(bpid);
       if (m != null) {
-        return m.remove(blockId);
+        ReplicaInfo replicaInfo = m.remove(new Block(blockId));
+        unhash(bpid, replicaInfo);
+        return replicaInfo;
       }
     }
     return null;
@@ -193,7 +276,7 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
+    ReplicaSet m = null;
     synchronized (mutex) {
       m = map.get(bpid);
       return m != null ? m.size() : 0;
@@ -212,17 +295,87 @@ int size(String bpid) {
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    Map<Long, ReplicaInfo> m = map.get(bpid);
+    ReplicaSet m = map.get(bpid);
     return m != null ? m.values() : null;
   }
 
+  /**
+   * Get a copy of the replicas for given block pool. Unlike
+   * {@link #replicas(String)}, it can be used without synchronizing on the
+   * mutex.
+   *
+   * @param bpid
+   *     block pool id
+   * @return the replicas belonging to the block pool
+   */
+  List<ReplicaInfo> snapshot(String bpid) {
+    checkBlockPool(bpid);
+    synchronized (mutex) {
+      ReplicaSet m = map.get(bpid);
+      return m != null ? new ArrayList<>(m.values())
+          : new ArrayList<ReplicaInfo>();
+    }
+  }
+
+  /**
+   * Get the bucket hashes of the finalized replicas of a block pool on a
+   * storage. The replicas changed in place since they were hashed are
+   * rehashed first.
+   * <p>
+   * This method is <b>not synchronized</b>. It needs to be synchronized
+   * externally using the mutex, together with getting the replicas that
+   * are reported with the hashes.
+   *
+   * @param bpid
+   *     block pool id
+   * @param storageUuids
+   *     the storages to get the hashes of
+   * @return the hashes by storage and bucket, without the storages that have
+   * no finalized replica or if the map keeps no bucket hashes
+   */
+  Map<String, byte[][]> finalizedHashes(String bpid,
+      Collection<String> storageUuids) {
+    Map<String, byte[][]> result = new HashMap<>();
+    BucketHashes bpHashes = hashes.get(bpid);
+    if (bpHashes == null || !map.containsKey(bpid)) {
+      return result;
+    }
+    bpHashes.updateChanged();
+    for (String storageUuid : storageUuids) {
+      byte[][] storageHashes = bpHashes.get(storageUuid);
+      if (storageHashes != null) {
+        result.put(storageUuid, storageHashes);
+      }
+    }
+    return result;
+  }
+
+  private void hash(String bpid, ReplicaInfo replicaInfo) {
+    if (numBuckets == 0 || !(replicaInfo instanceof FinalizedReplica)) {
+      return;
+    }
+    BucketHashes bpHashes = hashes.get(bpid);
+    if (bpHashes == null) {
+      bpHashes = new BucketHashes(numBuckets);
+      hashes.put(bpid, bpHashes);
+    }
+    bpHashes.add((FinalizedReplica) replicaInfo);
+  }
+
+  private void unhash(String bpid, ReplicaInfo replicaInfo) {
+    BucketHashes bpHashes = hashes.get(bpid);
+    if (bpHashes != null && replicaInfo instanceof FinalizedReplica) {
+      bpHashes.remove((FinalizedReplica) replicaInfo);
+    }
+  }
+
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
     synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
+      ReplicaSet m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<>();
+        m = new ReplicaSet();
         map.put(bpid, m);
       }
     }
@@ -231,10 +384,36 @@ void initBlockPool(String bpid) {
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
     synchronized (mutex) {
-      map.remove(bpid);
+      ReplicaSet m = map.remove(bpid);
+      if (m != null) {
+        for (ReplicaInfo replicaInfo : m.values()) {
+          unhash(bpid, replicaInfo);
+        }
+      }
+      hashes.remove(bpid);
     }
   }
   
+  /**
+   * Estimate the memory used by the map per replica, not counting the
+   * replicas themselves: the tables of the block pools and the link held by
+   * each replica. The estimate is an upper bound if the JVM does not tell
+   * whether it compresses the references.
+   *
+   * @return the estimated number of bytes per replica, 0 if the map is empty
+   */
+  long estimateMemoryPerReplica() {
+    synchronized (mutex) {
+      long references = 0;
+      long replicas = 0;
+      for (ReplicaSet m : map.values()) {
+        references += m.capacity() + m.size();
+        replicas += m.size();
+      }
+      return replicas > 0 ? references * REFERENCE_SIZE / replicas : 0;
+    }
+  }
+
   /**
    * Give access to mutex used for synchronizing ReplicasMap
    *
@@ -243,4 +422,4 @@ void cleanUpBlockPool(String bpid) {
   Object getMutext() {
     return mutex;
   }
-}
\ No newline at end of file
+}
@@ -72,7 +72,10 @@ public static void getMetrics(MetricsCollector collector,
         "blocks failed to cache"), beanClass.getNumBlocksFailedToCache())
       .addGauge(Interns.info("NumBlocksFailedToUnCache", "Datanode number of" +
           " blocks failed in cache eviction"),
-        beanClass.getNumBlocksFailedToUncache());
+        beanClass.getNumBlocksFailedToUncache())
+      .addGauge(Interns.info("ReplicaMapBytesPerReplica", "Estimated bytes" +
+          " used by the replica map per replica"),
+        beanClass.getReplicaMapBytesPerReplica());
 
   }
 
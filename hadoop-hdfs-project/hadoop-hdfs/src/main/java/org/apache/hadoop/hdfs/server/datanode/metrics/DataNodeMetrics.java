@@ -31,6 +31,8 @@
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import static org.apache.hadoop.metrics2.impl.MsInfo.SessionId;
 
 /**
@@ -66,6 +68,12 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong writesFromLocalClient;
   @Metric MutableCounterLong writesFromRemoteClient;
   @Metric MutableCounterLong blocksGetLocalPathInfo;
+  @Metric("Small file reads served by the small file data cache")
+  MutableCounterLong smallFileCacheHits;
+  @Metric("Small file reads not served by the small file data cache")
+  MutableCounterLong smallFileCacheMisses;
+  @Metric("Bytes served by the small file data cache")
+  MutableCounterLong smallFileCacheBytesRead;
   @Metric("Bytes read by remote client")
   MutableCounterLong remoteBytesRead;
   @Metric("Bytes written by remote client")
@@ -108,6 +116,26 @@ public class DataNodeMetrics {
   MutableRate sendDataPacketTransferNanos;
   MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
 
+  // the dataset locks are taken by every operation on the replicas, their
+  // times are summed without contention and published on each snapshot
+  private final LongAdder datasetLockAcquisitions = new LongAdder();
+  private final LongAdder datasetLockWaitNanos = new LongAdder();
+  private final LongAdder datasetLockHeldNanos = new LongAdder();
+  private final LongAdder datasetReadLockAcquisitions = new LongAdder();
+  private final LongAdder datasetReadLockWaitNanos = new LongAdder();
+  private final LongAdder datasetReadLockHeldNanos = new LongAdder();
+  private final LongAdder replicaLockAcquisitions = new LongAdder();
+  private final LongAdder replicaLockWaitNanos = new LongAdder();
+  private final LongAdder replicaLockHeldNanos = new LongAdder();
+
+  @Metric("Milliseconds data transfer operations waited for a worker")
+  MutableRate dataXceiverQueueTime;
+  @Metric("Data transfer connections closed because the worker queue was"
+      + " full")
+  MutableCounterLong dataXceiverRejected;
+  @Metric("Idle data transfer connections closed after the keepalive timeout")
+  MutableCounterLong dataXceiverIdleClosed;
+
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
   
@@ -252,6 +280,15 @@ public void incrBlocksRead() {
     blocksRead.incr();
   }
 
+  public void incrSmallFileCacheHits(int bytes) {
+    smallFileCacheHits.incr();
+    smallFileCacheBytesRead.incr(bytes);
+  }
+
+  public void incrSmallFileCacheMisses() {
+    smallFileCacheMisses.incr();
+  }
+
   public void incrFsyncCount() {
     fsyncCount.incr();
   }
@@ -286,6 +323,90 @@ public void addFsyncNanos(long latencyNanos) {
     }
   }
 
+  public void addDatasetLockWaitNanos(long nanos) {
+    datasetLockAcquisitions.increment();
+    datasetLockWaitNanos.add(nanos);
+  }
+
+  public void addDatasetLockHeldNanos(long nanos) {
+    datasetLockHeldNanos.add(nanos);
+  }
+
+  public void addDatasetReadLockWaitNanos(long nanos) {
+    datasetReadLockAcquisitions.increment();
+    datasetReadLockWaitNanos.add(nanos);
+  }
+
+  public void addDatasetReadLockHeldNanos(long nanos) {
+    datasetReadLockHeldNanos.add(nanos);
+  }
+
+  public void addReplicaLockWaitNanos(long nanos) {
+    replicaLockAcquisitions.increment();
+    replicaLockWaitNanos.add(nanos);
+  }
+
+  public void addReplicaLockHeldNanos(long nanos) {
+    replicaLockHeldNanos.add(nanos);
+  }
+
+  @Metric(value = "Acquisitions of the exclusive dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetLockAcquisitions() {
+    return datasetLockAcquisitions.sum();
+  }
+
+  @Metric(value = "Nanoseconds waiting for the exclusive dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetLockWaitNanos() {
+    return datasetLockWaitNanos.sum();
+  }
+
+  @Metric(value = "Nanoseconds holding the exclusive dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetLockHeldNanos() {
+    return datasetLockHeldNanos.sum();
+  }
+
+  @Metric(value = "Acquisitions of the shared dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetReadLockAcquisitions() {
+    return datasetReadLockAcquisitions.sum();
+  }
+
+  @Metric(value = "Nanoseconds waiting for the shared dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetReadLockWaitNanos() {
+    return datasetReadLockWaitNanos.sum();
+  }
+
+  @Metric(value = "Nanoseconds holding the shared dataset lock", type = Metric.Type.COUNTER)
+  public long getDatasetReadLockHeldNanos() {
+    return datasetReadLockHeldNanos.sum();
+  }
+
+  @Metric(value = "Acquisitions of replica locks", type = Metric.Type.COUNTER)
+  public long getReplicaLockAcquisitions() {
+    return replicaLockAcquisitions.sum();
+  }
+
+  @Metric(value = "Nanoseconds waiting for replica locks", type = Metric.Type.COUNTER)
+  public long getReplicaLockWaitNanos() {
+    return replicaLockWaitNanos.sum();
+  }
+
+  @Metric(value = "Nanoseconds holding replica locks", type = Metric.Type.COUNTER)
+  public long getReplicaLockHeldNanos() {
+    return replicaLockHeldNanos.sum();
+  }
+
+  public void addDataXceiverQueueTime(long latency) {
+    dataXceiverQueueTime.add(latency);
+  }
+
+  public void incrDataXceiverRejected() {
+    dataXceiverRejected.incr();
+  }
+
+  public void incrDataXceiverIdleClosed() {
+    dataXceiverIdleClosed.incr();
+  }
+
   public void shutdown() {
     DefaultMetricsSystem.shutdown();
   }
@@ -125,4 +125,10 @@ public interface FSDatasetMBean extends MetricsSource {
    * Returns the number of blocks that the datanode was unable to uncache
    */
   public long getNumBlocksFailedToUncache();
+
+  /**
+   * Returns the estimated number of bytes used by the replica map per
+   * replica, not counting the replicas themselves.
+   */
+  public long getReplicaMapBytesPerReplica();
 }
@@ -90,15 +90,17 @@ private class ChildCollector implements Runnable {
     private List<AclEntry> inheritedDefaultsAsAccess;
     private BlockStoragePolicySuite bsps;
     private final byte inheritedStoragePolicy;
+    private final boolean checkParentAccess;
     
     private ChildCollector(ProjectedINode parent, short depth, int level, List<AclEntry> inheritedDefaultsAsAccess,
-        BlockStoragePolicySuite bsps, byte inheritedStoragePolicy) {
+        BlockStoragePolicySuite bsps, byte inheritedStoragePolicy, boolean checkParentAccess) {
       this.parent = parent;
       this.level = level;
       this.depth = depth;
       this.inheritedDefaultsAsAccess = inheritedDefaultsAsAccess;
       this.bsps = bsps;
       this.inheritedStoragePolicy = inheritedStoragePolicy;
+      this.checkParentAccess = checkParentAccess;
     }
     
     @Override
@@ -124,20 +126,24 @@ public Object performTask() throws StorageException, IOException {
               //using batch operations to lock the children
               lockInodesUsingBatchOperation(children, dataAccess);
 
-              Map<ProjectedINode, List<AclEntry>> acls = new HashMap<>();
-              for (ProjectedINode child : children) {
-                if (namesystem.isPermissionEnabled() && subAccess != null && child.isDirectory()) {
-                  List<AclEntry> inodeAclNoTransaction = INodeUtil.getInodeOwnAclNoTransaction(child);
-                  acls.put(child, inodeAclNoTransaction);
-                  List<INode> cList = INodeUtil.getChildrenListNotTransactional(child.getId(), depth+1);
-                  if (!(cList.isEmpty() && ignoreEmptyDir)) {
-                    if (inodeAclNoTransaction.isEmpty()) {
-                      checkAccess(child, subAccess, asAccessEntries(inheritedDefaultsAsAccess));
-                    } else {
-                      checkAccess(child, subAccess, inodeAclNoTransaction);
-                    }
+              //the access to a directory is checked by the collector of its
+              //children, once its children are known, instead of listing the
+              //children of every directory twice
+              List<AclEntry> parentAcl = null;
+              if (checkParentAccess && namesystem.isPermissionEnabled() && subAccess != null) {
+                parentAcl = INodeUtil.getInodeOwnAclNoTransaction(parent);
+                if (!(children.isEmpty() && ignoreEmptyDir)) {
+                  if (parentAcl.isEmpty()) {
+                    checkAccess(parent, subAccess, asAccessEntries(inheritedDefaultsAsAccess));
+                  } else {
+                    checkAccess(parent, subAccess, parentAcl);
                   }
                 }
+              }
+              List<AclEntry> newDefaults = filterAccessEntries(parentAcl);
+              List<AclEntry> childrenDefaults = newDefaults.isEmpty() ? inheritedDefaultsAsAccess : newDefaults;
+
+              for (ProjectedINode child : children) {
                 addChildNode(parent, level, child, bsps, inheritedStoragePolicy);
               }
   
@@ -156,14 +162,13 @@ public Object performTask() throws StorageException, IOException {
                   return null;
                 }
 
-                List<AclEntry> newDefaults = filterAccessEntries(acls.get(child));
                 if (child.isDirectory()) {
                   byte storagePolicy = inheritedStoragePolicy;
                   if (child.getStoragePolicyID() != HdfsConstantsClient.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED) {
                     storagePolicy = child.getStoragePolicyID();
                   }
-                  collectChildren(child, ((short) (depth + 1)), level + 1, newDefaults.isEmpty()
-                      ? inheritedDefaultsAsAccess : newDefaults, bsps, storagePolicy);
+                  collectChildren(child, ((short) (depth + 1)), level + 1, childrenDefaults, bsps, storagePolicy,
+                      true);
                 }
               }
               return null;
@@ -261,8 +266,9 @@ public void buildUp(BlockStoragePolicySuite bsps) throws IOException {
     }
     
     
+    //the access to the subtree root was checked while reading it
     collectChildren(newProjectedInode(subtreeRoot, 0), subtreeRootId.getDepth(), 2, subtreeRootDefaultEntries, bsps,
-        inheritedStoragePolicy);
+        inheritedStoragePolicy, false);
     while (true) {
       try {
         Future future = activeCollectors.poll();
@@ -344,9 +350,10 @@ public Object performTask() throws IOException {
   }
   
   private void collectChildren(ProjectedINode parent, short depth, int level, List<AclEntry> inheritedDefaults,
-      BlockStoragePolicySuite bsps, byte inheritedStoragePolicy) {
+      BlockStoragePolicySuite bsps, byte inheritedStoragePolicy, boolean checkParentAccess) {
     activeCollectors.add(namesystem.getFSOperationsExecutor().
-        submit(new ChildCollector(parent, depth, level, inheritedDefaults, bsps, inheritedStoragePolicy)));
+        submit(new ChildCollector(parent, depth, level, inheritedDefaults, bsps, inheritedStoragePolicy,
+            checkParentAccess)));
   }
   
   /**
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Timer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps the content counts of the directories recently summarized so that a
+ * content summary of a large directory does not walk the whole subtree every
+ * time it is requested.
+ * <p>
+ * The counts of a directory are served for at most the configured staleness.
+ * Once half of it has elapsed, a hit schedules the counts to be recomputed in
+ * the background, so frequently summarized directories are kept up to date
+ * without making the callers wait for the walk.
+ * <p>
+ * The background walks do not check permissions. A user is only served the
+ * cached counts of a directory if the superuser, or if the user passed the
+ * subtree access checks of a walk of that directory within the staleness.
+ */
+public class ContentSummaryCache {
+
+  static final Log LOG = LogFactory.getLog(ContentSummaryCache.class);
+
+  private final FSNamesystem namesystem;
+  private final long staleness;
+  private final int maxSize;
+
+  private final LinkedHashMap<Long, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedBlockingQueue<Entry> refreshQueue =
+      new LinkedBlockingQueue<>();
+
+  private final Daemon refreshThread = new Daemon(new Refresher());
+  private volatile Timer timer = new Timer();
+
+  public ContentSummaryCache(FSNamesystem namesystem, Configuration conf) {
+    this.namesystem = namesystem;
+    staleness = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_STALENESS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_STALENESS_DEFAULT);
+    maxSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_SIZE_DEFAULT);
+  }
+
+  @VisibleForTesting
+  void setTimer(Timer timer) {
+    this.timer = timer;
+  }
+
+  public boolean isEnabled() {
+    return staleness > 0;
+  }
+
+  public void activate() {
+    if (!isEnabled()) {
+      return;
+    }
+    LOG.debug("ContentSummaryCache refresher is running");
+    refreshThread.start();
+  }
+
+  public void close() {
+    if (!isEnabled()) {
+      return;
+    }
+    refreshThread.interrupt();
+    try {
+      refreshThread.join(3000);
+    } catch (InterruptedException e) {
+      LOG.error("ContentSummaryCache Thread Interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the cached counts of the directory, or null if they are missing,
+   * too old or the user was not checked recently
+   */
+  ContentCounts get(long inodeId, FSPermissionChecker pc) {
+    if (!isEnabled()) {
+      return null;
+    }
+    long now = timer.monotonicNow();
+    synchronized (this) {
+      Entry entry = entries.get(inodeId);
+      if (entry == null || now - entry.time > staleness) {
+        return null;
+      }
+      if (namesystem.isPermissionEnabled() && !pc.isSuperUser()) {
+        Long checked = entry.checkedUsers.get(pc.getUser());
+        if (checked == null || now - checked > staleness) {
+          return null;
+        }
+      }
+      if (now - entry.time > staleness / 2 && !entry.refreshing) {
+        entry.refreshing = true;
+        refreshQueue.add(entry);
+      }
+      // the counts are replaced by the refresher under the lock
+      return entry.counts;
+    }
+  }
+
+  /**
+   * Cache the counts of a walk of the directory that checked the access of
+   * the user to the subtree.
+   */
+  void put(INodeIdentifier subtreeRootId, byte inheritedStoragePolicy,
+      ContentCounts counts, FSPermissionChecker pc) {
+    if (!isEnabled()) {
+      return;
+    }
+    long now = timer.monotonicNow();
+    synchronized (this) {
+      Entry entry = entries.get(subtreeRootId.getInodeId());
+      if (entry == null) {
+        entry = new Entry(subtreeRootId, inheritedStoragePolicy);
+        entries.put(subtreeRootId.getInodeId(), entry);
+        if (entries.size() > maxSize) {
+          Long eldest = entries.keySet().iterator().next();
+          entries.remove(eldest);
+        }
+      }
+      entry.counts = counts;
+      entry.time = now;
+      entry.checkedUsers.put(pc.getUser(), now);
+    }
+  }
+
+  private void refresh(Entry entry) {
+    try {
+      AbstractFileTree.CountingFileTree fileTree =
+          new AbstractFileTree.CountingFileTree(namesystem, entry.subtreeRootId,
+              entry.inheritedStoragePolicy);
+      fileTree.buildUp(namesystem.getBlockManager().getStoragePolicySuite());
+      synchronized (this) {
+        entry.counts = fileTree.getCounts();
+        entry.time = timer.monotonicNow();
+      }
+    } catch (Exception e) {
+      // the directory may have been deleted or be locked, the entry expires
+      LOG.debug("Could not refresh the content summary of " +
+          entry.subtreeRootId, e);
+    } finally {
+      synchronized (this) {
+        entry.refreshing = false;
+      }
+    }
+  }
+
+  private class Refresher implements Runnable {
+    @Override
+    public void run() {
+      while (namesystem.isRunning()) {
+        try {
+          refresh(refreshQueue.take());
+        } catch (InterruptedException ie) {
+          LOG.warn("ContentSummaryCache refresher received " +
+              "InterruptedException.", ie);
+          break;
+        } catch (Throwable t) {
+          LOG.error("ContentSummaryCache refresher received Runtime " +
+              "exception. ", t);
+        }
+      }
+    }
+  }
+
+  private static class Entry {
+    private final INodeIdentifier subtreeRootId;
+    private final byte inheritedStoragePolicy;
+    private final Map<String, Long> checkedUsers = new HashMap<>();
+    private ContentCounts counts;
+    private long time;
+    private boolean refreshing = false;
+
+    Entry(INodeIdentifier subtreeRootId, byte inheritedStoragePolicy) {
+      this.subtreeRootId = subtreeRootId;
+      this.inheritedStoragePolicy = inheritedStoragePolicy;
+    }
+  }
+}
@@ -112,6 +112,11 @@ static boolean delete(
     INode pathInode = pathInfo.getINodesInPath().getLastINode();
 
     if (pathInode == null) {
+      // a retried delete that succeeded finds nothing left to delete
+      RetryCacheEntry cacheEntry = LightWeightCacheDistributed.getTransactional();
+      if (cacheEntry != null && cacheEntry.isSuccess()) {
+        return true; // Return previous response
+      }
       NameNode.stateChangeLog
           .debug("Failed to remove " + src + " because it does not exist");
       return false;
@@ -123,9 +128,12 @@ static boolean delete(
 
     INodeIdentifier subtreeRoot = null;
     if (pathInode.isFile() || pathInode.isSymlink()) {
+      // the delete transaction checks and records the retry cache entry
       return deleteTransaction(fsn, src, false);
     }
 
+    // a subtree delete spans several transactions, its entry is checked and
+    // recorded in transactions of its own
     RetryCacheEntry cacheEntry = LightWeightCacheDistributed.getTransactional();
     if (cacheEntry != null && cacheEntry.isSuccess()) {
       return true; // Return previous response
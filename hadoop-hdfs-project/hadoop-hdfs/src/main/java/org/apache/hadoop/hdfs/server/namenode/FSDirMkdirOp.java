@@ -30,6 +30,7 @@
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.InvalidPathException;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
@@ -39,12 +40,18 @@
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.commons.io.Charsets;
 import org.apache.hadoop.fs.XAttr;
 
@@ -86,56 +93,182 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
-        INodesInPath iip = fsd.getINodesInPath4Write(src);
-        if (fsd.isPermissionEnabled()) {
-          fsd.checkTraverse(pc, iip);
+        return mkdirsInt(fsn, pc, src, permissions, createParent);
+      }
+    };
+    return (HdfsFileStatus) mkdirsHandler.handle();
+  }
+
+  /**
+   * Create several directories, grouping them by their parent directory.
+   * The directories of each group are created in a single transaction. If
+   * the transaction of a group fails, the directories of the group are
+   * retried one transaction at a time so that an invalid entry does not
+   * fail its siblings.
+   *
+   * @return the paths that could not be created mapped to the reason
+   */
+  static Map<String, IOException> batchMkdirs(final FSNamesystem fsn,
+      final List<String> srcArgs, final PermissionStatus permissions,
+      final boolean createParent, final int maxBatchSize) throws IOException {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final FSPermissionChecker pc = fsd.getPermissionChecker();
+    // keyed by the paths given by the caller, as they are reported back and
+    // audited
+    final Map<String, IOException> failed = new LinkedHashMap<>();
+    // the paths given by the caller for each resolved path
+    final Map<String, List<String>> srcArgsBySrc = new HashMap<>();
+
+    // the paths of each group, without duplicates and in the caller's order
+    Map<String, Set<String>> groups = new LinkedHashMap<>();
+    for (String srcArg : srcArgs) {
+      if (!DFSUtil.isValidName(srcArg)) {
+        failed.put(srcArg, new InvalidPathException(srcArg));
+        continue;
+      }
+      byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(srcArg);
+      String src;
+      try {
+        src = fsd.resolvePath(pc, srcArg, pathComponents);
+      } catch (IOException e) {
+        failed.put(srcArg, e);
+        continue;
+      }
+      String parent = src.substring(0, Math.max(1, src.lastIndexOf(Path.SEPARATOR_CHAR)));
+      Set<String> group = groups.get(parent);
+      if (group == null) {
+        group = new LinkedHashSet<>();
+        groups.put(parent, group);
+      }
+      group.add(src);
+      List<String> srcArgsOfSrc = srcArgsBySrc.get(src);
+      if (srcArgsOfSrc == null) {
+        srcArgsOfSrc = new ArrayList<>(1);
+        srcArgsBySrc.put(src, srcArgsOfSrc);
+      }
+      srcArgsOfSrc.add(srcArg);
+    }
+
+    for (Map.Entry<String, Set<String>> entry : groups.entrySet()) {
+      List<String> group = new ArrayList<>(entry.getValue());
+      for (int i = 0; i < group.size(); i += maxBatchSize) {
+        List<String> batch = group.subList(i, Math.min(group.size(), i + maxBatchSize));
+        try {
+          mkdirsInBatch(fsn, pc, entry.getKey(), batch, permissions, createParent);
+        } catch (IOException e) {
+          if (NameNode.stateChangeLog.isDebugEnabled()) {
+            NameNode.stateChangeLog.debug("DIR* NameSystem.batchMkdirs: batch under " +
+                entry.getKey() + " failed, retrying individually", e);
+          }
+          for (String src : batch) {
+            try {
+              mkdirs(fsn, src, permissions, createParent);
+            } catch (IOException ex) {
+              for (String srcArg : srcArgsBySrc.get(src)) {
+                failed.put(srcArg, ex);
+              }
+            }
+          }
         }
+      }
+    }
+    return failed;
+  }
+
+  private static void mkdirsInBatch(final FSNamesystem fsn,
+      final FSPermissionChecker pc, final String parent, final List<String> srcs,
+      final PermissionStatus permissions, final boolean createParent) throws IOException {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* NameSystem.batchMkdirs: " + srcs.size() +
+          " directories under " + parent);
+    }
+    final long start = Time.monotonicNow();
+    new HopsTransactionalRequestHandler(HDFSOperationType.BATCH_MKDIRS, parent) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        INodeLock il = lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT, INodeResolveType.PATH,
+            srcs.toArray(new String[srcs.size()]))
+            .resolveSymLink(false)
+            .setNameNodeID(fsn.getNamenodeId())
+            .setActiveNameNodes(fsn.getNameNode().getActiveNameNodes().getActiveNodes())
+            .skipReadingQuotaAttr(!fsd.isQuotaEnabled());
+        locks.add(il);
+        locks.add(lf.getAcesLock());
+        locks.add(lf.getEZLock());
+        List<XAttr> xAttrsToLock = new ArrayList<>();
+        xAttrsToLock.add(FSDirXAttrOp.XATTR_FILE_ENCRYPTION_INFO);
+        xAttrsToLock.add(FSDirXAttrOp.XATTR_ENCRYPTION_ZONE);
+        locks.add(lf.getXAttrLock(xAttrsToLock));
+      }
 
-        final INode lastINode = iip.getLastINode();
-        if (lastINode != null && lastINode.isFile()) {
-          throw new FileAlreadyExistsException("Path is not a directory: " + src);
+      @Override
+      public Object performTask() throws IOException {
+        for (String src : srcs) {
+          mkdirsInt(fsn, pc, src, permissions, createParent);
         }
+        return null;
+      }
+    }.handle();
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addBatchedTransaction(srcs.size(), Time.monotonicNow() - start);
+    }
+  }
 
-        INodesInPath existing = lastINode != null ? iip : iip.getExistingINodes();
+  private static HdfsFileStatus mkdirsInt(final FSNamesystem fsn,
+      final FSPermissionChecker pc, final String src,
+      final PermissionStatus permissions, final boolean createParent)
+      throws IOException {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    INodesInPath iip = fsd.getINodesInPath4Write(src);
+    if (fsd.isPermissionEnabled()) {
+      fsd.checkTraverse(pc, iip);
+    }
 
-        if (lastINode == null) {
-          if (fsd.isPermissionEnabled()) {
-            fsd.checkAncestorAccess(pc, iip, FsAction.WRITE);
-          }
+    final INode lastINode = iip.getLastINode();
+    if (lastINode != null && lastINode.isFile()) {
+      throw new FileAlreadyExistsException("Path is not a directory: " + src);
+    }
 
-          if (!createParent) {
-            fsd.verifyParentDir(iip, src);
-          }
+    INodesInPath existing = lastINode != null ? iip : iip.getExistingINodes();
 
-          // validate that we have enough inodes. This is, at best, a
-          // heuristic because the mkdirs() operation might need to
-          // create multiple inodes.
-          fsn.checkFsObjectLimit();
+    if (lastINode == null) {
+      if (fsd.isPermissionEnabled()) {
+        fsd.checkAncestorAccess(pc, iip, FsAction.WRITE);
+      }
 
-          List<String> nonExisting = iip.getPath(existing.length(),
-              iip.length() - existing.length());
-          int length = nonExisting.size();
-          if (length > 1) {
-            List<String> ancestors = nonExisting.subList(0, length - 1);
-            // Ensure that the user can traversal the path by adding implicit
-            // u+wx permission to all ancestor directories
-            existing = createChildrenDirectories(fsd, existing, ancestors,
-                addImplicitUwx(permissions, permissions));
-            if (existing == null) {
-              throw new IOException("Failed to create directory: " + src);
-            }
-          }
+      if (!createParent) {
+        fsd.verifyParentDir(iip, src);
+      }
 
-          if ((existing = createChildrenDirectories(fsd, existing,
-              nonExisting.subList(length - 1, length), permissions)) == null) {
-            throw new IOException("Failed to create directory: " + src);
-          }
+      // validate that we have enough inodes. This is, at best, a
+      // heuristic because the mkdirs() operation might need to
+      // create multiple inodes.
+      fsn.checkFsObjectLimit();
+
+      List<String> nonExisting = iip.getPath(existing.length(),
+          iip.length() - existing.length());
+      int length = nonExisting.size();
+      if (length > 1) {
+        List<String> ancestors = nonExisting.subList(0, length - 1);
+        // Ensure that the user can traversal the path by adding implicit
+        // u+wx permission to all ancestor directories
+        existing = createChildrenDirectories(fsd, existing, ancestors,
+            addImplicitUwx(permissions, permissions));
+        if (existing == null) {
+          throw new IOException("Failed to create directory: " + src);
         }
+      }
 
-        return fsd.getAuditFileInfo(iip);
+      if ((existing = createChildrenDirectories(fsd, existing,
+          nonExisting.subList(length - 1, length), permissions)) == null) {
+        throw new IOException("Failed to create directory: " + src);
       }
-    };
-    return (HdfsFileStatus) mkdirsHandler.handle();
+    }
+
+    return fsd.getAuditFileInfo(iip);
   }
 
     /**
@@ -23,6 +23,7 @@
 import io.hops.metadata.hdfs.entity.EncodingStatus;
 import io.hops.metadata.hdfs.entity.INodeIdentifier;
 import io.hops.metadata.hdfs.entity.INodeMetadataLogEntry;
+import io.hops.metadata.hdfs.entity.RetryCacheEntry;
 import io.hops.metadata.hdfs.entity.SubTreeOperation;
 import io.hops.transaction.EntityManager;
 import io.hops.transaction.context.HdfsTransactionContextMaintenanceCmds;
@@ -67,6 +68,7 @@
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.protocol.FSLimitException;
 import org.apache.hadoop.hdfs.util.ChunkedArrayList;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.util.Time;
 
 class FSDirRenameOp {
@@ -356,6 +358,10 @@ public void acquireLock(TransactionLocks locks) throws IOException {
               .add(lf.getLeasePathLock(src)).
               add(lf.getSubTreeOpsLock(LockType.WRITE, fsd.getFSNamesystem().getSubTreeLockPathPrefix(src), false));
         }
+        if (fsd.getFSNamesystem().isRetryCacheEnabled()) {
+          locks.add(lf.getRetryCacheEntryLock(Server.getClientId(),
+              Server.getCallId(), Server.getRpcEpoch()));
+        }
 
         locks.add(lf.getEZLock());
         locks.add(lf.getXAttrLock(FSDirXAttrOp.XATTR_ENCRYPTION_ZONE));
@@ -364,6 +370,21 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
+        RetryCacheEntry cacheEntry = LightWeightCacheDistributed.get();
+        if (cacheEntry != null && cacheEntry.isSuccess()) {
+          removeSubTreeLocksForRenameInternal(fsd, src, isUsingSubTreeLocks);
+          return true; // Return previous response
+        }
+        boolean success = false;
+        try {
+          success = renameInTransaction();
+          return success;
+        } finally {
+          LightWeightCacheDistributed.put(null, success);
+        }
+      }
+
+      private boolean renameInTransaction() throws IOException {
         INodesInPath dstIIP = fsd.getINodesInPath(dst, false);
         INodesInPath srcIIP = fsd.getINodesInPath(src, false);
 
@@ -661,6 +682,10 @@ public void acquireLock(TransactionLocks locks) throws IOException {
             locks.add(lf.getAllUsedHashBucketsLock());
           }
         }
+        if (fsd.getFSNamesystem().isRetryCacheEnabled()) {
+          locks.add(lf.getRetryCacheEntryLock(Server.getClientId(),
+              Server.getCallId(), Server.getRpcEpoch()));
+        }
         locks.add(lf.getEZLock());
         List<XAttr> xAttrsToLock = new ArrayList<>();
         xAttrsToLock.add(FSDirXAttrOp.XATTR_FILE_ENCRYPTION_INFO);
@@ -670,6 +695,22 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
+        RetryCacheEntry cacheEntry = LightWeightCacheDistributed.get();
+        if (cacheEntry != null && cacheEntry.isSuccess()) {
+          removeSubTreeLocksForRenameInternal(fsd, src, isUsingSubTreeLocks);
+          return new RenameResult(false, null); // Return previous response
+        }
+        boolean success = false;
+        try {
+          RenameResult result = renameInTransaction();
+          success = true;
+          return result;
+        } finally {
+          LightWeightCacheDistributed.put(null, success);
+        }
+      }
+
+      private RenameResult renameInTransaction() throws IOException {
         INodesInPath dstIIP = fsd.getINodesInPath(dst, false);
         INodesInPath srcIIP = fsd.getINodesInPath(src, false);
         fsd.ezManager.checkMoveValidity(srcIIP, dstIIP, src);
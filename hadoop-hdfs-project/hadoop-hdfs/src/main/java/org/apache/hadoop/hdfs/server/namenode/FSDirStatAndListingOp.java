@@ -480,7 +480,8 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       String src) throws IOException {
     
     byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
-    src = fsd.resolvePath(fsd.getPermissionChecker(), src, pathComponents);
+    final FSPermissionChecker pc = fsd.getPermissionChecker();
+    src = fsd.resolvePath(pc, src, pathComponents);
     PathInformation pathInfo = fsd.getFSNamesystem().getPathExistingINodesFromDB(src,
         false, null, null, null, null);
     if (pathInfo.getINodesInPath().getLastINode() == null) {
@@ -496,14 +497,22 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
     List<AclEntry> nearestDefaultsForSubtree = fsd.getFSNamesystem().calculateNearestDefaultAclForSubtree(pathInfo);
 
     byte inheritedStoragePolicy = fsd.getFSNamesystem().calculateNearestinheritedStoragePolicy(pathInfo);
-    //we do not lock the subtree and we do not need to check parent access and owner, but we need to check children access
-    //permission check in Apache Hadoop: doCheckOwner:false, ancestorAccess:null, parentAccess:null, 
-    //access:null, subAccess:FsAction.READ_EXECUTE, ignoreEmptyDir:true
-    final AbstractFileTree.CountingFileTree fileTree = new AbstractFileTree.CountingFileTree(fsd.getFSNamesystem(),
-        subtreeRootIdentifier, FsAction.READ_EXECUTE, true, nearestDefaultsForSubtree, inheritedStoragePolicy);
-    fileTree.buildUp(fsd.getBlockStoragePolicySuite());
-
-    ContentCounts counts = fileTree.getCounts();
+
+    final ContentSummaryCache cache = fsd.getFSNamesystem().getContentSummaryCache();
+    ContentCounts counts = subtreeRoot.isDirectory() ? cache.get(subtreeRoot.getId(), pc) : null;
+    if (counts == null) {
+      //we do not lock the subtree and we do not need to check parent access and owner, but we need to check children access
+      //permission check in Apache Hadoop: doCheckOwner:false, ancestorAccess:null, parentAccess:null,
+      //access:null, subAccess:FsAction.READ_EXECUTE, ignoreEmptyDir:true
+      final AbstractFileTree.CountingFileTree fileTree = new AbstractFileTree.CountingFileTree(fsd.getFSNamesystem(),
+          subtreeRootIdentifier, FsAction.READ_EXECUTE, true, nearestDefaultsForSubtree, inheritedStoragePolicy);
+      fileTree.buildUp(fsd.getBlockStoragePolicySuite());
+
+      counts = fileTree.getCounts();
+      if (subtreeRoot.isDirectory()) {
+        cache.put(subtreeRootIdentifier, inheritedStoragePolicy, counts, pc);
+      }
+    }
     QuotaCounts q = subtreeQuota;
     if(q==null){
       q=subtreeRoot.getQuotaCounts();
@@ -78,6 +78,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.RollingUpgradeStartupOption;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
+import org.apache.hadoop.hdfs.server.common.SmallFileDataCache;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
@@ -315,6 +316,11 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   private final Configuration conf;
   private final QuotaUpdateManager quotaUpdateManager;
 
+  private final ResolvingCacheInvalidationManager
+      resolvingCacheInvalidationManager;
+  private final UsersGroupsInvalidationManager usersGroupsInvalidationManager;
+  private final ContentSummaryCache contentSummaryCache;
+
   private final ExecutorService fsOperationsExecutor;
   private final boolean erasureCodingEnabled;
   private final ErasureCodingManager erasureCodingManager;
@@ -324,6 +330,8 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   static int DB_ON_DISK_MEDIUM_BUCKET_SIZE;
   static int DB_ON_DISK_LARGE_BUCKET_SIZE;
   static int DB_MAX_SMALL_FILE_SIZE = 0;
+  static SmallFileDataCache smallFileDataCache = null;
+  static MetadataLogFeed metadataLogFeed = null;
 
   /** flag indicating whether replication queues have been initialized */
   boolean initializedReplQueues = false;
@@ -356,6 +364,8 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   private TopMetrics topMetrics;
 
   private final int leaseCreationLockRows;
+
+  private final int batchMkdirsSize;
   
   private final short dbReplicationFactor;
   
@@ -487,6 +497,11 @@ static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode) throws I
       DB_MAX_SMALL_FILE_SIZE = conf.getInt(DFS_DB_FILE_MAX_SIZE_KEY,
               DFS_DB_FILE_MAX_SIZE_DEFAULT);
 
+      long smallFileCacheSize = conf.getLong(DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_KEY,
+          DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_DEFAULT);
+      smallFileDataCache = smallFileCacheSize > 0 ?
+          new SmallFileDataCache(smallFileCacheSize, 0) : null;
+
       if (!(DB_IN_MEMORY_BUCKET_SIZE < DB_ON_DISK_SMALL_BUCKET_SIZE &&
       DB_ON_DISK_SMALL_BUCKET_SIZE < DB_ON_DISK_MEDIUM_BUCKET_SIZE &&
       DB_ON_DISK_MEDIUM_BUCKET_SIZE < DB_ON_DISK_LARGE_BUCKET_SIZE)){
@@ -506,6 +521,12 @@ static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode) throws I
       blockManager.setBlockPoolId(blockPoolId);
       hopSpecificInitialization(conf);
       this.quotaUpdateManager = new QuotaUpdateManager(this, conf);
+      this.resolvingCacheInvalidationManager =
+          new ResolvingCacheInvalidationManager(this, conf);
+      this.usersGroupsInvalidationManager =
+          new UsersGroupsInvalidationManager(this, conf);
+      this.contentSummaryCache = new ContentSummaryCache(this, conf);
+      metadataLogFeed = new MetadataLogFeed(conf);
       fsOperationsExecutor = Executors.newFixedThreadPool(
           conf.getInt(DFS_SUBTREE_EXECUTOR_LIMIT_KEY,
               DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT));
@@ -577,6 +598,9 @@ static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode) throws I
       this.isRetryCacheEnabled = conf.getBoolean(DFS_NAMENODE_ENABLE_RETRY_CACHE_KEY,
           DFS_NAMENODE_ENABLE_RETRY_CACHE_DEFAULT);
       LightWeightCacheDistributed.enable = isRetryCacheEnabled;
+      LightWeightCacheDistributed.setMaxLocalEntries(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_KEY,
+          DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_DEFAULT));
       this.slicerBatchSize = conf.getInt(DFSConfigKeys.DFS_NAMENODE_SLICER_BATCH_SIZE,
           DFSConfigKeys.DFS_NAMENODE_SLICER_BATCH_SIZE_DEFAULT);
 
@@ -589,6 +613,9 @@ static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode) throws I
       DatanodeStorageInfo.BLOCKITERATOR_BATCH_SIZE = slicerBatchSize;
       leaseCreationLockRows = conf.getInt(DFS_LEASE_CREATION_LOCKS_COUNT_KEY,
               DFS_LEASE_CREATION_LOCKS_COUNT_DEFAULT);
+      leaseManager.setConfiguration(conf);
+      this.batchMkdirsSize = conf.getInt(DFS_NAMENODE_BATCH_MKDIRS_SIZE_KEY,
+          DFS_NAMENODE_BATCH_MKDIRS_SIZE_DEFAULT);
       
       this.dbReplicationFactor = (short) conf.getInt(DFS_DB_REPLICATION_FACTOR,
           DFS_DB_REPLICATION_FACTOR_DEFAULT);
@@ -688,6 +715,7 @@ void startCommonServices(Configuration conf) throws IOException {
     this.registerMBean(); // register the MBean for the FSNamesystemState
     IDsMonitor.getInstance().start();
     RootINodeCache.start();
+    metadataLogFeed.setNamenodeId(getNamenodeId());
     nnResourceChecker = new NameNodeResourceChecker(conf);
     checkAvailableResources();
     if (isLeader()) {
@@ -708,6 +736,9 @@ void startCommonServices(Configuration conf) throws IOException {
     if (dir.isQuotaEnabled()) {
       quotaUpdateManager.activate();
     }
+    resolvingCacheInvalidationManager.activate();
+    usersGroupsInvalidationManager.activate();
+    contentSummaryCache.activate();
 
     registerMXBean();
     DefaultMetricsSystem.instance().register(this);
@@ -724,6 +755,15 @@ private void stopCommonServices() {
     if (quotaUpdateManager != null) {
       quotaUpdateManager.close();
     }
+    if (resolvingCacheInvalidationManager != null) {
+      resolvingCacheInvalidationManager.close();
+    }
+    if (usersGroupsInvalidationManager != null) {
+      usersGroupsInvalidationManager.close();
+    }
+    if (contentSummaryCache != null) {
+      contentSummaryCache.close();
+    }
     RootINodeCache.stop();
   }
 
@@ -3649,6 +3689,21 @@ boolean mkdirs(String src, PermissionStatus permissions,
     return true;
   }
 
+  /**
+   * Create several directories, one transaction per parent directory.
+   * @return the paths that could not be created mapped to the reason
+   */
+  Map<String, IOException> batchMkdirs(List<String> srcs,
+      PermissionStatus permissions, boolean createParent) throws IOException {
+    checkNameNodeSafeMode("Cannot create directories");
+    Map<String, IOException> failed = FSDirMkdirOp.batchMkdirs(this, srcs,
+        permissions, createParent, batchMkdirsSize);
+    for (String src : srcs) {
+      logAuditEvent(!failed.containsKey(src), "mkdirs", src);
+    }
+    return failed;
+  }
+
   ContentSummary getContentSummary(final String src)
       throws
       IOException {
@@ -4216,6 +4271,11 @@ BlockInfoContiguous getStoredBlock(Block block) throws StorageException, Transac
    * Renew the lease(s) held by the given client
    */
   void renewLease(final String holder) throws IOException {
+    if (leaseManager.isRenewalBatchingEnabled()) {
+      checkNameNodeSafeMode("Cannot renew lease for " + holder);
+      leaseManager.queueRenewal(holder);
+      return;
+    }
     new HopsTransactionalRequestHandler(HDFSOperationType.RENEW_LEASE) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
@@ -5238,7 +5298,7 @@ private void setSafeModePendingOperation(Boolean val) {
       safeModePendingOperation.set(val);
     }
 
-    private void adjustSafeBlocks(Set<Long> safeBlocks) throws IOException {
+    private void adjustSafeBlocks(Collection<Long> safeBlocks) throws IOException {
       int added = addSafeBlocks(new ArrayList<Long>(safeBlocks));
       if (LOG.isDebugEnabled()) {
         long blockTotal = blockTotal();
@@ -7246,7 +7306,7 @@ public int compareTo(FNode o) {
   }
 
   @Override
-  public void adjustSafeModeBlocks(Set<Long> safeBlocks) throws IOException {
+  public void adjustSafeModeBlocks(Collection<Long> safeBlocks) throws IOException {
     // safeMode is volatile, and may be set to null at any time
     SafeModeInfo safeMode = this.safeMode();
     if (safeMode == null) {
@@ -7259,6 +7319,15 @@ public QuotaUpdateManager getQuotaUpdateManager() {
     return quotaUpdateManager;
   }
 
+  public ResolvingCacheInvalidationManager
+      getResolvingCacheInvalidationManager() {
+    return resolvingCacheInvalidationManager;
+  }
+
+  ContentSummaryCache getContentSummaryCache() {
+    return contentSummaryCache;
+  }
+
   /**
    * Update safe blocks in the database
    * @param safeBlock
@@ -8621,6 +8690,22 @@ public static int getDBInMemBucketSize() {
     return DB_IN_MEMORY_BUCKET_SIZE;
   }
 
+  /**
+   * @return the cache of the data of the files stored in the database, or
+   * null if it is disabled
+   */
+  public static SmallFileDataCache getSmallFileDataCache() {
+    return smallFileDataCache;
+  }
+
+  /**
+   * @return the feed of the metadata log entries committed by this namenode,
+   * or null if the namesystem was not created yet
+   */
+  public static MetadataLogFeed getMetadataLogFeed() {
+    return metadataLogFeed;
+  }
+
   public byte[] getSmallFileData(final long id) throws IOException {
     final long inodeId = -id;
     return (byte[]) ( new HopsTransactionalRequestHandler(HDFSOperationType.GET_SMALL_FILE_DATA) {
@@ -8820,6 +8905,9 @@ public Object performTask() throws IOException {
     public void run() {
       while (shouldCacheCleanerRun) {
         try {
+          // every namenode drops the expired outcomes it keeps in memory
+          LightWeightCacheDistributed.expireLocal(
+                  (timer.now() - entryExpiryMillis) / 1000);
           if (le.isLeader()) {
             long lastDeletedEpochSec = HdfsVariables.getRetryCacheCleanerEpoch();
             long toBeDeletedEpochSec = lastDeletedEpochSec + 1L;
@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.common.SmallFileDataCache;
 import com.google.common.base.Preconditions;
 
 import java.io.FileNotFoundException;
@@ -204,6 +205,7 @@ public BlockInfoContiguous[] getBlocks()
   public void storeFileDataInDB(byte[] data)
       throws StorageException {
 
+    invalidateCachedFileData();
     int len = data.length;
     FileInodeData fid;
     DBFileDataAccess fida = null;
@@ -232,6 +234,14 @@ public void storeFileDataInDB(byte[] data)
   public byte[] getFileDataInDB() throws StorageException {
     HdfsStorageFactory.getConnector().readCommitted();
 
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    if (cache != null) {
+      byte[] data = cache.get(getId(), getSize(), getModificationTime());
+      if (data != null) {
+        return data;
+      }
+    }
+
     //depending on the file size read the file from appropriate table
     FileInodeData fid = null;
     DBFileDataAccess fida = null;
@@ -258,10 +268,22 @@ public byte[] getFileDataInDB() throws StorageException {
       FSNamesystem.LOG.debug("Stuffed Inode:  Read file data from the database. Data length is :"
           + dataLength);
     }
-    return fid == null ? null : fid.getInodeData();
+    byte[] data = fid == null ? null : fid.getInodeData();
+    if (cache != null && data != null && !isUnderConstruction()) {
+      cache.put(getId(), getModificationTime(), data);
+    }
+    return data;
+  }
+
+  private void invalidateCachedFileData() {
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    if (cache != null) {
+      cache.invalidate(getId());
+    }
   }
 
   public void deleteFileDataStoredInDB() throws StorageException {
+    invalidateCachedFileData();
     //depending on the file size delete the file from appropriate table
     FileInodeData fid = null;
     DBFileDataAccess fida = null;
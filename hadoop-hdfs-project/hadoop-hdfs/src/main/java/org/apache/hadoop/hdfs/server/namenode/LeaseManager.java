@@ -37,17 +37,24 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static io.hops.transaction.lock.LockFactory.BLK;
 import static io.hops.transaction.lock.LockFactory.getInstance;
@@ -95,12 +102,55 @@ public class LeaseManager {
   private long hardLimit = HdfsConstants.LEASE_HARDLIMIT_PERIOD;
   
   private Daemon lmthread;
+  private Daemon renewalFlusherThread;
   private volatile boolean shouldRunMonitor;
 
+  private long renewalFlushInterval =
+      DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT;
+  private int renewalBatchSize =
+      DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_BATCH_SIZE_DEFAULT;
+  private int recoveryBatchSize =
+      DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_BATCH_SIZE_DEFAULT;
+  /**
+   * Lease renewals received since the last flush, holder to renewal time.
+   * The entries are only removed once the renewal is in the database, so
+   * the expiry checks of this namenode always see the latest renewal.
+   */
+  private final ConcurrentHashMap<String, Long> pendingRenewals =
+      new ConcurrentHashMap<>();
+
   LeaseManager(FSNamesystem fsnamesystem) {
     this.fsnamesystem = fsnamesystem;
   }
 
+  void setConfiguration(Configuration conf) {
+    renewalFlushInterval = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT);
+    renewalBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_BATCH_SIZE_DEFAULT);
+    recoveryBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LEASE_RECOVERY_BATCH_SIZE_DEFAULT);
+    checkRenewalFlushInterval(renewalFlushInterval, softLimit);
+  }
+
+  /**
+   * A renewal can be written up to one flush interval late, the other
+   * namenodes would take the lease of a client that keeps renewing it if the
+   * interval was not below the soft limit.
+   */
+  private static void checkRenewalFlushInterval(long renewalFlushInterval,
+      long softLimit) {
+    if (renewalFlushInterval > 0 && renewalFlushInterval >= softLimit) {
+      throw new IllegalArgumentException(
+          DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY + " = " +
+          renewalFlushInterval + " must be below the lease soft limit of " +
+          softLimit + " ms");
+    }
+  }
+
   Lease getLease(String holder)
       throws StorageException, TransactionContextException {
     return EntityManager.find(Lease.Finder.ByHolder, holder, Lease.getHolderId(holder));
@@ -394,6 +444,113 @@ void renewLease(Lease lease)
     }
   }
 
+  /**
+   * @return true if the renewals of the clients are queued and written in
+   * batches instead of in a transaction per renewal
+   */
+  boolean isRenewalBatchingEnabled() {
+    return renewalFlushInterval > 0;
+  }
+
+  /**
+   * Queue the renewal of the lease held by the given client. A client that
+   * renews several times before the next flush is written once.
+   */
+  void queueRenewal(String holder) {
+    pendingRenewals.put(holder, now());
+  }
+
+  /**
+   * Write the queued lease renewals, in transactions of up to the renewal
+   * batch size run in parallel.
+   */
+  void flushRenewals() throws IOException {
+    if (pendingRenewals.isEmpty()) {
+      return;
+    }
+    final List<Map<String, Long>> batches = new ArrayList<>();
+    Map<String, Long> batch = new HashMap<>();
+    for (Map.Entry<String, Long> renewal : pendingRenewals.entrySet()) {
+      if (batch.size() >= renewalBatchSize) {
+        batches.add(batch);
+        batch = new HashMap<>();
+      }
+      batch.put(renewal.getKey(), renewal.getValue());
+    }
+    batches.add(batch);
+
+    List<Callable<Object>> tasks = new ArrayList<>(batches.size());
+    for (final Map<String, Long> renewals : batches) {
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() throws IOException {
+          renewLeases(renewals);
+          return null;
+        }
+      });
+    }
+    runInParallel(tasks);
+  }
+
+  private void renewLeases(final Map<String, Long> renewals)
+      throws IOException {
+    new HopsTransactionalRequestHandler(HDFSOperationType.RENEW_LEASE) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLockAllPaths(LockType.WRITE, renewals.keySet(),
+            fsnamesystem.getLeaseCreationLockRows()));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        for (Map.Entry<String, Long> renewal : renewals.entrySet()) {
+          Lease lease = getLease(renewal.getKey());
+          if (lease != null && lease.getLastUpdate() < renewal.getValue()) {
+            lease.setLastUpdate(renewal.getValue());
+            lease.savePersistent();
+          }
+        }
+        return null;
+      }
+    }.handle(fsnamesystem);
+    for (Map.Entry<String, Long> renewal : renewals.entrySet()) {
+      // keep the renewals received during the flush for the next one
+      pendingRenewals.remove(renewal.getKey(), renewal.getValue());
+    }
+  }
+
+  private List<Object> runInParallel(List<Callable<Object>> tasks)
+      throws IOException {
+    List<Object> results = new ArrayList<>(tasks.size());
+    if (tasks.size() == 1) {
+      try {
+        results.add(tasks.get(0).call());
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+      return results;
+    }
+    try {
+      List<Future<Object>> futures =
+          fsnamesystem.getFSOperationsExecutor().invokeAll(tasks);
+      for (Future<Object> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    return results;
+  }
+
   void changeLease(String src, String dst)
       throws StorageException, TransactionContextException {
     if (LOG.isDebugEnabled()) {
@@ -490,6 +647,7 @@ private Collection<LeasePath> findLeasePathsWithPrefix(String prefix)
   }
     
   public void setLeasePeriod(long softLimit, long hardLimit) {
+    checkRenewalFlushInterval(renewalFlushInterval, softLimit);
     this.softLimit = softLimit;
     this.hardLimit = hardLimit;
   }
@@ -533,7 +691,32 @@ public void run() {
   }
 
   /**
-   * Check the leases beginning from the oldest.
+   * Writes the queued lease renewals periodically.
+   */
+  class RenewalFlusher implements Runnable {
+    final String name = getClass().getSimpleName();
+
+    @Override
+    public void run() {
+      for (; shouldRunMonitor && fsnamesystem.isRunning(); ) {
+        try {
+          Thread.sleep(renewalFlushInterval);
+          flushRenewals();
+        } catch (InterruptedException ie) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(name + " is interrupted", ie);
+          }
+        } catch (Throwable e) {
+          LOG.warn("Unexpected throwable: ", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check the leases beginning from the oldest. The expired leases are
+   * recovered in transactions of up to the recovery batch size run in
+   * parallel.
    *
    * @return true is sync is needed.
    */
@@ -542,6 +725,8 @@ boolean checkLeases()
       throws StorageException, TransactionContextException, IOException {
 
     boolean needSync = false;
+    // the queued renewals must be seen before deciding which leases expired
+    flushRenewals();
 
     SortedSet<Lease> sortedLeases = (SortedSet<Lease>) new LightWeightRequestHandler(
         HDFSOperationType.PREPARE_LEASE_MANAGER_MONITOR) {
@@ -554,112 +739,142 @@ public Object performTask() throws StorageException, IOException {
       }
     }.handle(fsnamesystem);
 
-    if (sortedLeases != null) {
-      for (Lease expiredLease : sortedLeases) {
-        HopsTransactionalRequestHandler expiredLeaseHandler = new HopsTransactionalRequestHandler(
-            HDFSOperationType.LEASE_MANAGER_MONITOR) {
-          private Set<String> leasePaths = null;
+    if (sortedLeases == null || sortedLeases.isEmpty()) {
+      return needSync;
+    }
+    List<Callable<Object>> tasks = new ArrayList<>();
+    List<String> holders = new ArrayList<>();
+    for (Lease expiredLease : sortedLeases) {
+      holders.add(expiredLease.getHolder());
+      if (holders.size() >= recoveryBatchSize) {
+        tasks.add(newRecoveryTask(holders));
+        holders = new ArrayList<>();
+      }
+    }
+    if (!holders.isEmpty()) {
+      tasks.add(newRecoveryTask(holders));
+    }
+    for (Object batchNeedSync : runInParallel(tasks)) {
+      needSync = needSync || (boolean) batchNeedSync;
+    }
+    return needSync;
+  }
 
-          @Override
-          public void setUp() throws StorageException {
-            String holder = (String) getParams()[0];
-            leasePaths = INodeUtil.findPathsByLeaseHolder(holder);
-            if (leasePaths != null) {
-              LOG.debug("Total Paths " + leasePaths.size() + " Paths: " + Arrays.toString(leasePaths.toArray()));
-            }
+  private Callable<Object> newRecoveryTask(final List<String> holders) {
+    return new Callable<Object>() {
+      @Override
+      public Object call() throws IOException {
+        return releaseExpiredLeases(holders);
+      }
+    };
+  }
 
-          }
+  private boolean releaseExpiredLeases(final List<String> holders)
+      throws IOException {
+    HopsTransactionalRequestHandler expiredLeaseHandler = new HopsTransactionalRequestHandler(
+        HDFSOperationType.LEASE_MANAGER_MONITOR) {
+      private Set<String> leasePaths = null;
 
-          @Override
-          public void acquireLock(TransactionLocks locks) throws IOException {
-            String holder = (String) getParams()[0];
-            LockFactory lf = getInstance();
-            INodeLock il = lf.getINodeLock(INodeLockType.WRITE,
-                INodeResolveType.PATH,
-                leasePaths.toArray(new String[leasePaths.size()])).setNameNodeID(fsnamesystem.getNameNode().getId())
-                .setActiveNameNodes(fsnamesystem.getNameNode().getActiveNameNodes().getActiveNodes());
-
-            locks.add(il).add(lf.getNameNodeLeaseLock(LockType.WRITE))
-                .add(lf.getLeaseLockAllPaths(LockType.WRITE, holder,
-                        fsnamesystem.getLeaseCreationLockRows()))
-                .add(lf.getLeasePathLock(leasePaths.size()))
-                .add(lf.getBlockLock()).add(lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR));
+      @Override
+      public void setUp() throws StorageException {
+        leasePaths = new HashSet<>();
+        for (String holder : holders) {
+          Set<String> paths = INodeUtil.findPathsByLeaseHolder(holder);
+          if (paths != null) {
+            leasePaths.addAll(paths);
           }
+        }
+        LOG.debug("Total Paths " + leasePaths.size() + " Paths: " + Arrays.toString(leasePaths.toArray()));
+      }
 
-          @Override
-          public Object performTask() throws StorageException, IOException {
-            String holder = (String) getParams()[0];
-            boolean needSync = false;
-            if (holder != null) {
-              Lease leaseToCheck = EntityManager.find(Lease.Finder.ByHolder, holder, Lease.getHolderId(holder));
-              if (leaseToCheck == null) {
-                return needSync;
-              }
-              if (!expiredHardLimit(leaseToCheck)) {
-                LOG.warn("Unable to release hard-limit expired lease: "
-                    + leaseToCheck);
-                return needSync;
-              }
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = getInstance();
+        INodeLock il = lf.getINodeLock(INodeLockType.WRITE,
+            INodeResolveType.PATH,
+            leasePaths.toArray(new String[leasePaths.size()])).setNameNodeID(fsnamesystem.getNameNode().getId())
+            .setActiveNameNodes(fsnamesystem.getNameNode().getActiveNameNodes().getActiveNodes());
+
+        locks.add(il).add(lf.getNameNodeLeaseLock(LockType.WRITE))
+            .add(lf.getLeaseLockAllPaths(LockType.WRITE, holders,
+                    fsnamesystem.getLeaseCreationLockRows()))
+            .add(lf.getLeasePathLock(leasePaths.size()))
+            .add(lf.getBlockLock()).add(lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR));
+      }
 
-              LOG.info("Lease " + leaseToCheck + " has expired hard limit");
+      @Override
+      public Object performTask() throws StorageException, IOException {
+        boolean needSync = false;
+        for (String holder : holders) {
+          needSync = releaseExpiredLease(holder) || needSync;
+        }
+        return needSync;
+      }
+    };
+    return (boolean) expiredLeaseHandler.handle(fsnamesystem);
+  }
 
-              if(!leaseToCheck.hasPath()){
-                leaseToCheck.deletePersistent();
-                return true;
-              }
+  private boolean releaseExpiredLease(String holder) throws IOException {
+    boolean needSync = false;
+    Lease leaseToCheck = EntityManager.find(Lease.Finder.ByHolder, holder, Lease.getHolderId(holder));
+    if (leaseToCheck == null) {
+      return needSync;
+    }
+    if (!expiredHardLimit(leaseToCheck)) {
+      LOG.warn("Unable to release hard-limit expired lease: "
+          + leaseToCheck);
+      return needSync;
+    }
 
-              final List<LeasePath> removing = new ArrayList<>();
-              // need to create a copy of the oldest lease paths, because 
-              // internalReleaseLease() removes paths corresponding to empty files,
-              // i.e. it needs to modify the collection being iterated over
-              // causing ConcurrentModificationException
-              LeasePath[] leasePaths = new LeasePath[leaseToCheck.getPaths().size()];
-              leaseToCheck.getPaths().toArray(leasePaths);
-              for (LeasePath p : leasePaths) {
-                try {
-                  INodesInPath iip = fsnamesystem.getFSDirectory().getINodesInPath(p.getPath(),
-                      true);
-                  if(iip == null || iip.getLastINode() == null){
-                    removing.add(p);
-                    continue;
-                  }
-                  boolean completed = fsnamesystem.internalReleaseLease(leaseToCheck, p.getPath(),
-                          iip, HdfsServerConstants.NAMENODE_LEASE_HOLDER);
-                  if (LOG.isDebugEnabled()) {
-                    if (completed) {
-                      LOG.debug("Lease recovery for " + p + " is complete. File closed.");
-                    } else {
-                      LOG.debug("Started block recovery " + p + " lease " + leaseToCheck);
-                    }
-                  }
-
-                  // If a lease recovery happened, we need to sync later.
-                  if (!needSync && !completed) {
-                    needSync = true;
-                  }
-
-                } catch (IOException e) {
-                  LOG.error(
-                      "Cannot release the path " + p + " in the lease " + leaseToCheck, e);
-                  removing.add(p);
-                }
-              }
+    LOG.info("Lease " + leaseToCheck + " has expired hard limit");
 
-              for (LeasePath p : removing) {
-                if (leaseToCheck.getPaths().contains(p)) {
-                  removeLease(leaseToCheck, p);
-                }
-              }
-            }
-            return needSync;
+    if(!leaseToCheck.hasPath()){
+      leaseToCheck.deletePersistent();
+      return true;
+    }
+
+    final List<LeasePath> removing = new ArrayList<>();
+    // need to create a copy of the oldest lease paths, because 
+    // internalReleaseLease() removes paths corresponding to empty files,
+    // i.e. it needs to modify the collection being iterated over
+    // causing ConcurrentModificationException
+    LeasePath[] leasePaths = new LeasePath[leaseToCheck.getPaths().size()];
+    leaseToCheck.getPaths().toArray(leasePaths);
+    for (LeasePath p : leasePaths) {
+      try {
+        INodesInPath iip = fsnamesystem.getFSDirectory().getINodesInPath(p.getPath(),
+            true);
+        if(iip == null || iip.getLastINode() == null){
+          removing.add(p);
+          continue;
+        }
+        boolean completed = fsnamesystem.internalReleaseLease(leaseToCheck, p.getPath(),
+                iip, HdfsServerConstants.NAMENODE_LEASE_HOLDER);
+        if (LOG.isDebugEnabled()) {
+          if (completed) {
+            LOG.debug("Lease recovery for " + p + " is complete. File closed.");
+          } else {
+            LOG.debug("Started block recovery " + p + " lease " + leaseToCheck);
           }
-        };
+        }
+
+        // If a lease recovery happened, we need to sync later.
+        if (!needSync && !completed) {
+          needSync = true;
+        }
 
-        needSync = needSync || (boolean) expiredLeaseHandler.setParams(expiredLease.getHolder())
-            .handle(fsnamesystem);
+      } catch (IOException e) {
+        LOG.error(
+            "Cannot release the path " + p + " in the lease " + leaseToCheck, e);
+        removing.add(p);
       }
     }
 
+    for (LeasePath p : removing) {
+      if (leaseToCheck.getPaths().contains(p)) {
+        removeLease(leaseToCheck, p);
+      }
+    }
     return needSync;
   }
 
@@ -668,6 +883,10 @@ void startMonitor() {
     shouldRunMonitor = true;
     lmthread = new Daemon(new Monitor());
     lmthread.start();
+    if (isRenewalBatchingEnabled()) {
+      renewalFlusherThread = new Daemon(new RenewalFlusher());
+      renewalFlusherThread.start();
+    }
   }
   
   void stopMonitor() {
@@ -681,6 +900,18 @@ void stopMonitor() {
       }
       lmthread = null;
     }
+    if (renewalFlusherThread != null) {
+      try {
+        renewalFlusherThread.interrupt();
+        renewalFlusherThread.join(3000);
+        flushRenewals();
+      } catch (InterruptedException ie) {
+        LOG.warn("Encountered exception ", ie);
+      } catch (IOException e) {
+        LOG.warn("Could not write the queued lease renewals", e);
+      }
+      renewalFlusherThread = null;
+    }
   }
 
   /**
@@ -694,10 +925,16 @@ void triggerMonitorCheckNow() {
   }
   
   private boolean expiredHardLimit(Lease lease) {
-    return now() - lease.getLastUpdate() > hardLimit;
+    return now() - getLastUpdate(lease) > hardLimit;
   }
 
   public boolean expiredSoftLimit(Lease lease) {
-    return now() - lease.getLastUpdate() > softLimit;
+    return now() - getLastUpdate(lease) > softLimit;
+  }
+
+  private long getLastUpdate(Lease lease) {
+    Long pending = pendingRenewals.get(lease.getHolder());
+    return pending != null ? Math.max(pending, lease.getLastUpdate()) :
+        lease.getLastUpdate();
   }
 }
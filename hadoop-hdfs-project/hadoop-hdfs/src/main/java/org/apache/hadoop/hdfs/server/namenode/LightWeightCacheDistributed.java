@@ -24,28 +24,73 @@
 
 import io.hops.transaction.handler.HDFSOperationType;
 import io.hops.transaction.handler.HopsTransactionalRequestHandler;
+import io.hops.transaction.handler.PostCommitHooks;
 import io.hops.transaction.lock.LockFactory;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.ipc.Server;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.hops.transaction.lock.LockFactory.getInstance;
 
+/**
+ * The retry cache of the namenodes, stored in the database.
+ * <p>
+ * Retriable operations read and write their entry in their own transaction,
+ * under the lock of the entry. The successful outcomes committed or read by
+ * this namenode are also kept in memory, by epoch, so that a retry sent to
+ * the same namenode is answered without going to the database. The entries
+ * of an epoch are dropped together once the epoch has expired, or earlier,
+ * oldest epochs first, if there are more than the maximum number of entries.
+ */
 public class LightWeightCacheDistributed {
 
   public static final Log LOG = LogFactory.getLog(LightWeightCacheDistributed.class);
   public static boolean enable = true;
 
+  private static volatile int maxLocalEntries =
+      DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_DEFAULT;
+  private static final ConcurrentSkipListMap<Long,
+      ConcurrentMap<RetryCacheEntry.PrimaryKey, RetryCacheEntry>> localEntries =
+      new ConcurrentSkipListMap<>();
+  private static final AtomicInteger localCount = new AtomicInteger();
+
   public LightWeightCacheDistributed() {
   }
 
+  public static void setMaxLocalEntries(int maxEntries) {
+    maxLocalEntries = maxEntries;
+    if (maxEntries <= 0) {
+      localEntries.clear();
+      localCount.set(0);
+    }
+  }
+
+  /**
+   * Get the entry of the current call, before running the operation. Only a
+   * retried call can have an entry, so the database is only read for
+   * retries that were not seen by this namenode.
+   */
   public static RetryCacheEntry getTransactional() throws IOException {
     if (!enable || Server.getCallId() <= 0) {
       return null;
     }
+    RetryCacheEntry local = getLocal();
+    if (local != null || Server.getCallRetryCount() <= 0) {
+      return local;
+    }
 
     HopsTransactionalRequestHandler rh = new HopsTransactionalRequestHandler(HDFSOperationType
             .RETRY_CACHE_WAIT_COMPLETION) {
@@ -64,8 +109,13 @@ public Object performTask() throws IOException {
     return (RetryCacheEntry) rh.handle();
   }
 
+  /**
+   * Record the outcome of an operation that does not run in a single
+   * transaction. Only successes are recorded, a retry of a failed call runs
+   * the operation again.
+   */
   public static RetryCacheEntry putTransactional(final boolean ret) throws IOException {
-    if (!enable || Server.getCallId() <= 0) {
+    if (!enable || Server.getCallId() <= 0 || !ret) {
       return null;
     }
 
@@ -95,8 +145,17 @@ public static RetryCacheEntry get()
     if (!enable || Server.getCallId() <= 0) {
       return null;
     }
-    return EntityManager.find(RetryCacheEntry.Finder.ByPK,
+    RetryCacheEntry local = getLocal();
+    if (local != null) {
+      return local;
+    }
+    RetryCacheEntry entry = EntityManager.find(RetryCacheEntry.Finder.ByPK,
             Server.getClientId(), Server.getCallId(), Server.getRpcEpoch());
+    if (entry != null && entry.isSuccess()) {
+      // committed by another transaction
+      putLocal(entry);
+    }
+    return entry;
   }
 
   public static void put(final byte[] payload, boolean status)
@@ -115,4 +174,89 @@ public static void putEntry(RetryCacheEntry entry)
       EntityManager.update(entry);
     }
   }
+
+  /**
+   * Keep the successful entries written by the transaction being committed
+   * by the current thread in memory, once it has committed.
+   */
+  public static void stage(Collection<RetryCacheEntry> entries) {
+    if (maxLocalEntries <= 0 || entries.isEmpty()) {
+      PostCommitHooks.unregister(LightWeightCacheDistributed.class);
+      return;
+    }
+    final List<RetryCacheEntry> successes = new ArrayList<>(entries.size());
+    for (RetryCacheEntry entry : entries) {
+      if (entry.isSuccess()) {
+        successes.add(entry);
+      }
+    }
+    PostCommitHooks.register(LightWeightCacheDistributed.class,
+        new Runnable() {
+          @Override
+          public void run() {
+            for (RetryCacheEntry entry : successes) {
+              putLocal(entry);
+            }
+          }
+        });
+  }
+
+  private static RetryCacheEntry getLocal() {
+    Map<RetryCacheEntry.PrimaryKey, RetryCacheEntry> entries =
+        localEntries.get(Server.getRpcEpoch());
+    if (entries == null) {
+      return null;
+    }
+    return entries.get(new RetryCacheEntry.PrimaryKey(Server.getClientId(),
+        Server.getCallId(), Server.getRpcEpoch()));
+  }
+
+  private static void putLocal(RetryCacheEntry entry) {
+    if (maxLocalEntries <= 0) {
+      return;
+    }
+    ConcurrentMap<RetryCacheEntry.PrimaryKey, RetryCacheEntry> entries =
+        localEntries.get(entry.getEpoch());
+    if (entries == null) {
+      entries = new ConcurrentHashMap<>();
+      ConcurrentMap<RetryCacheEntry.PrimaryKey, RetryCacheEntry> existing =
+          localEntries.putIfAbsent(entry.getEpoch(), entries);
+      if (existing != null) {
+        entries = existing;
+      }
+    }
+    if (entries.put(new RetryCacheEntry.PrimaryKey(entry.getClientId(),
+        entry.getCallId(), entry.getEpoch()), entry) == null) {
+      localCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Drop the in-memory entries of the epochs up to the given one, and of the
+   * oldest epochs while there are too many entries.
+   *
+   * @return the number of entries dropped
+   */
+  public static int expireLocal(long expiredEpoch) {
+    int dropped = 0;
+    Iterator<Map.Entry<Long, ConcurrentMap<RetryCacheEntry.PrimaryKey,
+        RetryCacheEntry>>> it = localEntries.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, ConcurrentMap<RetryCacheEntry.PrimaryKey,
+          RetryCacheEntry>> epoch = it.next();
+      if (epoch.getKey() > expiredEpoch &&
+          localCount.get() <= maxLocalEntries) {
+        break;
+      }
+      it.remove();
+      int size = epoch.getValue().size();
+      localCount.addAndGet(-size);
+      dropped += size;
+    }
+    return dropped;
+  }
+
+  static int getLocalCount() {
+    return localCount.get();
+  }
 }
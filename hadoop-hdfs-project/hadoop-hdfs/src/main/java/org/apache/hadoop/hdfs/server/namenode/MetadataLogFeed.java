@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.MetadataLogEntry;
+import io.hops.metadata.hdfs.entity.XAttrMetadataLogEntry;
+import io.hops.transaction.handler.PostCommitHooks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEvent;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
+import org.apache.hadoop.util.Time;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the metadata log entries committed by this namenode so that clients
+ * can tail them without scanning the metadata log table.
+ * <p>
+ * The entries added by a transaction are staged when the metadata log
+ * context is prepared and published once the transaction has committed, so
+ * aborted transactions never show up in the feed. Published events are
+ * numbered from 1 and kept in a ring of the configured capacity. The feed is
+ * identified by the id and the start time of the namenode, a client that
+ * asks for events of another feed, or for events that were already
+ * overwritten, gets the oldest retained events and is told that it missed
+ * some.
+ */
+public class MetadataLogFeed {
+  private static final Log LOG = LogFactory.getLog(MetadataLogFeed.class);
+
+  /**
+   * The longest a client can wait for events, whatever the configuration,
+   * the wait holds an RPC handler.
+   */
+  static final long MAX_WAIT_LIMIT = 1000; // ms
+
+  // the bits of the start time in the feed id, the rest hold the namenode id
+  private static final int START_TIME_BITS = 40;
+
+  private final long startTime = System.currentTimeMillis();
+  private volatile long feedId = feedId(0, startTime);
+  private final int capacity;
+  private final int maxEventsPerRpc;
+  private final long maxWait;
+
+  private final MetadataLogEvent[] ring;
+  private long nextSequence = 1;
+
+  public MetadataLogFeed(Configuration conf) {
+    capacity = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_KEY,
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_DEFAULT);
+    maxEventsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_EVENTS_PER_RPC_KEY,
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_EVENTS_PER_RPC_DEFAULT);
+    long wait = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_DEFAULT);
+    if (wait > MAX_WAIT_LIMIT) {
+      LOG.warn(DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_KEY +
+          " = " + wait + " is capped to " + MAX_WAIT_LIMIT + " ms");
+      wait = MAX_WAIT_LIMIT;
+    }
+    maxWait = Math.max(0, wait);
+    ring = new MetadataLogEvent[capacity];
+  }
+
+  static long feedId(long namenodeId, long startTime) {
+    return (namenodeId << START_TIME_BITS) |
+        (startTime & ((1L << START_TIME_BITS) - 1));
+  }
+
+  /**
+   * Identify the feed by the id this namenode got from the leader election,
+   * so that the feeds of namenodes started at the same time differ. Called
+   * before the RPC server is started.
+   */
+  void setNamenodeId(long namenodeId) {
+    feedId = feedId(namenodeId, startTime);
+  }
+
+  public boolean isEnabled() {
+    return capacity > 0;
+  }
+
+  /**
+   * Publish the entries once the transaction being committed by the current
+   * thread has committed.
+   */
+  public void stage(Collection<MetadataLogEntry> entries) {
+    if (!isEnabled() || entries == null || entries.isEmpty()) {
+      PostCommitHooks.unregister(this);
+      return;
+    }
+    final List<MetadataLogEntry> committed = new ArrayList<>(entries);
+    PostCommitHooks.register(this, new Runnable() {
+      @Override
+      public void run() {
+        publish(committed);
+      }
+    });
+  }
+
+  private void publish(List<MetadataLogEntry> entries) {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (MetadataLogEntry entry : entries) {
+        ring[(int) ((nextSequence - 1) % capacity)] =
+            toEvent(nextSequence, now, entry);
+        nextSequence++;
+      }
+      notifyAll();
+    }
+  }
+
+  private static MetadataLogEvent toEvent(long sequence, long timestamp,
+      MetadataLogEntry entry) {
+    MetadataLogEvent.Type type = MetadataLogEvent.Type.INODE;
+    String xAttrName = null;
+    if (entry instanceof XAttrMetadataLogEntry) {
+      type = MetadataLogEvent.Type.XATTR;
+      xAttrName = ((XAttrMetadataLogEntry) entry).getName();
+    }
+    return new MetadataLogEvent(sequence, timestamp, type,
+        entry.getOperationId(), entry.getDatasetId(), entry.getInodeId(),
+        entry.getInodePartitionId(), entry.getInodeParentId(),
+        entry.getInodeName(), entry.getLogicalTime(), xAttrName, null);
+  }
+
+  /**
+   * Get the events following the position of the client in this feed,
+   * waiting for up to the given time if there are none yet.
+   *
+   * @param feedIds the feeds the client has read from
+   * @param sequences the last sequence the client read from each feed
+   * @param maxEvents the maximum number of events to return, capped by the
+   * configured maximum
+   * @param waitTime how long to wait for new events, capped by the configured
+   * maximum
+   * @param pathPrefix only return the events of inodes below this path, or
+   * null to return all events without resolving their paths
+   */
+  MetadataLogEventBatch getEvents(FSDirectory dir, long[] feedIds,
+      long[] sequences, int maxEvents, long waitTime, String pathPrefix)
+      throws IOException {
+    long feedId = this.feedId;
+    long after = -1;
+    for (int i = 0; i < feedIds.length; i++) {
+      if (feedIds[i] == feedId) {
+        after = sequences[i];
+        break;
+      }
+    }
+    int max = maxEvents > 0 ? Math.min(maxEvents, maxEventsPerRpc) :
+        maxEventsPerRpc;
+    long deadline = Time.monotonicNow() + Math.min(waitTime, maxWait);
+
+    boolean missed = false;
+    List<MetadataLogEvent> events;
+    synchronized (this) {
+      if (after < 0) {
+        // a new reader starts from the oldest retained event
+        after = getOldestSequence() - 1;
+      } else if (after > nextSequence - 1) {
+        after = nextSequence - 1;
+      }
+      long remaining;
+      while (after == nextSequence - 1 &&
+          (remaining = deadline - Time.monotonicNow()) > 0) {
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (after < getOldestSequence() - 1) {
+        missed = true;
+        after = getOldestSequence() - 1;
+      }
+      int count = (int) Math.min(max, nextSequence - 1 - after);
+      events = new ArrayList<>(count);
+      for (long seq = after + 1; seq <= after + count; seq++) {
+        events.add(ring[(int) ((seq - 1) % capacity)]);
+      }
+      after += count;
+    }
+
+    if (pathPrefix != null) {
+      events = filter(dir, events, pathPrefix);
+    }
+    return new MetadataLogEventBatch(feedId, after, missed, events);
+  }
+
+  private List<MetadataLogEvent> filter(FSDirectory dir,
+      List<MetadataLogEvent> events, String pathPrefix) throws IOException {
+    String prefix = pathPrefix;
+    if (prefix.length() > 1 && prefix.endsWith(Path.SEPARATOR)) {
+      prefix = prefix.substring(0, prefix.length() - 1);
+    }
+    // the events of a batch are mostly in a few directories
+    Map<Long, String> parentPaths = new HashMap<>();
+    List<MetadataLogEvent> filtered = new ArrayList<>();
+    for (MetadataLogEvent event : events) {
+      long parentId = event.getInodeParentId();
+      String parentPath;
+      if (parentPaths.containsKey(parentId)) {
+        parentPath = parentPaths.get(parentId);
+      } else {
+        try {
+          parentPath = dir.getFullPathName(parentId, null);
+        } catch (FileNotFoundException e) {
+          // the parent was deleted since, its path can not be checked
+          parentPath = null;
+        }
+        parentPaths.put(parentId, parentPath);
+      }
+      if (parentPath == null) {
+        continue;
+      }
+      String path = parentPath.endsWith(Path.SEPARATOR) ?
+          parentPath + event.getInodeName() :
+          parentPath + Path.SEPARATOR + event.getInodeName();
+      if (prefix.equals(Path.SEPARATOR) || path.equals(prefix) ||
+          path.startsWith(prefix + Path.SEPARATOR)) {
+        filtered.add(event.withPath(path));
+      }
+    }
+    return filtered;
+  }
+
+  private long getOldestSequence() {
+    return Math.max(1, nextSequence - capacity);
+  }
+
+  public long getFeedId() {
+    return feedId;
+  }
+
+  public synchronized long getLastSequence() {
+    return nextSequence - 1;
+  }
+}
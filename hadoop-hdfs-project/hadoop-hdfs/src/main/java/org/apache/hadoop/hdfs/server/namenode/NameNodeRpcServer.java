@@ -687,12 +687,8 @@ public boolean rename(String src, String dst) throws IOException {
       return true; // Return previous response
     }
     
-    boolean ret = false;
-    try{
-      ret = namesystem.renameTo(src, dst);
-    } finally {
-      LightWeightCacheDistributed.putTransactional(ret);
-    }
+    // the rename transaction records the retry cache entry
+    boolean ret = namesystem.renameTo(src, dst);
     if (ret) {
       metrics.incrFilesRenamed();
     }
@@ -728,13 +724,8 @@ public void rename2(String src, String dst, Options.Rename... options)
       return; // Return previous response
     }
 
-    boolean success = false;
-    try {
-      namesystem.renameTo(src, dst, options);
-      success = true;
-    } finally {
-      LightWeightCacheDistributed.putTransactional(success);
-    }
+    // the rename transaction records the retry cache entry
+    namesystem.renameTo(src, dst, options);
     metrics.incrFilesRenamed();
   }
 
@@ -803,6 +794,37 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
             masked), createParent);
   }
 
+  @Override // ClientProtocol
+  public Map<String, IOException> batchMkdirs(List<String> srcs,
+      FsPermission masked, boolean createParent) throws IOException {
+    checkNNStartup();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.batchMkdirs: " + srcs.size() + " directories");
+    }
+    Map<String, IOException> failed = new LinkedHashMap<>();
+    List<String> valid = new ArrayList<>(srcs.size());
+    for (String src : srcs) {
+      try {
+        checkCollation(src);
+      } catch (IOException e) {
+        failed.put(src, e);
+        continue;
+      }
+      if (!checkPathLength(src)) {
+        failed.put(src, new IOException(
+            "mkdirs: Pathname too long.  Limit " + MAX_PATH_LENGTH +
+                " characters, " + MAX_PATH_DEPTH + " levels."));
+        continue;
+      }
+      valid.add(src);
+    }
+    if (!valid.isEmpty()) {
+      failed.putAll(namesystem.batchMkdirs(valid, new PermissionStatus(
+          getRemoteUser().getShortUserName(), null, masked), createParent));
+    }
+    return failed;
+  }
+
   @Override // ClientProtocol
   public void renewLease(String clientName) throws IOException {
     checkNNStartup();
@@ -1603,6 +1625,44 @@ public void invCachesUserAddedToGroup(String userName, String groupName) throws
     UsersGroups.invCacheUserAddedToGroup(userName, groupName);
   }
 
+  @Override
+  public void invCachesUserAdded(String userName) throws IOException {
+    checkNNStartup();
+    namesystem.checkSuperuserPrivilege();
+    UsersGroups.invCacheUserAdded(userName);
+  }
+
+  @Override
+  public void invCachesGroupAdded(String groupName) throws IOException {
+    checkNNStartup();
+    namesystem.checkSuperuserPrivilege();
+    UsersGroups.invCacheGroupAdded(groupName);
+  }
+
+  @Override // ClientProtocol
+  public void invalidateResolvingCache(long senderId, long senderEpoch,
+      long sequence, long[] parentIds, String[] names) throws IOException {
+    checkNNStartup();
+    namesystem.checkSuperuserPrivilege();
+    namesystem.getResolvingCacheInvalidationManager().receive(senderId,
+        senderEpoch, sequence, parentIds, names);
+  }
+
+  @Override // ClientProtocol
+  public MetadataLogEventBatch getMetadataLogEvents(long[] feedIds,
+      long[] sequences, int maxEvents, long waitTime, String pathPrefix)
+      throws IOException {
+    checkNNStartup();
+    namesystem.checkSuperuserPrivilege();
+    MetadataLogFeed feed = FSNamesystem.getMetadataLogFeed();
+    if (feed == null || !feed.isEnabled()) {
+      throw new IOException("The metadata log feed is disabled, set " +
+          DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_KEY + " to enable it");
+    }
+    return feed.getEvents(namesystem.getFSDirectory(), feedIds, sequences,
+        maxEvents, waitTime, pathPrefix);
+  }
+
   @Override
   public long getEpochMS() throws IOException {
     return System.currentTimeMillis();
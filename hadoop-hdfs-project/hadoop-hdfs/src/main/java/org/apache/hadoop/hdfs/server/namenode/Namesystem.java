@@ -22,8 +22,8 @@
 import org.apache.hadoop.security.AccessControlException;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 import org.apache.hadoop.hdfs.protocol.Block;
 
 /**
@@ -75,7 +75,7 @@ public void adjustSafeModeBlockTotals(List<Block> deltaSafe, int deltaTotal)
    *      list of blocks to be considered safe
    * @throws IOException
    */
-  public void adjustSafeModeBlocks(Set<Long> safeBlocks) throws IOException;
+  public void adjustSafeModeBlocks(Collection<Long> safeBlocks) throws IOException;
 
 
 }
\ No newline at end of file
@@ -36,11 +36,15 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.apache.hadoop.fs.StorageType;
 
 /**
@@ -57,6 +61,7 @@ public class QuotaUpdateManager {
 
   private final int updateInterval;
   private final int updateLimit;
+  private final int numThreads;
 
   private final Daemon updateThread = new Daemon(new QuotaUpdateMonitor());
 
@@ -71,6 +76,8 @@ public QuotaUpdateManager(FSNamesystem namesystem, Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_INTERVAL_DEFAULT);
     updateLimit = conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT);
+    numThreads = Math.max(1, conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT));
   }
 
   public void activate() {
@@ -124,7 +131,12 @@ public void run() {
 
           if (!pauseAsyncOps/*only for testing*/) {
             processNextUpdateBatch();
-            rerunImmediatly = countPendingQuota() > 0 || prioritizedUpdates.size() > 0;
+            int pending = countPendingQuota();
+            NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+            if (metrics != null) {
+              metrics.setQuotaUpdateBacklog(pending);
+            }
+            rerunImmediatly = pending > 0 || prioritizedUpdates.size() > 0;
           }
           
           //if there is parrent updates apply them immediately
@@ -188,20 +200,69 @@ public Object performTask() throws IOException {
             }).handle();
   }
 
+  /**
+   * Apply the pending updates of all the inodes that have some. The updates
+   * of an inode are merged and applied in one transaction that forwards the
+   * merged delta to the parent, so the inodes are independent of each other
+   * and are spread over several threads. The update forwarded to a parent
+   * that was already handled in this batch is applied by the next batch.
+   */
   private void processNextUpdateBatch() throws IOException {
     if(namesystem.isLeader()) {
       List<Long> pendingInodes = getPendingInodes();
       // Sort in descending order.
-      // In general leaves have higher ID than the parent.
+      // In general leaves have higher ID than the parent. This is only a
+      // heuristic to apply the updates of a subtree in few batches: the ids
+      // are not monotonic across namenodes, which prefetch their own ranges,
+      // nor across the threads of a namenode, which take their own slices of
+      // these ranges. The updates are complete whatever the order, as
+      // applying the updates of an inode adds their merged delta as a new
+      // update of its parent, which is picked up by a later batch if the
+      // parent was handled first.
       Collections.sort(pendingInodes, Collections.reverseOrder());
 
-      for (Long inodeID : pendingInodes) {
-        applyBatchedUpdateForINode(inodeID, false);
+      if (numThreads == 1 || pendingInodes.size() == 1) {
+        applyUpdatesForINodes(pendingInodes);
+        return;
+      }
 
-        // if there is priority work then break
-        if (prioritizedUpdates.size() > 0) {
-          break;
+      //interleave the inodes so that every thread works from the leaves up
+      List<Callable<Object>> tasks = new ArrayList<>(numThreads);
+      for (int i = 0; i < numThreads && i < pendingInodes.size(); i++) {
+        final List<Long> inodes = new ArrayList<>();
+        for (int j = i; j < pendingInodes.size(); j += numThreads) {
+          inodes.add(pendingInodes.get(j));
         }
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws IOException {
+            applyUpdatesForINodes(inodes);
+            return null;
+          }
+        });
+      }
+      try {
+        for (Future<Object> future : namesystem.getFSOperationsExecutor().invokeAll(tasks)) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  private void applyUpdatesForINodes(List<Long> inodes) throws IOException {
+    for (Long inodeID : inodes) {
+      applyBatchedUpdateForINode(inodeID, false);
+
+      // if there is priority work then break
+      if (prioritizedUpdates.size() > 0) {
+        break;
       }
     }
   }
@@ -247,7 +308,7 @@ public Object performTask() throws IOException {
            * could differ from the view of the parent if outstanding quota updates are applied after being considered
            * by the QuotaCountingFileTree but before successfully moving the subtree.
            */
-          return false;
+          return 0;
         }
 
         QuotaCounts counts = new QuotaCounts.Builder().build();
@@ -297,8 +358,12 @@ public Object performTask() throws IOException {
     };
 
     long processed = 0;
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     do {
       processed = (int) handler.handle();
+      if (metrics != null) {
+        metrics.incrQuotaUpdatesApplied(processed);
+      }
       if (!thisIsPriorityWork) {
         if (prioritizedUpdates.size() > 0) {
           break; // break as high priority work is waiting
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.resolvingcache.Cache;
+import io.hops.transaction.handler.PostCommitHooks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the resolving cache invalidations of this namenode to the other
+ * active namenodes, and applies the invalidations it receives from them.
+ * <p>
+ * Path components of inodes removed or renamed by a transaction are queued
+ * once the transaction has committed, and sent in batches to every other
+ * active namenode. Each batch carries the
+ * id and the epoch (start time) of the sender, and a sequence number that
+ * starts at 1 for every epoch. A receiver that notices a gap in the sequence
+ * of a sender, because a batch was lost, a peer was unreachable or the
+ * sender restarted, cannot know which entries are stale and flushes its
+ * whole cache. A batch received again, because the RPC was retried, is
+ * ignored. Cache entries are still validated by the transactions, this only
+ * avoids paying a failed validation and a retry for the common case.
+ */
+public class ResolvingCacheInvalidationManager
+    implements Cache.InvalidationListener {
+
+  static final Log LOG =
+      LogFactory.getLog(ResolvingCacheInvalidationManager.class);
+
+  /**
+   * How a batch of invalidations relates to the batches previously received
+   * from its sender.
+   */
+  enum Delivery {
+    // the next batch of the sender
+    IN_ORDER,
+    // batches of the sender were missed
+    MISSED,
+    // the batch was already received, or belongs to a previous epoch
+    DUPLICATE
+  }
+
+  private final FSNamesystem namesystem;
+  private final Configuration conf;
+
+  private final boolean enabled;
+  private final int interval;
+  private final int batchSize;
+  private final int maxPending;
+
+  private final long epoch = System.currentTimeMillis();
+  private long sequence = 0;
+
+  private final ConcurrentLinkedQueue<Invalidation> pending =
+      new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final AtomicBoolean dropped = new AtomicBoolean();
+
+  private final Map<Long, ClientProtocol> peers = new HashMap<>();
+  private final Map<Long, SenderState> senders = new HashMap<>();
+
+  private final Daemon sendThread = new Daemon(new InvalidationSender());
+
+  public ResolvingCacheInvalidationManager(FSNamesystem namesystem,
+      Configuration conf) {
+    this.namesystem = namesystem;
+    this.conf = conf;
+    enabled = conf.getBoolean(
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_ENABLED,
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_ENABLED_DEFAULT);
+    interval = conf.getInt(
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_INTERVAL,
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_INTERVAL_DEFAULT);
+    batchSize = conf.getInt(
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_BATCH_SIZE,
+        DFSConfigKeys.DFS_RESOLVING_CACHE_INVALIDATION_BATCH_SIZE_DEFAULT);
+    maxPending = 10 * batchSize;
+  }
+
+  public void activate() {
+    if (!enabled) {
+      return;
+    }
+    LOG.debug("ResolvingCacheInvalidationManager is running");
+    Cache.getInstance().setInvalidationListener(this);
+    sendThread.start();
+  }
+
+  public void close() {
+    if (!enabled) {
+      return;
+    }
+    Cache cache = Cache.peekInstance();
+    if (cache != null) {
+      cache.setInvalidationListener(null);
+    }
+    sendThread.interrupt();
+    try {
+      sendThread.join(3000);
+    } catch (InterruptedException e) {
+      LOG.error("ResolvingCacheInvalidationManager Thread Interrupted");
+      Thread.currentThread().interrupt();
+    }
+    synchronized (peers) {
+      for (ClientProtocol peer : peers.values()) {
+        RPC.stopProxy(peer);
+      }
+      peers.clear();
+    }
+  }
+
+  @Override
+  public void invalidated(final long parentId, final String name) {
+    // the peers must not drop their entries before the inode is removed,
+    // they could cache it again
+    PostCommitHooks.runAfterCommit(Arrays.asList(this, parentId, name),
+        new Runnable() {
+          @Override
+          public void run() {
+            queue(parentId, name);
+          }
+        });
+  }
+
+  private void queue(long parentId, String name) {
+    if (pendingCount.incrementAndGet() > maxPending) {
+      // the sender is falling behind, the invalidations are dropped and the
+      // skipped sequence number makes the peers flush their caches
+      pendingCount.decrementAndGet();
+      dropped.set(true);
+      return;
+    }
+    pending.add(new Invalidation(parentId, name));
+  }
+
+  /**
+   * Apply a batch of invalidations sent by another namenode.
+   */
+  public void receive(long senderId, long senderEpoch, long sequence,
+      long[] parentIds, String[] names) {
+    Cache cache = Cache.getInstance();
+    synchronized (senders) {
+      switch (deliver(senderId, senderEpoch, sequence)) {
+        case DUPLICATE:
+          return;
+        case MISSED:
+          LOG.debug("Missed resolving cache invalidations from namenode " +
+              senderId + ", flushing the resolving cache");
+          cache.flush();
+          return;
+        default:
+          break;
+      }
+    }
+    for (int i = 0; i < parentIds.length; i++) {
+      cache.delete(parentIds[i], names[i]);
+    }
+  }
+
+  /**
+   * Record the delivery of a batch of invalidations.
+   */
+  @VisibleForTesting
+  Delivery deliver(long senderId, long senderEpoch, long sequence) {
+    synchronized (senders) {
+      SenderState state = senders.get(senderId);
+      if (state != null && senderEpoch < state.epoch) {
+        // sent before the sender restarted
+        return Delivery.DUPLICATE;
+      }
+      Delivery delivery;
+      if (state == null || state.epoch != senderEpoch) {
+        delivery = sequence == 1 ? Delivery.IN_ORDER : Delivery.MISSED;
+        state = new SenderState(senderEpoch);
+        senders.put(senderId, state);
+      } else if (sequence <= state.sequence) {
+        return Delivery.DUPLICATE;
+      } else {
+        delivery = sequence == state.sequence + 1 ? Delivery.IN_ORDER :
+            Delivery.MISSED;
+      }
+      state.sequence = sequence;
+      return delivery;
+    }
+  }
+
+  private void sendPending() {
+    long[] parentIds = new long[Math.min(pendingCount.get(), batchSize)];
+    String[] names = new String[parentIds.length];
+    int count = 0;
+    Invalidation invalidation;
+    while (count < parentIds.length && (invalidation = pending.poll()) != null) {
+      parentIds[count] = invalidation.parentId;
+      names[count] = invalidation.name;
+      count++;
+    }
+    if (count == 0) {
+      return;
+    }
+    pendingCount.addAndGet(-count);
+    if (count < parentIds.length) {
+      parentIds = Arrays.copyOf(parentIds, count);
+      names = Arrays.copyOf(names, count);
+    }
+    if (dropped.getAndSet(false)) {
+      sequence++;
+    }
+    sequence++;
+
+    List<ActiveNode> activeNodes =
+        namesystem.getNameNode().getActiveNameNodes().getActiveNodes();
+    Set<Long> activeIds = new HashSet<>();
+    for (ActiveNode an : activeNodes) {
+      if (an.getId() == namesystem.getNamenodeId()) {
+        continue;
+      }
+      activeIds.add(an.getId());
+      try {
+        getPeer(an).invalidateResolvingCache(namesystem.getNamenodeId(), epoch,
+            sequence, parentIds, names);
+      } catch (IOException e) {
+        // the peer will notice the gap in the sequence and flush its cache
+        LOG.debug("Could not send resolving cache invalidations to " +
+            "namenode " + an.getId(), e);
+        removePeer(an.getId());
+      }
+    }
+    removeInactivePeers(activeIds);
+  }
+
+  private ClientProtocol getPeer(ActiveNode an) throws IOException {
+    synchronized (peers) {
+      ClientProtocol peer = peers.get(an.getId());
+      if (peer == null) {
+        peer = NameNodeProxies.createNonHAProxy(conf,
+            an.getRpcServerAddressForClients(), ClientProtocol.class,
+            UserGroupInformation.getLoginUser(), false).getProxy();
+        peers.put(an.getId(), peer);
+      }
+      return peer;
+    }
+  }
+
+  private void removePeer(long id) {
+    synchronized (peers) {
+      ClientProtocol peer = peers.remove(id);
+      if (peer != null) {
+        RPC.stopProxy(peer);
+      }
+    }
+  }
+
+  private void removeInactivePeers(Set<Long> activeIds) {
+    synchronized (peers) {
+      Iterator<Map.Entry<Long, ClientProtocol>> it =
+          peers.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Long, ClientProtocol> entry = it.next();
+        if (!activeIds.contains(entry.getKey())) {
+          RPC.stopProxy(entry.getValue());
+          it.remove();
+        }
+      }
+    }
+  }
+
+  private class InvalidationSender implements Runnable {
+    @Override
+    public void run() {
+      while (namesystem.isRunning()) {
+        try {
+          if (pendingCount.get() < batchSize) {
+            Thread.sleep(interval);
+          }
+          sendPending();
+        } catch (InterruptedException ie) {
+          LOG.warn("InvalidationSender thread received " +
+              "InterruptedException.", ie);
+          break;
+        } catch (Throwable t) {
+          LOG.error("InvalidationSender thread received Runtime exception. ",
+              t);
+        }
+      }
+    }
+  }
+
+  private static class Invalidation {
+    private final long parentId;
+    private final String name;
+
+    Invalidation(long parentId, String name) {
+      this.parentId = parentId;
+      this.name = name;
+    }
+  }
+
+  private static class SenderState {
+    private final long epoch;
+    private long sequence;
+
+    SenderState(long epoch) {
+      this.epoch = epoch;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.SortedActiveNodeList;
+import io.hops.security.UsersGroups;
+import io.hops.transaction.handler.PostCommitHooks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidates the users and groups caches of the other active namenodes
+ * when users, groups or memberships are changed through this namenode.
+ * <p>
+ * The invalidations of a change made within a transaction are queued once
+ * the transaction has committed, and sent by a background thread, so that
+ * an unreachable namenode does not hold the locks of the transaction. The
+ * other namenodes see the change shortly after the client gets the reply. A
+ * namenode that cannot be reached keeps its stale entries until they
+ * expire.
+ */
+public class UsersGroupsInvalidationManager
+    implements UsersGroups.InvalidationListener {
+
+  static final Log LOG =
+      LogFactory.getLog(UsersGroupsInvalidationManager.class);
+
+  private interface Invalidation {
+    void send(ClientProtocol peer) throws IOException;
+  }
+
+  private final FSNamesystem namesystem;
+  private final Configuration conf;
+
+  private final Map<Long, ClientProtocol> peers = new HashMap<>();
+  private final LinkedBlockingQueue<Invalidation> pending =
+      new LinkedBlockingQueue<>();
+
+  private final Daemon sendThread = new Daemon(new InvalidationSender());
+
+  public UsersGroupsInvalidationManager(FSNamesystem namesystem,
+      Configuration conf) {
+    this.namesystem = namesystem;
+    this.conf = conf;
+  }
+
+  public void activate() {
+    UsersGroups.setInvalidationListener(this);
+    sendThread.start();
+  }
+
+  public void close() {
+    UsersGroups.setInvalidationListener(null);
+    sendThread.interrupt();
+    try {
+      sendThread.join(3000);
+    } catch (InterruptedException e) {
+      LOG.error("UsersGroupsInvalidationManager Thread Interrupted");
+      Thread.currentThread().interrupt();
+    }
+    synchronized (peers) {
+      for (ClientProtocol peer : peers.values()) {
+        RPC.stopProxy(peer);
+      }
+      peers.clear();
+    }
+  }
+
+  @Override
+  public void userAdded(final String user) {
+    queue(Arrays.asList("userAdded", user), new Invalidation() {
+      @Override
+      public void send(ClientProtocol peer) throws IOException {
+        peer.invCachesUserAdded(user);
+      }
+    });
+  }
+
+  @Override
+  public void groupAdded(final String group) {
+    queue(Arrays.asList("groupAdded", group), new Invalidation() {
+      @Override
+      public void send(ClientProtocol peer) throws IOException {
+        peer.invCachesGroupAdded(group);
+      }
+    });
+  }
+
+  @Override
+  public void userRemoved(final String user) {
+    queue(Arrays.asList("userRemoved", user), new Invalidation() {
+      @Override
+      public void send(ClientProtocol peer) throws IOException {
+        peer.invCachesUserRemoved(user);
+      }
+    });
+  }
+
+  @Override
+  public void groupRemoved(final String group) {
+    queue(Arrays.asList("groupRemoved", group), new Invalidation() {
+      @Override
+      public void send(ClientProtocol peer) throws IOException {
+        peer.invCachesGroupRemoved(group);
+      }
+    });
+  }
+
+  @Override
+  public void userAddedToGroup(final String user, final String group) {
+    queue(Arrays.asList("userAddedToGroup", user, group), new Invalidation() {
+      @Override
+      public void send(ClientProtocol peer) throws IOException {
+        peer.invCachesUserAddedToGroup(user, group);
+      }
+    });
+  }
+
+  @Override
+  public void userRemovedFromGroup(final String user, final String group) {
+    queue(Arrays.asList("userRemovedFromGroup", user, group),
+        new Invalidation() {
+          @Override
+          public void send(ClientProtocol peer) throws IOException {
+            peer.invCachesUserRemovedFromGroup(user, group);
+          }
+        });
+  }
+
+  /**
+   * Queue an invalidation once the transaction of the current thread has
+   * committed, or now if the change was not made within a transaction.
+   *
+   * @param key
+   *     identifies the change, a retried transaction queues it once
+   */
+  private void queue(Object key, final Invalidation invalidation) {
+    PostCommitHooks.runAfterCommit(Arrays.asList(this, key), new Runnable() {
+      @Override
+      public void run() {
+        pending.add(invalidation);
+      }
+    });
+  }
+
+  private void sendToPeers(Invalidation invalidation) {
+    SortedActiveNodeList activeNodes =
+        namesystem.getNameNode().getActiveNameNodes();
+    if (activeNodes == null) {
+      return;
+    }
+    for (ActiveNode an : activeNodes.getActiveNodes()) {
+      if (an.getId() == namesystem.getNamenodeId()) {
+        continue;
+      }
+      try {
+        invalidation.send(getPeer(an));
+      } catch (IOException e) {
+        LOG.warn("Could not invalidate the users and groups cache of " +
+            "namenode " + an.getId(), e);
+        removePeer(an.getId());
+      }
+    }
+  }
+
+  private ClientProtocol getPeer(ActiveNode an) throws IOException {
+    synchronized (peers) {
+      ClientProtocol peer = peers.get(an.getId());
+      if (peer == null) {
+        peer = NameNodeProxies.createNonHAProxy(conf,
+            an.getRpcServerAddressForClients(), ClientProtocol.class,
+            UserGroupInformation.getLoginUser(), false).getProxy();
+        peers.put(an.getId(), peer);
+      }
+      return peer;
+    }
+  }
+
+  private void removePeer(long id) {
+    synchronized (peers) {
+      ClientProtocol peer = peers.remove(id);
+      if (peer != null) {
+        RPC.stopProxy(peer);
+      }
+    }
+  }
+
+  private class InvalidationSender implements Runnable {
+    @Override
+    public void run() {
+      while (namesystem.isRunning()) {
+        try {
+          Invalidation invalidation = pending.poll(1, TimeUnit.SECONDS);
+          if (invalidation != null) {
+            sendToPeers(invalidation);
+          }
+        } catch (InterruptedException ie) {
+          LOG.warn("InvalidationSender thread received " +
+              "InterruptedException.", ie);
+          break;
+        } catch (Throwable t) {
+          LOG.error("InvalidationSender thread received Runtime exception. ",
+              t);
+        }
+      }
+    }
+  }
+}
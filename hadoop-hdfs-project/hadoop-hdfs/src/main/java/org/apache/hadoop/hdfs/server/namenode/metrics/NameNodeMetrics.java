@@ -17,9 +17,12 @@
  */
 package org.apache.hadoop.hdfs.server.namenode.metrics;
 
+import io.hops.common.IDsGeneratorFactory;
+import io.hops.resolvingcache.Cache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
+import org.apache.hadoop.hdfs.server.common.SmallFileDataCache;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
@@ -27,6 +30,7 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
@@ -87,9 +91,97 @@ public long totalFileOps(){
   }
 
 
-  @Metric("Journal transactions") MutableRate transactions;
+  @Metric(value = "Path lookups served by the resolving cache",
+      type = Metric.Type.COUNTER)
+  public long getResolvingCacheHits() {
+    Cache cache = Cache.peekInstance();
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  @Metric(value = "Path lookups not served by the resolving cache",
+      type = Metric.Type.COUNTER)
+  public long getResolvingCacheMisses() {
+    Cache cache = Cache.peekInstance();
+    return cache == null ? 0 : cache.getMisses();
+  }
+
+  @Metric(value = "Path components evicted from the resolving cache",
+      type = Metric.Type.COUNTER)
+  public long getResolvingCacheEvictions() {
+    Cache cache = Cache.peekInstance();
+    return cache == null ? 0 : cache.getEvictions();
+  }
+
+  @Metric("Path components in the resolving cache")
+  public long getResolvingCacheSize() {
+    Cache cache = Cache.peekInstance();
+    return cache == null ? 0 : cache.getSize();
+  }
+
+  @Metric(value = "Small file reads served by the small file data cache",
+      type = Metric.Type.COUNTER)
+  public long getSmallFileCacheHits() {
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  @Metric(value = "Small file reads not served by the small file data cache",
+      type = Metric.Type.COUNTER)
+  public long getSmallFileCacheMisses() {
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    return cache == null ? 0 : cache.getMisses();
+  }
+
+  @Metric(value = "Bytes served by the small file data cache",
+      type = Metric.Type.COUNTER)
+  public long getSmallFileCacheBytesServed() {
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    return cache == null ? 0 : cache.getBytesServed();
+  }
+
+  @Metric("Bytes in the small file data cache")
+  public long getSmallFileCacheSize() {
+    SmallFileDataCache cache = FSNamesystem.getSmallFileDataCache();
+    return cache == null ? 0 : cache.getSize();
+  }
+
+  @Metric(value = "Slices of ids taken from the shared ids queues",
+      type = Metric.Type.COUNTER)
+  public long getIdSliceTakes() {
+    IDsGeneratorFactory factory = IDsGeneratorFactory.peekInstance();
+    return factory == null ? 0 : factory.getSharedTakes();
+  }
+
+  @Metric(value = "Operations that waited for an id refill transaction",
+      type = Metric.Type.COUNTER)
+  public long getIdRefillStalls() {
+    IDsGeneratorFactory factory = IDsGeneratorFactory.peekInstance();
+    return factory == null ? 0 : factory.getRefillStalls();
+  }
+
+  @Metric(value = "Time in milliseconds operations waited for id refill transactions",
+      type = Metric.Type.COUNTER)
+  public long getIdRefillStallTime() {
+    IDsGeneratorFactory factory = IDsGeneratorFactory.peekInstance();
+    return factory == null ? 0 : factory.getRefillStallTime();
+  }
+
+  @Metric("Metadata transactions") MutableRate transactions;
+  final MutableQuantiles[] transactionsQuantiles;
+  /**
+   * Upper bounds of the batch size ranges for which the latency of batched
+   * metadata transactions is tracked separately.
+   */
+  static final int[] TRANSACTION_BATCH_SIZES = {1, 10, 100, 1000, Integer.MAX_VALUE};
+  final MutableRate[] batchedTransactions;
+  final MutableQuantiles[][] batchedTransactionsQuantiles;
   @Metric("Journal syncs") MutableRate syncs;
   final MutableQuantiles[] syncsQuantiles;
+  @Metric("Blocks scheduled for replication")
+  MutableCounterLong blocksScheduledForReplication;
+  @Metric("Replication work transactions") MutableRate replicationWork;
+  @Metric("Pending quota updates") MutableGaugeLong quotaUpdateBacklog;
+  @Metric("Quota updates applied") MutableCounterLong quotaUpdatesApplied;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
@@ -107,12 +199,30 @@ public long totalFileOps(){
     registry.tag(ProcessName, processName).tag(SessionId, sessionId);
     
     final int len = intervals.length;
+    transactionsQuantiles = new MutableQuantiles[len];
+    batchedTransactions = new MutableRate[TRANSACTION_BATCH_SIZES.length];
+    batchedTransactionsQuantiles =
+        new MutableQuantiles[TRANSACTION_BATCH_SIZES.length][len];
+    for (int b = 0; b < TRANSACTION_BATCH_SIZES.length; b++) {
+      String name = "batchedTransactions" + batchSizeName(b);
+      batchedTransactions[b] = registry.newRate(name,
+          "Batched metadata transactions of " + batchSizeName(b) + " operations");
+      for (int i = 0; i < len; i++) {
+        batchedTransactionsQuantiles[b][i] = registry.newQuantiles(
+            name + intervals[i] + "s",
+            "Batched metadata transactions of " + batchSizeName(b) + " operations",
+            "ops", "latency", intervals[i]);
+      }
+    }
     syncsQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
+      transactionsQuantiles[i] = registry
+          .newQuantiles("transactions" + interval + "s", "Metadata transactions",
+              "ops", "latency", interval);
       syncsQuantiles[i] = registry
           .newQuantiles("syncs" + interval + "s", "Journal syncs", "ops",
               "latency", interval);
@@ -125,6 +235,17 @@ public long totalFileOps(){
     }
   }
 
+  private static String batchSizeName(int bucket) {
+    if (bucket == 0) {
+      return "1";
+    }
+    int from = TRANSACTION_BATCH_SIZES[bucket - 1] + 1;
+    if (TRANSACTION_BATCH_SIZES[bucket] == Integer.MAX_VALUE) {
+      return from + "Plus";
+    }
+    return from + "To" + TRANSACTION_BATCH_SIZES[bucket];
+  }
+
   public static NameNodeMetrics create(Configuration conf, NamenodeRole r) {
     String sessionId = conf.get(DFSConfigKeys.DFS_METRICS_SESSION_ID_KEY);
     String processName = r.toString();
@@ -217,6 +338,23 @@ public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
 
+  public void setQuotaUpdateBacklog(long pending) {
+    quotaUpdateBacklog.set(pending);
+  }
+
+  public void incrQuotaUpdatesApplied(long applied) {
+    quotaUpdatesApplied.incr(applied);
+  }
+
+  /**
+   * Record a replication work transaction that scheduled
+   * {@code scheduledBlocks} blocks for replication.
+   */
+  public void addReplicationWork(int scheduledBlocks, long latency) {
+    blocksScheduledForReplication.incr(scheduledBlocks);
+    replicationWork.add(latency);
+  }
+
   public void addBlockReport(long latency) {
     blockReport.add(latency);
     for (MutableQuantiles q : blockReportQuantiles) {
@@ -224,6 +362,28 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addTransaction(long latency) {
+    transactions.add(latency);
+    for (MutableQuantiles q : transactionsQuantiles) {
+      q.add(latency);
+    }
+  }
+
+  /**
+   * Record the latency of a metadata transaction that applied
+   * {@code batchSize} client operations.
+   */
+  public void addBatchedTransaction(int batchSize, long latency) {
+    int bucket = 0;
+    while (batchSize > TRANSACTION_BATCH_SIZES[bucket]) {
+      bucket++;
+    }
+    batchedTransactions[bucket].add(latency);
+    for (MutableQuantiles q : batchedTransactionsQuantiles[bucket]) {
+      q.add(latency);
+    }
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
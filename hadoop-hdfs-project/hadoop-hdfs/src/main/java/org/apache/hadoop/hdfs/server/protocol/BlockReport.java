@@ -43,6 +43,7 @@ public class BlockReport implements Iterable<BlockReportReplica> {
   
   private Bucket[] buckets;
   private int numBlocks;
+  private int bucketsPerDigest;
   
   public Bucket[] getBuckets(){
     return buckets;
@@ -51,10 +52,23 @@ public Bucket[] getBuckets(){
   public int getNumberOfBlocks(){
     return numBlocks;
   }
+
+  /**
+   * @return the number of consecutive buckets combined in the hash of each
+   * bucket of this report, 1 if the report carries the bucket hashes
+   */
+  public int getBucketsPerDigest(){
+    return bucketsPerDigest;
+  }
   
   public BlockReport(Bucket[] buckets, int numBlocks){
+    this(buckets, numBlocks, 1);
+  }
+
+  public BlockReport(Bucket[] buckets, int numBlocks, int bucketsPerDigest){
     this.buckets = buckets;
     this.numBlocks = numBlocks;
+    this.bucketsPerDigest = bucketsPerDigest;
   }
  
   @VisibleForTesting
@@ -99,7 +113,7 @@ private static int bucket(Block block, int numBuckets){
     return bucket(block.getBlockId(), numBuckets);
   }
   
-  private static int bucket(long blockId, int numBuckets){
+  public static int bucket(long blockId, int numBuckets){
     int reminder = (int)(blockId % numBuckets);
     return reminder >= 0 ? reminder : numBuckets + reminder;
     
@@ -226,6 +240,26 @@ public Builder add(Replica replica) {
       blockCounter++;
       return this;
     }
+
+    /**
+     * Add a replica whose hash is included in the hashes given to
+     * {@link #addHashes(byte[][])}.
+     */
+    public Builder addWithoutHash(Replica replica) {
+      buckets[bucket(replica, NUM_BUCKETS)].add(replica);
+      blockCounter++;
+      return this;
+    }
+
+    /**
+     * XOR the hashes of replicas added without hash into the bucket hashes.
+     */
+    public Builder addHashes(byte[][] bucketHashes) {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        HashBuckets.XORHashes(hashes[i], bucketHashes[i]);
+      }
+      return this;
+    }
     
 //    public Builder addAllAsFinalized(List<Block> blocks){
 //      for (Block block : blocks){
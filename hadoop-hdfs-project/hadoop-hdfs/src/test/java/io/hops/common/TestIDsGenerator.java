@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestIDsGenerator {
+
+  /**
+   * Hands out the ranges of an in-memory counter.
+   */
+  private static class TestGenerator extends IDsGenerator {
+    private long counter = 0;
+    private int fetches = 0;
+
+    TestGenerator(int batchSize, float threshold, int sliceSize) {
+      super(batchSize, threshold, sliceSize);
+    }
+
+    @Override
+    synchronized CountersQueue.Counter incrementCounter(int inc) {
+      fetches++;
+      CountersQueue.Counter range = new CountersQueue.Counter(counter,
+          counter + inc);
+      counter += inc;
+      return range;
+    }
+
+    synchronized int getFetches() {
+      return fetches;
+    }
+  }
+
+  @After
+  public void tearDown() {
+    IDsMonitor.reset();
+  }
+
+  @Test
+  public void testSlicesOfOneThread() throws Exception {
+    TestGenerator generator = new TestGenerator(100, 0.5f, 10);
+    for (long i = 0; i < 250; i++) {
+      assertEquals(i, generator.getUniqueID());
+    }
+    // one slice taken from the shared queue every 10 ids
+    assertEquals(25, generator.getSharedTakes());
+    assertEquals(3, generator.getFetches());
+    assertEquals(3, generator.getStalls());
+  }
+
+  @Test
+  public void testSliceLargerThanBatch() throws Exception {
+    TestGenerator generator = new TestGenerator(4, 0.5f, 10);
+    for (long i = 0; i < 10; i++) {
+      assertEquals(i, generator.getUniqueID());
+    }
+    // the slices are capped to the batch size
+    assertEquals(3, generator.getSharedTakes());
+  }
+
+  @Test(timeout = 60000)
+  public void testSlicesOfConcurrentThreads() throws Exception {
+    final int numThreads = 8;
+    final int idsPerThread = 1000;
+    final int sliceSize = 10;
+    final TestGenerator generator = new TestGenerator(100, 0.5f, sliceSize);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<List<Long>>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(executor.submit(new Callable<List<Long>>() {
+          @Override
+          public List<Long> call() throws Exception {
+            List<Long> ids = new ArrayList<>(idsPerThread);
+            for (int i = 0; i < idsPerThread; i++) {
+              ids.add(generator.getUniqueID());
+            }
+            return ids;
+          }
+        }));
+      }
+
+      Set<Long> all = new HashSet<>();
+      for (Future<List<Long>> future : futures) {
+        List<Long> ids = future.get();
+        // a thread hands out the ids of its slice in order, the slices
+        // start at a multiple of the slice size as all the ranges do
+        for (int i = 0; i < ids.size(); i++) {
+          if (i % sliceSize != 0) {
+            assertEquals(ids.get(i - 1) + 1, (long) ids.get(i));
+          } else {
+            assertEquals(0, ids.get(i) % sliceSize);
+          }
+        }
+        all.addAll(ids);
+      }
+      assertEquals(numThreads * idsPerThread, all.size());
+      assertEquals(numThreads * idsPerThread / sliceSize,
+          generator.getSharedTakes());
+      // the ids all come from the fetched ranges
+      assertTrue(Collections.max(all) < generator.getFetches() * 100);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import com.google.common.base.Supplier;
+import io.hops.erasure_coding.ErasureCodingWorkQueue.Work;
+import io.hops.erasure_coding.ErasureCodingWorkQueue.WorkType;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestErasureCodingWorkQueue {
+
+  @Test
+  public void testPriority() {
+    ErasureCodingWorkQueue queue = new ErasureCodingWorkQueue(0, 0);
+    queue.add(WorkType.ENCODING, 1, 0);
+    queue.add(WorkType.DELETION, 2, 0);
+    queue.add(WorkType.PARITY_REPAIR, 3, 0);
+    queue.add(WorkType.SOURCE_REPAIR, 4, 0);
+
+    List<Work> ready = queue.pollReady(System.currentTimeMillis());
+    assertEquals(4, ready.size());
+    assertEquals(WorkType.SOURCE_REPAIR, ready.get(0).getType());
+    assertEquals(WorkType.PARITY_REPAIR, ready.get(1).getType());
+    assertEquals(WorkType.ENCODING, ready.get(2).getType());
+    assertEquals(WorkType.DELETION, ready.get(3).getType());
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testDelayAndDuplicates() {
+    ErasureCodingWorkQueue queue = new ErasureCodingWorkQueue(0, 0);
+    long now = System.currentTimeMillis();
+    queue.add(WorkType.SOURCE_REPAIR, 1, now + 60000);
+    queue.add(WorkType.SOURCE_REPAIR, 1, now);
+    queue.add(WorkType.ENCODING, 2, now);
+    assertEquals(2, queue.size());
+
+    List<Work> ready = queue.pollReady(now);
+    assertEquals(1, ready.size());
+    assertEquals(2, ready.get(0).getInodeId());
+
+    ready = queue.pollReady(now + 60000);
+    assertEquals(1, ready.size());
+    assertEquals(1, ready.get(0).getInodeId());
+  }
+
+  @Test(timeout = 10000)
+  public void testAwait() throws Exception {
+    final ErasureCodingWorkQueue queue = new ErasureCodingWorkQueue(0, 0);
+    long start = System.currentTimeMillis();
+    queue.add(WorkType.ENCODING, 1, start + 200);
+    queue.await(5000);
+    // woken up by the delay of the queued work, not the timeout
+    assertTrue(System.currentTimeMillis() - start < 5000);
+
+    // work that is put back does not wake up the waiting thread, new work
+    // does
+    Work work = queue.pollReady(System.currentTimeMillis()).get(0);
+    final Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queue.await(60000);
+        } catch (InterruptedException e) {
+          // the test fails on the join
+        }
+      }
+    };
+    waiter.start();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return waiter.getState() == Thread.State.TIMED_WAITING;
+      }
+    }, 10, 5000);
+    queue.requeue(work, System.currentTimeMillis() + 60000);
+    assertTrue(waiter.isAlive());
+    queue.add(WorkType.ENCODING, 2, 0);
+    waiter.join(5000);
+    assertFalse(waiter.isAlive());
+  }
+}
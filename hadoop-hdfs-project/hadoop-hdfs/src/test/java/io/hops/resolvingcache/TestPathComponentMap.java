@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPathComponentMap {
+
+  @Test
+  public void testPutGetRemove() {
+    PathComponentMap map = new PathComponentMap(100, 4);
+    map.put(1, "a", 2);
+    map.put(2, "b", 3);
+    // same name under another parent is a different component
+    map.put(3, "a", 4);
+    assertEquals(2, map.get(1, "a"));
+    assertEquals(3, map.get(2, "b"));
+    assertEquals(4, map.get(3, "a"));
+    assertEquals(PathComponentMap.NOT_FOUND, map.get(1, "b"));
+
+    map.put(1, "a", 5);
+    assertEquals(5, map.get(1, "a"));
+
+    map.remove(1, "a");
+    assertEquals(PathComponentMap.NOT_FOUND, map.get(1, "a"));
+    assertEquals(2, map.size());
+
+    map.clear();
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  public void testBounded() {
+    PathComponentMap map = new PathComponentMap(1000, 8);
+    for (int i = 0; i < 10000; i++) {
+      map.put(1, "file" + i, i + 2);
+    }
+    assertTrue(map.size() <= 1000);
+    assertEquals(10000 - map.size(), map.getEvictions());
+  }
+
+  @Test
+  public void testFrequentlyUsedComponentsSurviveScans() {
+    PathComponentMap map = new PathComponentMap(1000, 8);
+    for (int i = 0; i < 1000; i++) {
+      map.put(1, "hot" + i, i + 2);
+    }
+    // a large one-off listing touches many components only once while
+    // the first 50 components keep being used
+    for (int i = 0; i < 100000; i++) {
+      map.put(2, "scan" + i, i + 2000);
+      if (i % 20 == 0) {
+        for (int j = 0; j < 50; j++) {
+          map.get(1, "hot" + j);
+        }
+      }
+    }
+    int kept = 0;
+    for (int j = 0; j < 50; j++) {
+      if (map.get(1, "hot" + j) != PathComponentMap.NOT_FOUND) {
+        kept++;
+      }
+    }
+    assertTrue("only " + kept + " frequently used components were kept",
+        kept > 40);
+  }
+}
@@ -556,6 +556,54 @@ public void testFKConstraintException() throws Exception {
 
   }
 
+  @Test
+  public void testUnknownUsersGroups() throws Exception {
+    Configuration conf = new Configuration();
+    HdfsStorageFactory.reset();
+    HdfsStorageFactory.setConfiguration(conf);
+    HdfsStorageFactory.formatStorage();
+    UsersGroups.createSyncRow();
+
+    // unknown users and groups are cached
+    for (int i = 0; i < 2; i++) {
+      try {
+        UsersGroups.getUserID("u1");
+        fail();
+      } catch (UserNotFoundException e) {
+      }
+      try {
+        UsersGroups.getGroupID("g1");
+        fail();
+      } catch (GroupNotFoundException e) {
+      }
+    }
+
+    // but do not prevent adding them
+    UsersGroups.addUser("u1");
+    assertNotEquals(0, UsersGroups.getUserID("u1"));
+    UsersGroups.addGroup("g1");
+    assertNotEquals(0, UsersGroups.getGroupID("g1"));
+
+    // users without groups are cached as well
+    for (int i = 0; i < 2; i++) {
+      try {
+        UsersGroups.getGroups("u1");
+        fail();
+      } catch (GroupsNotFoundForUserException e) {
+      }
+    }
+
+    UsersGroups.addUserToGroup("u1", "g1");
+    assertEquals(Arrays.asList("g1"), UsersGroups.getGroups("u1"));
+
+    UsersGroups.removeUserFromGroup("u1", "g1");
+    try {
+      UsersGroups.getGroups("u1");
+      fail();
+    } catch (GroupsNotFoundForUserException e) {
+    }
+  }
+
   @Test
   public void setOwnerMultipleTimes0() throws Exception {
     setOwnerMultipleTimes(0, 0);
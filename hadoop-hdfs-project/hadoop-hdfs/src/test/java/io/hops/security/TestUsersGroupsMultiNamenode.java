@@ -52,6 +52,7 @@
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import org.apache.hadoop.crypto.CryptoProtocolVersion;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
@@ -278,6 +279,12 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
       return false;
     }
 
+    @Override
+    public Map<String, IOException> batchMkdirs(List<String> srcs,
+        FsPermission masked, boolean createParent) throws IOException {
+      return null;
+    }
+
     @Override
     public DirectoryListing getListing(String src, byte[] startAfter,
         boolean needLocation)
@@ -661,6 +668,28 @@ public void invCachesUserAddedToGroup(String userName, String groupName) throws
       usersGroupsMapping.invCacheUserAddedToGroup(userName, groupName);
     }
 
+    @Override
+    public void invCachesUserAdded(String userName) throws IOException {
+      usersGroupsMapping.invCacheUserAdded(userName);
+    }
+
+    @Override
+    public void invCachesGroupAdded(String groupName) throws IOException {
+      usersGroupsMapping.invCacheGroupAdded(groupName);
+    }
+
+    @Override
+    public void invalidateResolvingCache(long senderId, long senderEpoch, long sequence, long[] parentIds,
+        String[] names) throws IOException {
+
+    }
+
+    @Override
+    public MetadataLogEventBatch getMetadataLogEvents(long[] feedIds, long[] sequences, int maxEvents,
+        long waitTime, String pathPrefix) throws IOException {
+      return null;
+    }
+
     @Override
     public long getEpochMS() throws IOException {
         return System.currentTimeMillis();
@@ -686,6 +715,135 @@ public BatchedRemoteIterator.BatchedEntries<EncryptionZone> listEncryptionZones(
   }
 
 
+  /**
+   * Sends the invalidations of a namenode to the other namenodes, as
+   * UsersGroupsInvalidationManager does.
+   */
+  private static class PeersListener
+      implements UsersGroups.InvalidationListener {
+    private final List<ClientProtocol> peers;
+
+    PeersListener(List<ClientProtocol> peers) {
+      this.peers = peers;
+    }
+
+    @Override
+    public void userAdded(String user) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesUserAdded(user);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void groupAdded(String group) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesGroupAdded(group);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void userRemoved(String user) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesUserRemoved(user);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void groupRemoved(String group) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesGroupRemoved(group);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void userAddedToGroup(String user, String group) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesUserAddedToGroup(user, group);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void userRemovedFromGroup(String user, String group) {
+      try {
+        for (ClientProtocol peer : peers) {
+          peer.invCachesUserRemovedFromGroup(user, group);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * A user or a group looked up on a namenode before another namenode added
+   * it must be found by the first namenode once it is added, e.g. to own the
+   * files it creates.
+   */
+  @Test
+  public void testAddedAfterUnknown() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    HdfsStorageFactory.setConfiguration(conf);
+    HdfsStorageFactory.formatStorage();
+
+    ClientProtocolMock nn1 =
+        new ClientProtocolMock(1, newUsersGroupsMapping(conf));
+    ClientProtocolMock nn2 =
+        new ClientProtocolMock(2, newUsersGroupsMapping(conf));
+    List<ClientProtocol> namenodes = new ArrayList<>();
+    namenodes.add(nn1);
+    namenodes.add(nn2);
+    nn1.usersGroupsMapping.setInvalidationListener(new PeersListener(
+        Arrays.<ClientProtocol>asList(nn2)));
+    nn2.usersGroupsMapping.setInvalidationListener(new PeersListener(
+        Arrays.<ClientProtocol>asList(nn1)));
+
+    DistributedFileSystem dfs1 =
+        DFSClientAdapter.newDistributedFileSystem(conf, nn1, namenodes);
+
+    // a file created through nn2 by users that do not exist yet
+    String user = "user2";
+    String group = "group3";
+    try {
+      nn2.usersGroupsMapping.getUserId(user);
+      fail("user " + user + " should not exist");
+    } catch (UserNotFoundException e) {
+    }
+    try {
+      nn2.usersGroupsMapping.getGroupId(group);
+      fail("group " + group + " should not exist");
+    } catch (GroupNotFoundException e) {
+    }
+
+    dfs1.addUser(user);
+    dfs1.addGroup(group);
+
+    // the next file created through nn2 is owned by them
+    int userId = nn1.usersGroupsMapping.getUserId(user);
+    int groupId = nn1.usersGroupsMapping.getGroupId(group);
+    assertEquals(userId, nn2.usersGroupsMapping.getUserId(user));
+    assertEquals(groupId, nn2.usersGroupsMapping.getGroupId(group));
+  }
+
   @Test
   public void testMultiNamenode() throws Exception {
     Configuration conf = new HdfsConfiguration();
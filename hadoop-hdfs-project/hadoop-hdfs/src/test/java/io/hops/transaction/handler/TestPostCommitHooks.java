@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestPostCommitHooks {
+
+  private final List<String> ran = new ArrayList<>();
+
+  @After
+  public void tearDown() {
+    PostCommitHooks.end();
+  }
+
+  private Runnable action(final String name) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        ran.add(name);
+      }
+    };
+  }
+
+  @Test
+  public void testRunAfterCommit() {
+    // outside of a transaction, the action runs now
+    PostCommitHooks.runAfterCommit("a", action("a"));
+    assertEquals(Collections.singletonList("a"), ran);
+
+    // within a transaction, once it committed, once per key
+    ran.clear();
+    PostCommitHooks.begin();
+    PostCommitHooks.runAfterCommit("b", action("b1"));
+    PostCommitHooks.runAfterCommit("c", action("c"));
+    PostCommitHooks.runAfterCommit("b", action("b2"));
+    assertEquals(Collections.<String>emptyList(), ran);
+    PostCommitHooks.runAll();
+    PostCommitHooks.end();
+    assertEquals(Arrays.asList("b2", "c"), ran);
+
+    // a transaction that did not commit
+    ran.clear();
+    PostCommitHooks.begin();
+    PostCommitHooks.runAfterCommit("d", action("d"));
+    PostCommitHooks.end();
+    PostCommitHooks.runAll();
+    assertEquals(Collections.<String>emptyList(), ran);
+
+    // the transaction ended
+    PostCommitHooks.runAfterCommit("e", action("e"));
+    assertEquals(Collections.singletonList("e"), ran);
+  }
+}
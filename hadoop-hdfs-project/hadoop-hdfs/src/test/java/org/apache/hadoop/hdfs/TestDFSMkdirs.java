@@ -29,7 +29,11 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -127,6 +131,81 @@ public void testMkdir() throws IOException {
     }
   }
 
+  /**
+   * Tests that batchMkdirs creates the valid directories and reports the
+   * invalid ones without failing the whole batch.
+   */
+  @Test
+  public void testBatchMkdirs() throws IOException {
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    DistributedFileSystem dfs = (DistributedFileSystem) cluster.getFileSystem();
+    try {
+      Path file = new Path("/batch/file");
+      DFSTestUtil.writeFile(dfs, file, "hello world");
+
+      List<Path> paths = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        paths.add(new Path("/batch/dir" + i));
+      }
+      paths.add(new Path("/batch/other/nested/dir"));
+      Path illegal = new Path("/batch/file/subdir");
+      paths.add(illegal);
+
+      Map<Path, IOException> failed = dfs.batchMkdirs(paths,
+          FsPermission.getDefault());
+      assertEquals(1, failed.size());
+      assertTrue(failed.containsKey(illegal));
+      for (Path path : paths) {
+        if (!path.equals(illegal)) {
+          assertTrue(dfs.getFileStatus(path).isDirectory());
+        }
+      }
+      assertFalse(dfs.exists(illegal));
+
+      // creating existing directories again succeeds
+      assertTrue(dfs.batchMkdirs(paths.subList(0, 10),
+          FsPermission.getDefault()).isEmpty());
+    } finally {
+      dfs.close();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Tests that the failures of batchMkdirs are reported under the paths given
+   * by the caller, also when they are resolved to other paths.
+   */
+  @Test
+  public void testBatchMkdirsReservedPath() throws IOException {
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    DistributedFileSystem dfs = (DistributedFileSystem) cluster.getFileSystem();
+    try {
+      NamenodeProtocols nnrpc = cluster.getNameNodeRpc();
+      Path file = new Path("/batch/file");
+      DFSTestUtil.writeFile(dfs, file, "hello world");
+      dfs.mkdirs(new Path("/batch/dir"));
+      long fileId = nnrpc.getFileInfo(file.toString()).getFileId();
+      long dirId = nnrpc.getFileInfo("/batch/dir").getFileId();
+
+      String illegal = "/.reserved/.inodes/" + fileId + "/subdir";
+      String legal = "/.reserved/.inodes/" + dirId + "/subdir";
+      List<String> srcs = new ArrayList<>();
+      srcs.add(illegal);
+      srcs.add(legal);
+      Map<String, IOException> failed = nnrpc.batchMkdirs(srcs,
+          FsPermission.getDefault(), true);
+      assertEquals(1, failed.size());
+      assertTrue(failed.containsKey(illegal));
+      assertTrue(dfs.getFileStatus(new Path("/batch/dir/subdir"))
+          .isDirectory());
+    } finally {
+      dfs.close();
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Regression test for HDFS-3626. Creates a file using a non-canonical path
    * (i.e. with extra slashes between components) and makes sure that the NN
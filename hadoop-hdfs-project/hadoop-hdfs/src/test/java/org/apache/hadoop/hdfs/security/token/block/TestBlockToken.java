@@ -75,6 +75,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
@@ -489,7 +490,7 @@ public NameNode getNameNode() {
     }
 
     @Override
-    public void adjustSafeModeBlocks(Set<Long> safeBlocks) throws IOException {
+    public void adjustSafeModeBlocks(Collection<Long> safeBlocks) throws IOException {
       throw new UnsupportedOperationException("Not supported yet.");
     }
 
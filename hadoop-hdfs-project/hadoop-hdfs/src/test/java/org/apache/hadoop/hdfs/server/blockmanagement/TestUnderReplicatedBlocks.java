@@ -40,10 +40,12 @@
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.hadoop.hdfs.server.namenode.INode;
@@ -313,4 +315,65 @@ public Object performTask() throws IOException {
     }
 
   }
+
+  /**
+   * A block failing in a batch of replication work does not prevent the
+   * other blocks of the batch from being scheduled.
+   */
+  @Test(timeout = 60000)
+  public void testReplicationWorkBatchWithFailingBlock() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    // the replication work is computed by the test only
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 10000);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    BlockManagerFaultInjector oldInjector = BlockManagerFaultInjector.instance;
+    try {
+      final FileSystem fs = cluster.getFileSystem();
+      final BlockManager bm = cluster.getNamesystem().getBlockManager();
+      List<Block> blocks = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        Path path = new Path("/testFile" + i);
+        DFSTestUtil.createFile(fs, path, 1L, (short) 1, 1L);
+        fs.setReplication(path, (short) 2);
+        blocks.add(DFSTestUtil.getFirstBlock(fs, path).getLocalBlock());
+      }
+
+      final long failingBlockId = blocks.get(1).getBlockId();
+      BlockManagerFaultInjector.instance = new BlockManagerFaultInjector() {
+        @Override
+        public void computeReplicationWorkForBlock(Block block)
+            throws IOException {
+          if (block.getBlockId() == failingBlockId) {
+            throw new IOException("injected failure");
+          }
+        }
+      };
+
+      // the replication commands stay queued on the source datanodes
+      for (DataNode dn : cluster.getDataNodes()) {
+        DataNodeTestUtils.setHeartbeatsDisabledForTests(dn, true);
+      }
+
+      List<List<Block>> blocksToReplicate = new ArrayList<>();
+      blocksToReplicate.add(blocks);
+      assertEquals(2, bm.computeReplicationWorkForBlocks(blocksToReplicate));
+
+      // the block scheduled by the failed batch is only scheduled again by
+      // the retry of the blocks one by one
+      int toBeReplicated = 0;
+      int scheduled = 0;
+      for (DataNode dn : cluster.getDataNodes()) {
+        DatanodeDescriptor node =
+            bm.getDatanodeManager().getDatanode(dn.getDatanodeId());
+        toBeReplicated += node.getNumberOfBlocksToBeReplicated();
+        scheduled += node.getBlocksScheduled();
+      }
+      assertEquals(2, toBeReplicated);
+      assertEquals(2, scheduled);
+    } finally {
+      BlockManagerFaultInjector.instance = oldInjector;
+      cluster.shutdown();
+    }
+  }
 }
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestSmallFileDataCache {
+
+  @Test
+  public void testVersions() {
+    SmallFileDataCache cache = new SmallFileDataCache(1024, 0);
+    byte[] data = {1, 2, 3};
+    cache.put(1, 10, data);
+    assertArrayEquals(data, cache.get(1, 3, 10));
+    // the file was changed since the data was cached
+    assertNull(cache.get(1, 3, 11));
+    assertNull(cache.get(1, 3, 10));
+
+    cache.put(1, 10, data);
+    cache.invalidate(1);
+    assertNull(cache.get(1, 3, 10));
+
+    assertEquals(1, cache.getHits());
+    assertEquals(3, cache.getMisses());
+    assertEquals(3, cache.getBytesServed());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testBoundedByBytes() {
+    SmallFileDataCache cache = new SmallFileDataCache(100, 0);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, 0, new byte[30]);
+    }
+    assertEquals(90, cache.getSize());
+    assertEquals(7, cache.getEvictions());
+    assertNull(cache.get(0, 30, 0));
+    assertEquals(30, cache.get(9, 30, 0).length);
+
+    // larger than the whole cache
+    cache.put(10, 0, new byte[101]);
+    assertNull(cache.get(10, 101, 0));
+  }
+}
@@ -48,6 +48,7 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.metrics2.MetricsCollector;
 import org.apache.hadoop.metrics2.util.MBeans;
+import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
 
 import javax.management.NotCompliantMBeanException;
@@ -509,6 +510,7 @@ public FsDatasetSpi getDataset() {
   private final SimulatedVolume volume;
   private final String datanodeUuid;
   private final DataNode datanode;
+  private final AutoCloseableLock datasetLock = new AutoCloseableLock();
   
 
   public SimulatedFSDataset(DataStorage storage, Configuration conf) {
@@ -685,6 +687,11 @@ public long getNumBlocksFailedToUncache() {
     return 0l;
   }
 
+  @Override
+  public long getReplicaMapBytesPerReplica() {
+    return 0l;
+  }
+
   /**
    * Get metrics from the metrics source
    *
@@ -1335,4 +1342,14 @@ public boolean getPinning(ExtendedBlock b) throws IOException {
   public boolean isDeletingBlock(String bpid, long blockId) {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public AutoCloseableLock acquireDatasetLock() {
+    return datasetLock.acquire();
+  }
+
+  @Override
+  public AutoCloseableLock acquireDatasetReadLock() {
+    return datasetLock.acquire();
+  }
 }
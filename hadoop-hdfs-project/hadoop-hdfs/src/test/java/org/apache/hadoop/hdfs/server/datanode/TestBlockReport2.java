@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.*;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.*;
@@ -34,6 +35,7 @@
 import org.apache.hadoop.hdfs.server.protocol.BlockReport;
 import org.apache.hadoop.hdfs.server.protocol.Bucket;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.Time;
 import org.apache.log4j.Level;
@@ -1529,4 +1531,45 @@ public void run() {
       }
     }
   }
+
+  @Test
+  public void testDigestBlockReports() {
+    final int numBuckets = 10;
+    final int bucketsPerDigest = 4;
+    Bucket[] buckets = new Bucket[numBuckets];
+    for (int i = 0; i < numBuckets; i++) {
+      buckets[i] = new Bucket(BlockListAsLongs.EMPTY);
+      buckets[i].setHash(HashBuckets.getRandomHash());
+    }
+    DatanodeStorage storage = new DatanodeStorage("storage-1");
+    StorageBlockReport[] reports = {new StorageBlockReport(storage,
+        new BlockReport(buckets, 0))};
+
+    StorageBlockReport[] digests = BPOfferService.digestBlockReports(reports,
+        bucketsPerDigest);
+    BlockReport digestReport = digests[0].getReport();
+    assertEquals(bucketsPerDigest, digestReport.getBucketsPerDigest());
+    assertEquals(3, digestReport.getBuckets().length);
+    for (int d = 0; d < 3; d++) {
+      byte[] expected = HashBuckets.initalizeHash();
+      for (int b = d * bucketsPerDigest; b < Math.min(numBuckets, (d + 1) * bucketsPerDigest); b++) {
+        HashBuckets.XORHashes(expected, buckets[b].getHash());
+      }
+      assertArrayEquals(expected, digestReport.getBuckets()[d].getHash());
+    }
+
+    Map<String, List<Integer>> mismatchingDigests = new HashMap<>();
+    mismatchingDigests.put(storage.getStorageID(), Arrays.asList(1));
+    StorageBlockReport[] slim = BPOfferService.slimBlockReports(reports,
+        mismatchingDigests, bucketsPerDigest);
+    Bucket[] slimBuckets = slim[0].getReport().getBuckets();
+    assertEquals(numBuckets, slimBuckets.length);
+    for (int b = 0; b < numBuckets; b++) {
+      boolean inMismatchingDigest = b / bucketsPerDigest == 1;
+      assertEquals(!inMismatchingDigest, slimBuckets[b].isSkip());
+      if (inMismatchingDigest) {
+        assertArrayEquals(buckets[b].getHash(), slimBuckets[b].getHash());
+      }
+    }
+  }
 }
@@ -92,6 +92,7 @@ public void init(SubsetConfiguration conf) {
       nameMap.add("NumBlocksCached");
       nameMap.add("NumBlocksFailedToCache");
       nameMap.add("NumBlocksFailedToUnCache");
+      nameMap.add("ReplicaMapBytesPerReplica");
       nameMap.add("Context");
       nameMap.add("Hostname");
     }
@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.ClientContext;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.PeerCache;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDataXceiverDispatcher {
+  private static final int KEEPALIVE_TIMEOUT = 500;
+  private static final long WAIT_TIMEOUT = 10000;
+
+  private DataNodeMetrics metrics;
+  private DataNode datanode;
+  private DataXceiverDispatcher dispatcher;
+  private Pipe pipe;
+
+  @Before
+  public void setUp() throws Exception {
+    metrics = DataNodeMetrics.create(new Configuration(),
+        "TestDataXceiverDispatcher");
+    datanode = mock(DataNode.class);
+    when(datanode.getMetrics()).thenReturn(metrics);
+    pipe = Pipe.open();
+    pipe.source().configureBlocking(false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+    pipe.source().close();
+    pipe.sink().close();
+    metrics.shutdown();
+  }
+
+  private void startDispatcher(int numThreads, int queueSize)
+      throws Exception {
+    dispatcher = new DataXceiverDispatcher(datanode, numThreads, queueSize,
+        KEEPALIVE_TIMEOUT);
+    new Thread(dispatcher, "DataXceiverDispatcher").start();
+  }
+
+  /**
+   * @return a connection watched through the source of the pipe, whose
+   * operations release the permits of the semaphore
+   */
+  private DataXceiver createXceiver(final Semaphore ran) {
+    DataXceiver xceiver = mock(DataXceiver.class);
+    when(xceiver.getSelectableChannel()).thenReturn(pipe.source());
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ran.release();
+        return null;
+      }
+    }).when(xceiver).run();
+    return xceiver;
+  }
+
+  /**
+   * @return a connection whose operations wait for the latch
+   */
+  private static DataXceiver createBlockedXceiver(final CountDownLatch started,
+      final CountDownLatch unblock) {
+    DataXceiver xceiver = mock(DataXceiver.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        started.countDown();
+        unblock.await();
+        return null;
+      }
+    }).when(xceiver).run();
+    return xceiver;
+  }
+
+  /**
+   * @return a connection that releases the permits of the semaphore when it
+   * is closed
+   */
+  private DataXceiver createClosedXceiver(final Semaphore closed) {
+    DataXceiver xceiver = mock(DataXceiver.class);
+    when(xceiver.getSelectableChannel()).thenReturn(pipe.source());
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        closed.release();
+        return null;
+      }
+    }).when(xceiver).close();
+    return xceiver;
+  }
+
+  private void sendOp() throws Exception {
+    pipe.sink().write(ByteBuffer.wrap(new byte[]{1}));
+  }
+
+  @Test(timeout = 30000)
+  public void testResumeParked() throws Exception {
+    startDispatcher(1, 1);
+    Semaphore ran = new Semaphore(0);
+    DataXceiver xceiver = createXceiver(ran);
+
+    // a parked connection is resumed once its next operation arrives, as
+    // many times as it is parked
+    dispatcher.park(xceiver);
+    sendOp();
+    assertTrue(ran.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+    dispatcher.park(xceiver);
+    assertTrue(ran.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+    verify(xceiver, never()).close();
+    assertTrue(getLongCounter("DataXceiverQueueTimeNumOps",
+        getMetrics(metrics.name())) >= 2);
+  }
+
+  @Test(timeout = 30000)
+  public void testCloseIdle() throws Exception {
+    startDispatcher(1, 1);
+    Semaphore closed = new Semaphore(0);
+    DataXceiver xceiver = createClosedXceiver(closed);
+
+    long start = System.currentTimeMillis();
+    dispatcher.park(xceiver);
+    assertTrue(closed.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+    assertTrue(System.currentTimeMillis() - start >= KEEPALIVE_TIMEOUT);
+    verify(xceiver, never()).run();
+    assertCounter("DataXceiverIdleClosed", 1L, getMetrics(metrics.name()));
+  }
+
+  @Test(timeout = 30000)
+  public void testRejectWhenQueueIsFull() throws Exception {
+    startDispatcher(1, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    try {
+      // the worker is busy and the queue is full
+      dispatcher.execute(createBlockedXceiver(started, unblock));
+      started.await();
+      dispatcher.execute(createBlockedXceiver(new CountDownLatch(1),
+          unblock));
+
+      Semaphore closed = new Semaphore(0);
+      DataXceiver xceiver = createClosedXceiver(closed);
+      dispatcher.park(xceiver);
+      sendOp();
+      assertTrue(closed.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+      verify(xceiver, never()).run();
+      assertCounter("DataXceiverRejected", 1L, getMetrics(metrics.name()));
+    } finally {
+      unblock.countDown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testRestartNotifyPeersClosesParked() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_KEY,
+        true);
+    when(datanode.getDnConf()).thenReturn(new DNConf(conf));
+    datanode.shouldRun = true;
+    datanode.shutdownForUpgrade = true;
+    DataXceiverServer server =
+        new DataXceiverServer(mock(TcpPeerServer.class), conf, datanode);
+    dispatcher = server.getDispatcher();
+    assertNotNull(dispatcher);
+
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    Thread active = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(WAIT_TIMEOUT * 3);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+    };
+    active.start();
+    Peer activePeer = mock(Peer.class);
+    Peer parkedPeer = mock(Peer.class);
+    server.addPeer(activePeer, active, mock(DataXceiver.class));
+    server.addPeer(parkedPeer, Thread.currentThread(),
+        mock(DataXceiver.class));
+    server.parkPeer(parkedPeer, mock(DataXceiver.class));
+
+    // the operations in progress are interrupted, the parked connections
+    // have no thread to interrupt and are closed
+    server.restartNotifyPeers();
+    assertTrue(interrupted.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+    verify(parkedPeer).close();
+    verify(activePeer, never()).close();
+    assertEquals(1, server.getNumPeers());
+  }
+
+  @Test(timeout = 60000)
+  public void testKeepaliveReuse() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFER_DISPATCHER_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT * 20);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 60000);
+    conf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT, "testKeepaliveReuse");
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs =
+          (DistributedFileSystem) FileSystem.get(cluster.getURI(), conf);
+      PeerCache peerCache = ClientContext.getFromConf(conf).getPeerCache();
+      final DataXceiverServer server =
+          cluster.getDataNodes().get(0).getXferServer();
+      Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 1L, (short) 1, 0L);
+
+      // the connection of the read is parked once the read is done
+      DFSTestUtil.readFile(fs, file);
+      assertEquals(1, peerCache.size());
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return server.getNumPeers() == 1 &&
+              server.getNumActiveWorkers() == 0;
+        }
+      }, 10, (int) WAIT_TIMEOUT);
+      long ops = getLongCounter("DataXceiverQueueTimeNumOps",
+          getMetrics(cluster.getDataNodes().get(0).getMetrics().name()));
+
+      // and resumed by the next read over the same connection
+      DFSTestUtil.readFile(fs, file);
+      assertEquals(1, peerCache.size());
+      assertEquals(1, server.getNumPeers());
+      assertCounter("DataXceiverQueueTimeNumOps", ops + 1,
+          getMetrics(cluster.getDataNodes().get(0).getMetrics().name()));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
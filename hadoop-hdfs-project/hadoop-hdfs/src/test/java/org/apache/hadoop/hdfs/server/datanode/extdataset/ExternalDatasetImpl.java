@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.util.AutoCloseableLock;
 
 public class ExternalDatasetImpl implements FsDatasetSpi<ExternalVolumeImpl> {
 
@@ -406,6 +407,11 @@ public long getNumBlocksFailedToUncache() {
     return 0;
   }
 
+  @Override
+  public long getReplicaMapBytesPerReplica() {
+    return 0;
+  }
+
   /**
    * Get metrics from the metrics source
    *
@@ -434,4 +440,14 @@ public boolean getPinning(ExtendedBlock block) throws IOException {
   public boolean isDeletingBlock(String bpid, long blockId) {
     return false;
   }
+
+  @Override
+  public AutoCloseableLock acquireDatasetLock() {
+    return null;
+  }
+
+  @Override
+  public AutoCloseableLock acquireDatasetReadLock() {
+    return null;
+  }
 }
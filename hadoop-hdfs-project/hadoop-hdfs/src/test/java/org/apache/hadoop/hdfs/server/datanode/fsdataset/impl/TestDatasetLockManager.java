@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.AutoCloseableLock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestDatasetLockManager {
+  private static final String BPID = "bpid-0";
+
+  private ExecutorService other;
+
+  @Before
+  public void setUp() {
+    other = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    other.shutdownNow();
+  }
+
+  /**
+   * @return whether another thread could take the lock
+   */
+  private boolean tryLockFromOtherThread(final AutoCloseableLock lock)
+      throws Exception {
+    return other.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        if (lock.tryLock()) {
+          lock.release();
+          return true;
+        }
+        return false;
+      }
+    }).get();
+  }
+
+  /**
+   * @return a block of another stripe than the first block
+   */
+  private static long otherStripe(long blockId) {
+    long other = blockId + 1;
+    while (DatasetLockManager.stripe(BPID, other) ==
+        DatasetLockManager.stripe(BPID, blockId)) {
+      other++;
+    }
+    return other;
+  }
+
+  @Test(timeout = 30000)
+  public void testReplicaLockExclusion() throws Exception {
+    DatasetLockManager manager = new DatasetLockManager(null);
+    AutoCloseableLock otherReplicaLock =
+        manager.acquireReplicaLock(BPID, otherStripe(1));
+    otherReplicaLock.release();
+    AutoCloseableLock readLock = manager.acquireDatasetReadLock();
+    readLock.release();
+    AutoCloseableLock writeLock = manager.acquireDatasetLock();
+    writeLock.release();
+
+    try (AutoCloseableLock lock = manager.acquireReplicaLock(BPID, 1)) {
+      // writers of the same replica exclude each other
+      assertFalse(tryLockFromOtherThread(lock));
+      // but not the writers of the other replicas, or the readers of the
+      // dataset
+      assertTrue(tryLockFromOtherThread(otherReplicaLock));
+      assertTrue(tryLockFromOtherThread(readLock));
+      // the exclusive dataset lock waits for the replica operations
+      assertFalse(tryLockFromOtherThread(writeLock));
+    }
+    assertTrue(tryLockFromOtherThread(writeLock));
+  }
+
+  @Test(timeout = 30000)
+  public void testDatasetLockExclusion() throws Exception {
+    DatasetLockManager manager = new DatasetLockManager(null);
+    AutoCloseableLock replicaLock = manager.acquireReplicaLock(BPID, 1);
+    replicaLock.release();
+    AutoCloseableLock readLock = manager.acquireDatasetReadLock();
+    readLock.release();
+
+    try (AutoCloseableLock lock = manager.acquireDatasetLock()) {
+      assertFalse(tryLockFromOtherThread(replicaLock));
+      assertFalse(tryLockFromOtherThread(readLock));
+      assertFalse(tryLockFromOtherThread(lock));
+    }
+    assertTrue(tryLockFromOtherThread(replicaLock));
+    assertTrue(tryLockFromOtherThread(readLock));
+  }
+
+  @Test(timeout = 30000)
+  public void testReplicaLockCondition() throws Exception {
+    DatasetLockManager manager = new DatasetLockManager(null);
+    final AutoCloseableLock lock = manager.acquireReplicaLock(BPID, 1);
+    final Condition signaled = lock.newCondition();
+    lock.release();
+
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final CountDownLatch locked = new CountDownLatch(1);
+    Future<?> waiter = other.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try (AutoCloseableLock l = lock.acquire()) {
+          locked.countDown();
+          while (!done.get()) {
+            signaled.await();
+          }
+        }
+        return null;
+      }
+    });
+
+    // waiting releases the lock of the replica
+    locked.await();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return lock.tryLock();
+      }
+    }, 10, 10000);
+    done.set(true);
+    signaled.signal();
+    lock.release();
+    waiter.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test(timeout = 30000)
+  public void testMetrics() throws Exception {
+    DataNodeMetrics metrics =
+        DataNodeMetrics.create(new Configuration(), "TestDatasetLockManager");
+    try {
+      DataNode datanode = mock(DataNode.class);
+      when(datanode.getMetrics()).thenReturn(metrics);
+      DatasetLockManager manager = new DatasetLockManager(datanode);
+
+      // only the outermost acquisitions are measured
+      try (AutoCloseableLock lock = manager.acquireReplicaLock(BPID, 1)) {
+        try (AutoCloseableLock inner = manager.acquireReplicaLock(BPID, 1)) {
+        }
+      }
+      try (AutoCloseableLock lock = manager.acquireDatasetReadLock()) {
+      }
+      try (AutoCloseableLock lock = manager.acquireDatasetLock()) {
+        Thread.sleep(10);
+      }
+      // a failed attempt is not an acquisition
+      final AutoCloseableLock lock = manager.acquireDatasetLock();
+      assertFalse(tryLockFromOtherThread(lock));
+      lock.release();
+
+      MetricsRecordBuilder rb = getMetrics(metrics.name());
+      assertCounter("ReplicaLockAcquisitions", 1L, rb);
+      assertCounter("DatasetReadLockAcquisitions", 1L, rb);
+      assertCounter("DatasetLockAcquisitions", 2L, rb);
+      assertTrue(getLongCounter("DatasetLockHeldNanos", rb) >=
+          TimeUnit.MILLISECONDS.toNanos(10));
+    } finally {
+      metrics.shutdown();
+    }
+  }
+}
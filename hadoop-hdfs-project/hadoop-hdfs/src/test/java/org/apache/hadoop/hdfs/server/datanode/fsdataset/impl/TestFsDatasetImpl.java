@@ -27,7 +27,9 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.blockmanagement.HashBuckets;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
@@ -42,6 +44,8 @@
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.server.protocol.BlockReport;
+import org.apache.hadoop.hdfs.server.protocol.Bucket;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.MultipleIOException;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -61,10 +65,14 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -229,6 +237,136 @@ public void run() {}
                  totalNumReplicas);
   }
 
+  /**
+   * Create a replica and finalize it, like a BlockReceiver does.
+   */
+  private void createFinalizedReplica(ExtendedBlock eb) throws IOException {
+    try (ReplicaHandler handler = dataset.createRbw(StorageType.DEFAULT, eb)) {
+      ((ReplicaInfo) handler.getReplica()).getMetaFile().createNewFile();
+    }
+    // the volume reference is released before finalizing, removing a volume
+    // waits for the references to its volume with the dataset lock held
+    dataset.finalizeBlock(eb);
+  }
+
+  /**
+   * Start threads that each create and finalize replicas in a block pool.
+   */
+  private List<Thread> startWriters(final String bpid, int numWriters,
+      final int numBlocks, final CountDownLatch started,
+      final AtomicReference<Throwable> error) {
+    List<Thread> writers = new ArrayList<>();
+    for (int w = 0; w < numWriters; w++) {
+      final long firstBlockId = 1 + w * numBlocks;
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          started.countDown();
+          for (long id = firstBlockId; id < firstBlockId + numBlocks; id++) {
+            try {
+              createFinalizedReplica(new ExtendedBlock(bpid, id));
+            } catch (IOException e) {
+              // the volume of the replica was removed
+            } catch (Throwable t) {
+              error.compareAndSet(null, t);
+            }
+          }
+        }
+      };
+      writer.start();
+      writers.add(writer);
+    }
+    return writers;
+  }
+
+  @Test(timeout = 60000)
+  public void testRemoveVolumesAndAddBlockPoolWhileWriting()
+      throws Exception {
+    final String bpid = BLOCK_POOL_IDS[0];
+    final int numWriters = 4;
+    CountDownLatch started = new CountDownLatch(numWriters);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> writers =
+        startWriters(bpid, numWriters, 50, started, error);
+    started.await();
+
+    final String[] dataDirs =
+        conf.get(DFSConfigKeys.DFS_DATANODE_DATA_DIR_KEY).split(",");
+    Set<File> volumesToRemove = new HashSet<>();
+    volumesToRemove.add(StorageLocation.parse(dataDirs[0]).getFile());
+    dataset.removeVolumes(volumesToRemove, true);
+    String newBpid = "bpid-2";
+    dataset.addBlockPool(newBpid, conf);
+
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertNull(error.get());
+
+    List<FsVolumeImpl> volumes = dataset.getVolumes();
+    assertEquals(dataDirs.length - 1, volumes.size());
+    for (ReplicaInfo replica : dataset.volumeMap.snapshot(bpid)) {
+      assertTrue("Replica " + replica + " is on a removed volume",
+          volumes.contains(replica.getVolume()));
+    }
+    assertTrue(Arrays.asList(dataset.volumeMap.getBlockPoolList())
+        .contains(newBpid));
+    createFinalizedReplica(new ExtendedBlock(newBpid, 1));
+    assertEquals(1, dataset.volumeMap.size(newBpid));
+  }
+
+  /**
+   * @throws AssertionError
+   *     if the hash of a bucket is not the hash of its replicas
+   */
+  private static void assertConsistent(BlockReport report) {
+    for (Bucket bucket : report.getBuckets()) {
+      byte[] hash = HashBuckets.initalizeHash();
+      for (BlockReportReplica replica : bucket.getBlocks()) {
+        HashBuckets.XORHashes(hash, HashBuckets.hash(replica.getBlockId(),
+            replica.getGenerationStamp(), replica.getNumBytes(),
+            replica.getState().getValue()));
+      }
+      assertArrayEquals(hash, bucket.getHash());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testBlockReportsWhileFinalizing() throws Exception {
+    final String bpid = BLOCK_POOL_IDS[0];
+    final int numWriters = 4;
+    final int numBlocks = 100;
+    CountDownLatch started = new CountDownLatch(numWriters);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> writers =
+        startWriters(bpid, numWriters, numBlocks, started, error);
+    started.await();
+
+    // each report is a consistent view, whatever finalizes meanwhile
+    boolean writing = true;
+    while (writing) {
+      writing = false;
+      for (Thread writer : writers) {
+        writing |= writer.isAlive();
+      }
+      for (BlockReport report : dataset.getBlockReports(bpid).values()) {
+        assertConsistent(report);
+      }
+    }
+    assertNull(error.get());
+
+    int numReported = 0;
+    for (BlockReport report : dataset.getBlockReports(bpid).values()) {
+      assertConsistent(report);
+      for (BlockReportReplica replica : report) {
+        assertEquals(HdfsServerConstants.ReplicaState.FINALIZED,
+            replica.getState());
+        numReported++;
+      }
+    }
+    assertEquals(numWriters * numBlocks, numReported);
+  }
+
   @Test(timeout = 5000)
   public void testRemoveNewlyAddedVolume() throws IOException {
     final int numExistingVolumes = dataset.getVolumes().size();
@@ -19,11 +19,18 @@
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.protocol.BlockReport;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -110,4 +117,76 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  /**
+   * @throws AssertionError
+   *     if the bucket hashes kept by the map are not the hashes of its
+   *     replicas
+   */
+  private void assertFinalizedHashes(ReplicaMap hashedMap, int numBuckets) {
+    BlockReport.Builder builder = BlockReport.builder(numBuckets);
+    synchronized (TestReplicaMap.class) {
+      for (ReplicaInfo replica : hashedMap.replicas(bpid)) {
+        builder.add(replica);
+      }
+      byte[][] hashes = hashedMap.finalizedHashes(bpid,
+          Collections.singletonList((String) null)).get(null);
+      BlockReport report = builder.build();
+      for (int i = 0; i < numBuckets; i++) {
+        assertArrayEquals(report.getBuckets()[i].getHash(), hashes[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testFinalizedHashes() {
+    final int numBuckets = 4;
+    ReplicaMap hashedMap = new ReplicaMap(TestReplicaMap.class, numBuckets);
+    FinalizedReplica changed = new FinalizedReplica(block, null, null);
+    FinalizedReplica removed =
+        new FinalizedReplica(new Block(1235, 10, 1000), null, null);
+    FinalizedReplica replaced =
+        new FinalizedReplica(new Block(1236, 20, 1000), null, null);
+    hashedMap.add(bpid, changed);
+    hashedMap.add(bpid, removed);
+    hashedMap.add(bpid, replaced);
+    hashedMap.add(bpid, new FinalizedReplica(new Block(1240, 30, 1000), null,
+        null));
+
+    // changes in place are rehashed, removed and replaced replicas are
+    // taken out with the state they were hashed with
+    changed.setGenerationStampNoPersistance(2000);
+    removed.setNumBytesNoPersistance(11);
+    assertNotNull(hashedMap.remove(bpid, removed.getBlockId()));
+    replaced.setGenerationStampNoPersistance(1001);
+    hashedMap.add(bpid, new FinalizedReplica(replaced));
+    assertFinalizedHashes(hashedMap, numBuckets);
+
+    // the replicas changed since the last report are rehashed, including
+    // the ones changed several times or changed back
+    changed.setNumBytesNoPersistance(5);
+    changed.setGenerationStampNoPersistance(2001);
+    FinalizedReplica other = (FinalizedReplica) hashedMap.get(bpid, 1240);
+    other.setNumBytesNoPersistance(31);
+    other.setNumBytesNoPersistance(30);
+    assertFinalizedHashes(hashedMap, numBuckets);
+    assertFinalizedHashes(hashedMap, numBuckets);
+  }
+
+  @Test
+  public void testAddAll() {
+    ReplicaMap other = new ReplicaMap(TestReplicaMap.class);
+    for (long id = 1; id <= 100; id++) {
+      other.add(bpid, new FinalizedReplica(new Block(id, id, 1000), null,
+          null));
+    }
+    // the replicas are moved into the existing block pool
+    map.addAll(other);
+    assertEquals(101, map.size(bpid));
+    for (long id = 1; id <= 100; id++) {
+      assertNotNull(map.get(bpid, id));
+    }
+    assertNotNull(map.get(bpid, block));
+    assertTrue(map.estimateMemoryPerReplica() > 0);
+  }
 }
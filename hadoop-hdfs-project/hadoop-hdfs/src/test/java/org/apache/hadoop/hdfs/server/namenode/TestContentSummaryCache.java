@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.base.Supplier;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestContentSummaryCache {
+
+  private static final long STALENESS = 10000;
+
+  private static Configuration createConf() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_STALENESS_KEY,
+        STALENESS);
+    return conf;
+  }
+
+  private static FSPermissionChecker checker(String user) {
+    return new FSPermissionChecker("hdfs", "supergroup",
+        UserGroupInformation.createUserForTesting(user,
+            new String[]{"users"}));
+  }
+
+  @Test
+  public void testStalenessAndUsers() {
+    FSNamesystem fsn = mock(FSNamesystem.class);
+    when(fsn.isPermissionEnabled()).thenReturn(true);
+    ContentSummaryCache cache = new ContentSummaryCache(fsn, createConf());
+    FakeTimer timer = new FakeTimer();
+    cache.setTimer(timer);
+
+    FSPermissionChecker alice = checker("alice");
+    FSPermissionChecker bob = checker("bob");
+    FSPermissionChecker hdfs = checker("hdfs");
+    ContentCounts counts = new ContentCounts.Builder().file(3).build();
+    cache.put(new INodeIdentifier(10L), (byte) 0, counts, alice);
+
+    assertSame(counts, cache.get(10, alice));
+    // bob did not pass the access checks of a walk of the directory
+    assertNull(cache.get(10, bob));
+    assertSame(counts, cache.get(10, hdfs));
+    assertNull(cache.get(11, alice));
+
+    // the check of a user expires with the staleness, even if the counts
+    // were refreshed since
+    timer.advance(STALENESS / 2);
+    cache.put(new INodeIdentifier(10L), (byte) 0, counts, bob);
+    timer.advance(STALENESS / 2 + 1);
+    assertNull(cache.get(10, alice));
+    assertSame(counts, cache.get(10, bob));
+
+    // the counts expire with the staleness
+    timer.advance(STALENESS);
+    assertNull(cache.get(10, bob));
+    assertNull(cache.get(10, hdfs));
+  }
+
+  @Test(timeout = 120000)
+  public void testBackgroundRefresh() throws Exception {
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(createConf()).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem dfs = cluster.getFileSystem();
+      FakeTimer timer = new FakeTimer();
+      cluster.getNamesystem().getContentSummaryCache().setTimer(timer);
+
+      final Path dir = new Path("/dir");
+      dfs.mkdirs(dir);
+      DFSTestUtil.createFile(dfs, new Path(dir, "file0"), 1L, (short) 1, 0L);
+      assertEquals(1, dfs.getContentSummary(dir).getFileCount());
+
+      // served from the cache, the counts are fresh
+      DFSTestUtil.createFile(dfs, new Path(dir, "file1"), 1L, (short) 1, 0L);
+      assertEquals(1, dfs.getContentSummary(dir).getFileCount());
+
+      // past half of the staleness, the stale counts are served and
+      // recomputed in the background
+      timer.advance(STALENESS / 2 + 1);
+      assertEquals(1, dfs.getContentSummary(dir).getFileCount());
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            return dfs.getContentSummary(dir).getFileCount() == 2;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 100, 60000);
+
+      // past the staleness, the directory is walked again
+      DFSTestUtil.createFile(dfs, new Path(dir, "file2"), 1L, (short) 1, 0L);
+      timer.advance(STALENESS + 1);
+      assertEquals(3, dfs.getContentSummary(dir).getFileCount());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
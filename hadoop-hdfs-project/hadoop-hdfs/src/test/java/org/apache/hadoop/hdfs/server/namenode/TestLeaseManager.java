@@ -29,15 +29,28 @@
 import io.hops.transaction.lock.TransactionLocks;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.apache.hadoop.util.Time.now;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.TestLease;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -185,4 +198,185 @@ public void testRemoveLease() throws Exception {
 
     assertEquals(lm.getNumSortedLeases() , 0);
   }
+
+  private LeaseManager newLeaseManager(Configuration conf) throws IOException {
+    HdfsStorageFactory.setConfiguration(conf);
+    NameNode.format(conf);
+    FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.when(fsn.isRunning()).thenReturn(true);
+    Mockito.when(fsn.getLeaseCreationLockRows()).thenReturn(
+        conf.getInt(DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_KEY,
+            DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_DEFAULT));
+    LeaseManager lm = new LeaseManager(fsn);
+    lm.setConfiguration(conf);
+    return lm;
+  }
+
+  private static Lease getLease(final LeaseManager lm, final String holder,
+      final int leaseCreationLockRows) throws IOException {
+    return (Lease) new HopsTransactionalRequestHandler(HDFSOperationType.TEST) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLockAllPaths(TransactionLockTypes.LockType.READ, holder, leaseCreationLockRows));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        return lm.getLease(holder);
+      }
+    }.handle();
+  }
+
+  private static void setLastUpdate(final LeaseManager lm, final String holder,
+      final long lastUpdate, final int leaseCreationLockRows) throws IOException {
+    new HopsTransactionalRequestHandler(HDFSOperationType.TEST) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLockAllPaths(TransactionLockTypes.LockType.WRITE, holder, leaseCreationLockRows));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        Lease lease = lm.getLease(holder);
+        lease.setLastUpdate(lastUpdate);
+        lease.savePersistent();
+        return null;
+      }
+    }.handle();
+  }
+
+  @Test
+  public void testRenewalFlushIntervalBelowSoftLimit() throws Exception {
+    LeaseManager lm = new LeaseManager(Mockito.mock(FSNamesystem.class));
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        HdfsConstants.LEASE_SOFTLIMIT_PERIOD);
+    try {
+      lm.setConfiguration(conf);
+      fail("the flush interval is not below the soft limit");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        1000);
+    lm.setConfiguration(conf);
+    try {
+      lm.setLeasePeriod(1000, 2000);
+      fail("the flush interval is not below the soft limit");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    lm.setLeasePeriod(2000, 4000);
+  }
+
+  /**
+   * The expiry checks of the namenode see a queued renewal before it is
+   * written, and writing it never moves the renewal time back.
+   */
+  @Test
+  public void testQueuedRenewals() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        1000);
+    int leaseCreationLockRows = conf.getInt(DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_KEY,
+            DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_DEFAULT);
+    LeaseManager lm = newLeaseManager(conf);
+    lm.setLeasePeriod(2000, 4000);
+    assertTrue(lm.isRenewalBatchingEnabled());
+
+    addLease(lm, "holder1", "/src1", leaseCreationLockRows);
+    addLease(lm, "holder2", "/src2", leaseCreationLockRows);
+    long old = now() - 3000;
+    setLastUpdate(lm, "holder1", old, leaseCreationLockRows);
+    Lease lease = getLease(lm, "holder1", leaseCreationLockRows);
+    assertTrue(lm.expiredSoftLimit(lease));
+
+    long renewed = now();
+    lm.queueRenewal("holder1");
+    // the renewal is not written yet
+    lease = getLease(lm, "holder1", leaseCreationLockRows);
+    assertEquals(old, lease.getLastUpdate());
+    assertFalse(lm.expiredSoftLimit(lease));
+
+    // a renewal written by another namenode after the queued one
+    long later = now() + 60000;
+    setLastUpdate(lm, "holder2", later, leaseCreationLockRows);
+    lm.queueRenewal("holder2");
+
+    lm.flushRenewals();
+    lease = getLease(lm, "holder1", leaseCreationLockRows);
+    assertTrue(lease.getLastUpdate() >= renewed);
+    assertFalse(lm.expiredSoftLimit(lease));
+    assertEquals(later,
+        getLease(lm, "holder2", leaseCreationLockRows).getLastUpdate());
+  }
+
+  /**
+   * Transactions locking the same lease holders, listed in different
+   * orders, do not deadlock.
+   */
+  @Test(timeout = 120000)
+  public void testMultiHolderLeaseLock() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    final int leaseCreationLockRows = conf.getInt(DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_KEY,
+            DFSConfigKeys.DFS_LEASE_CREATION_LOCKS_COUNT_DEFAULT);
+    final LeaseManager lm = newLeaseManager(conf);
+    List<String> holders = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      holders.add("holder" + i);
+      addLease(lm, "holder" + i, "/src" + i, leaseCreationLockRows);
+    }
+    List<String> reversed = new ArrayList<>(holders);
+    Collections.reverse(reversed);
+    List<String> shuffled = new ArrayList<>(holders);
+    Collections.shuffle(shuffled);
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (final List<String> order : Arrays.asList(holders, reversed,
+          shuffled)) {
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws IOException {
+            for (int i = 0; i < 20; i++) {
+              renewLeases(lm, order, leaseCreationLockRows);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get(100, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void renewLeases(final LeaseManager lm,
+      final List<String> holders, final int leaseCreationLockRows)
+      throws IOException {
+    new HopsTransactionalRequestHandler(HDFSOperationType.TEST) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLockAllPaths(TransactionLockTypes.LockType.WRITE, holders, leaseCreationLockRows));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        for (String holder : holders) {
+          Lease lease = lm.getLease(holder);
+          assertNotNull(lease);
+          lease.setLastUpdate(now());
+          lease.savePersistent();
+        }
+        return null;
+      }
+    }.handle();
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.RetryCacheEntry;
+import io.hops.transaction.handler.PostCommitHooks;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.ipc.ClientId;
+import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the in-memory entries of the retry cache, without a database.
+ */
+public class TestLightWeightCacheDistributed {
+
+  private static final byte[] CLIENT_ID = ClientId.getClientId();
+
+  private boolean enabled;
+
+  @Before
+  public void setUp() {
+    enabled = LightWeightCacheDistributed.enable;
+    LightWeightCacheDistributed.enable = true;
+    LightWeightCacheDistributed.setMaxLocalEntries(0);
+    LightWeightCacheDistributed.setMaxLocalEntries(10);
+  }
+
+  @After
+  public void tearDown() {
+    Server.getCurCall().set(null);
+    PostCommitHooks.clear();
+    LightWeightCacheDistributed.setMaxLocalEntries(0);
+    LightWeightCacheDistributed.setMaxLocalEntries(
+        DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_DEFAULT);
+    LightWeightCacheDistributed.enable = enabled;
+  }
+
+  private static RetryCacheEntry entry(int callId, long epoch,
+      boolean success) {
+    return new RetryCacheEntry(CLIENT_ID, callId, null, -1, epoch,
+        success ? RetryCacheEntry.SUCCESS : RetryCacheEntry.FAILED);
+  }
+
+  private static void commit(RetryCacheEntry... entries) {
+    LightWeightCacheDistributed.stage(Arrays.asList(entries));
+    PostCommitHooks.runAll();
+  }
+
+  /**
+   * @return the in-memory entry of a call, a first attempt never reads the
+   * database
+   */
+  private static RetryCacheEntry getLocal(int callId, long epoch)
+      throws Exception {
+    Server.getCurCall().set(new Server.Call(callId, 0, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, CLIENT_ID, epoch));
+    return LightWeightCacheDistributed.getTransactional();
+  }
+
+  @Test
+  public void testOnlyCommittedSuccessesAreKept() throws Exception {
+    commit(entry(1, 100, true), entry(2, 100, false));
+    assertEquals(1, LightWeightCacheDistributed.getLocalCount());
+    assertNotNull(getLocal(1, 100));
+    assertNull(getLocal(2, 100));
+
+    // a transaction that did not commit
+    LightWeightCacheDistributed.stage(Arrays.asList(entry(3, 100, true)));
+    PostCommitHooks.clear();
+    PostCommitHooks.runAll();
+    assertNull(getLocal(3, 100));
+
+    // a retried commit replaces the entries of the previous attempt
+    LightWeightCacheDistributed.stage(Arrays.asList(entry(4, 100, true)));
+    commit(entry(5, 100, true));
+    assertNull(getLocal(4, 100));
+    assertNotNull(getLocal(5, 100));
+    assertEquals(2, LightWeightCacheDistributed.getLocalCount());
+  }
+
+  @Test
+  public void testExpireByEpoch() throws Exception {
+    commit(entry(1, 100, true), entry(2, 100, true));
+    commit(entry(3, 101, true));
+    commit(entry(4, 102, true));
+    assertEquals(4, LightWeightCacheDistributed.getLocalCount());
+
+    assertEquals(3, LightWeightCacheDistributed.expireLocal(101));
+    assertEquals(1, LightWeightCacheDistributed.getLocalCount());
+    assertNull(getLocal(1, 100));
+    assertNull(getLocal(3, 101));
+    assertNotNull(getLocal(4, 102));
+  }
+
+  @Test
+  public void testExpireByMaxEntries() throws Exception {
+    LightWeightCacheDistributed.setMaxLocalEntries(2);
+    commit(entry(1, 100, true));
+    commit(entry(2, 101, true));
+    commit(entry(3, 102, true));
+    assertEquals(3, LightWeightCacheDistributed.getLocalCount());
+
+    // none of the epochs expired, the oldest are dropped
+    assertEquals(1, LightWeightCacheDistributed.expireLocal(0));
+    assertEquals(2, LightWeightCacheDistributed.getLocalCount());
+    assertNull(getLocal(1, 100));
+    assertNotNull(getLocal(2, 101));
+    assertNotNull(getLocal(3, 102));
+
+    // disabled
+    LightWeightCacheDistributed.setMaxLocalEntries(0);
+    commit(entry(4, 103, true));
+    assertEquals(0, LightWeightCacheDistributed.getLocalCount());
+    assertNull(getLocal(4, 103));
+  }
+}
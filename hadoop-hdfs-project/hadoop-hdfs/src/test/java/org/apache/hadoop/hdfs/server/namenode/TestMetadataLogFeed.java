@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.INodeMetadataLogEntry;
+import io.hops.metadata.hdfs.entity.MetadataLogEntry;
+import io.hops.transaction.handler.PostCommitHooks;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MetadataLogCursor;
+import org.apache.hadoop.hdfs.protocol.MetadataLogEventBatch;
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetadataLogFeed {
+
+  private static final long[] NONE = new long[0];
+
+  private static MetadataLogFeed newFeed(int capacity) {
+    return newFeed(capacity, new Configuration());
+  }
+
+  private static MetadataLogFeed newFeed(int capacity, Configuration conf) {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_CAPACITY_KEY,
+        capacity);
+    return new MetadataLogFeed(conf);
+  }
+
+  private static void commit(MetadataLogFeed feed, int first, int count) {
+    List<MetadataLogEntry> entries = new ArrayList<>();
+    for (int i = first; i < first + count; i++) {
+      entries.add(new INodeMetadataLogEntry(1, i, i, 1, "file" + i, 1,
+          INodeMetadataLogEntry.Operation.Add));
+    }
+    feed.stage(entries);
+    PostCommitHooks.runAll();
+  }
+
+  @Test
+  public void testOnlyPublishedEntriesAreServed() throws Exception {
+    MetadataLogFeed feed = newFeed(10);
+    commit(feed, 100, 3);
+
+    // a transaction that did not commit
+    List<MetadataLogEntry> aborted = new ArrayList<>();
+    aborted.add(new INodeMetadataLogEntry(1, 200, 200, 1, "aborted", 1,
+        INodeMetadataLogEntry.Operation.Add));
+    feed.stage(aborted);
+    PostCommitHooks.clear();
+    PostCommitHooks.runAll();
+
+    MetadataLogEventBatch batch = feed.getEvents(null, NONE, NONE, 2, 0, null);
+    assertEquals(2, batch.getEvents().size());
+    assertEquals(100, batch.getEvents().get(0).getInodeId());
+    assertEquals(2, batch.getLastSequence());
+    assertFalse(batch.isMissed());
+
+    batch = feed.getEvents(null, new long[]{feed.getFeedId()},
+        new long[]{batch.getLastSequence()}, 10, 0, null);
+    assertEquals(1, batch.getEvents().size());
+    assertEquals(102, batch.getEvents().get(0).getInodeId());
+    assertEquals(3, batch.getLastSequence());
+  }
+
+  @Test
+  public void testOverwrittenEventsAreMissed() throws Exception {
+    MetadataLogFeed feed = newFeed(5);
+    commit(feed, 0, 12);
+
+    MetadataLogEventBatch batch = feed.getEvents(null,
+        new long[]{feed.getFeedId()}, new long[]{2}, 10, 0, null);
+    assertTrue(batch.isMissed());
+    assertEquals(5, batch.getEvents().size());
+    assertEquals(8, batch.getEvents().get(0).getSequence());
+    assertEquals(12, batch.getLastSequence());
+  }
+
+  @Test(timeout = 10000)
+  public void testLongPoll() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_KEY,
+        MetadataLogFeed.MAX_WAIT_LIMIT);
+    final MetadataLogFeed feed = newFeed(10, conf);
+    Thread committer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        commit(feed, 0, 1);
+      }
+    };
+    committer.start();
+    MetadataLogEventBatch batch = feed.getEvents(null, NONE, NONE, 10, 5000,
+        null);
+    assertEquals(1, batch.getEvents().size());
+    committer.join();
+  }
+
+  @Test
+  public void testWaitIsCapped() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_METADATA_LOG_FEED_MAX_WAIT_KEY,
+        600000);
+    MetadataLogFeed feed = newFeed(10, conf);
+    long start = Time.monotonicNow();
+    MetadataLogEventBatch batch = feed.getEvents(null, NONE, NONE, 10, 600000,
+        null);
+    assertTrue(batch.getEvents().isEmpty());
+    assertTrue(Time.monotonicNow() - start < 60000);
+  }
+
+  @Test
+  public void testFeedIds() {
+    long startTime = 1500000000000L;
+    // namenodes started at the same time
+    assertNotEquals(MetadataLogFeed.feedId(1, startTime),
+        MetadataLogFeed.feedId(2, startTime));
+    // a restarted namenode
+    assertNotEquals(MetadataLogFeed.feedId(1, startTime),
+        MetadataLogFeed.feedId(1, startTime + 1));
+
+    MetadataLogFeed feed = newFeed(10);
+    long feedId = feed.getFeedId();
+    feed.setNamenodeId(3);
+    assertNotEquals(feedId, feed.getFeedId());
+  }
+
+  @Test
+  public void testCursor() {
+    MetadataLogCursor cursor = MetadataLogCursor.valueOf("5:10,7:3");
+    assertEquals("5:10,7:3", cursor.toString());
+    assertFalse(cursor.isMissed());
+    assertEquals("", new MetadataLogCursor().toString());
+    assertEquals(0, MetadataLogCursor.valueOf("").toString().length());
+  }
+}
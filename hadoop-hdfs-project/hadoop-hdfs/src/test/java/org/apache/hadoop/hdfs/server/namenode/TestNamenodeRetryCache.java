@@ -312,6 +312,75 @@ public void testRename2() throws Exception {
     }
   }
   
+  /**
+   * Test for recursive delete, of a directory and of a file
+   */
+  @Test
+  public void testRecursiveDelete() throws Exception {
+    String dir = "/testNamenodeRetryCache/testRecursiveDelete/dir";
+    String file = "/testNamenodeRetryCache/testRecursiveDelete/file";
+    resetCall();
+    nnRpc.mkdirs(dir + "/subdir", perm, true);
+    DFSTestUtil.createFile(filesystem, new Path(dir, "file"), BlockSize,
+        (short) 1, 0L);
+    DFSTestUtil.createFile(filesystem, new Path(file), BlockSize, (short) 1,
+        0L);
+
+    // Retried deletes succeed although the path is gone
+    newCall();
+    Assert.assertTrue(nnRpc.delete(dir, true));
+    Assert.assertTrue(nnRpc.delete(dir, true));
+    Assert.assertTrue(nnRpc.delete(dir, true));
+    newCall();
+    Assert.assertTrue(nnRpc.delete(file, true));
+    Assert.assertTrue(nnRpc.delete(file, true));
+
+    // A non-retried request fails
+    newCall();
+    Assert.assertFalse(nnRpc.delete(dir, true));
+  }
+
+  /**
+   * Test for retries received by a namenode that did not run the first call,
+   * their entries are read from the database
+   */
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testRetryWithoutLocalEntries() throws Exception {
+    String dir = "/testNamenodeRetryCache/testRetryWithoutLocalEntries";
+    resetCall();
+    nnRpc.mkdirs(dir + "/src1", perm, true);
+    nnRpc.mkdirs(dir + "/src2", perm, true);
+    nnRpc.mkdirs(dir + "/delete", perm, true);
+
+    newCall();
+    Assert.assertTrue(nnRpc.rename(dir + "/src1", dir + "/target1"));
+    clearLocalEntries();
+    Assert.assertTrue(nnRpc.rename(dir + "/src1", dir + "/target1"));
+
+    newCall();
+    nnRpc.rename2(dir + "/src2", dir + "/target2", Rename.NONE);
+    clearLocalEntries();
+    nnRpc.rename2(dir + "/src2", dir + "/target2", Rename.NONE);
+
+    newCall();
+    Assert.assertTrue(nnRpc.delete(dir + "/delete", false));
+    clearLocalEntries();
+    Assert.assertTrue(nnRpc.delete(dir + "/delete", false));
+
+    // A non-retried request fails
+    newCall();
+    Assert.assertFalse(nnRpc.delete(dir + "/delete", false));
+  }
+
+  private static void clearLocalEntries() {
+    assertTrue(LightWeightCacheDistributed.getLocalCount() > 0);
+    LightWeightCacheDistributed.setMaxLocalEntries(0);
+    assertEquals(0, LightWeightCacheDistributed.getLocalCount());
+    LightWeightCacheDistributed.setMaxLocalEntries(
+        DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_LOCAL_MAX_ENTRIES_DEFAULT);
+  }
+
   /**
    * Make sure a retry call does not hang because of the exception thrown in the
    * first call.
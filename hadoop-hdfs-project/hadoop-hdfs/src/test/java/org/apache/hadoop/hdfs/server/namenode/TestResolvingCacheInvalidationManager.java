@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.namenode.ResolvingCacheInvalidationManager.Delivery;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the ordering of the resolving cache invalidations received from the
+ * other namenodes.
+ */
+public class TestResolvingCacheInvalidationManager {
+
+  private static final long SENDER = 2;
+  private static final long OTHER_SENDER = 3;
+  private static final long EPOCH = 1000;
+
+  private ResolvingCacheInvalidationManager manager;
+
+  @Before
+  public void setUp() {
+    manager = new ResolvingCacheInvalidationManager(mock(FSNamesystem.class),
+        new HdfsConfiguration());
+  }
+
+  @Test
+  public void testInOrder() {
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 1));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 2));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 3));
+    // the senders are tracked independently
+    assertEquals(Delivery.IN_ORDER, manager.deliver(OTHER_SENDER, EPOCH, 1));
+  }
+
+  @Test
+  public void testGap() {
+    // the first batches of the sender were missed
+    assertEquals(Delivery.MISSED, manager.deliver(SENDER, EPOCH, 2));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 3));
+    assertEquals(Delivery.MISSED, manager.deliver(SENDER, EPOCH, 5));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 6));
+  }
+
+  @Test
+  public void testDuplicate() {
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 1));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 2));
+    // a retried RPC does not flush the cache, nor set the sequence back
+    assertEquals(Delivery.DUPLICATE, manager.deliver(SENDER, EPOCH, 2));
+    assertEquals(Delivery.DUPLICATE, manager.deliver(SENDER, EPOCH, 1));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 3));
+  }
+
+  @Test
+  public void testNewEpoch() {
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 1));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH, 2));
+    // the sender restarted, its sequence starts again
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH + 1, 1));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH + 1, 2));
+    // a late batch of the previous run
+    assertEquals(Delivery.DUPLICATE, manager.deliver(SENDER, EPOCH, 3));
+    assertEquals(Delivery.IN_ORDER, manager.deliver(SENDER, EPOCH + 1, 3));
+    // the first batches of the new run were missed
+    assertEquals(Delivery.MISSED, manager.deliver(SENDER, EPOCH + 2, 2));
+  }
+}
@@ -355,6 +355,7 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
           for (int readNum : readResult.numRead) {
             numReadBytes += readNum;
           }
+          parallelReader.recycle(readResult);
 
           int toWrite = (int) Math.min((long) bufSize, limit - written);
           for (int i = 0; i < erasedLocationsArray.length; i++) {
@@ -624,6 +625,7 @@ private void init() throws IOException {
         }
         code.decodeBulk(readResult.readBufs, writeBufs, erasedLocationsArray,
             locationsToReadArray, locationsNotToReadArray);
+        parallelReader.recycle(readResult);
 
         for (int i = 0; i < erasedLocationsArray.length; i++) {
           if (erasedLocationsArray[i] == erasedLocationToFix) {
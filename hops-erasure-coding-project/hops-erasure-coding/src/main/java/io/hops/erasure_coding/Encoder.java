@@ -440,6 +440,7 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
           }
         }
         code.encodeBulk(readResult.readBufs, writeBufs);
+        parallelReader.recycle(readResult);
         reporter.progress();
 
         // Now that we have some data to write, send it to the temp files.
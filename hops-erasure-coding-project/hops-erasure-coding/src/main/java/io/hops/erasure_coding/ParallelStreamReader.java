@@ -30,6 +30,7 @@
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -65,6 +66,13 @@ public static class ReadResult {
       }
       this.ioExceptions = new IOException[readBufs.length];
     }
+
+    void reset() {
+      Arrays.fill(numRead, 0);
+      synchronized (ioExceptions) {
+        Arrays.fill(ioExceptions, null);
+      }
+    }
     
     void setException(int idx, Exception e) {
       synchronized (ioExceptions) {
@@ -93,6 +101,9 @@ IOException getException() {
   }
 
   BlockingQueue<ReadResult> boundedBuffer;
+  // Results given back by the consumer, their buffers are reused
+  ConcurrentLinkedQueue<ReadResult> freeResults =
+      new ConcurrentLinkedQueue<ReadResult>();
   Thread mainThread;
 
   /**
@@ -175,10 +186,30 @@ public ReadResult getReadResult() throws InterruptedException {
     return boundedBuffer.take();
   }
 
+  /**
+   * Gives back a result obtained from {@link #getReadResult()} once its
+   * buffers are not used anymore, so that they are reused for the next reads
+   * instead of allocating new ones.
+   */
+  public void recycle(ReadResult readResult) {
+    if (readResult != null) {
+      freeResults.offer(readResult);
+    }
+  }
+
+  ReadResult newReadResult() {
+    ReadResult readResult = freeResults.poll();
+    if (readResult == null) {
+      return new ReadResult(streams.length, bufSize);
+    }
+    readResult.reset();
+    return readResult;
+  }
+
   class MainThread extends Thread {
     public void run() {
       while (running) {
-        ReadResult readResult = new ReadResult(streams.length, bufSize);
+        ReadResult readResult = newReadResult();
         try {
           // Do not try to read more data if the desired amount of data has
           // been read.
@@ -243,9 +274,12 @@ public void run() {
         }
         boolean eofOK = true;
         byte[] buffer = readResult.readBufs[idx];
+        int toRead = (int) Math.max(0,
+            Math.min(remainingBytesPerStream, buffer.length));
         int numRead = RaidUtils
-            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx],
-                (int) Math.min(remainingBytesPerStream, buffer.length));
+            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx], toRead);
+        // A recycled buffer still holds the data of a previous read
+        Arrays.fill(buffer, toRead, buffer.length, (byte) 0);
         readResult.numRead[idx] = numRead;
       } catch (Exception e) {
         LOG.warn("Encountered exception in stream " + idx, e);
@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import java.util.Arrays;
+
+/**
+ * Reed Solomon code producing the same parity as {@link ReedSolomonCode}
+ * with table lookups instead of polynomial arithmetics.
+ * <p>
+ * The code is linear, so each parity symbol is a fixed combination of the
+ * message symbols and each erased symbol a fixed combination of the symbols
+ * that are read. The coefficients of these combinations are computed once,
+ * per code for encoding and per erasure pattern for decoding, and the bulk
+ * operations multiply whole buffers by each coefficient with a 256 entries
+ * multiplication table. Coefficients 0 and 1 are skipped and xor-ed
+ * directly, which the JIT vectorizes. The buffers are processed in chunks so
+ * that the outputs stay in cache while all the inputs are added to them.
+ * The int based methods are inherited from {@link ReedSolomonCode}.
+ */
+public class TableReedSolomonCode extends ReedSolomonCode {
+  private static final int CHUNK_SIZE = 4096;
+
+  private static final GaloisField GF = GaloisField.getInstance();
+  // MUL_TABLE[c][x] = c * x
+  private static final byte[][] MUL_TABLE = new byte[256][256];
+
+  static {
+    for (int c = 0; c < 256; c++) {
+      for (int x = 0; x < 256; x++) {
+        MUL_TABLE[c][x] = (byte) GF.multiply(c, x);
+      }
+    }
+  }
+
+  // generator[location][j] is the coefficient of message symbol j in the
+  // symbol at the location, parity locations first
+  private int[][] generator;
+  private int[][] encodeMatrix;
+
+  private int[] cachedErasedLocations;
+  private int[] cachedLocationsToUse;
+  private int[][] cachedDecodeMatrix;
+
+  public TableReedSolomonCode() {
+  }
+
+  public TableReedSolomonCode(int stripeSize, int paritySize) {
+    super(stripeSize, paritySize);
+    initTables();
+  }
+
+  @Override
+  public void init(Codec codec) {
+    super.init(codec);
+    initTables();
+  }
+
+  private void initTables() {
+    int stripeSize = stripeSize();
+    int paritySize = paritySize();
+    generator = new int[paritySize + stripeSize][];
+    int[] message = new int[stripeSize];
+    int[] parity = new int[paritySize];
+    int[][] parityColumns = new int[stripeSize][];
+    for (int j = 0; j < stripeSize; j++) {
+      Arrays.fill(message, 0);
+      message[j] = 1;
+      encode(message, parity);
+      parityColumns[j] = parity.clone();
+    }
+    for (int i = 0; i < paritySize; i++) {
+      generator[i] = new int[stripeSize];
+      for (int j = 0; j < stripeSize; j++) {
+        generator[i][j] = parityColumns[j][i];
+      }
+    }
+    for (int j = 0; j < stripeSize; j++) {
+      generator[paritySize + j] = new int[stripeSize];
+      generator[paritySize + j][j] = 1;
+    }
+    encodeMatrix = Arrays.copyOf(generator, paritySize);
+  }
+
+  /**
+   * Unlike {@link ReedSolomonCode#encodeBulk}, the inputs are not modified.
+   */
+  @Override
+  public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    assert (stripeSize() == inputs.length);
+    assert (paritySize() == outputs.length);
+    multiply(encodeMatrix, inputs, null, outputs);
+  }
+
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocation) {
+    int[] locationsNotToRead = erasedLocation;
+    decodeBulk(readBufs, writeBufs, erasedLocation, null, locationsNotToRead);
+  }
+
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+    if (erasedLocations.length == 0) {
+      return;
+    }
+    // Any stripeSize() symbols that can be read determine the codeword
+    int stripeSize = stripeSize();
+    int[] locationsToUse = new int[stripeSize];
+    int found = 0;
+    for (int loc = 0; loc < generator.length && found < stripeSize; loc++) {
+      if (!contains(locationsNotToRead, loc)) {
+        locationsToUse[found++] = loc;
+      }
+    }
+    if (found < stripeSize) {
+      throw new IllegalArgumentException("Only " + found +
+          " locations can be read, " + stripeSize + " are needed");
+    }
+    multiply(getDecodeMatrix(erasedLocations, locationsToUse), readBufs,
+        locationsToUse, writeBufs);
+  }
+
+  /**
+   * The decode matrix gives the erased symbols from the symbols that are
+   * used. The decoder repairs a block with the same erasures, so the matrix
+   * of the last erasure pattern is kept.
+   */
+  private synchronized int[][] getDecodeMatrix(int[] erasedLocations,
+      int[] locationsToUse) {
+    if (Arrays.equals(erasedLocations, cachedErasedLocations) &&
+        Arrays.equals(locationsToUse, cachedLocationsToUse)) {
+      return cachedDecodeMatrix;
+    }
+    int stripeSize = stripeSize();
+    int[][] used = new int[stripeSize][];
+    for (int i = 0; i < stripeSize; i++) {
+      used[i] = generator[locationsToUse[i]];
+    }
+    // message = inverse(used) * symbols used, so erased = generator[erased]
+    // * inverse(used) * symbols used
+    int[][] inverse = invert(used);
+    int[][] decodeMatrix = new int[erasedLocations.length][stripeSize];
+    for (int e = 0; e < erasedLocations.length; e++) {
+      int[] row = generator[erasedLocations[e]];
+      for (int j = 0; j < stripeSize; j++) {
+        int value = 0;
+        for (int m = 0; m < stripeSize; m++) {
+          value ^= GF.multiply(row[m], inverse[m][j]);
+        }
+        decodeMatrix[e][j] = value;
+      }
+    }
+    cachedErasedLocations = erasedLocations.clone();
+    cachedLocationsToUse = locationsToUse.clone();
+    cachedDecodeMatrix = decodeMatrix;
+    return decodeMatrix;
+  }
+
+  private static int[][] invert(int[][] matrix) {
+    int n = matrix.length;
+    int[][] work = new int[n][];
+    int[][] inverse = new int[n][n];
+    for (int i = 0; i < n; i++) {
+      work[i] = matrix[i].clone();
+      inverse[i][i] = 1;
+    }
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      while (pivot < n && work[pivot][col] == 0) {
+        pivot++;
+      }
+      if (pivot == n) {
+        throw new IllegalArgumentException("Singular decode matrix");
+      }
+      swap(work, col, pivot);
+      swap(inverse, col, pivot);
+      int scale = GF.divide(1, work[col][col]);
+      for (int j = 0; j < n; j++) {
+        work[col][j] = GF.multiply(work[col][j], scale);
+        inverse[col][j] = GF.multiply(inverse[col][j], scale);
+      }
+      for (int row = 0; row < n; row++) {
+        int factor = work[row][col];
+        if (row == col || factor == 0) {
+          continue;
+        }
+        for (int j = 0; j < n; j++) {
+          work[row][j] ^= GF.multiply(factor, work[col][j]);
+          inverse[row][j] ^= GF.multiply(factor, inverse[col][j]);
+        }
+      }
+    }
+    return inverse;
+  }
+
+  private static void swap(int[][] matrix, int i, int j) {
+    int[] tmp = matrix[i];
+    matrix[i] = matrix[j];
+    matrix[j] = tmp;
+  }
+
+  private static boolean contains(int[] locations, int location) {
+    if (locations == null) {
+      return false;
+    }
+    for (int loc : locations) {
+      if (loc == location) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * outputs[i] = sum of matrix[i][j] * inputs[locations[j]]
+   *
+   * @param locations
+   *     the inputs to use, or null to use all of them in order
+   */
+  private static void multiply(int[][] matrix, byte[][] inputs,
+      int[] locations, byte[][] outputs) {
+    int length = outputs[0].length;
+    for (int from = 0; from < length; from += CHUNK_SIZE) {
+      int to = Math.min(length, from + CHUNK_SIZE);
+      for (int i = 0; i < matrix.length; i++) {
+        byte[] output = outputs[i];
+        Arrays.fill(output, from, to, (byte) 0);
+        for (int j = 0; j < matrix[i].length; j++) {
+          byte[] input = inputs[locations == null ? j : locations[j]];
+          multiplyAdd(matrix[i][j], input, output, from, to);
+        }
+      }
+    }
+  }
+
+  private static void multiplyAdd(int coefficient, byte[] input,
+      byte[] output, int from, int to) {
+    if (coefficient == 0) {
+      return;
+    }
+    if (coefficient == 1) {
+      for (int k = from; k < to; k++) {
+        output[k] ^= input[k];
+      }
+      return;
+    }
+    byte[] table = MUL_TABLE[coefficient];
+    int k = from;
+    for (; k + 8 <= to; k += 8) {
+      output[k] ^= table[input[k] & 0xFF];
+      output[k + 1] ^= table[input[k + 1] & 0xFF];
+      output[k + 2] ^= table[input[k + 2] & 0xFF];
+      output[k + 3] ^= table[input[k + 3] & 0xFF];
+      output[k + 4] ^= table[input[k + 4] & 0xFF];
+      output[k + 5] ^= table[input[k + 5] & 0xFF];
+      output[k + 6] ^= table[input[k + 6] & 0xFF];
+      output[k + 7] ^= table[input[k + 7] & 0xFF];
+    }
+    for (; k < to; k++) {
+      output[k] ^= table[input[k] & 0xFF];
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import org.apache.hadoop.conf.Configuration;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bulk encode and decode throughput of the erasure codes for a
+ * 10 + 4 stripe. The native code needs libhadoop with ISA-L and can be added
+ * with -p erasureCode=io.hops.erasure_coding.NativeReedSolomonCode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErasureCodeBenchmark {
+  private static final int STRIPE_LENGTH = 10;
+  private static final int PARITY_LENGTH = 4;
+
+  @Param({"io.hops.erasure_coding.ReedSolomonCode",
+      "io.hops.erasure_coding.TableReedSolomonCode"})
+  public String erasureCode;
+
+  @Param({"1048576"})
+  public int bufSize;
+
+  private ErasureCode code;
+  private byte[][] data;
+  private byte[][] parity;
+  private byte[][] readBufs;
+  private byte[][] writeBufs;
+  // one parity and one data block are lost
+  private final int[] erasedLocations = {1, PARITY_LENGTH + 3};
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() throws IOException {
+    JSONObject json = new JSONObject();
+    json.put("id", "bench");
+    json.put("parity_dir", "/bench");
+    json.put("stripe_length", (long) STRIPE_LENGTH);
+    json.put("parity_length", (long) PARITY_LENGTH);
+    json.put("priority", 100L);
+    json.put("erasure_code", erasureCode);
+    code = new Codec(json).createErasureCode(new Configuration());
+
+    Random random = new Random(0);
+    data = new byte[STRIPE_LENGTH][bufSize];
+    for (byte[] buf : data) {
+      random.nextBytes(buf);
+    }
+    parity = new byte[PARITY_LENGTH][bufSize];
+    readBufs = new byte[STRIPE_LENGTH + PARITY_LENGTH][];
+    for (int i = 0; i < STRIPE_LENGTH; i++) {
+      readBufs[PARITY_LENGTH + i] = data[i].clone();
+    }
+    code.encodeBulk(data, parity);
+    for (int i = 0; i < PARITY_LENGTH; i++) {
+      readBufs[i] = parity[i].clone();
+    }
+    for (int location : erasedLocations) {
+      readBufs[location] = new byte[bufSize];
+    }
+    writeBufs = new byte[erasedLocations.length][bufSize];
+  }
+
+  @Benchmark
+  public byte[][] encode() throws IOException {
+    code.encodeBulk(data, parity);
+    return parity;
+  }
+
+  @Benchmark
+  public byte[][] decode() throws IOException {
+    code.decodeBulk(readBufs, writeBufs, erasedLocations, null,
+        erasedLocations);
+    return writeBufs;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(ErasureCodeBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
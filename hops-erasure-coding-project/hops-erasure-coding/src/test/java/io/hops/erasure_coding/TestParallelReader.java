@@ -22,6 +22,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -105,4 +106,35 @@ public void testParallelism() throws IOException, InterruptedException {
 
     LOG.info("testParallelism finished");
   }
+
+  public void testRecycledBuffers() throws IOException {
+    int bufSize = 10;
+    byte[] data = new byte[15];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i + 1);
+    }
+    InputStream[] streams = {new ByteArrayInputStream(data)};
+    ParallelStreamReader parallelReader =
+        new ParallelStreamReader(RaidUtils.NULL_PROGRESSABLE, streams, bufSize,
+            1, 1, data.length);
+    try {
+      ParallelStreamReader.ReadResult readResult =
+          parallelReader.newReadResult();
+      parallelReader.new ReadOperation(readResult, 0).run();
+      assertEquals(bufSize, readResult.numRead[0]);
+      parallelReader.recycle(readResult);
+
+      ParallelStreamReader.ReadResult reused = parallelReader.newReadResult();
+      assertSame(readResult, reused);
+      assertEquals(0, reused.numRead[0]);
+      parallelReader.remainingBytesPerStream -= bufSize;
+      parallelReader.new ReadOperation(reused, 0).run();
+      assertEquals(5, reused.numRead[0]);
+      for (int i = 0; i < bufSize; i++) {
+        assertEquals(i < 5 ? data[bufSize + i] : 0, reused.readBufs[0][i]);
+      }
+    } finally {
+      parallelReader.shutdown();
+    }
+  }
 }
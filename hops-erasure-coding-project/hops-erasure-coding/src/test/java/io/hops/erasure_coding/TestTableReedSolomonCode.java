@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class TestTableReedSolomonCode extends TestCase {
+  final int TEST_CODES = 20;
+  final int TEST_TIMES = 20;
+  final Random RAND = new Random();
+
+  public void testSameParityAsReedSolomonCode() {
+    for (int n = 0; n < TEST_CODES; n++) {
+      int stripeSize = RAND.nextInt(20) + 1;
+      int paritySize = RAND.nextInt(6) + 1;
+      // not a multiple of the chunk size or of the unrolled loop
+      int bufSize = RAND.nextInt(10000) + 1;
+      ReedSolomonCode rs = new ReedSolomonCode(stripeSize, paritySize);
+      TableReedSolomonCode table =
+          new TableReedSolomonCode(stripeSize, paritySize);
+      byte[][] message = randomBufs(stripeSize, bufSize);
+      byte[][] copy = new byte[stripeSize][];
+      for (int i = 0; i < stripeSize; i++) {
+        copy[i] = message[i].clone();
+      }
+      byte[][] expected = new byte[paritySize][bufSize];
+      byte[][] parity = new byte[paritySize][bufSize];
+      rs.encodeBulk(copy, expected);
+      table.encodeBulk(message, parity);
+      for (int i = 0; i < paritySize; i++) {
+        assertTrue("Parity " + i + " differs",
+            Arrays.equals(expected[i], parity[i]));
+      }
+    }
+  }
+
+  public void testDecodeBulk() {
+    for (int n = 0; n < TEST_CODES; n++) {
+      int stripeSize = RAND.nextInt(20) + 1;
+      int paritySize = RAND.nextInt(6) + 1;
+      int bufSize = RAND.nextInt(10000) + 1;
+      TableReedSolomonCode code =
+          new TableReedSolomonCode(stripeSize, paritySize);
+      byte[][] message = randomBufs(stripeSize, bufSize);
+      byte[][] parity = new byte[paritySize][bufSize];
+      code.encodeBulk(message, parity);
+      byte[][] codeword = new byte[stripeSize + paritySize][];
+      System.arraycopy(parity, 0, codeword, 0, paritySize);
+      System.arraycopy(message, 0, codeword, paritySize, stripeSize);
+
+      for (int m = 0; m < TEST_TIMES; m++) {
+        int erasedLen = RAND.nextInt(paritySize) + 1;
+        int[] erasedLocations = randomErasedLocation(erasedLen,
+            codeword.length);
+        byte[][] readBufs = new byte[codeword.length][];
+        for (int i = 0; i < codeword.length; i++) {
+          readBufs[i] = codeword[i].clone();
+        }
+        for (int location : erasedLocations) {
+          Arrays.fill(readBufs[location], (byte) 0);
+        }
+        byte[][] writeBufs = new byte[erasedLen][bufSize];
+        code.decodeBulk(readBufs, writeBufs, erasedLocations, null,
+            erasedLocations);
+        for (int i = 0; i < erasedLen; i++) {
+          assertTrue("Decode failed",
+              Arrays.equals(codeword[erasedLocations[i]], writeBufs[i]));
+        }
+      }
+    }
+  }
+
+  private byte[][] randomBufs(int count, int size) {
+    byte[][] bufs = new byte[count][size];
+    for (byte[] buf : bufs) {
+      RAND.nextBytes(buf);
+    }
+    return bufs;
+  }
+
+  private int[] randomErasedLocation(int erasedLen, int dataLen) {
+    int[] erasedLocations = new int[erasedLen];
+    Set<Integer> locations = new HashSet<Integer>();
+    for (int i = 0; i < erasedLen; i++) {
+      int loc;
+      do {
+        loc = RAND.nextInt(dataLen);
+      } while (!locations.add(loc));
+      erasedLocations[i] = loc;
+    }
+    return erasedLocations;
+  }
+}